@@ -31,7 +31,9 @@ public class Application
 	/**
 	 * Constructor
 	 * @param name The name attribute of the application
-	 * @param applicationData TODO: How to implement specific &lt;Application&gt; tags
+	 * @param applicationData The contents of the &lt;Application&gt; tag as XML markup, so text
+	 * must be escaped. The APMLCodec reads and writes it as markup; the XStream engine
+	 * doesn't read it.
 	 */
 	public Application(String name, String applicationData)
 	{
@@ -2,7 +2,7 @@ package org.apml.base;
 
 import java.util.ArrayList;
 
-public class Applications<Application> extends ArrayList
+public class Applications<Application> extends ArrayList<Application>
 {
 	public Applications()
 	{
@@ -32,6 +32,8 @@ public class Body
 	private String defaultprofile = "";
 	private Applications<Application> Applications = null;
 	private List<Profile> Profiles = null;
+	private transient IndexedList<Profile> profileView = null;
+	private transient DefaultProfile defaultProfile = null;
 	
 	public Body(){}
 	
@@ -62,12 +64,23 @@ public class Body
 		this.Applications = applications;
 	}
 
+	/**
+	 * @return The profiles. Changes made through this list are seen by the name lookups.
+	 */
 	public List<Profile> getProfiles() {
-		return Profiles;
+		return profileView();
 	}
 
+	/**
+	 * Set the profiles. The list is kept, not copied: change it through getProfiles() afterwards,
+	 * the lookups don't see changes made to it directly.
+	 * @param profiles The profiles
+	 */
 	public void setProfiles(List<Profile> profiles) {
+		if(profiles instanceof IndexedList)
+			profiles = ((IndexedList<Profile>) profiles).getList();
 		this.Profiles = profiles;
+		this.defaultProfile = null;
 	}
 	
 	/**
@@ -78,13 +91,11 @@ public class Body
 	 */
 	public Profile getProfileByName(String name) throws ProfileNotFoundException
 	{
-		int i = 0;
-		for(i = 0; i < this.Profiles.size(); i++)
-		{
-			if(this.Profiles.get(i).getName().equalsIgnoreCase(name))
-				return this.Profiles.get(i);
-		}
-		 throw new ProfileNotFoundException("The profile '" + name + "' does not exist!");
+		Profile profile = findProfile(name);
+		
+		if(profile == null)
+			throw new ProfileNotFoundException("The profile '" + name + "' does not exist!");
+		return profile;
 	}
 	
 	/**
@@ -94,12 +105,90 @@ public class Body
 	 */
 	public Profile getDefaultProfile() throws ProfileNotFoundException
 	{
+		IndexedList<Profile> view = profileView();
+		DefaultProfile cached = this.defaultProfile;
+		String name = this.defaultprofile;
+		
+		if(cached != null && cached.view == view && cached.stamp == view.getStamp() && cached.name.equals(name)
+				&& name.equalsIgnoreCase(cached.profile.getName()))
+			return cached.profile;
+		
+		Profile profile = findProfile(name);
+		if(profile == null)
+			throw new ProfileNotFoundException("The default profile '" + this.defaultprofile + "' does not exist!");
+		this.defaultProfile = new DefaultProfile(name, profile, view);
+		return profile;
+	}
+	
+	/**
+	 * Looks the name up in the index of the profiles. A profile renamed since the index was
+	 * built isn't found there, so the list is scanned before giving up. If another profile
+	 * already had the new name, that one is returned.
+	 * @return The first profile with that name, ignoring case, or null
+	 */
+	private Profile findProfile(String name)
+	{
+		IndexedList<Profile> view = profileView();
+		
+		if(view == null || name == null)
+			return null;
+		
+		List<Profile> matches = view.getByKey(name);
+		if(!matches.isEmpty() && name.equalsIgnoreCase(matches.get(0).getName()))
+			return matches.get(0);
+		
 		int i = 0;
-		for(i = 0; i < this.Profiles.size(); i++)
+		for(i = 0; i < view.size(); i++)
+		{
+			if(name.equalsIgnoreCase(view.get(i).getName()))
+			{
+				view.changed();
+				return view.get(i);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * XStream sets the list field directly, so the view is checked against it on every access
+	 */
+	private IndexedList<Profile> profileView()
+	{
+		List<Profile> list = this.Profiles;
+		IndexedList<Profile> view = this.profileView;
+		
+		if(list == null)
+			return null;
+		
+		if(view == null || view.getList() != list)
+		{
+			view = new IndexedList<Profile>(list) {
+				String keyOf(Profile profile) { return profile.getName(); }
+				String fromOf(Profile profile) { return null; }
+			};
+			this.profileView = view;
+		}
+		return view;
+	}
+	
+	/**
+	 * The resolved default profile, valid while the list and the defaultprofile name don't change<br>
+	 * The stamp only orders changes within one view, so the view itself is kept too: a new list starts
+	 * over with a stamp that an older list of the same size may have had.
+	 */
+	private static final class DefaultProfile
+	{
+		final String name;
+		final Profile profile;
+		final IndexedList<Profile> view;
+		final long stamp;
+		
+		DefaultProfile(String name, Profile profile, IndexedList<Profile> view)
 		{
-			if(this.Profiles.get(i).getName().equalsIgnoreCase(this.defaultprofile))
-				return this.Profiles.get(i);
+			this.name = name;
+			this.profile = profile;
+			this.view = view;
+			this.stamp = view.getStamp();
 		}
-		throw new ProfileNotFoundException("The default profile '" + this.defaultprofile + "' does not exist!");
 	}
 }
@@ -18,6 +18,8 @@
 
 package org.apml.base;
 
+import org.apml.tools.ISO8601;
+
 /**
  * <p>The Java implementation of the &lt;Concept&gt; tag</p>
  * @author Tim Schultz
@@ -28,6 +30,12 @@ public class Concept
 	private String value = "";
 	private String from = "";
 	private String updated = "";
+	// The date of the updated attribute, parsed on first use
+	private transient volatile String parsedUpdated = null;
+	private transient long updatedMillis = ISO8601.INVALID;
+	// The number of the value attribute, parsed on first use
+	private transient volatile String parsedValue = null;
+	private transient float floatValue = Float.NaN;
 	
 	public Concept(){}
 	
@@ -62,6 +70,29 @@ public class Concept
 		this.value = value;
 	}
 
+	/**
+	 * Retrieve the value attribute as a number. It is parsed on the first call and again after
+	 * the attribute changed.
+	 * @return The value, or NaN if it isn't a number
+	 */
+	public float getFloatValue() {
+		String value = this.value;
+		if(value == null)
+			return Float.NaN;
+		if(value != this.parsedValue)
+		{
+			float parsed = Float.NaN;
+			try
+			{
+				parsed = Float.parseFloat(value);
+			}
+			catch(NumberFormatException nfEx){}
+			this.floatValue = parsed;
+			this.parsedValue = value;
+		}
+		return floatValue;
+	}
+
 	public String getFrom() {
 		return from;
 	}
@@ -77,4 +108,22 @@ public class Concept
 	public void setUpdated(String updated) {
 		this.updated = updated;
 	}
+
+	/**
+	 * Retrieve the updated attribute as a date. It is parsed on the first call and again after
+	 * the attribute changed.
+	 * @return Milliseconds since 1970-01-01T00:00:00Z, or ISO8601.INVALID if it isn't a date
+	 */
+	public long getUpdatedMillis() {
+		String updated = this.updated;
+		// XStream doesn't run the field initializers, so a null attribute is never cached
+		if(updated == null)
+			return ISO8601.INVALID;
+		if(updated != this.parsedUpdated)
+		{
+			this.updatedMillis = ISO8601.parse(updated);
+			this.parsedUpdated = updated;
+		}
+		return updatedMillis;
+	}
 }
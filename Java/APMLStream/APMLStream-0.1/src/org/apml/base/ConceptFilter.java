@@ -0,0 +1,32 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.base;
+
+/**
+ * <p>Selects the concepts a query is interested in, see {@link ImplicitData#topConcepts(int, ConceptFilter)}.</p>
+ * @author Tim Schultz
+ */
+public interface ConceptFilter
+{
+	/**
+	 * @param concept A concept of the list being queried
+	 * @return true to consider the concept
+	 */
+	public boolean accept(Concept concept);
+}
@@ -0,0 +1,515 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.base;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import org.apml.tools.ISO8601;
+
+/**
+ * <p>A compact list of concepts, stored in parallel primitive arrays.<br>
+ * Keys and from attributes are kept as ids into a dictionary of the table, values as floats
+ * and updated dates as epoch milliseconds, 20 bytes per concept instead of the four Strings of
+ * a Concept. Each distinct key or from attribute also keeps its String in the dictionary, plus
+ * about 12 bytes of index. Scoring code can work on the arrays directly through
+ * {@link #getValues()}, {@link #getKeyIds()} and {@link #getFromIds()}.</p>
+ * <p>The table is also a List&lt;Concept&gt;. {@link #get(int)} returns a lightweight Concept
+ * that reads and writes its row of the table, and is only valid until rows are added or removed.
+ * A value or date that doesn't read back the same from the primitive form, like "1" or
+ * "2008-01-15T10:00:00+01:00", is also kept as it was written, so nothing is lost when the concepts
+ * are put back into a profile with {@link #toConcepts()}. The arrays hold the parsed form all the
+ * same, 1.0 and 09:00 UTC here, and {@link #NO_DATE} for an updated attribute that isn't a date.</p>
+ * <p>The table isn't thread-safe, and isn't meant to be stored in an APML object: XStream would
+ * write out its arrays.</p>
+ * @author Tim Schultz
+ */
+public class ConceptTable extends AbstractList<Concept> implements RandomAccess
+{
+	/** The updated date of a concept whose updated attribute isn't a date, ISO8601.INVALID */
+	public static final long NO_DATE = ISO8601.INVALID;
+	/** The id of a null key or from attribute */
+	public static final int NO_ID = -1;
+
+	// Marks a null value or updated attribute in the raw arrays
+	private static final String NULL = new String("null");
+
+	private int size = 0;
+	private int[] keyIds = null;
+	private float[] values = null;
+	private int[] fromIds = null;
+	private long[] updated = null;
+	// The attributes that don't read back the same from the arrays, allocated on first need
+	private String[] rawValues = null;
+	private String[] rawUpdated = null;
+
+	private String[] strings = new String[16];
+	private int stringCount = 0;
+	// The dictionary index, open addressing: ids[i] is a string id + 1, 0 when free
+	private int[] ids = new int[32];
+
+	public ConceptTable()
+	{
+		this(16);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity The number of concepts the table holds before it grows
+	 */
+	public ConceptTable(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		this.keyIds = new int[capacity];
+		this.values = new float[capacity];
+		this.fromIds = new int[capacity];
+		this.updated = new long[capacity];
+	}
+
+	/**
+	 * Constructor - Copies the concepts, like the Concepts list of an ImplicitData
+	 * @param concepts The concepts to copy
+	 */
+	public ConceptTable(Collection<? extends Concept> concepts)
+	{
+		this(concepts.size());
+		addAll(concepts);
+	}
+
+	/**
+	 * Copies the table back to plain Concept objects, for instance to put them into a profile
+	 * @return A new list of new concepts
+	 */
+	public List<Concept> toConcepts()
+	{
+		List<Concept> concepts = new ArrayList<Concept>(this.size);
+
+		for(int i = 0; i < this.size; i++)
+			concepts.add(new Concept(getKey(i), getValue(i), getFrom(i), getUpdated(i)));
+		return concepts;
+	}
+
+	public Concept get(int index)
+	{
+		checkIndex(index);
+		return new Row(index);
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	public Concept set(int index, Concept concept)
+	{
+		checkIndex(index);
+		Concept previous = new Concept(getKey(index), getValue(index), getFrom(index), getUpdated(index));
+		store(index, concept.getKey(), concept.getValue(), concept.getFrom(), concept.getUpdated());
+		return previous;
+	}
+
+	public void add(int index, Concept concept)
+	{
+		if(index < 0 || index > this.size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+
+		// Read first, the concept may be a row of this table
+		String key = concept.getKey();
+		String value = concept.getValue();
+		String from = concept.getFrom();
+		String date = concept.getUpdated();
+
+		ensureCapacity(this.size + 1);
+		shift(index, index + 1, this.size - index);
+		this.size++;
+		if(this.rawValues != null)
+			this.rawValues[index] = null;
+		if(this.rawUpdated != null)
+			this.rawUpdated[index] = null;
+		store(index, key, value, from, date);
+		this.modCount++;
+	}
+
+	public Concept remove(int index)
+	{
+		checkIndex(index);
+		Concept previous = new Concept(getKey(index), getValue(index), getFrom(index), getUpdated(index));
+
+		shift(index + 1, index, this.size - index - 1);
+		this.size--;
+		if(this.rawValues != null)
+			this.rawValues[this.size] = null;
+		if(this.rawUpdated != null)
+			this.rawUpdated[this.size] = null;
+		this.modCount++;
+		return previous;
+	}
+
+	public void clear()
+	{
+		if(this.rawValues != null)
+			Arrays.fill(this.rawValues, 0, this.size, null);
+		if(this.rawUpdated != null)
+			Arrays.fill(this.rawUpdated, 0, this.size, null);
+		this.size = 0;
+		this.modCount++;
+	}
+
+	/**
+	 * @return The key attribute of a concept
+	 */
+	public String getKey(int index)
+	{
+		checkIndex(index);
+		return getString(this.keyIds[index]);
+	}
+
+	/**
+	 * @return The value attribute of a concept, as it was written
+	 */
+	public String getValue(int index)
+	{
+		checkIndex(index);
+		String raw = (this.rawValues == null) ? null : this.rawValues[index];
+		if(raw != null)
+			return (raw == NULL) ? null : raw;
+		return Float.toString(this.values[index]);
+	}
+
+	/**
+	 * @return The value attribute of a concept, or NaN if it isn't a number
+	 */
+	public float getFloatValue(int index)
+	{
+		checkIndex(index);
+		return this.values[index];
+	}
+
+	/**
+	 * @return The from attribute of a concept
+	 */
+	public String getFrom(int index)
+	{
+		checkIndex(index);
+		return getString(this.fromIds[index]);
+	}
+
+	/**
+	 * @return The updated attribute of a concept, as it was written
+	 */
+	public String getUpdated(int index)
+	{
+		checkIndex(index);
+		String raw = (this.rawUpdated == null) ? null : this.rawUpdated[index];
+		if(raw != null)
+			return (raw == NULL) ? null : raw;
+		return ISO8601.format(this.updated[index]);
+	}
+
+	/**
+	 * @return The updated attribute of a concept in milliseconds since 1970, or NO_DATE
+	 */
+	public long getUpdatedMillis(int index)
+	{
+		checkIndex(index);
+		return this.updated[index];
+	}
+
+	/**
+	 * The values of all concepts. Only the first size() entries are used, and the array is
+	 * replaced when the table grows.
+	 * @return The array of the table, not a copy
+	 */
+	public float[] getValues()
+	{
+		return this.values;
+	}
+
+	/**
+	 * The key ids of all concepts, see {@link #getString(int)}. Only the first size() entries are used,
+	 * and the array is replaced when the table grows.
+	 * @return The array of the table, not a copy
+	 */
+	public int[] getKeyIds()
+	{
+		return this.keyIds;
+	}
+
+	/**
+	 * The from ids of all concepts, see {@link #getString(int)}. Only the first size() entries are used,
+	 * and the array is replaced when the table grows.
+	 * @return The array of the table, not a copy
+	 */
+	public int[] getFromIds()
+	{
+		return this.fromIds;
+	}
+
+	/**
+	 * The updated dates of all concepts in milliseconds since 1970, or NO_DATE. Only the first
+	 * size() entries are used, and the array is replaced when the table grows.
+	 * @return The array of the table, not a copy
+	 */
+	public long[] getUpdatedMillis()
+	{
+		return this.updated;
+	}
+
+	/**
+	 * Retrieve the id of a key or from attribute in the dictionary of this table
+	 * @param string The attribute
+	 * @return The id, or NO_ID if no concept of the table ever had it
+	 */
+	public int getId(String string)
+	{
+		return (string == null) ? NO_ID : this.ids[slot(string)] - 1;
+	}
+
+	/**
+	 * Retrieve a key or from attribute from the dictionary of this table
+	 * @param id The id, from getKeyIds(), getFromIds() or getId()
+	 * @return The attribute, or null for NO_ID
+	 */
+	public String getString(int id)
+	{
+		return (id == NO_ID) ? null : this.strings[id];
+	}
+
+	private void store(int index, String key, String value, String from, String date)
+	{
+		this.keyIds[index] = intern(key);
+		this.fromIds[index] = intern(from);
+		storeValue(index, value);
+		storeUpdated(index, date);
+	}
+
+	private void storeValue(int index, String value)
+	{
+		float parsed = Float.NaN;
+		boolean exact = false;
+
+		if(value != null)
+		{
+			try
+			{
+				parsed = Float.parseFloat(value);
+				exact = Float.toString(parsed).equals(value);
+			}
+			catch(NumberFormatException nfEx)
+			{
+				parsed = Float.NaN;
+			}
+		}
+		this.values[index] = parsed;
+		setRaw(index, exact ? null : (value == null ? NULL : value), true);
+	}
+
+	private void storeUpdated(int index, String date)
+	{
+		long parsed = ISO8601.parse(date);
+		boolean exact = parsed != NO_DATE && ISO8601.format(parsed).equals(date);
+
+		this.updated[index] = parsed;
+		setRaw(index, exact ? null : (date == null ? NULL : date), false);
+	}
+
+	/**
+	 * Keeps an attribute as it was written, or forgets it when it reads back from the arrays
+	 */
+	private void setRaw(int index, String raw, boolean value)
+	{
+		String[] array = value ? this.rawValues : this.rawUpdated;
+
+		if(raw == null)
+		{
+			if(array != null)
+				array[index] = null;
+			return;
+		}
+
+		if(array == null)
+		{
+			array = new String[this.keyIds.length];
+			if(value)
+				this.rawValues = array;
+			else
+				this.rawUpdated = array;
+		}
+		array[index] = raw;
+	}
+
+	private int intern(String string)
+	{
+		if(string == null)
+			return NO_ID;
+
+		int slot = slot(string);
+		if(this.ids[slot] != 0)
+			return this.ids[slot] - 1;
+
+		if(this.stringCount == this.strings.length)
+			this.strings = (String[]) resize(this.strings, this.stringCount * 2);
+		this.strings[this.stringCount] = string;
+		this.ids[slot] = ++this.stringCount;
+		if(this.stringCount * 2 > this.ids.length)
+			rehash();
+		return this.stringCount - 1;
+	}
+
+	/**
+	 * The slot of the dictionary index that holds a string, or the free slot where it goes
+	 */
+	private int slot(String string)
+	{
+		int mask = this.ids.length - 1;
+		int slot = mix(string.hashCode()) & mask;
+
+		while(this.ids[slot] != 0 && !this.strings[this.ids[slot] - 1].equals(string))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void rehash()
+	{
+		int[] ids = new int[this.ids.length * 2];
+		int mask = ids.length - 1;
+		for(int id = 0; id < this.stringCount; id++)
+		{
+			int slot = mix(this.strings[id].hashCode()) & mask;
+			while(ids[slot] != 0)
+				slot = (slot + 1) & mask;
+			ids[slot] = id + 1;
+		}
+		this.ids = ids;
+	}
+
+	/**
+	 * Spreads the bits of String.hashCode() over the low bits used for the slots
+	 */
+	private static int mix(int hash)
+	{
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if(capacity <= this.keyIds.length)
+			return;
+
+		int length = Math.max(capacity, this.keyIds.length + (this.keyIds.length >> 1) + 1);
+		this.keyIds = (int[]) resize(this.keyIds, length);
+		this.values = (float[]) resize(this.values, length);
+		this.fromIds = (int[]) resize(this.fromIds, length);
+		this.updated = (long[]) resize(this.updated, length);
+		if(this.rawValues != null)
+			this.rawValues = (String[]) resize(this.rawValues, length);
+		if(this.rawUpdated != null)
+			this.rawUpdated = (String[]) resize(this.rawUpdated, length);
+	}
+
+	/**
+	 * Arrays.copyOf for any array type, which Java 5 doesn't have
+	 */
+	private static Object resize(Object array, int length)
+	{
+		Object resized = Array.newInstance(array.getClass().getComponentType(), length);
+		System.arraycopy(array, 0, resized, 0, Math.min(Array.getLength(array), length));
+		return resized;
+	}
+
+	private void shift(int from, int to, int length)
+	{
+		System.arraycopy(this.keyIds, from, this.keyIds, to, length);
+		System.arraycopy(this.values, from, this.values, to, length);
+		System.arraycopy(this.fromIds, from, this.fromIds, to, length);
+		System.arraycopy(this.updated, from, this.updated, to, length);
+		if(this.rawValues != null)
+			System.arraycopy(this.rawValues, from, this.rawValues, to, length);
+		if(this.rawUpdated != null)
+			System.arraycopy(this.rawUpdated, from, this.rawUpdated, to, length);
+	}
+
+	private void checkIndex(int index)
+	{
+		if(index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+	}
+
+	/**
+	 * A concept that reads and writes one row of the table
+	 */
+	private final class Row extends Concept
+	{
+		private final int index;
+
+		Row(int index)
+		{
+			this.index = index;
+		}
+
+		public String getKey() {
+			return ConceptTable.this.getKey(this.index);
+		}
+
+		public void setKey(String key) {
+			checkIndex(this.index);
+			keyIds[this.index] = intern(key);
+		}
+
+		public String getValue() {
+			return ConceptTable.this.getValue(this.index);
+		}
+
+		public void setValue(String value) {
+			checkIndex(this.index);
+			storeValue(this.index, value);
+		}
+
+		public float getFloatValue() {
+			return ConceptTable.this.getFloatValue(this.index);
+		}
+
+		public String getFrom() {
+			return ConceptTable.this.getFrom(this.index);
+		}
+
+		public void setFrom(String from) {
+			checkIndex(this.index);
+			fromIds[this.index] = intern(from);
+		}
+
+		public String getUpdated() {
+			return ConceptTable.this.getUpdated(this.index);
+		}
+
+		public void setUpdated(String updated) {
+			checkIndex(this.index);
+			storeUpdated(this.index, updated);
+		}
+
+		public long getUpdatedMillis() {
+			return ConceptTable.this.getUpdatedMillis(this.index);
+		}
+	}
+}
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apml.tools.APMLTools;
+import org.apml.tools.StalenessPolicy;
 
 /**
  * <p>The Java implementation of the &lt;ExplicitData&gt; tag.</p>
@@ -32,25 +33,97 @@ public class ExplicitData
 	private List<Concept> Concepts = null;
 	private List<Source> Sources = null;
 	
+	// Views of the lists with their lookup indexes, built on first use
+	private transient IndexedList<Concept> conceptView = null;
+	private transient IndexedList<Source> sourceView = null;
+	
 	public ExplicitData()
 	{
 		Concepts = new ArrayList();
 		Sources = new ArrayList();
 	}
 	
+	/**
+	 * Retrieve the concepts. Change them through this list, so the lookups see the changes.
+	 * @return The concepts
+	 */
 	public List<Concept> getConcepts() {
-		return Concepts;
+		return conceptView();
 	}
+	/**
+	 * Set the concepts. The list is kept, not copied: change it through getConcepts() afterwards,
+	 * the lookups don't see changes made to it directly.
+	 * @param concepts The concepts
+	 */
 	public void setConcepts(List<Concept> concepts) {
+		if(concepts instanceof IndexedList)
+			concepts = ((IndexedList<Concept>) concepts).getList();
 		this.Concepts = concepts;
 	}
+	/**
+	 * Retrieve the sources. Change them through this list, so the lookups see the changes.
+	 * @return The sources
+	 */
 	public List<Source> getSources() {
-		return Sources;
+		return sourceView();
 	}
+	/**
+	 * Set the sources. The list is kept, not copied: change it through getSources() afterwards,
+	 * the lookups don't see changes made to it directly.
+	 * @param sources The sources
+	 */
 	public void setSources(List<Source> sources) {
+		if(sources instanceof IndexedList)
+			sources = ((IndexedList<Source>) sources).getList();
 		this.Sources = sources;
 	}
 	
+	/**
+	 * Retrieve the concepts with a given key, ignoring case.<br>
+	 * Lookups use an index that is built once and rebuilt after the list changed.
+	 * Changing the key of a concept already in the list isn't seen until then.
+	 * @param key The key attribute
+	 * @return An unmodifiable list of the matching concepts, valid until the concepts change
+	 */
+	public List<Concept> getConceptsByKey(String key)
+	{
+		return conceptView().getByKey(key);
+	}
+	
+	/**
+	 * Retrieve the concepts from a specific resource, ignoring case.<br>
+	 * Lookups use an index that is built once and rebuilt after the list changed.
+	 * Changing the from attribute of a concept already in the list isn't seen until then.
+	 * @param from The resource specified in the 'from' attribute
+	 * @return An unmodifiable list of the matching concepts, valid until the concepts change
+	 */
+	public List<Concept> getConceptsFrom(String from)
+	{
+		return conceptView().getFrom(from);
+	}
+	
+	/**
+	 * Retrieve the sources with a given key, ignoring case
+	 * @param key The key attribute
+	 * @return An unmodifiable list of the matching sources, valid until the sources change
+	 * @see #getConceptsByKey(String)
+	 */
+	public List<Source> getSourcesByKey(String key)
+	{
+		return sourceView().getByKey(key);
+	}
+	
+	/**
+	 * Retrieve the sources from a specific resource, ignoring case
+	 * @param from The resource specified in the 'from' attribute
+	 * @return An unmodifiable list of the matching sources, valid until the sources change
+	 * @see #getConceptsFrom(String)
+	 */
+	public List<Source> getSourcesFrom(String from)
+	{
+		return sourceView().getFrom(from);
+	}
+	
 	/**
 	 * Retrieve all concepts from a specific resource
 	 * @param from The resource specified in the 'from' attribute
@@ -58,14 +131,7 @@ public class ExplicitData
 	 */
 	public ArrayList<Concept> getAllConceptsFrom(String from)
 	{
-		int i = 0;
-		ArrayList<Concept> sublist = new ArrayList();
-		
-		for(i = 0; i < this.Concepts.size(); i++)
-			if(this.Concepts.get(i).getFrom().equalsIgnoreCase(from))
-				sublist.add(this.Concepts.get(i));
-		
-		return sublist;
+		return new ArrayList<Concept>(getConceptsFrom(from));
 	}
 	
 	/**
@@ -75,14 +141,30 @@ public class ExplicitData
 	 */
 	public ArrayList<Source> getAllSourcesFrom(String from)
 	{
-		int i = 0;
-		ArrayList<Source> sublist = new ArrayList();
-		
-		for(i = 0; i < this.Sources.size(); i++)
-			if(this.Sources.get(i).getFrom().equalsIgnoreCase(from))
-				sublist.add(this.Sources.get(i));
-		
-		return sublist;
+		return new ArrayList<Source>(getSourcesFrom(from));
+	}
+	
+	/**
+	 * Retrieve the concepts with the highest values, without sorting the whole list
+	 * @param k The number of concepts wanted
+	 * @return Up to k concepts, highest value first. Concepts whose value isn't a number are left out.
+	 */
+	public ArrayList<Concept> topConcepts(int k)
+	{
+		return topConcepts(k, null);
+	}
+	
+	/**
+	 * Retrieve the concepts with the highest values among the ones a filter accepts
+	 * @param k The number of concepts wanted
+	 * @param filter Selects the concepts to consider, or null for all of them
+	 * @return Up to k concepts, highest value first. Concepts whose value isn't a number are left out.
+	 */
+	public ArrayList<Concept> topConcepts(int k, ConceptFilter filter)
+	{
+		TopConcepts top = new TopConcepts(k);
+		top.offerAll(this.Concepts, filter);
+		return top.getResult();
 	}
 	
 	/**
@@ -90,12 +172,24 @@ public class ExplicitData
 	 * @return A list of outdated concepts
 	 */
 	public ArrayList<Concept> getAllOutdatedConcepts()
+	{
+		return getAllOutdatedConcepts(APMLTools.getStalenessPolicy());
+	}
+	
+	/**
+	 * Retrieve all concepts that are outdated according to a policy. Dates are only parsed the
+	 * first time a concept is checked.
+	 * @param policy The staleness policy
+	 * @return A list of outdated concepts
+	 */
+	public ArrayList<Concept> getAllOutdatedConcepts(StalenessPolicy policy)
 	{
 		int i = 0;
 		ArrayList<Concept> sublist = new ArrayList();
+		long cutoff = policy.getCutoff();
 		
 		for(i = 0; i < this.Concepts.size(); i++)
-			if(APMLTools.isResourceOutdated(this.Concepts.get(i).getUpdated()))
+			if(StalenessPolicy.isOutdated(this.Concepts.get(i).getUpdatedMillis(), cutoff))
 				sublist.add(this.Concepts.get(i));
 		
 		return sublist;
@@ -106,13 +200,66 @@ public class ExplicitData
 	 * @return A list of outdated sources
 	 */
 	public ArrayList<Source> getAllOutdatedSources()
+	{
+		return getAllOutdatedSources(APMLTools.getStalenessPolicy());
+	}
+	
+	/**
+	 * Retrieve all sources that are outdated according to a policy. Dates are only parsed the
+	 * first time a source is checked.
+	 * @param policy The staleness policy
+	 * @return A list of outdated sources
+	 */
+	public ArrayList<Source> getAllOutdatedSources(StalenessPolicy policy)
 	{
 		int i = 0;
 		ArrayList<Source> sublist = new ArrayList();
+		long cutoff = policy.getCutoff();
 		
 		for(i = 0; i < this.Sources.size(); i++)
-			if(APMLTools.isResourceOutdated(this.Sources.get(i).getUpdated()))
+			if(StalenessPolicy.isOutdated(this.Sources.get(i).getUpdatedMillis(), cutoff))
 				sublist.add(this.Sources.get(i));
 		return sublist;
 	}
+	
+	/**
+	 * XStream sets the list field directly, so the view is checked against it on every access
+	 */
+	private IndexedList<Concept> conceptView()
+	{
+		List<Concept> list = this.Concepts;
+		IndexedList<Concept> view = this.conceptView;
+		
+		if(list == null)
+			return null;
+		
+		if(view == null || view.getList() != list)
+		{
+			view = new IndexedList<Concept>(list) {
+				String keyOf(Concept concept) { return concept.getKey(); }
+				String fromOf(Concept concept) { return concept.getFrom(); }
+			};
+			this.conceptView = view;
+		}
+		return view;
+	}
+	
+	private IndexedList<Source> sourceView()
+	{
+		List<Source> list = this.Sources;
+		IndexedList<Source> view = this.sourceView;
+		
+		if(list == null)
+			return null;
+		
+		if(view == null || view.getList() != list)
+		{
+			view = new IndexedList<Source>(list) {
+				String keyOf(Source source) { return source.getKey(); }
+				String fromOf(Source source) { return source.getFrom(); }
+			};
+			this.sourceView = view;
+		}
+		return view;
+	}
 }
@@ -0,0 +1,198 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.base;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import org.apml.tools.APMLTools;
+
+/**
+ * <p>A view of a Concepts, Sources or Profiles list with case-insensitive lookups by key and by from.<br>
+ * The view counts the changes made through it, so the lookup indexes know when they are out
+ * of date and get rebuilt on the next lookup. The list itself stays a plain ArrayList in the
+ * APML object, which is what XStream sees.</p>
+ * <p>Only changes made through the view are counted. The wrapped list is never handed out by the
+ * public API, but a caller can keep the list it passed to a setter: changing it directly, or
+ * changing the key or from attribute of an element in place, leaves the indexes stale until the
+ * view itself changes. The owner calls {@link #changed()} where it can tell.</p>
+ * @author Tim Schultz
+ */
+abstract class IndexedList<E> extends AbstractList<E> implements RandomAccess
+{
+	private final List<E> list;
+	private final Index byKey = new Index(false);
+	private final Index byFrom = new Index(true);
+	// set() isn't a structural change, so it doesn't count in modCount
+	private int replaced = 0;
+
+	IndexedList(List<E> list)
+	{
+		this.list = list;
+	}
+
+	/**
+	 * @return The key attribute of the element
+	 */
+	abstract String keyOf(E element);
+
+	/**
+	 * @return The from attribute of the element, or null if it has none
+	 */
+	abstract String fromOf(E element);
+
+	/**
+	 * Only for the owner of the view, to unwrap and compare it. Changes to the returned list
+	 * aren't seen by the lookups.
+	 * @return The wrapped list
+	 */
+	List<E> getList()
+	{
+		return this.list;
+	}
+
+	/**
+	 * Retrieve the elements with a given key, ignoring case
+	 * @return An unmodifiable list of the matching elements, in list order
+	 */
+	List<E> getByKey(String key)
+	{
+		return this.byKey.get(key);
+	}
+
+	/**
+	 * Retrieve the elements from a given resource, ignoring case
+	 * @return An unmodifiable list of the matching elements, in list order
+	 */
+	List<E> getFrom(String from)
+	{
+		return this.byFrom.get(from);
+	}
+
+	/**
+	 * Makes the next lookup rebuild the indexes, for changes the view can't see
+	 */
+	void changed()
+	{
+		this.replaced++;
+	}
+
+	/**
+	 * Changes whenever the list changes through this view. Of the changes made to the wrapped
+	 * list directly, only the ones that change its size are seen.
+	 */
+	long getStamp()
+	{
+		return ((long) (this.modCount + this.replaced) << 32) | this.list.size();
+	}
+
+	public E get(int index)
+	{
+		return this.list.get(index);
+	}
+
+	public int size()
+	{
+		return this.list.size();
+	}
+
+	public E set(int index, E element)
+	{
+		this.replaced++;
+		return this.list.set(index, element);
+	}
+
+	public void add(int index, E element)
+	{
+		this.modCount++;
+		this.list.add(index, element);
+	}
+
+	public E remove(int index)
+	{
+		this.modCount++;
+		return this.list.remove(index);
+	}
+
+	public void clear()
+	{
+		this.modCount++;
+		this.list.clear();
+	}
+
+	/**
+	 * The elements grouped by the case-folded value of one attribute.
+	 * It is built on the first lookup and again on the first lookup after the list changed.
+	 */
+	private final class Index
+	{
+		private final boolean from;
+		private Map<String, List<E>> index = null;
+		private long stamp = 0;
+
+		Index(boolean from)
+		{
+			this.from = from;
+		}
+
+		synchronized List<E> get(String value)
+		{
+			if(this.index == null || this.stamp != getStamp())
+				rebuild();
+
+			List<E> matches = (value == null) ? null : this.index.get(APMLTools.foldCase(value));
+			if(matches == null)
+				return Collections.emptyList();
+			return matches;
+		}
+
+		private void rebuild()
+		{
+			Map<String, List<E>> lists = new HashMap<String, List<E>>();
+
+			for(int i = 0; i < list.size(); i++)
+			{
+				E element = list.get(i);
+				if(element == null)
+					continue;
+				String value = this.from ? fromOf(element) : keyOf(element);
+				if(value == null)
+					continue;
+
+				String folded = APMLTools.foldCase(value);
+				List<E> matches = lists.get(folded);
+				if(matches == null)
+				{
+					matches = new ArrayList<E>(2);
+					lists.put(folded, matches);
+				}
+				matches.add(element);
+			}
+
+			for(Map.Entry<String, List<E>> entry : lists.entrySet())
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			this.index = lists;
+			this.stamp = getStamp();
+		}
+	}
+}
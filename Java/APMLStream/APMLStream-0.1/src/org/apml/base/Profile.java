@@ -18,6 +18,8 @@
 
 package org.apml.base;
 
+import java.util.ArrayList;
+
 /**
  * <p>The Java implementation of the &lt;Profile&gt; tag.</p>
  * @author Tim Schultz
@@ -27,6 +29,7 @@ public class Profile
 	private String name = "";
 	private ImplicitData ImplicitData = null;
 	private ExplicitData ExplicitData = null;
+	private transient volatile ProfileLoader loader = null;
 	
 	public Profile(){}
 	
@@ -38,6 +41,17 @@ public class Profile
 	{
 		this.name = name;
 	}
+	
+	/**
+	 * Constructor - Creates a profile whose contents are decoded on first access
+	 * @param name The name of the profile
+	 * @param loader Decodes the ImplicitData and ExplicitData when they are first needed
+	 */
+	public Profile(String name, ProfileLoader loader)
+	{
+		this.name = name;
+		this.loader = loader;
+	}
 
 	public String getName() {
 		return name;
@@ -48,18 +62,80 @@ public class Profile
 	}
 
 	public ImplicitData getImplicitData() {
+		load();
 		return ImplicitData;
 	}
 
 	public void setImplicitData(ImplicitData implicitData) {
+		load();
 		this.ImplicitData = implicitData;
 	}
 
 	public ExplicitData getExplicitData() {
+		load();
 		return ExplicitData;
 	}
 
 	public void setExplicitData(ExplicitData explicitData) {
+		load();
 		this.ExplicitData = explicitData;
 	}
+	
+	/**
+	 * Retrieve the concepts with the highest values, from the ImplicitData and the ExplicitData
+	 * @param k The number of concepts wanted
+	 * @return Up to k concepts, highest value first, implicit ones first among equal values
+	 */
+	public ArrayList<Concept> topConcepts(int k)
+	{
+		return topConcepts(k, null);
+	}
+	
+	/**
+	 * Retrieve the concepts with the highest values among the ones a filter accepts, from the
+	 * ImplicitData and the ExplicitData
+	 * @param k The number of concepts wanted
+	 * @param filter Selects the concepts to consider, or null for all of them
+	 * @return Up to k concepts, highest value first, implicit ones first among equal values
+	 */
+	public ArrayList<Concept> topConcepts(int k, ConceptFilter filter)
+	{
+		TopConcepts top = new TopConcepts(k);
+		ImplicitData implicitData = getImplicitData();
+		ExplicitData explicitData = getExplicitData();
+		
+		if(implicitData != null)
+			top.offerAll(implicitData.getConcepts(), filter);
+		if(explicitData != null)
+			top.offerAll(explicitData.getConcepts(), filter);
+		return top.getResult();
+	}
+	
+	/**
+	 * Determines if the contents of a lazily decoded profile are available yet
+	 * @return true once the ImplicitData and ExplicitData have been decoded
+	 */
+	public boolean isLoaded()
+	{
+		return this.loader == null;
+	}
+	
+	/**
+	 * Decodes the contents of a lazily decoded profile, once
+	 */
+	private void load()
+	{
+		if(this.loader == null)
+			return;
+		
+		synchronized(this)
+		{
+			if(this.loader == null)
+				return;
+			Profile contents = this.loader.load();
+			this.ImplicitData = contents.ImplicitData;
+			this.ExplicitData = contents.ExplicitData;
+			this.loader = null;
+		}
+	}
 }
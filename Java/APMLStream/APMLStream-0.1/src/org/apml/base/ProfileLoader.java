@@ -0,0 +1,33 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.base;
+
+/**
+ * <p>Decodes the contents of a {@link Profile} that is loaded on first access.</p>
+ * @author Tim Schultz
+ */
+public interface ProfileLoader
+{
+	/**
+	 * Decodes the profile contents.<br>
+	 * Failures are reported as unchecked exceptions, since they surface from the Profile getters.
+	 * @return A profile holding the decoded ImplicitData and ExplicitData
+	 */
+	public Profile load();
+}
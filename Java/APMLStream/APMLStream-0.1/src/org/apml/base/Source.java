@@ -18,6 +18,8 @@
 
 package org.apml.base;
 
+import org.apml.tools.ISO8601;
+
 /**
  * <p>The Java implementation of the &lt;Source&gt; tag</p>
  * @author Tim Schultz
@@ -31,6 +33,9 @@ public class Source
 	private String from = "";
 	private String updated = "";
 	private Author author = null;
+	// The date of the updated attribute, parsed on first use
+	private transient volatile String parsedUpdated = null;
+	private transient long updatedMillis = ISO8601.INVALID;
 	
 	public Source(){}
 	
@@ -84,6 +89,24 @@ public class Source
 		this.updated = updated;
 	}
 
+	/**
+	 * Retrieve the updated attribute as a date. It is parsed on the first call and again after
+	 * the attribute changed.
+	 * @return Milliseconds since 1970-01-01T00:00:00Z, or ISO8601.INVALID if it isn't a date
+	 */
+	public long getUpdatedMillis() {
+		String updated = this.updated;
+		// XStream doesn't run the field initializers, so a null attribute is never cached
+		if(updated == null)
+			return ISO8601.INVALID;
+		if(updated != this.parsedUpdated)
+		{
+			this.updatedMillis = ISO8601.parse(updated);
+			this.parsedUpdated = updated;
+		}
+		return updatedMillis;
+	}
+
 	public Author getAuthor() {
 		return author;
 	}
@@ -0,0 +1,189 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Keeps the k concepts with the highest values out of the ones it is offered.<br>
+ * The candidates sit in a min-heap of size k, so the weakest one is replaced in O(log k) and
+ * the whole selection costs O(n log k) instead of sorting all n concepts. Equal values keep
+ * the order in which the concepts were offered. Concepts whose value isn't a number are skipped.</p>
+ * @author Tim Schultz
+ */
+class TopConcepts
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int k;
+	private Concept[] concepts;
+	private float[] values;
+	private long[] order;
+	private int size = 0;
+	private long offered = 0;
+
+	/**
+	 * Constructor
+	 * @param k The number of concepts to keep
+	 */
+	TopConcepts(int k)
+	{
+		if(k < 0)
+			throw new IllegalArgumentException("k can't be negative: " + k);
+
+		// The heap grows as concepts come in, k may well be more than there are
+		this.k = k;
+		int capacity = Math.min(k, INITIAL_CAPACITY);
+		this.concepts = new Concept[capacity];
+		this.values = new float[capacity];
+		this.order = new long[capacity];
+	}
+
+	/**
+	 * Offers the concepts of a list
+	 * @param list The concepts, may be null
+	 * @param filter Selects the concepts to consider, or null for all of them
+	 */
+	void offerAll(List<Concept> list, ConceptFilter filter)
+	{
+		if(list == null)
+			return;
+
+		for(int i = 0; i < list.size(); i++)
+		{
+			Concept concept = list.get(i);
+			if(concept != null && (filter == null || filter.accept(concept)))
+				offer(concept, concept.getFloatValue());
+		}
+	}
+
+	void offer(Concept concept, float value)
+	{
+		long position = this.offered++;
+
+		if(Float.isNaN(value) || this.k == 0)
+			return;
+
+		if(this.size < this.k)
+		{
+			if(this.size == this.concepts.length)
+				grow();
+			set(this.size, concept, value, position);
+			siftUp(this.size++);
+		}
+		else if(value > this.values[0])
+		{
+			// Later concepts lose ties, so only a strictly higher value replaces the weakest
+			set(0, concept, value, position);
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * Empties the heap into the result, so it can only be called once
+	 * @return The concepts kept, highest value first
+	 */
+	ArrayList<Concept> getResult()
+	{
+		ArrayList<Concept> result = new ArrayList<Concept>(this.size);
+		int count = this.size;
+
+		for(int i = 0; i < count; i++)
+			result.add(null);
+		// Emptying the heap yields the weakest first
+		while(this.size > 0)
+		{
+			result.set(this.size - 1, this.concepts[0]);
+			this.size--;
+			set(0, this.concepts[this.size], this.values[this.size], this.order[this.size]);
+			this.concepts[this.size] = null;
+			siftDown(0);
+		}
+		return result;
+	}
+
+	/**
+	 * The heap order: a lower value, or the same value offered later, is weaker
+	 */
+	private boolean weaker(int a, int b)
+	{
+		if(this.values[a] != this.values[b])
+			return this.values[a] < this.values[b];
+		return this.order[a] > this.order[b];
+	}
+
+	private void siftUp(int i)
+	{
+		while(i > 0)
+		{
+			int parent = (i - 1) >> 1;
+			if(!weaker(i, parent))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i)
+	{
+		while(true)
+		{
+			int child = 2 * i + 1;
+			if(child >= this.size)
+				break;
+			if(child + 1 < this.size && weaker(child + 1, child))
+				child++;
+			if(!weaker(child, i))
+				break;
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void grow()
+	{
+		int capacity = (int) Math.min(this.k, 2L * this.concepts.length);
+		Concept[] concepts = new Concept[capacity];
+		float[] values = new float[capacity];
+		long[] order = new long[capacity];
+		System.arraycopy(this.concepts, 0, concepts, 0, this.size);
+		System.arraycopy(this.values, 0, values, 0, this.size);
+		System.arraycopy(this.order, 0, order, 0, this.size);
+		this.concepts = concepts;
+		this.values = values;
+		this.order = order;
+	}
+
+	private void set(int i, Concept concept, float value, long position)
+	{
+		this.concepts[i] = concept;
+		this.values[i] = value;
+		this.order[i] = position;
+	}
+
+	private void swap(int a, int b)
+	{
+		Concept concept = this.concepts[a];
+		float value = this.values[a];
+		long position = this.order[a];
+		set(a, this.concepts[b], this.values[b], this.order[b]);
+		set(b, concept, value, position);
+	}
+}
@@ -1,6 +1,160 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
 package org.apml.benchmarks;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apml.base.*;
+import org.apml.base.exceptions.ProfileNotFoundException;
+import org.apml.deserialize.APMLDeserializer;
+import org.apml.deserialize.parser.APMLParser;
+import org.apml.serialize.APMLSerializer;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>JMH benchmarks of the APML conversions and lookups, on small, medium and huge documents
+ * made by the {@link APMLCorpusGenerator}.<br>
+ * Build and run them with the Maven benchmarks profile:</p>
+ * <pre>
+ * mvn -P benchmarks package
+ * java -jar target/benchmarks.jar -prof gc
+ * </pre>
+ * <p>or run {@link #main(String[])}, which enables the GC allocation profiler.
+ * The APML_Deserialize parser is benchmarked on the same files.</p>
+ * @author Tim Schultz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
 public class APMLStreamBenchmark
 {
+	/** Profiles, concepts and sources per profile, for each document size */
+	private static final int[][] SIZES = { { 1, 20, 2 }, { 10, 500, 20 }, { 50, 5000, 200 } };
+
+	@Param({ "small", "medium", "huge" })
+	public String size;
+
+	private APMLDeserializer deserializer = null;
+	private APMLSerializer serializer = null;
+	private APML apml = null;
+	private String payload = null;
+	private File file = null;
+	private String lastProfile = null;
+	private ExplicitData explicitData = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		int[] dims = SIZES[size.equals("small") ? 0 : size.equals("medium") ? 1 : 2];
+
+		APMLCorpusGenerator generator = new APMLCorpusGenerator(42, dims[0], dims[1], dims[2]);
+		generator.setExplicitConceptsPerProfile(dims[1]);
+		this.file = File.createTempFile("apml-benchmark-" + size, ".apml");
+		generator.generate(this.file);
+		this.payload = generator.generate();
+
+		this.deserializer = APMLCodecs.getDeserializer();
+		this.serializer = APMLCodecs.getSerializer();
+		this.apml = this.deserializer.deserialize(this.payload);
+
+		// Lookups hit the last profile, the worst case of a linear scan
+		List<Profile> profiles = this.apml.getBody().getProfiles();
+		this.lastProfile = profiles.get(profiles.size() - 1).getName();
+		this.explicitData = profiles.get(0).getExplicitData();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		this.file.delete();
+	}
+
+	@Benchmark
+	public APML deserializeString() throws Exception
+	{
+		return this.deserializer.deserialize(this.payload);
+	}
+
+	@Benchmark
+	public APML deserializeFile() throws Exception
+	{
+		return this.deserializer.deserialize(this.file);
+	}
+
+	@Benchmark
+	public String serialize()
+	{
+		return this.serializer.serialize(this.apml);
+	}
+
+	@Benchmark
+	public org.apml.deserialize.model.APML parserDeserialize() throws Exception
+	{
+		return new APMLParser(this.file).deserialize();
+	}
+
+	@Benchmark
+	public Profile getProfileByName() throws ProfileNotFoundException
+	{
+		return this.apml.getBody().getProfileByName(this.lastProfile);
+	}
+
+	@Benchmark
+	public List<Concept> getAllConceptsFrom()
+	{
+		return this.explicitData.getAllConceptsFrom(APMLCorpusGenerator.host(0));
+	}
 
+	/**
+	 * Runs all benchmarks with the GC allocation profiler
+	 * @param args
+	 * @throws RunnerException
+	 */
+	public static void main(String[] args) throws RunnerException
+	{
+		Options options = new OptionsBuilder()
+				.include(APMLStreamBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
 }
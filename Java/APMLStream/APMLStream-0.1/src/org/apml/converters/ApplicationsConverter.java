@@ -89,7 +89,6 @@ public class ApplicationsConverter implements Converter
         {
         	hStrRead.moveDown();
             currNodeName = hStrRead.getNodeName().trim();
-            System.out.println(currNodeName);
             currApp = new Application(hStrRead.getAttribute("name"), "payload_goes_here");
             apps.add(currApp);
             hStrRead.moveUp();
@@ -0,0 +1,54 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.converters;
+
+import org.apml.tools.StringPool;
+import com.thoughtworks.xstream.converters.basic.AbstractSingleValueConverter;
+
+/**
+ * <p>Reads the strings of an APML document through a {@link StringPool}.<br>
+ * It replaces the XStream StringConverter, whose cache holds every string it ever read:
+ * the cached value refers to its own key, so the weak keys are never cleared.</p>
+ * @author Tim Schultz
+ */
+public class PooledStringConverter extends AbstractSingleValueConverter
+{
+	private StringPool pool = null;
+
+	/**
+	 * Default constructor
+	 * @param pool The pool shared by all documents read with the XStream
+	 */
+	public PooledStringConverter(StringPool pool)
+	{
+		this.pool = pool;
+	}
+
+	// XStream declares a raw Class parameter, which Class<?> wouldn't override
+	@SuppressWarnings("rawtypes")
+	public boolean canConvert(Class type)
+	{
+		return type.equals(String.class);
+	}
+
+	public Object fromString(String str)
+	{
+		return this.pool.dedup(str);
+	}
+}
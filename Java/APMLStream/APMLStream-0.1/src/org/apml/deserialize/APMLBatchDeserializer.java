@@ -0,0 +1,181 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apml.base.APML;
+import org.apml.tools.APMLCodecs;
+
+/**
+ * <p>Deserializes every .apml file of a directory tree in parallel.<br>
+ * Files are handed to a fixed pool of worker threads which share one thread-safe
+ * {@link APMLDeserializer}. At most <code>maxInFlight</code> files are queued or being
+ * processed at any time, so memory stays bounded however large the corpus is. A file that
+ * fails is reported to the {@link APMLBatchHandler} and doesn't stop the others.</p>
+ * @author Tim Schultz
+ */
+public class APMLBatchDeserializer
+{
+	/** Extension of the files picked up, matched case-insensitively */
+	public static final String APML_EXTENSION = ".apml";
+
+	private APMLDeserializer deserializer = null;
+	private int threads = 0;
+	private int maxInFlight = 0;
+
+	/**
+	 * Constructor - One thread per processor, using the shared deserializer
+	 */
+	public APMLBatchDeserializer()
+	{
+		this(APMLCodecs.getDeserializer(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor - Keeps up to four files per thread in flight
+	 * @param deserializer The deserializer shared by the worker threads
+	 * @param threads The number of worker threads
+	 */
+	public APMLBatchDeserializer(APMLDeserializer deserializer, int threads)
+	{
+		this(deserializer, threads, threads * 4);
+	}
+
+	/**
+	 * Constructor
+	 * @param deserializer The deserializer shared by the worker threads
+	 * @param threads The number of worker threads
+	 * @param maxInFlight The maximum number of files queued or being processed
+	 */
+	public APMLBatchDeserializer(APMLDeserializer deserializer, int threads, int maxInFlight)
+	{
+		if(threads < 1 || maxInFlight < threads)
+			throw new IllegalArgumentException("Need at least one thread and one file in flight per thread");
+
+		this.deserializer = deserializer;
+		this.threads = threads;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Deserializes every .apml file in a directory and its subdirectories, and returns once all
+	 * of them were handled
+	 * @param dir The directory to scan
+	 * @param handler Receives the APML objects and the errors, from the worker threads
+	 * @throws FileNotFoundException If dir isn't a directory
+	 * @throws InterruptedException If the calling thread is interrupted. No new files are started,
+	 * but the ones in flight are still handled.
+	 * @return The number of files that were deserialized
+	 */
+	public int deserializeAll(File dir, APMLBatchHandler handler) throws FileNotFoundException, InterruptedException
+	{
+		if(!dir.isDirectory())
+			throw new FileNotFoundException(dir + " is not a directory");
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		Semaphore inFlight = new Semaphore(this.maxInFlight);
+		AtomicInteger count = new AtomicInteger();
+
+		try
+		{
+			submitAll(dir, handler, pool, inFlight, count);
+		}
+		finally
+		{
+			pool.shutdown();
+			boolean interrupted = false;
+			while(true)
+			{
+				try
+				{
+					if(pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS))
+						break;
+				}
+				catch(InterruptedException intEx)
+				{
+					interrupted = true;
+				}
+			}
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+		return count.get();
+	}
+
+	/**
+	 * Walks the directory tree, waiting for a free slot before each file is submitted
+	 */
+	private void submitAll(File dir, final APMLBatchHandler handler, ExecutorService pool, final Semaphore inFlight, final AtomicInteger count) throws InterruptedException
+	{
+		File[] files = dir.listFiles();
+
+		if(files == null)
+		{
+			handler.onError(dir, new FileNotFoundException("Unable to list " + dir));
+			return;
+		}
+
+		for(int i = 0; i < files.length; i++)
+		{
+			final File file = files[i];
+
+			if(file.isDirectory())
+			{
+				submitAll(file, handler, pool, inFlight, count);
+				continue;
+			}
+			if(!file.getName().toLowerCase().endsWith(APML_EXTENSION))
+				continue;
+
+			inFlight.acquire();
+			pool.execute(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						APML apml = null;
+						try
+						{
+							apml = deserializer.deserialize(file);
+						}
+						catch(Exception ex)
+						{
+							// XStream reports most problems with runtime exceptions
+							handler.onError(file, ex);
+							return;
+						}
+						count.incrementAndGet();
+						handler.onAPML(file, apml);
+					}
+					finally
+					{
+						inFlight.release();
+					}
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.io.File;
+import org.apml.base.APML;
+
+/**
+ * <p>Receives the documents deserialized by an {@link APMLBatchDeserializer}.<br>
+ * Both methods are called from the worker threads, in no particular order, so implementations
+ * must be thread-safe. They should not throw.</p>
+ * @author Tim Schultz
+ */
+public interface APMLBatchHandler
+{
+	/**
+	 * Called for every file that was deserialized
+	 * @param file The APML file
+	 * @param apml The APML object
+	 */
+	public void onAPML(File file, APML apml);
+
+	/**
+	 * Called for every file that couldn't be read or isn't a valid APML document.
+	 * The other files are still processed.
+	 * @param file The APML file
+	 * @param ex What went wrong
+	 */
+	public void onError(File file, Exception ex);
+}
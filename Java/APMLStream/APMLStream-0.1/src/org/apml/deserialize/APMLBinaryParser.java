@@ -0,0 +1,349 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.apml.serialize.APMLBinaryWriter;
+import org.apml.tools.ISO8601;
+
+/**
+ * <p>Reads documents written by the {@link org.apml.serialize.APMLBinaryWriter} and reports
+ * their contents to an {@link APMLHandler}, in a single pass and with the same events as the
+ * {@link APMLEventParser}. Use an {@link APMLModelBuilder} as the handler to get the APML object.<br>
+ * Repeated strings come out of the document dictionary as the same String instance, so they
+ * don't need to be pooled.</p>
+ * <p>The checksum at the end of the document can only be verified once all the events were
+ * delivered: a handler that acts on them before <code>parse</code> returns must be ready to
+ * throw its work away on an InvalidAPMLFormatException. A parser holds no state between calls
+ * and can be shared between threads.</p>
+ * @author Tim Schultz
+ */
+public class APMLBinaryParser
+{
+	private static final int BUFFER_SIZE = 8192;
+
+	public APMLBinaryParser(){}
+
+	/**
+	 * Parses a binary APML document held in a byte array
+	 * @param data The document
+	 * @param handler The handler receiving the events
+	 * @throws InvalidAPMLFormatException
+	 */
+	public void parse(byte[] data, APMLHandler handler) throws InvalidAPMLFormatException
+	{
+		try
+		{
+			new Input(data, null).parse(handler);
+		}
+		catch(IOException ioEx)
+		{
+			// Can't happen without a stream
+			throw new InvalidAPMLFormatException(ioEx.getMessage());
+		}
+	}
+
+	/**
+	 * Parses a binary APML document read from a byte stream. The stream is not closed, and it may
+	 * have been read past the end of the document.
+	 * @param in An input stream positioned at the start of a binary APML document
+	 * @param handler The handler receiving the events
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 */
+	public void parse(InputStream in, APMLHandler handler) throws IOException, InvalidAPMLFormatException
+	{
+		new Input(new byte[BUFFER_SIZE], in).parse(handler);
+	}
+
+	/**
+	 * The state of a single parse
+	 */
+	private static class Input
+	{
+		private InputStream in = null;
+		private byte[] buffer = null;
+		private int position = 0;
+		private int limit = 0;
+		// Where the bytes not yet added to the checksum start
+		private int checked = 0;
+		private CRC32 checksum = new CRC32();
+		private String[] dictionary = new String[256];
+		private int dictionarySize = 0;
+		private char[] chars = new char[256];
+
+		Input(byte[] buffer, InputStream in)
+		{
+			this.buffer = buffer;
+			this.in = in;
+			// A byte array holds the whole document
+			this.limit = (in == null) ? buffer.length : 0;
+		}
+
+		void parse(APMLHandler handler) throws IOException, InvalidAPMLFormatException
+		{
+			if(readInt() != APMLBinaryWriter.MAGIC)
+				throw new InvalidAPMLFormatException("The document is not a binary APML document");
+			int version = readByte();
+			if(version != APMLBinaryWriter.VERSION)
+				throw new InvalidAPMLFormatException("Unsupported binary APML version " + version);
+			if(readByte() != APMLBinaryWriter.DOCUMENT)
+				throw new InvalidAPMLFormatException("The document root is not an <APML> element");
+			handler.onDocumentStart(readString(), readString());
+
+			boolean inBody = false;
+			String profileName = null;
+			boolean inProfile = false;
+			int data = -1;
+			boolean inSource = false;
+
+			for(int tag = readByte(); tag != APMLBinaryWriter.END; tag = readByte())
+			{
+				switch(tag)
+				{
+					case APMLBinaryWriter.HEAD:
+						if(inBody)
+							throw misplaced("Head");
+						handler.onHead(readString(), readString(), readString(), readString());
+						break;
+					case APMLBinaryWriter.BODY:
+						if(inBody)
+							throw misplaced("Body");
+						inBody = true;
+						handler.onBodyStart(readString());
+						break;
+					case APMLBinaryWriter.APPLICATION:
+						if(!inBody || inProfile)
+							throw misplaced("Application");
+						handler.onApplication(readString(), readString());
+						break;
+					case APMLBinaryWriter.PROFILE:
+						if(!inBody || inProfile)
+							throw misplaced("Profile");
+						inProfile = true;
+						data = -1;
+						profileName = readString();
+						handler.onProfileStart(profileName);
+						break;
+					case APMLBinaryWriter.PROFILE_END:
+						if(!inProfile)
+							throw misplaced("Profile end");
+						inProfile = false;
+						inSource = false;
+						handler.onProfileEnd(profileName);
+						break;
+					case APMLBinaryWriter.IMPLICIT_DATA:
+					case APMLBinaryWriter.EXPLICIT_DATA:
+						if(!inProfile)
+							throw misplaced("Data");
+						data = tag;
+						inSource = false;
+						handler.onDataStart(tag == APMLBinaryWriter.EXPLICIT_DATA);
+						break;
+					case APMLBinaryWriter.CONCEPT:
+					case APMLBinaryWriter.FLOAT_CONCEPT:
+						if(!inProfile || data < 0)
+							throw misplaced("Concept");
+						String key = readString();
+						String value = (tag == APMLBinaryWriter.CONCEPT) ? readString() : Float.toString(Float.intBitsToFloat(readInt()));
+						handler.onConcept(data == APMLBinaryWriter.EXPLICIT_DATA, key, value, readString(), readString());
+						break;
+					case APMLBinaryWriter.SOURCE:
+						if(!inProfile || data < 0)
+							throw misplaced("Source");
+						inSource = true;
+						handler.onSource(data == APMLBinaryWriter.EXPLICIT_DATA, readString(), readString(), readString(), readString(), readString(), readString());
+						break;
+					case APMLBinaryWriter.AUTHOR:
+						if(!inSource)
+							throw misplaced("Author");
+						handler.onAuthor(readString(), readString(), readString(), readString());
+						break;
+					default:
+						throw new InvalidAPMLFormatException("Unknown record " + tag + " in binary APML document");
+				}
+			}
+			if(inProfile)
+				throw new InvalidAPMLFormatException("Unexpected end of document");
+
+			this.checksum.update(this.buffer, this.checked, this.position - this.checked);
+			int expected = (int)this.checksum.getValue();
+			if(readInt() != expected)
+				throw new InvalidAPMLFormatException("Checksum mismatch, the binary APML document is corrupted");
+			handler.onDocumentEnd();
+		}
+
+		private static InvalidAPMLFormatException misplaced(String record)
+		{
+			return new InvalidAPMLFormatException(record + " record out of place in binary APML document");
+		}
+
+		private String readString() throws IOException, InvalidAPMLFormatException
+		{
+			int code = readVarint();
+
+			if(code < 0)
+				throw new InvalidAPMLFormatException("Invalid string code in binary APML document");
+			if(code == APMLBinaryWriter.NULL_STRING)
+				return null;
+			if(code >= APMLBinaryWriter.FIRST_INDEX)
+			{
+				int index = code - APMLBinaryWriter.FIRST_INDEX;
+				if(index >= this.dictionarySize)
+					throw new InvalidAPMLFormatException("Unknown string reference " + index + " in binary APML document");
+				return this.dictionary[index];
+			}
+
+			if(code == APMLBinaryWriter.NEW_DATE)
+			{
+				long zigzag = readVarlong();
+				long seconds = (zigzag >>> 1) ^ -(zigzag & 1);
+				int length = ISO8601.format(seconds * 1000, this.chars, 0);
+				return remember(new String(this.chars, 0, length));
+			}
+
+			int length = readVarint();
+			if(length < 0)
+				throw new InvalidAPMLFormatException("Invalid string length in binary APML document");
+			require(length);
+
+			if(this.chars.length < length)
+				this.chars = new char[Math.max(length, this.chars.length * 2)];
+
+			byte[] b = this.buffer;
+			char[] c = this.chars;
+			int i = this.position;
+			int end = i + length;
+			int n = 0;
+
+			while(i < end)
+			{
+				int b0 = b[i++];
+				if(b0 >= 0)
+					c[n++] = (char)b0;
+				else if((b0 & 0xE0) == 0xC0 && i < end)
+				{
+					c[n++] = (char)(((b0 & 0x1F) << 6) | (b[i] & 0x3F));
+					i++;
+				}
+				else if((b0 & 0xF0) == 0xE0 && i + 1 < end)
+				{
+					c[n++] = (char)(((b0 & 0x0F) << 12) | ((b[i] & 0x3F) << 6) | (b[i + 1] & 0x3F));
+					i += 2;
+				}
+				else
+					throw new InvalidAPMLFormatException("Invalid UTF-8 string in binary APML document");
+			}
+			this.position = end;
+
+			return remember(new String(c, 0, n));
+		}
+
+		private String remember(String value)
+		{
+			if(this.dictionarySize == this.dictionary.length)
+			{
+				String[] grown = new String[this.dictionarySize * 2];
+				System.arraycopy(this.dictionary, 0, grown, 0, this.dictionarySize);
+				this.dictionary = grown;
+			}
+			this.dictionary[this.dictionarySize++] = value;
+			return value;
+		}
+
+		private int readVarint() throws IOException, InvalidAPMLFormatException
+		{
+			int value = 0;
+
+			for(int shift = 0; shift < 35; shift += 7)
+			{
+				int b = readByte();
+				value |= (b & 0x7F) << shift;
+				if(b < 0x80)
+					return value;
+			}
+			throw new InvalidAPMLFormatException("Invalid varint in binary APML document");
+		}
+
+		private long readVarlong() throws IOException, InvalidAPMLFormatException
+		{
+			long value = 0;
+
+			for(int shift = 0; shift < 70; shift += 7)
+			{
+				int b = readByte();
+				value |= (long)(b & 0x7F) << shift;
+				if(b < 0x80)
+					return value;
+			}
+			throw new InvalidAPMLFormatException("Invalid varint in binary APML document");
+		}
+
+		private int readInt() throws IOException, InvalidAPMLFormatException
+		{
+			require(4);
+
+			byte[] b = this.buffer;
+			int i = this.position;
+			this.position = i + 4;
+			return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+		}
+
+		private int readByte() throws IOException, InvalidAPMLFormatException
+		{
+			if(this.position == this.limit)
+				require(1);
+			return this.buffer[this.position++] & 0xFF;
+		}
+
+		/**
+		 * Makes sure the next bytes are in the buffer, reading more from the stream if needed
+		 */
+		private void require(int count) throws IOException, InvalidAPMLFormatException
+		{
+			while(this.limit - this.position < count)
+			{
+				if(this.in == null)
+					throw new InvalidAPMLFormatException("Unexpected end of document");
+
+				// Move the unread bytes to the front, growing the buffer for long strings. It only
+				// grows once it is full, so a corrupt length can't take more than twice the bytes
+				// the stream actually has.
+				this.checksum.update(this.buffer, this.checked, this.position - this.checked);
+				int remaining = this.limit - this.position;
+				byte[] target = this.buffer;
+				if(count > target.length && remaining == target.length)
+					target = new byte[(int) Math.min(count, target.length * 2L)];
+				System.arraycopy(this.buffer, this.position, target, 0, remaining);
+				this.buffer = target;
+				this.position = 0;
+				this.checked = 0;
+				this.limit = remaining;
+
+				int read = this.in.read(target, remaining, target.length - remaining);
+				if(read < 0)
+					throw new InvalidAPMLFormatException("Unexpected end of document");
+				this.limit += read;
+			}
+		}
+	}
+}
@@ -18,17 +18,16 @@
 
 package org.apml.deserialize;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.Scanner;
 import org.apml.base.*;
 import org.apml.base.exceptions.InvalidAPMLFormatException;
-import org.apml.converters.ApplicationsConverter;
+import org.apml.tools.APMLCodecs;
 import com.thoughtworks.xstream.XStream;
 
 /**
@@ -37,49 +36,27 @@ import com.thoughtworks.xstream.XStream;
  */
 public class APMLDeserializer
 {
+	/** Encoding assumed for byte streams, as the XML default */
+	public static final String DEFAULT_ENCODING = "UTF-8";
+	
 	private XStream xstream = null;
-    private ApplicationsConverter appConv = null;
 	
 	/**
-	 * Constructor - Sets up the XStream in accordance to APML specs
+	 * Constructor - Sets up the XStream in accordance to APML specs.<br>
+	 * Building the XStream is expensive, consider {@link APMLCodecs#getDeserializer()} instead.
 	 */
 	public APMLDeserializer()
 	{
-		// Set up the XStream to generate the APML object
-		xstream = new XStream();
-		appConv = new ApplicationsConverter(xstream.getMapper());
-		xstream.alias("APML", APML.class);
-		xstream.useAttributeFor(APML.class, "version");
-		xstream.useAttributeFor(APML.class, "xmlns");
-		xstream.alias("Head", Head.class);
-		xstream.alias("Body", Body.class);
-		xstream.useAttributeFor(Body.class, "defaultprofile");
-		xstream.addImplicitCollection(Body.class, "Profiles");
-		xstream.alias("Profile", Profile.class);
-		xstream.useAttributeFor(Profile.class, "name");
-		xstream.alias("ImplicitData", ImplicitData.class);
-		xstream.alias("ExplicitData", ExplicitData.class);
-		xstream.alias("Concept", Concept.class);
-		xstream.useAttributeFor(Concept.class, "key");
-		xstream.useAttributeFor(Concept.class, "value");
-		xstream.useAttributeFor(Concept.class, "from");
-		xstream.useAttributeFor(Concept.class, "updated");
-		xstream.alias("Source", Source.class);
-		xstream.useAttributeFor(Source.class, "key");
-		xstream.useAttributeFor(Source.class, "name");
-		xstream.useAttributeFor(Source.class, "value");
-		xstream.useAttributeFor(Source.class, "from");
-		xstream.useAttributeFor(Source.class, "updated");
-		xstream.alias("Author", Author.class);
-		xstream.useAttributeFor(Author.class, "key");
-		xstream.useAttributeFor(Author.class, "value");
-		xstream.useAttributeFor(Author.class, "from");
-		xstream.useAttributeFor(Author.class, "updated");
-		xstream.registerConverter(appConv);
-		xstream.alias("Applications",Applications.class);
-		xstream.alias("Application", Application.class);
-		//xstream.alias("Application", Application.class);
-		//xstream.useAttributeFor(Application.class, "name");
+		this(APMLCodecs.newXStream());
+	}
+	
+	/**
+	 * Constructor
+	 * @param xstream An XStream set up in accordance to APML specs, see {@link APMLCodecs#newXStream()}
+	 */
+	public APMLDeserializer(XStream xstream)
+	{
+		this.xstream = xstream;
 	}
 	
 	/**
@@ -94,7 +71,39 @@ public class APMLDeserializer
 	}
 	
 	/**
-	 * Deserializes a file specified by a URL 
+	 * Deserializes an APML document read from a character stream.<br>
+	 * The document is parsed straight off the stream, so the raw text is never held in memory.
+	 * The reader is not closed.
+	 * @param reader A reader positioned at the start of an APML document
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(Reader reader) throws InvalidAPMLFormatException
+	{
+		Object obj = this.xstream.fromXML(reader);
+		
+		if(!(obj instanceof APML))
+			throw new InvalidAPMLFormatException("The document root is not an <APML> element");
+		return (APML) obj;
+	}
+	
+	/**
+	 * Deserializes an APML document read from a byte stream, in the encoding given by its byte
+	 * order mark or XML declaration, UTF-8 by default. The stream is not closed.
+	 * @param in An input stream positioned at the start of an APML document
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(InputStream in) throws IOException, InvalidAPMLFormatException
+	{
+		return deserialize(XMLEncoding.newReader(in, null));
+	}
+	
+	/**
+	 * Deserializes a file specified by a URL. The document is downloaded and parsed on every call,
+	 * an {@link org.apml.tools.APMLFetcher} keeps the documents of frequently read URLs.<br>
+	 * The charset of the Content-Type is used if the server sends one, else the document's own.
 	 * @param file The URL pointing to an APML file
 	 * @throws IOException
 	 * @throws InvalidAPMLFormatException
@@ -102,25 +111,23 @@ public class APMLDeserializer
 	 */
 	public APML deserialize(URL file) throws IOException, InvalidAPMLFormatException
 	{
-		StringBuffer strBuff = null;
-		URLConnection connection = null;
-		Scanner scanner = null;
+		URLConnection connection = file.openConnection();
+		InputStream in = connection.getInputStream();
 		
-		strBuff = new StringBuffer();
-    	connection = file.openConnection();
-    	scanner = new Scanner(connection.getInputStream());
-    	scanner.useDelimiter(",\\n*");
-    		
-    	while(scanner.hasNext())
-    		strBuff.append(scanner.next());
-    		
-    	// Close the connection to the online resource
-    	scanner.close();
-		return (APML) this.xstream.fromXML(strBuff.toString());
+		try
+		{
+			return deserialize(XMLEncoding.newReader(in, XMLEncoding.charsetOf(connection.getContentType())));
+		}
+		finally
+		{
+			// Close the connection to the online resource
+			in.close();
+		}
 	}
 	
 	/**
-	 * Deserializes a file specified by a File object
+	 * Deserializes a file specified by a File object.<br>
+	 * The file is memory-mapped and decoded as UTF-8 straight into the parser.
 	 * @param file A File object pointing to an APML document
 	 * @throws FileNotFoundException
 	 * @throws IOException
@@ -129,16 +136,16 @@ public class APMLDeserializer
 	 */
 	public APML deserialize(File file) throws FileNotFoundException, IOException, InvalidAPMLFormatException
 	{
-	    BufferedReader in = null;
-	    String lin = "";
-	    String payload = "";
-	    
-		in = new BufferedReader(new FileReader(file));
-		
-		while ((lin = in.readLine()) != null)
-			payload += lin;
+		Reader in = new MappedFileReader(file);
 		
-		return (APML) this.xstream.fromXML(payload);
+		try
+		{
+			return deserialize(in);
+		}
+		finally
+		{
+			in.close();
+		}
 	}
 	
 	/**
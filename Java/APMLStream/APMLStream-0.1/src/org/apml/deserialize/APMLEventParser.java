@@ -0,0 +1,436 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * <p>Scans an APML document with a pull parser and reports its contents to an {@link APMLHandler}.<br>
+ * No APML objects are built, so jobs that only aggregate concepts or sources avoid allocating the
+ * whole object graph. Use an {@link APMLModelBuilder} as the handler to get the APML object.<br>
+ * Elements that are not part of the APML spec are skipped. A parser holds no state between
+ * calls and can be shared between threads.</p>
+ * @author Tim Schultz
+ */
+public class APMLEventParser
+{
+	public APMLEventParser(){}
+
+	/**
+	 * Parses an APML document held in a string
+	 * @param xmlPayload A string representation of an APML document
+	 * @param handler The handler receiving the events
+	 * @throws InvalidAPMLFormatException
+	 */
+	public void parse(String xmlPayload, APMLHandler handler) throws InvalidAPMLFormatException
+	{
+		try
+		{
+			parse(new StringReader(xmlPayload), handler);
+		}
+		catch(IOException ioEx)
+		{
+			// Can't happen on a StringReader
+			throw new InvalidAPMLFormatException(ioEx.getMessage());
+		}
+	}
+
+	/**
+	 * Parses an UTF-8 encoded APML file
+	 * @param file A File object pointing to an APML document
+	 * @param handler The handler receiving the events
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 */
+	public void parse(File file, APMLHandler handler) throws IOException, InvalidAPMLFormatException
+	{
+		Reader in = new MappedFileReader(file);
+
+		try
+		{
+			parse(in, handler);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Parses an APML document read from a byte stream, in the encoding given by its byte order
+	 * mark or XML declaration, UTF-8 by default. The stream is not closed.
+	 * @param in An input stream positioned at the start of an APML document
+	 * @param handler The handler receiving the events
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 */
+	public void parse(InputStream in, APMLHandler handler) throws IOException, InvalidAPMLFormatException
+	{
+		parse(XMLEncoding.newReader(in, null), handler);
+	}
+
+	/**
+	 * Parses an APML document read from a character stream. The reader is not closed.
+	 * @param reader A reader positioned at the start of an APML document
+	 * @param handler The handler receiving the events
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 */
+	public void parse(Reader reader, APMLHandler handler) throws IOException, InvalidAPMLFormatException
+	{
+		try
+		{
+			parseAPML(openRoot(reader, "APML"), handler);
+		}
+		catch(XmlPullParserException xppEx)
+		{
+			throw new InvalidAPMLFormatException(xppEx.getMessage());
+		}
+	}
+
+	/**
+	 * Parses a single &lt;Profile&gt; element, cut out of an APML document
+	 * @param reader A reader positioned at the start of the &lt;Profile&gt; tag
+	 * @param handler The handler receiving the profile events
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 */
+	void parseProfile(Reader reader, APMLHandler handler) throws IOException, InvalidAPMLFormatException
+	{
+		try
+		{
+			parseProfile(openRoot(reader, "Profile"), handler);
+		}
+		catch(XmlPullParserException xppEx)
+		{
+			throw new InvalidAPMLFormatException(xppEx.getMessage());
+		}
+	}
+
+	/**
+	 * Starts a pull parser on the reader and moves it to the root tag
+	 */
+	private static XmlPullParser openRoot(Reader reader, String rootName) throws XmlPullParserException, IOException, InvalidAPMLFormatException
+	{
+		XmlPullParser p = new MXParser();
+		p.setInput(reader);
+
+		int event = p.next();
+		while(event != XmlPullParser.START_TAG && event != XmlPullParser.END_DOCUMENT)
+			event = p.next();
+
+		if(event != XmlPullParser.START_TAG || !p.getName().equals(rootName))
+			throw new InvalidAPMLFormatException("The document root is not an <" + rootName + "> element");
+		return p;
+	}
+
+	private void parseAPML(XmlPullParser p, APMLHandler handler) throws XmlPullParserException, IOException
+	{
+		handler.onDocumentStart(p.getAttributeValue(null, "version"), p.getAttributeValue(null, "xmlns"));
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("Head"))
+				parseHead(p, handler);
+			else if(name.equals("Body"))
+				parseBody(p, handler);
+			else
+				skip(p);
+		}
+		handler.onDocumentEnd();
+	}
+
+	private void parseHead(XmlPullParser p, APMLHandler handler) throws XmlPullParserException, IOException
+	{
+		String title = null;
+		String generator = null;
+		String userEmail = null;
+		String dateCreated = null;
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("Title"))
+				title = readText(p);
+			else if(name.equals("Generator"))
+				generator = readText(p);
+			else if(name.equals("UserEmail"))
+				userEmail = readText(p);
+			else if(name.equals("DateCreated"))
+				dateCreated = readText(p);
+			else
+				skip(p);
+		}
+		handler.onHead(title, generator, userEmail, dateCreated);
+	}
+
+	private void parseBody(XmlPullParser p, APMLHandler handler) throws XmlPullParserException, IOException
+	{
+		handler.onBodyStart(p.getAttributeValue(null, "defaultprofile"));
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("Profile"))
+				parseProfile(p, handler);
+			else if(name.equals("Applications"))
+				parseApplications(p, handler);
+			else
+				skip(p);
+		}
+	}
+
+	private void parseProfile(XmlPullParser p, APMLHandler handler) throws XmlPullParserException, IOException
+	{
+		String profileName = p.getAttributeValue(null, "name");
+		handler.onProfileStart(profileName);
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("ImplicitData"))
+				parseData(p, handler, false);
+			else if(name.equals("ExplicitData"))
+				parseData(p, handler, true);
+			else
+				skip(p);
+		}
+		handler.onProfileEnd(profileName);
+	}
+
+	private void parseData(XmlPullParser p, APMLHandler handler, boolean explicit) throws XmlPullParserException, IOException
+	{
+		handler.onDataStart(explicit);
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("Concepts"))
+			{
+				while(nextChild(p) == XmlPullParser.START_TAG)
+				{
+					if(p.getName().equals("Concept"))
+						handler.onConcept(explicit,
+								p.getAttributeValue(null, "key"),
+								p.getAttributeValue(null, "value"),
+								p.getAttributeValue(null, "from"),
+								p.getAttributeValue(null, "updated"));
+					skip(p);
+				}
+			}
+			else if(name.equals("Sources"))
+			{
+				while(nextChild(p) == XmlPullParser.START_TAG)
+				{
+					if(p.getName().equals("Source"))
+						parseSource(p, handler, explicit);
+					else
+						skip(p);
+				}
+			}
+			else
+				skip(p);
+		}
+	}
+
+	private void parseSource(XmlPullParser p, APMLHandler handler, boolean explicit) throws XmlPullParserException, IOException
+	{
+		handler.onSource(explicit,
+				p.getAttributeValue(null, "key"),
+				p.getAttributeValue(null, "name"),
+				p.getAttributeValue(null, "value"),
+				p.getAttributeValue(null, "type"),
+				p.getAttributeValue(null, "from"),
+				p.getAttributeValue(null, "updated"));
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			if(p.getName().equals("Author"))
+				handler.onAuthor(
+						p.getAttributeValue(null, "key"),
+						p.getAttributeValue(null, "value"),
+						p.getAttributeValue(null, "from"),
+						p.getAttributeValue(null, "updated"));
+			skip(p);
+		}
+	}
+
+	private void parseApplications(XmlPullParser p, APMLHandler handler) throws XmlPullParserException, IOException
+	{
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			if(p.getName().equals("Application"))
+			{
+				String name = p.getAttributeValue(null, "name");
+				handler.onApplication(name, readMarkup(p).trim());
+			}
+			else
+				skip(p);
+		}
+	}
+
+	/**
+	 * Moves to the next start tag, or to the end tag of the current element
+	 */
+	private static int nextChild(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		int event = p.next();
+
+		while(event != XmlPullParser.START_TAG && event != XmlPullParser.END_TAG)
+		{
+			if(event == XmlPullParser.END_DOCUMENT)
+				throw new XmlPullParserException("Unexpected end of document", p, null);
+			event = p.next();
+		}
+		return event;
+	}
+
+	/**
+	 * Skips the rest of the current element, including its children
+	 */
+	private static void skip(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		int depth = 1;
+
+		while(depth > 0)
+		{
+			if(nextChild(p) == XmlPullParser.START_TAG)
+				depth++;
+			else
+				depth--;
+		}
+	}
+
+	/**
+	 * Reads the text content of the current element, ignoring nested tags
+	 */
+	private static String readText(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		StringBuilder text = null;
+		String first = null;
+		int depth = 1;
+
+		while(depth > 0)
+		{
+			int event = p.next();
+
+			if(event == XmlPullParser.START_TAG)
+				depth++;
+			else if(event == XmlPullParser.END_TAG)
+				depth--;
+			else if(event == XmlPullParser.TEXT)
+			{
+				if(first == null)
+					first = p.getText();
+				else
+				{
+					if(text == null)
+						text = new StringBuilder(first);
+					text.append(p.getText());
+				}
+			}
+			else if(event == XmlPullParser.END_DOCUMENT)
+				throw new XmlPullParserException("Unexpected end of document", p, null);
+		}
+		if(text != null)
+			return text.toString();
+		return first == null ? "" : first;
+	}
+
+	/**
+	 * Reads the markup inside the current element back into a string, with text and attribute
+	 * values escaped again. This is the form application data is kept in, so writing it out as it
+	 * is gives back the same markup.
+	 * @param p A parser on the start tag of the element
+	 * @return The markup between the start and the end tag
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public static String readMarkup(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		StringBuilder markup = new StringBuilder();
+		int depth = 1;
+
+		while(depth > 0)
+		{
+			int event = p.next();
+
+			if(event == XmlPullParser.START_TAG)
+			{
+				markup.append('<').append(p.getName());
+				for(int i = 0; i < p.getAttributeCount(); i++)
+				{
+					markup.append(' ').append(p.getAttributeName(i)).append("=\"");
+					escape(markup, p.getAttributeValue(i));
+					markup.append('"');
+				}
+				if(p.isEmptyElementTag())
+				{
+					markup.append("/>");
+					p.next();
+				}
+				else
+				{
+					markup.append('>');
+					depth++;
+				}
+			}
+			else if(event == XmlPullParser.END_TAG)
+			{
+				if(--depth > 0)
+					markup.append("</").append(p.getName()).append('>');
+			}
+			else if(event == XmlPullParser.TEXT)
+				escape(markup, p.getText());
+			else if(event == XmlPullParser.END_DOCUMENT)
+				throw new XmlPullParserException("Unexpected end of document", p, null);
+		}
+		return markup.toString();
+	}
+
+	private static void escape(StringBuilder out, String text)
+	{
+		for(int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			switch(c)
+			{
+				case '&': out.append("&amp;"); break;
+				case '<': out.append("&lt;"); break;
+				case '>': out.append("&gt;"); break;
+				case '"': out.append("&quot;"); break;
+				default: out.append(c);
+			}
+		}
+	}
+}
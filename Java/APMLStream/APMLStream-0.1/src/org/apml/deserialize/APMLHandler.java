@@ -0,0 +1,111 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+/**
+ * <p>Receives the contents of an APML document as it is scanned by the {@link APMLEventParser}.<br>
+ * Events arrive in document order. Attributes missing from the document are passed as null.
+ * Extend {@link DefaultAPMLHandler} to only handle the events you need.</p>
+ * @author Tim Schultz
+ */
+public interface APMLHandler
+{
+	/**
+	 * Called on the &lt;APML&gt; tag
+	 * @param version The version attribute
+	 * @param xmlns The xmlns attribute
+	 */
+	public void onDocumentStart(String version, String xmlns);
+
+	/**
+	 * Called at the end of the &lt;Head&gt; tag
+	 * @param title The title of the APML list
+	 * @param generator The name of the generating application
+	 * @param userEmail The user email address
+	 * @param dateCreated The date created
+	 */
+	public void onHead(String title, String generator, String userEmail, String dateCreated);
+
+	/**
+	 * Called on the &lt;Body&gt; tag
+	 * @param defaultProfile The defaultprofile attribute
+	 */
+	public void onBodyStart(String defaultProfile);
+
+	/**
+	 * Called on a &lt;Profile&gt; tag
+	 * @param name The name attribute
+	 */
+	public void onProfileStart(String name);
+
+	/**
+	 * Called on an &lt;ImplicitData&gt; or &lt;ExplicitData&gt; tag
+	 * @param explicit True for &lt;ExplicitData&gt;
+	 */
+	public void onDataStart(boolean explicit);
+
+	/**
+	 * Called on a &lt;Concept&gt; tag
+	 * @param explicit True if the concept is part of the &lt;ExplicitData&gt;
+	 * @param key The key attribute
+	 * @param value The value attribute
+	 * @param from The from attribute
+	 * @param updated The updated attribute
+	 */
+	public void onConcept(boolean explicit, String key, String value, String from, String updated);
+
+	/**
+	 * Called on a &lt;Source&gt; tag, before the events of its &lt;Author&gt; tags
+	 * @param explicit True if the source is part of the &lt;ExplicitData&gt;
+	 * @param key The key attribute
+	 * @param name The name attribute
+	 * @param value The value attribute
+	 * @param type The type attribute
+	 * @param from The from attribute
+	 * @param updated The updated attribute
+	 */
+	public void onSource(boolean explicit, String key, String name, String value, String type, String from, String updated);
+
+	/**
+	 * Called on an &lt;Author&gt; tag, which belongs to the last reported source
+	 * @param key The key attribute
+	 * @param value The value attribute
+	 * @param from The from attribute
+	 * @param updated The updated attribute
+	 */
+	public void onAuthor(String key, String value, String from, String updated);
+
+	/**
+	 * Called at the end of a &lt;Profile&gt; tag
+	 * @param name The name attribute
+	 */
+	public void onProfileEnd(String name);
+
+	/**
+	 * Called on an &lt;Application&gt; tag
+	 * @param name The name attribute
+	 * @param applicationData The markup found inside the tag
+	 */
+	public void onApplication(String name, String applicationData);
+
+	/**
+	 * Called at the end of the &lt;APML&gt; tag
+	 */
+	public void onDocumentEnd();
+}
@@ -0,0 +1,166 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.util.ArrayList;
+import org.apml.base.*;
+import org.apml.tools.BoundedStringPool;
+import org.apml.tools.StringPool;
+
+/**
+ * <p>An {@link APMLHandler} that builds the APML object from the events it receives.<br>
+ * The resulting object graph follows the one XStream builds in the {@link APMLDeserializer}:
+ * elements missing from the document are left null, while missing attributes keep the empty
+ * default of the APML objects. Application data is the exception: the builder keeps the text of
+ * each &lt;Application&gt;, where the ApplicationsConverter of the XStream only stores a
+ * placeholder.
+ * A builder is good for a single document.</p>
+ * <p>The attributes that repeat throughout a document, from, updated, type, source names and
+ * concept and author keys, go through a {@link StringPool}, so equal values share one String.</p>
+ * @author Tim Schultz
+ */
+public class APMLModelBuilder implements APMLHandler
+{
+	private APML apml = null;
+	private Profile currProfile = null;
+	private ImplicitData currImplicit = null;
+	private ExplicitData currExplicit = null;
+	private Source currSource = null;
+	private StringPool pool = null;
+
+	/**
+	 * Constructor - Uses a pool of its own for the document
+	 */
+	public APMLModelBuilder()
+	{
+		this(new BoundedStringPool());
+	}
+
+	/**
+	 * Constructor
+	 * @param pool The pool of the repeated attributes, possibly shared with other builders,
+	 * or null to keep every attribute as parsed
+	 */
+	public APMLModelBuilder(StringPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Retrieve the APML object built so far
+	 * @return The APML object, or null if no document was parsed
+	 */
+	public APML getAPML()
+	{
+		return this.apml;
+	}
+
+	public void onDocumentStart(String version, String xmlns)
+	{
+		this.apml = new APML(attr(version), attr(xmlns));
+	}
+
+	public void onHead(String title, String generator, String userEmail, String dateCreated)
+	{
+		this.apml.setHead(new Head(title, generator, userEmail, dateCreated));
+	}
+
+	public void onBodyStart(String defaultProfile)
+	{
+		Body body = new Body();
+		body.setDefaultProfileName(attr(defaultProfile));
+		body.setProfiles(new ArrayList<Profile>());
+		this.apml.setBody(body);
+	}
+
+	public void onProfileStart(String name)
+	{
+		this.currProfile = new Profile(attr(name));
+		this.currImplicit = null;
+		this.currExplicit = null;
+		this.apml.getBody().getProfiles().add(this.currProfile);
+	}
+
+	public void onDataStart(boolean explicit)
+	{
+		if(explicit)
+		{
+			this.currExplicit = new ExplicitData();
+			this.currProfile.setExplicitData(this.currExplicit);
+		}
+		else
+		{
+			this.currImplicit = new ImplicitData();
+			this.currProfile.setImplicitData(this.currImplicit);
+		}
+	}
+
+	public void onConcept(boolean explicit, String key, String value, String from, String updated)
+	{
+		Concept concept = new Concept(pooled(key), attr(value), pooled(from), pooled(updated));
+
+		if(explicit)
+			this.currExplicit.getConcepts().add(concept);
+		else
+			this.currImplicit.getConcepts().add(concept);
+	}
+
+	public void onSource(boolean explicit, String key, String name, String value, String type, String from, String updated)
+	{
+		this.currSource = new Source(attr(key), pooled(name), attr(value), pooled(type), pooled(from), pooled(updated));
+
+		if(explicit)
+			this.currExplicit.getSources().add(this.currSource);
+		else
+			this.currImplicit.getSources().add(this.currSource);
+	}
+
+	public void onAuthor(String key, String value, String from, String updated)
+	{
+		this.currSource.setAuthor(new Author(pooled(key), attr(value), pooled(from), pooled(updated)));
+	}
+
+	public void onProfileEnd(String name)
+	{
+		this.currProfile = null;
+	}
+
+	public void onApplication(String name, String applicationData)
+	{
+		Body body = this.apml.getBody();
+
+		if(body.getApplications() == null)
+			body.setApplications(new Applications<Application>());
+		body.getApplications().add(new Application(attr(name), applicationData));
+	}
+
+	public void onDocumentEnd() {}
+	
+	private static String attr(String value)
+	{
+		return value == null ? "" : value;
+	}
+
+	private String pooled(String value)
+	{
+		if(value == null)
+			return "";
+		return this.pool == null ? value : this.pool.dedup(value);
+	}
+}
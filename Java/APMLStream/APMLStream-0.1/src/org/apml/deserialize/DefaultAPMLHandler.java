@@ -0,0 +1,49 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+/**
+ * <p>An {@link APMLHandler} that ignores every event.<br>
+ * Subclass it and override only the events you are interested in.</p>
+ * @author Tim Schultz
+ */
+public class DefaultAPMLHandler implements APMLHandler
+{
+	public void onDocumentStart(String version, String xmlns) {}
+
+	public void onHead(String title, String generator, String userEmail, String dateCreated) {}
+
+	public void onBodyStart(String defaultProfile) {}
+
+	public void onProfileStart(String name) {}
+
+	public void onDataStart(boolean explicit) {}
+
+	public void onConcept(boolean explicit, String key, String value, String from, String updated) {}
+
+	public void onSource(boolean explicit, String key, String name, String value, String type, String from, String updated) {}
+
+	public void onAuthor(String key, String value, String from, String updated) {}
+
+	public void onProfileEnd(String name) {}
+
+	public void onApplication(String name, String applicationData) {}
+
+	public void onDocumentEnd() {}
+}
@@ -0,0 +1,171 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import org.apml.base.APML;
+import org.apml.base.Profile;
+import org.apml.base.ProfileLoader;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+
+/**
+ * <p>Deserializes APML documents with many profiles lazily.<br>
+ * A quick byte scan records where each &lt;Profile&gt; starts and ends, and only the Head,
+ * the Body attributes and the Applications are parsed up front. The ImplicitData and
+ * ExplicitData of a profile are decoded the first time they are accessed, so the time to reach
+ * the default profile doesn't depend on how many profiles the document holds.</p>
+ * <p>Documents must be UTF-8 (or ASCII) encoded. A file must not change while profiles
+ * loaded from it are still unread.</p>
+ * @author Tim Schultz
+ */
+public class LazyAPMLDeserializer
+{
+	private APMLEventParser parser = null;
+
+	public LazyAPMLDeserializer()
+	{
+		this.parser = new APMLEventParser();
+	}
+
+	/**
+	 * Deserializes an APML document held in memory. The array is kept until every profile is loaded.
+	 * @param payload The UTF-8 encoded APML document
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object, with profiles decoded on first access
+	 */
+	public APML deserialize(byte[] payload) throws InvalidAPMLFormatException
+	{
+		try
+		{
+			ProfileScanner scanner = new ProfileScanner(new ByteArrayInputStream(payload));
+			scanner.scan();
+			return build(scanner, payload, null);
+		}
+		catch(IOException ioEx)
+		{
+			// Can't happen on a byte array
+			throw new InvalidAPMLFormatException(ioEx.getMessage());
+		}
+	}
+
+	/**
+	 * Deserializes an APML file. Profiles are memory-mapped and decoded from the file on first access.
+	 * @param file A File object pointing to an UTF-8 encoded APML document
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object, with profiles decoded on first access
+	 */
+	public APML deserialize(File file) throws IOException, InvalidAPMLFormatException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+		ProfileScanner scanner = new ProfileScanner(in);
+
+		try
+		{
+			scanner.scan();
+		}
+		finally
+		{
+			in.close();
+		}
+		return build(scanner, null, file);
+	}
+
+	private APML build(ProfileScanner scanner, byte[] payload, File file) throws IOException, InvalidAPMLFormatException
+	{
+		APMLModelBuilder builder = new APMLModelBuilder();
+		this.parser.parse(new ByteArrayInputStream(scanner.getSkeleton(), 0, scanner.getSkeletonLength()), builder);
+		APML apml = builder.getAPML();
+
+		if(apml.getBody() == null)
+			return apml;
+
+		for(int i = 0; i < scanner.getProfileCount(); i++)
+		{
+			FragmentLoader loader = new FragmentLoader(this.parser, payload, file, scanner.getStart(i), scanner.getEnd(i));
+			apml.getBody().getProfiles().add(new Profile(scanner.getName(i), loader));
+		}
+		return apml;
+	}
+
+	/**
+	 * Decodes one &lt;Profile&gt; from its byte range in the document
+	 */
+	private static class FragmentLoader implements ProfileLoader
+	{
+		private APMLEventParser parser = null;
+		private byte[] payload = null;
+		private File file = null;
+		private long start = 0;
+		private long end = 0;
+
+		FragmentLoader(APMLEventParser parser, byte[] payload, File file, long start, long end)
+		{
+			this.parser = parser;
+			this.payload = payload;
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+
+		public Profile load()
+		{
+			APMLModelBuilder builder = new APMLModelBuilder();
+			builder.onDocumentStart(null, null);
+			builder.onBodyStart(null);
+
+			try
+			{
+				Reader in = null;
+				if(this.payload != null)
+					in = new InputStreamReader(new ByteArrayInputStream(this.payload, (int) this.start, (int) (this.end - this.start)), APMLDeserializer.DEFAULT_ENCODING);
+				else
+					in = new MappedFileReader(this.file, this.start, this.end - this.start);
+
+				try
+				{
+					this.parser.parseProfile(in, builder);
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			catch(IOException ioEx)
+			{
+				throw new IllegalStateException("Unable to load the profile at offset " + this.start, ioEx);
+			}
+			catch(InvalidAPMLFormatException formatEx)
+			{
+				throw new IllegalStateException("Unable to load the profile at offset " + this.start, formatEx);
+			}
+
+			// The document is no longer needed by this profile
+			this.payload = null;
+			return builder.getAPML().getBody().getProfiles().get(0);
+		}
+	}
+}
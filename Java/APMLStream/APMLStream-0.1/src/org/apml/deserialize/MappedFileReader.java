@@ -0,0 +1,206 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * <p>Reads a file (or a byte range of it) through memory-mapped windows and decodes
+ * it straight into the caller's buffer, without copying the bytes onto the heap first.<br>
+ * The file is mapped one window at a time, so files larger than 2 GB are supported.
+ * A multi-byte character that straddles two windows is picked up again by starting the
+ * next window at the first byte the decoder did not consume.</p>
+ * @author Tim Schultz
+ */
+public class MappedFileReader extends Reader
+{
+	/** Default size of a single mapped window */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private FileInputStream in = null;
+	private FileChannel channel = null;
+	private CharsetDecoder decoder = null;
+	private MappedByteBuffer window = null;
+	private CharBuffer spill = null;
+	private long windowStart = 0;
+	private long end = 0;
+	private int windowSize = 0;
+	private boolean flushed = false;
+
+	/**
+	 * Constructor - Reads a whole UTF-8 encoded file
+	 * @param file The file to read
+	 * @throws IOException
+	 */
+	public MappedFileReader(File file) throws IOException
+	{
+		this(file, 0, file.length(), APMLDeserializer.DEFAULT_ENCODING, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructor - Reads a UTF-8 encoded byte range of a file
+	 * @param file The file to read
+	 * @param start The offset of the first byte to read
+	 * @param length The number of bytes to read
+	 * @throws IOException
+	 */
+	public MappedFileReader(File file, long start, long length) throws IOException
+	{
+		this(file, start, length, APMLDeserializer.DEFAULT_ENCODING, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * @param file The file to read
+	 * @param start The offset of the first byte to read
+	 * @param length The number of bytes to read
+	 * @param charsetName The encoding of the file
+	 * @param windowSize The maximum number of bytes mapped at once
+	 * @throws IOException
+	 */
+	public MappedFileReader(File file, long start, long length, String charsetName, int windowSize) throws IOException
+	{
+		if(start < 0 || length < 0)
+			throw new IllegalArgumentException("Invalid byte range " + start + "+" + length);
+		if(windowSize < 16)
+			throw new IllegalArgumentException("Window size too small: " + windowSize);
+
+		this.in = new FileInputStream(file);
+		this.channel = in.getChannel();
+		this.end = Math.min(start + length, channel.size());
+		this.windowStart = Math.min(start, this.end);
+		this.windowSize = windowSize;
+		this.decoder = Charset.forName(charsetName).newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+		this.spill = CharBuffer.allocate(2);
+		this.spill.flip();
+	}
+
+	/**
+	 * Decodes up to len characters into the given buffer
+	 * @param cbuf The destination buffer
+	 * @param off The offset to start writing at
+	 * @param len The maximum number of characters to read
+	 * @return The number of characters read, or -1 at the end of the range
+	 * @throws IOException
+	 */
+	public int read(char[] cbuf, int off, int len) throws IOException
+	{
+		if(this.channel == null)
+			throw new IOException("Stream closed");
+		if(len == 0)
+			return 0;
+
+		CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+
+		// Hand out what was left over from a surrogate pair first
+		while(this.spill.hasRemaining() && out.hasRemaining())
+			out.put(this.spill.get());
+
+		while(out.hasRemaining() && !this.flushed)
+		{
+			// A single pair of surrogates needs room for two chars
+			if(out.remaining() < 2)
+			{
+				this.spill.clear();
+				decodeInto(this.spill);
+				this.spill.flip();
+				while(this.spill.hasRemaining() && out.hasRemaining())
+					out.put(this.spill.get());
+				break;
+			}
+			if(!decodeInto(out))
+				break;
+		}
+
+		int count = out.position() - off;
+		return (count == 0 && this.flushed) ? -1 : count;
+	}
+
+	/**
+	 * Decodes from the current window into the given buffer, mapping the next window as needed
+	 * @return false once the buffer is full, true if there may be more to decode
+	 */
+	private boolean decodeInto(CharBuffer out) throws IOException
+	{
+		while(!this.flushed)
+		{
+			if(this.window == null || !this.window.hasRemaining())
+			{
+				if(this.window != null)
+					this.windowStart += this.window.position();
+				mapWindow();
+			}
+
+			boolean last = (this.windowStart + this.window.limit()) == this.end;
+			CoderResult result = this.decoder.decode(this.window, out, last);
+
+			if(result.isError())
+				result.throwException();
+			if(result.isOverflow())
+				return false;
+
+			if(last)
+			{
+				result = this.decoder.flush(out);
+				if(result.isOverflow())
+					return false;
+				this.flushed = true;
+			}
+			else if(this.window.hasRemaining())
+			{
+				// Trailing bytes of a split character - restart the next window on them
+				this.windowStart += this.window.position();
+				mapWindow();
+			}
+		}
+		return true;
+	}
+
+	private void mapWindow() throws IOException
+	{
+		long size = Math.min(this.windowSize, this.end - this.windowStart);
+		this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.windowStart, size);
+	}
+
+	/**
+	 * Closes the underlying file.<br>
+	 * Mapped windows are released by the garbage collector.
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		if(this.channel == null)
+			return;
+		this.window = null;
+		this.channel = null;
+		this.in.close();
+	}
+}
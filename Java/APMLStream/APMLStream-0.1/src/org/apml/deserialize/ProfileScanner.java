@@ -0,0 +1,420 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+
+/**
+ * <p>Byte-level scan of an APML document that records where each &lt;Profile&gt; of the
+ * &lt;Body&gt; starts and ends, without parsing the profile contents.<br>
+ * Everything outside the profiles is kept as the document skeleton, which is small enough to
+ * be parsed right away. Offsets are byte offsets, so the document must use an ASCII
+ * compatible encoding such as UTF-8.</p>
+ * @author Tim Schultz
+ */
+final class ProfileScanner
+{
+	private static final byte[] APML = { 'A', 'P', 'M', 'L' };
+	private static final byte[] BODY = { 'B', 'o', 'd', 'y' };
+	private static final byte[] PROFILE = { 'P', 'r', 'o', 'f', 'i', 'l', 'e' };
+	private static final int END_COMMENT = ('-' << 16) | ('-' << 8) | '>';
+	private static final int END_CDATA = (']' << 16) | (']' << 8) | '>';
+	private static final int END_PI = ('?' << 8) | '>';
+
+	private InputStream in = null;
+	private byte[] buf = new byte[64 * 1024];
+	private int bufPos = 0;
+	private int bufLen = 0;
+	private long pos = 0;
+
+	private byte[] skeleton = new byte[4096];
+	private int skeletonLen = 0;
+	private byte[] tag = new byte[256];
+	private int tagLen = 0;
+	private boolean inProfile = false;
+
+	private long[] starts = new long[16];
+	private long[] ends = new long[16];
+	private List<String> names = new ArrayList<String>();
+
+	/**
+	 * Constructor
+	 * @param in The document to scan, read sequentially
+	 */
+	ProfileScanner(InputStream in)
+	{
+		this.in = in;
+	}
+
+	/**
+	 * Scans the whole document
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 */
+	void scan() throws IOException, InvalidAPMLFormatException
+	{
+		int depth = 0;
+		boolean inBody = false;
+		int c;
+
+		while((c = read()) != -1)
+		{
+			if(c != '<')
+				continue;
+
+			long tagStart = this.pos - 1;
+			int mark = this.skeletonLen - 1;
+			c = read();
+
+			if(c == '!')
+				skipDeclaration();
+			else if(c == '?')
+				skipUntil(END_PI, 0xFFFF);
+			else if(c == '/')
+			{
+				while((c = read()) != '>')
+					if(c == -1)
+						break;
+				depth--;
+
+				if(this.inProfile && depth == 2)
+				{
+					this.inProfile = false;
+					this.ends[this.names.size() - 1] = this.pos;
+				}
+				else if(depth == 1)
+					inBody = false;
+			}
+			else if(c != -1)
+			{
+				boolean capture = !this.inProfile && depth <= 2;
+				boolean selfClosing = readStartTag(c, capture);
+
+				if(capture)
+				{
+					if(depth == 0 && !tagNameIs(APML))
+						throw new InvalidAPMLFormatException("The document root is not an <APML> element");
+					if(depth == 1 && tagNameIs(BODY))
+						inBody = !selfClosing;
+					if(depth == 2 && inBody && tagNameIs(PROFILE))
+					{
+						// Cut the profile out of the skeleton
+						this.skeletonLen = mark;
+						addProfile(tagStart, attribute("name"));
+						if(selfClosing)
+							this.ends[this.names.size() - 1] = this.pos;
+						else
+							this.inProfile = true;
+					}
+				}
+				if(!selfClosing)
+					depth++;
+			}
+		}
+
+		if(this.inProfile || depth != 0)
+			throw new InvalidAPMLFormatException("Unexpected end of document");
+	}
+
+	/**
+	 * @return The number of profiles found
+	 */
+	int getProfileCount()
+	{
+		return this.names.size();
+	}
+
+	/**
+	 * @return The byte offset of the &lt;Profile&gt; tag
+	 */
+	long getStart(int profile)
+	{
+		return this.starts[profile];
+	}
+
+	/**
+	 * @return The byte offset right after the &lt;/Profile&gt; tag
+	 */
+	long getEnd(int profile)
+	{
+		return this.ends[profile];
+	}
+
+	/**
+	 * @return The name attribute of the profile
+	 */
+	String getName(int profile)
+	{
+		return this.names.get(profile);
+	}
+
+	/**
+	 * @return The document bytes, minus the profiles
+	 */
+	byte[] getSkeleton()
+	{
+		return this.skeleton;
+	}
+
+	/**
+	 * @return The number of valid bytes in {@link #getSkeleton()}
+	 */
+	int getSkeletonLength()
+	{
+		return this.skeletonLen;
+	}
+
+	private int read() throws IOException
+	{
+		if(this.bufPos == this.bufLen)
+		{
+			this.bufLen = this.in.read(this.buf, 0, this.buf.length);
+			this.bufPos = 0;
+			if(this.bufLen <= 0)
+			{
+				this.bufLen = 0;
+				return -1;
+			}
+		}
+
+		int c = this.buf[this.bufPos++] & 0xFF;
+		this.pos++;
+
+		if(!this.inProfile)
+		{
+			if(this.skeletonLen == this.skeleton.length)
+				this.skeleton = grow(this.skeleton);
+			this.skeleton[this.skeletonLen++] = (byte) c;
+		}
+		return c;
+	}
+
+	/**
+	 * Reads a start tag up to its closing bracket
+	 * @return true if the tag is self-closing
+	 */
+	private boolean readStartTag(int first, boolean capture) throws IOException
+	{
+		int quote = 0;
+		int last = first;
+		int c = first;
+
+		this.tagLen = 0;
+		while(true)
+		{
+			if(capture)
+			{
+				if(this.tagLen == this.tag.length)
+					this.tag = grow(this.tag);
+				this.tag[this.tagLen++] = (byte) c;
+			}
+
+			c = read();
+			if(c == -1)
+				return false;
+			if(quote != 0)
+			{
+				if(c == quote)
+					quote = 0;
+			}
+			else if(c == '"' || c == '\'')
+				quote = c;
+			else if(c == '>')
+				return last == '/';
+
+			if(c > ' ')
+				last = c;
+		}
+	}
+
+	/**
+	 * Skips a comment, a CDATA section or a DOCTYPE declaration
+	 */
+	private void skipDeclaration() throws IOException
+	{
+		int c = read();
+
+		if(c == '-')
+		{
+			read();
+			skipUntil(END_COMMENT, 0xFFFFFF);
+		}
+		else if(c == '[')
+			skipUntil(END_CDATA, 0xFFFFFF);
+		else
+		{
+			int brackets = 0;
+			while(c != -1 && (c != '>' || brackets > 0))
+			{
+				if(c == '[')
+					brackets++;
+				else if(c == ']')
+					brackets--;
+				c = read();
+			}
+		}
+	}
+
+	/**
+	 * Skips up to a terminator of two or three bytes, packed into an int
+	 */
+	private void skipUntil(int terminator, int mask) throws IOException
+	{
+		int window = 0;
+		int next;
+
+		while((next = read()) != -1)
+		{
+			window = ((window << 8) | next) & mask;
+			if(window == terminator)
+				return;
+		}
+	}
+
+	private boolean tagNameIs(byte[] name)
+	{
+		if(this.tagLen < name.length)
+			return false;
+		for(int i = 0; i < name.length; i++)
+			if(this.tag[i] != name[i])
+				return false;
+		return this.tagLen == name.length || this.tag[name.length] <= ' ' || this.tag[name.length] == '/';
+	}
+
+	/**
+	 * Extracts an attribute value from the captured start tag
+	 * @return The decoded value, or "" if the attribute is missing
+	 */
+	private String attribute(String name) throws UnsupportedEncodingException, InvalidAPMLFormatException
+	{
+		int i = 0;
+
+		// Skip the tag name
+		while(i < this.tagLen && this.tag[i] > ' ' && this.tag[i] != '/')
+			i++;
+
+		while(i < this.tagLen)
+		{
+			while(i < this.tagLen && (this.tag[i] <= ' ' || this.tag[i] == '/'))
+				i++;
+			int nameStart = i;
+			while(i < this.tagLen && this.tag[i] > ' ' && this.tag[i] != '=')
+				i++;
+			int nameEnd = i;
+			while(i < this.tagLen && this.tag[i] != '"' && this.tag[i] != '\'')
+				i++;
+			if(i == this.tagLen)
+				break;
+			byte quote = this.tag[i++];
+			int valueStart = i;
+			while(i < this.tagLen && this.tag[i] != quote)
+				i++;
+
+			String attrName = new String(this.tag, nameStart, nameEnd - nameStart, APMLDeserializer.DEFAULT_ENCODING);
+			if(attrName.equals(name))
+				return decodeEntities(new String(this.tag, valueStart, i - valueStart, APMLDeserializer.DEFAULT_ENCODING));
+			i++;
+		}
+		return "";
+	}
+
+	private static String decodeEntities(String value) throws InvalidAPMLFormatException
+	{
+		if(value.indexOf('&') < 0)
+			return value;
+
+		StringBuilder out = new StringBuilder(value.length());
+		int i = 0;
+		while(i < value.length())
+		{
+			char c = value.charAt(i);
+			int semi = (c == '&') ? value.indexOf(';', i) : -1;
+
+			if(semi < 0)
+			{
+				out.append(c);
+				i++;
+				continue;
+			}
+
+			String entity = value.substring(i + 1, semi);
+			if(entity.equals("amp"))
+				out.append('&');
+			else if(entity.equals("lt"))
+				out.append('<');
+			else if(entity.equals("gt"))
+				out.append('>');
+			else if(entity.equals("quot"))
+				out.append('"');
+			else if(entity.equals("apos"))
+				out.append('\'');
+			else if(entity.startsWith("#"))
+				out.appendCodePoint(characterReference(entity));
+			else
+				out.append('&').append(entity).append(';');
+			i = semi + 1;
+		}
+		return out.toString();
+	}
+
+	/**
+	 * @param entity A character reference without the &amp; and the ;, like #233 or #xE9
+	 * @return The code point
+	 */
+	private static int characterReference(String entity) throws InvalidAPMLFormatException
+	{
+		try
+		{
+			int codePoint = entity.startsWith("#x") ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+			if(codePoint >= 0 && codePoint <= Character.MAX_CODE_POINT)
+				return codePoint;
+		}
+		catch(NumberFormatException nfEx){}
+		throw new InvalidAPMLFormatException("Invalid character reference: &" + entity + ";");
+	}
+
+	private void addProfile(long start, String name)
+	{
+		int n = this.names.size();
+
+		if(n == this.starts.length)
+		{
+			long[] newStarts = new long[n * 2];
+			long[] newEnds = new long[n * 2];
+			System.arraycopy(this.starts, 0, newStarts, 0, n);
+			System.arraycopy(this.ends, 0, newEnds, 0, n);
+			this.starts = newStarts;
+			this.ends = newEnds;
+		}
+		this.starts[n] = start;
+		this.names.add(name);
+	}
+
+	private static byte[] grow(byte[] array)
+	{
+		byte[] grown = new byte[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
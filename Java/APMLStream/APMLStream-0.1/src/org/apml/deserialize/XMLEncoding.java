@@ -0,0 +1,119 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.deserialize;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Finds the character encoding of an XML document read from a byte stream.<br>
+ * A byte order mark wins, then the encoding of the XML declaration. A document with neither
+ * is read as {@link APMLDeserializer#DEFAULT_ENCODING}, as the XML specification requires.</p>
+ * @author Tim Schultz
+ */
+public final class XMLEncoding
+{
+	// Enough for any sensible XML declaration
+	private static final int PROLOG_SIZE = 256;
+	private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z][A-Za-z0-9._-]*)[\"']");
+	private static final Pattern CHARSET = Pattern.compile(";\\s*charset\\s*=\\s*\"?([^\\s\";]+)", Pattern.CASE_INSENSITIVE);
+
+	private XMLEncoding(){}
+
+	/**
+	 * Opens a reader on a document, in the given charset or else in the encoding the document declares
+	 * @param in An input stream positioned at the start of an XML document
+	 * @param charset The charset to use, like the one of an HTTP Content-Type, or null to find it in the document
+	 * @return The reader
+	 * @throws IOException If the stream can't be read or the encoding isn't supported
+	 */
+	public static Reader newReader(InputStream in, String charset) throws IOException
+	{
+		if(charset != null)
+			return new InputStreamReader(in, charset);
+
+		if(!in.markSupported())
+			in = new BufferedInputStream(in);
+		in.mark(PROLOG_SIZE);
+		byte[] prolog = new byte[PROLOG_SIZE];
+		int length = 0;
+		int read;
+		while(length < prolog.length && (read = in.read(prolog, length, prolog.length - length)) > 0)
+			length += read;
+		in.reset();
+
+		// The UTF-8 decoder would keep the byte order mark, the UTF-16 one drops it
+		if(startsWith(prolog, length, 0xEF, 0xBB, 0xBF))
+		{
+			in.skip(3);
+			return new InputStreamReader(in, "UTF-8");
+		}
+		if(startsWith(prolog, length, 0xFE, 0xFF) || startsWith(prolog, length, 0xFF, 0xFE))
+			return new InputStreamReader(in, "UTF-16");
+		if(startsWith(prolog, length, 0x00, '<', 0x00, '?'))
+			return new InputStreamReader(in, "UTF-16BE");
+		if(startsWith(prolog, length, '<', 0x00, '?', 0x00))
+			return new InputStreamReader(in, "UTF-16LE");
+
+		return new InputStreamReader(in, declaredEncoding(prolog, length));
+	}
+
+	/**
+	 * Retrieve the charset parameter of a MIME type
+	 * @param contentType A Content-Type, like "application/xml; charset=ISO-8859-1", or null
+	 * @return The charset, or null if there is none
+	 */
+	public static String charsetOf(String contentType)
+	{
+		if(contentType == null)
+			return null;
+
+		Matcher matcher = CHARSET.matcher(contentType);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+
+	/**
+	 * @return The encoding of the XML declaration at the start of the bytes, or the default
+	 */
+	private static String declaredEncoding(byte[] prolog, int length) throws IOException
+	{
+		String start = new String(prolog, 0, length, "ISO-8859-1");
+		int end = start.indexOf("?>");
+
+		if(!start.startsWith("<?xml") || end < 0)
+			return APMLDeserializer.DEFAULT_ENCODING;
+		Matcher matcher = ENCODING.matcher(start.substring(0, end));
+		return matcher.find() ? matcher.group(1) : APMLDeserializer.DEFAULT_ENCODING;
+	}
+
+	private static boolean startsWith(byte[] data, int length, int... prefix)
+	{
+		if(length < prefix.length)
+			return false;
+		for(int i = 0; i < prefix.length; i++)
+			if((data[i] & 0xFF) != prefix[i])
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,643 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.diff;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apml.base.APML;
+import org.apml.base.Application;
+import org.apml.base.Applications;
+import org.apml.base.Author;
+import org.apml.base.Body;
+import org.apml.base.Concept;
+import org.apml.base.ExplicitData;
+import org.apml.base.Head;
+import org.apml.base.ImplicitData;
+import org.apml.base.Profile;
+import org.apml.base.Source;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.apml.tools.APMLCodecs;
+
+/**
+ * <p>Compares two APML documents and applies the differences to another copy of the old one.<br>
+ * Profiles are matched by name, concepts and sources by their key and from attributes, all
+ * case-sensitive. Both documents are read once into hash maps, so a diff takes time in
+ * proportion to their size and a patch in proportion to the size of the patched lists.</p>
+ * <p>Patches are written as XML with the APML tags for the concepts, sources and profiles they
+ * carry, and read back with a pull parser, so reading a patch costs in proportion to the patch
+ * rather than to the document:</p>
+ * <pre>
+ * &lt;APMLPatch&gt;
+ *   &lt;ProfilePatch name="Work"&gt;
+ *     &lt;ImplicitData&gt;
+ *       &lt;ChangedConcepts&gt;
+ *         &lt;Concept key="java" value="0.9" from="example.com" updated="2008-06-01T00:00:00Z"/&gt;
+ *       &lt;/ChangedConcepts&gt;
+ *       &lt;RemovedConcepts&gt;
+ *         &lt;Concept key="cobol" from="example.com"/&gt;
+ *       &lt;/RemovedConcepts&gt;
+ *     &lt;/ImplicitData&gt;
+ *   &lt;/ProfilePatch&gt;
+ * &lt;/APMLPatch&gt;
+ * </pre>
+ * <p>Applications are compared by name and text, and replaced as a whole when one changed.
+ * Patches don't record positions: applying one keeps the remaining entries and profiles of the
+ * target where they are and appends the added ones, so the result holds the same entries as
+ * the new document, but not always in the same order.
+ * An APMLDiff holds no state and can be shared between threads.</p>
+ * @author Tim Schultz
+ */
+public class APMLDiff
+{
+	private static final List<Concept> NO_CONCEPTS = Collections.emptyList();
+	private static final List<Source> NO_SOURCES = Collections.emptyList();
+	private static final PatchReader READER = new PatchReader();
+
+	public APMLDiff(){}
+
+	/**
+	 * Compares two APML documents held in strings
+	 * @param oldPayload The old document
+	 * @param newPayload The new document
+	 * @return The changes from the old document to the new one
+	 * @throws InvalidAPMLFormatException
+	 */
+	public APMLPatch diff(String oldPayload, String newPayload) throws InvalidAPMLFormatException
+	{
+		return diff(APMLCodecs.getCodec().deserialize(oldPayload), APMLCodecs.getCodec().deserialize(newPayload));
+	}
+
+	/**
+	 * Compares two APML documents read from character streams. The streams aren't closed.
+	 * @param oldDocument The old document
+	 * @param newDocument The new document
+	 * @return The changes from the old document to the new one
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 */
+	public APMLPatch diff(Reader oldDocument, Reader newDocument) throws IOException, InvalidAPMLFormatException
+	{
+		return diff(APMLCodecs.getCodec().deserialize(oldDocument), APMLCodecs.getCodec().deserialize(newDocument));
+	}
+
+	/**
+	 * Compares two APML objects. The patch shares the concepts, sources and profiles that
+	 * changed with the new document.
+	 * @param oldAPML The old document
+	 * @param newAPML The new document
+	 * @return The changes from the old document to the new one
+	 */
+	public APMLPatch diff(APML oldAPML, APML newAPML)
+	{
+		APMLPatch patch = new APMLPatch();
+
+		if(!same(oldAPML.getVersion(), newAPML.getVersion()))
+			patch.setVersion(text(newAPML.getVersion()));
+		if(!same(oldAPML.getXmlns(), newAPML.getXmlns()))
+			patch.setXmlns(text(newAPML.getXmlns()));
+		if(!sameHead(oldAPML.getHead(), newAPML.getHead()))
+			patch.setHead(newAPML.getHead() == null ? new Head() : newAPML.getHead());
+
+		Body oldBody = oldAPML.getBody();
+		Body newBody = newAPML.getBody();
+		if(!same(defaultProfileName(oldBody), defaultProfileName(newBody)))
+			patch.setDefaultProfileName(text(defaultProfileName(newBody)));
+		if(!sameApplications(applications(oldBody), applications(newBody)))
+			patch.setApplications(copyApplications(applications(newBody)));
+
+		Map<String, Profile> oldProfiles = new LinkedHashMap<String, Profile>();
+		for(Profile profile : profiles(oldBody))
+			oldProfiles.put(text(profile.getName()), profile);
+
+		for(Profile profile : profiles(newBody))
+		{
+			String name = text(profile.getName());
+			Profile oldProfile = oldProfiles.remove(name);
+			ProfilePatch profilePatch = new ProfilePatch(name);
+
+			if(oldProfile == null)
+				profilePatch.setProfile(profile);
+			else
+			{
+				profilePatch.setImplicitData(diffData(implicitConcepts(oldProfile), implicitSources(oldProfile),
+						implicitConcepts(profile), implicitSources(profile)));
+				profilePatch.setExplicitData(diffData(explicitConcepts(oldProfile), explicitSources(oldProfile),
+						explicitConcepts(profile), explicitSources(profile)));
+				if(profilePatch.getImplicitData() == null && profilePatch.getExplicitData() == null)
+					continue;
+			}
+			patch.getProfiles().add(profilePatch);
+		}
+
+		for(String name : oldProfiles.keySet())
+		{
+			ProfilePatch profilePatch = new ProfilePatch(name);
+			profilePatch.setRemoved(true);
+			patch.getProfiles().add(profilePatch);
+		}
+		return patch;
+	}
+
+	/**
+	 * Applies a patch to a document. The document is changed in place; it gets copies of the
+	 * entries of the patch, so the patch can be applied again elsewhere. Added concepts, sources
+	 * and profiles go after the ones the document already has.
+	 * @param target The document the patch was made from, or a copy of it
+	 * @param patch The patch
+	 */
+	public void apply(APML target, APMLPatch patch)
+	{
+		if(patch.getVersion() != null)
+			target.setVersion(patch.getVersion());
+		if(patch.getXmlns() != null)
+			target.setXmlns(patch.getXmlns());
+		if(patch.getHead() != null)
+		{
+			Head head = patch.getHead();
+			target.setHead(new Head(head.getTitle(), head.getGenerator(), head.getUserEmail(), head.getDateCreated()));
+		}
+
+		Body body = target.getBody();
+		if(body == null)
+		{
+			body = new Body("");
+			target.setBody(body);
+		}
+		if(patch.getDefaultProfileName() != null)
+			body.setDefaultProfileName(patch.getDefaultProfileName());
+		if(patch.getApplications() != null)
+			body.setApplications(copyApplications(patch.getApplications()));
+		if(patch.getProfiles().isEmpty())
+			return;
+
+		Map<String, ProfilePatch> changes = new HashMap<String, ProfilePatch>();
+		for(ProfilePatch profilePatch : patch.getProfiles())
+			changes.put(text(profilePatch.getName()), profilePatch);
+
+		List<Profile> profiles = new ArrayList<Profile>();
+		for(Profile profile : profiles(body))
+		{
+			ProfilePatch profilePatch = changes.remove(text(profile.getName()));
+			if(profilePatch != null && profilePatch.isRemoved())
+				continue;
+			if(profilePatch != null && profilePatch.getProfile() != null)
+				profile = copyProfile(profilePatch.getProfile());
+			else if(profilePatch != null)
+				applyData(profile, profilePatch);
+			profiles.add(profile);
+		}
+		for(ProfilePatch profilePatch : patch.getProfiles())
+			if(changes.containsKey(text(profilePatch.getName())) && profilePatch.getProfile() != null)
+				profiles.add(copyProfile(profilePatch.getProfile()));
+		body.setProfiles(profiles);
+	}
+
+	/**
+	 * Writes a patch as XML
+	 * @param patch The patch
+	 * @return The XML
+	 */
+	public String toXML(APMLPatch patch)
+	{
+		StringWriter out = new StringWriter();
+		try
+		{
+			toXML(patch, out);
+		}
+		catch(IOException ioEx)
+		{
+			// Can't happen on a StringWriter
+			throw new IllegalStateException(ioEx);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Writes a patch as XML to a character stream. The stream is flushed, but not closed.
+	 * @param patch The patch
+	 * @param out Where the XML is written
+	 * @throws IOException
+	 */
+	public void toXML(APMLPatch patch, Writer out) throws IOException
+	{
+		new PatchWriter(out).write(patch);
+	}
+
+	/**
+	 * Reads a patch written by toXML
+	 * @param xmlPayload The XML
+	 * @return The patch
+	 * @throws InvalidAPMLFormatException
+	 */
+	public APMLPatch fromXML(String xmlPayload) throws InvalidAPMLFormatException
+	{
+		try
+		{
+			return fromXML(new StringReader(xmlPayload));
+		}
+		catch(IOException ioEx)
+		{
+			// Can't happen on a StringReader
+			throw new InvalidAPMLFormatException(ioEx.getMessage());
+		}
+	}
+
+	/**
+	 * Reads a patch written by toXML from a character stream. The stream isn't closed.
+	 * @param in The XML
+	 * @return The patch
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 */
+	public APMLPatch fromXML(Reader in) throws IOException, InvalidAPMLFormatException
+	{
+		return READER.read(in);
+	}
+
+	/**
+	 * @return The changes of one ImplicitData or ExplicitData, or null if there are none
+	 */
+	private DataPatch diffData(List<Concept> oldConcepts, List<Source> oldSources, List<Concept> newConcepts, List<Source> newSources)
+	{
+		DataPatch patch = new DataPatch();
+		CONCEPTS.diff(oldConcepts, newConcepts, patch.getAddedConcepts(), patch.getChangedConcepts(), patch.getRemovedConcepts());
+		SOURCES.diff(oldSources, newSources, patch.getAddedSources(), patch.getChangedSources(), patch.getRemovedSources());
+		return patch.isEmpty() ? null : patch;
+	}
+
+	private void applyData(Profile profile, ProfilePatch profilePatch)
+	{
+		DataPatch implicitPatch = profilePatch.getImplicitData();
+		DataPatch explicitPatch = profilePatch.getExplicitData();
+
+		if(implicitPatch != null)
+		{
+			ImplicitData data = profile.getImplicitData();
+			if(data == null)
+			{
+				data = new ImplicitData();
+				profile.setImplicitData(data);
+			}
+			data.setConcepts(CONCEPTS.apply(data.getConcepts(), implicitPatch.getAddedConcepts(), implicitPatch.getChangedConcepts(), implicitPatch.getRemovedConcepts()));
+			data.setSources(SOURCES.apply(data.getSources(), implicitPatch.getAddedSources(), implicitPatch.getChangedSources(), implicitPatch.getRemovedSources()));
+		}
+		if(explicitPatch != null)
+		{
+			ExplicitData data = profile.getExplicitData();
+			if(data == null)
+			{
+				data = new ExplicitData();
+				profile.setExplicitData(data);
+			}
+			data.setConcepts(CONCEPTS.apply(data.getConcepts(), explicitPatch.getAddedConcepts(), explicitPatch.getChangedConcepts(), explicitPatch.getRemovedConcepts()));
+			data.setSources(SOURCES.apply(data.getSources(), explicitPatch.getAddedSources(), explicitPatch.getChangedSources(), explicitPatch.getRemovedSources()));
+		}
+	}
+
+	/**
+	 * Diffs and patches lists of concepts or sources, identified by key and from
+	 */
+	private static abstract class Entries<E>
+	{
+		abstract String keyOf(E entry);
+		abstract String fromOf(E entry);
+		abstract boolean same(E a, E b);
+		abstract E removal(E entry);
+		abstract E copy(E entry);
+		abstract void update(E target, E changed);
+
+		final String idOf(E entry)
+		{
+			return text(keyOf(entry)) + '\n' + text(fromOf(entry));
+		}
+
+		/**
+		 * An entry that has the same id in both lists, once in each, is changed. When the id is
+		 * repeated in either list and the repeats differ, all old ones are removed and all new
+		 * ones added.
+		 */
+		void diff(List<E> oldList, List<E> newList, List<E> added, List<E> changed, List<E> removed)
+		{
+			Map<String, List<E>> oldEntries = group(oldList);
+			Map<String, List<E>> newEntries = group(newList);
+
+			for(Map.Entry<String, List<E>> entry : newEntries.entrySet())
+			{
+				List<E> oldRepeats = oldEntries.remove(entry.getKey());
+				List<E> newRepeats = entry.getValue();
+
+				if(oldRepeats == null)
+					added.addAll(newRepeats);
+				else if(oldRepeats.size() == 1 && newRepeats.size() == 1)
+				{
+					if(!same(oldRepeats.get(0), newRepeats.get(0)))
+						changed.add(newRepeats.get(0));
+				}
+				else if(!sameAll(oldRepeats, newRepeats))
+				{
+					removed.add(removal(newRepeats.get(0)));
+					added.addAll(newRepeats);
+				}
+			}
+			for(List<E> oldRepeats : oldEntries.values())
+				removed.add(removal(oldRepeats.get(0)));
+		}
+
+		/**
+		 * Entries keep their place in the list; added ones go at the end, in patch order
+		 */
+		List<E> apply(List<E> list, List<E> added, List<E> changed, List<E> removed)
+		{
+			if(added.isEmpty() && changed.isEmpty() && removed.isEmpty())
+				return list;
+
+			// By key only, so the entries of the list are looked up without building their ids
+			Map<String, List<E>> removals = byKey(removed);
+			Map<String, List<E>> changes = byKey(changed);
+
+			List<E> result = new ArrayList<E>(list.size() + added.size());
+			for(E entry : list)
+			{
+				if(find(removals, entry) != null)
+					continue;
+				E change = find(changes, entry);
+				if(change != null)
+					update(entry, change);
+				result.add(entry);
+			}
+			for(E entry : added)
+				result.add(copy(entry));
+			return result;
+		}
+
+		/**
+		 * Id to the entries with that id, in list order
+		 */
+		private Map<String, List<E>> group(List<E> list)
+		{
+			Map<String, List<E>> entries = new LinkedHashMap<String, List<E>>(list.size() * 4 / 3 + 1);
+			for(E entry : list)
+				put(entries, idOf(entry), entry);
+			return entries;
+		}
+
+		/**
+		 * Key to the entries with that key
+		 */
+		private Map<String, List<E>> byKey(List<E> list)
+		{
+			Map<String, List<E>> entries = new HashMap<String, List<E>>(list.size() * 4 / 3 + 1);
+			for(E entry : list)
+				put(entries, text(keyOf(entry)), entry);
+			return entries;
+		}
+
+		/**
+		 * Ids are seldom repeated, so a single entry is held in a singleton list until it is
+		 */
+		private void put(Map<String, List<E>> entries, String id, E entry)
+		{
+			List<E> repeats = entries.get(id);
+			if(repeats == null)
+				entries.put(id, Collections.singletonList(entry));
+			else
+			{
+				if(repeats.size() == 1)
+				{
+					repeats = new ArrayList<E>(repeats);
+					entries.put(id, repeats);
+				}
+				repeats.add(entry);
+			}
+		}
+
+		/**
+		 * @return The entry of the map with the key and from of an entry, or null
+		 */
+		private E find(Map<String, List<E>> entries, E entry)
+		{
+			if(entries.isEmpty())
+				return null;
+			List<E> found = entries.get(text(keyOf(entry)));
+			if(found == null)
+				return null;
+
+			String from = text(fromOf(entry));
+			for(E candidate : found)
+				if(text(fromOf(candidate)).equals(from))
+					return candidate;
+			return null;
+		}
+
+		private boolean sameAll(List<E> oldEntries, List<E> newEntries)
+		{
+			if(oldEntries.size() != newEntries.size())
+				return false;
+			for(int i = 0; i < oldEntries.size(); i++)
+				if(!same(oldEntries.get(i), newEntries.get(i)))
+					return false;
+			return true;
+		}
+	}
+
+	private static final Entries<Concept> CONCEPTS = new Entries<Concept>()
+	{
+		String keyOf(Concept concept) { return concept.getKey(); }
+		String fromOf(Concept concept) { return concept.getFrom(); }
+
+		boolean same(Concept a, Concept b)
+		{
+			return APMLDiff.same(a.getValue(), b.getValue()) && APMLDiff.same(a.getUpdated(), b.getUpdated());
+		}
+
+		Concept removal(Concept concept)
+		{
+			return new Concept(concept.getKey(), null, concept.getFrom(), null);
+		}
+
+		Concept copy(Concept concept)
+		{
+			return new Concept(concept.getKey(), concept.getValue(), concept.getFrom(), concept.getUpdated());
+		}
+
+		void update(Concept target, Concept changed)
+		{
+			target.setValue(changed.getValue());
+			target.setUpdated(changed.getUpdated());
+		}
+	};
+
+	private static final Entries<Source> SOURCES = new Entries<Source>()
+	{
+		String keyOf(Source source) { return source.getKey(); }
+		String fromOf(Source source) { return source.getFrom(); }
+
+		boolean same(Source a, Source b)
+		{
+			return APMLDiff.same(a.getName(), b.getName()) && APMLDiff.same(a.getValue(), b.getValue())
+					&& APMLDiff.same(a.getType(), b.getType()) && APMLDiff.same(a.getUpdated(), b.getUpdated())
+					&& sameAuthor(a.getAuthor(), b.getAuthor());
+		}
+
+		Source removal(Source source)
+		{
+			return new Source(source.getKey(), null, null, null, source.getFrom(), null);
+		}
+
+		Source copy(Source source)
+		{
+			Source copy = new Source(source.getKey(), source.getName(), source.getValue(), source.getType(), source.getFrom(), source.getUpdated());
+			copy.setAuthor(copyAuthor(source.getAuthor()));
+			return copy;
+		}
+
+		void update(Source target, Source changed)
+		{
+			target.setName(changed.getName());
+			target.setValue(changed.getValue());
+			target.setType(changed.getType());
+			target.setUpdated(changed.getUpdated());
+			target.setAuthor(copyAuthor(changed.getAuthor()));
+		}
+	};
+
+	private static Profile copyProfile(Profile profile)
+	{
+		Profile copy = new Profile(profile.getName());
+		ImplicitData implicitData = new ImplicitData();
+		ExplicitData explicitData = new ExplicitData();
+
+		implicitData.setConcepts(CONCEPTS.apply(new ArrayList<Concept>(), implicitConcepts(profile), NO_CONCEPTS, NO_CONCEPTS));
+		implicitData.setSources(SOURCES.apply(new ArrayList<Source>(), implicitSources(profile), NO_SOURCES, NO_SOURCES));
+		explicitData.setConcepts(CONCEPTS.apply(new ArrayList<Concept>(), explicitConcepts(profile), NO_CONCEPTS, NO_CONCEPTS));
+		explicitData.setSources(SOURCES.apply(new ArrayList<Source>(), explicitSources(profile), NO_SOURCES, NO_SOURCES));
+		copy.setImplicitData(implicitData);
+		copy.setExplicitData(explicitData);
+		return copy;
+	}
+
+	private static Author copyAuthor(Author author)
+	{
+		return (author == null) ? null : new Author(author.getKey(), author.getValue(), author.getFrom(), author.getUpdated());
+	}
+
+	private static Applications<Application> copyApplications(List<Application> applications)
+	{
+		Applications<Application> copy = new Applications<Application>();
+		for(Application application : applications)
+			copy.add(new Application(application.getName(), application.getApplicationData()));
+		return copy;
+	}
+
+	private static boolean sameHead(Head a, Head b)
+	{
+		if(a == null || b == null)
+			return a == b;
+		return same(a.getTitle(), b.getTitle()) && same(a.getGenerator(), b.getGenerator())
+				&& same(a.getUserEmail(), b.getUserEmail()) && same(a.getDateCreated(), b.getDateCreated());
+	}
+
+	private static boolean sameAuthor(Author a, Author b)
+	{
+		if(a == null || b == null)
+			return a == b;
+		return same(a.getKey(), b.getKey()) && same(a.getValue(), b.getValue())
+				&& same(a.getFrom(), b.getFrom()) && same(a.getUpdated(), b.getUpdated());
+	}
+
+	private static boolean sameApplications(List<Application> a, List<Application> b)
+	{
+		if(a.size() != b.size())
+			return false;
+		Iterator<Application> i = a.iterator();
+		Iterator<Application> j = b.iterator();
+		while(i.hasNext())
+		{
+			Application x = i.next();
+			Application y = j.next();
+			if(!same(x.getName(), y.getName()) || !same(x.getApplicationData(), y.getApplicationData()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Missing attributes are read as "", so null and "" are the same
+	 */
+	private static boolean same(String a, String b)
+	{
+		return text(a).equals(text(b));
+	}
+
+	private static String text(String value)
+	{
+		return (value == null) ? "" : value;
+	}
+
+	private static String defaultProfileName(Body body)
+	{
+		return (body == null) ? null : body.getDefaultProfileName();
+	}
+
+	private static List<Application> applications(Body body)
+	{
+		List<Application> applications = (body == null) ? null : body.getApplications();
+		return (applications == null) ? new ArrayList<Application>() : applications;
+	}
+
+	private static List<Profile> profiles(Body body)
+	{
+		List<Profile> profiles = (body == null) ? null : body.getProfiles();
+		return (profiles == null) ? new ArrayList<Profile>() : profiles;
+	}
+
+	private static List<Concept> implicitConcepts(Profile profile)
+	{
+		ImplicitData data = profile.getImplicitData();
+		return (data == null || data.getConcepts() == null) ? NO_CONCEPTS : data.getConcepts();
+	}
+
+	private static List<Source> implicitSources(Profile profile)
+	{
+		ImplicitData data = profile.getImplicitData();
+		return (data == null || data.getSources() == null) ? NO_SOURCES : data.getSources();
+	}
+
+	private static List<Concept> explicitConcepts(Profile profile)
+	{
+		ExplicitData data = profile.getExplicitData();
+		return (data == null || data.getConcepts() == null) ? NO_CONCEPTS : data.getConcepts();
+	}
+
+	private static List<Source> explicitSources(Profile profile)
+	{
+		ExplicitData data = profile.getExplicitData();
+		return (data == null || data.getSources() == null) ? NO_SOURCES : data.getSources();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apml.base.Application;
+import org.apml.base.Applications;
+import org.apml.base.Head;
+
+/**
+ * <p>The changes between two APML documents, made by {@link APMLDiff#diff(org.apml.base.APML, org.apml.base.APML)}.<br>
+ * Parts that didn't change are null: the version and xmlns attributes, the Head (replaced as a
+ * whole), the defaultprofile and the Applications (replaced as a whole). The profiles that were
+ * added, removed or changed each have a {@link ProfilePatch}.</p>
+ * @author Tim Schultz
+ */
+public class APMLPatch
+{
+	private String version = null;
+	private String xmlns = null;
+	private Head Head = null;
+	private String defaultprofile = null;
+	private Applications<Application> Applications = null;
+	private List<ProfilePatch> Profiles = null;
+
+	public APMLPatch(){}
+
+	/**
+	 * Determines if the patch changes anything
+	 * @return true if applying it leaves a document as it was
+	 */
+	public boolean isEmpty()
+	{
+		return this.version == null && this.xmlns == null && this.Head == null && this.defaultprofile == null
+				&& this.Applications == null && getProfiles().isEmpty();
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public void setVersion(String version) {
+		this.version = version;
+	}
+
+	public String getXmlns() {
+		return xmlns;
+	}
+
+	public void setXmlns(String xmlns) {
+		this.xmlns = xmlns;
+	}
+
+	/**
+	 * @return The new Head, or null if it didn't change
+	 */
+	public Head getHead() {
+		return Head;
+	}
+
+	public void setHead(Head head) {
+		this.Head = head;
+	}
+
+	/**
+	 * @return The new defaultprofile attribute, or null if it didn't change
+	 */
+	public String getDefaultProfileName() {
+		return defaultprofile;
+	}
+
+	public void setDefaultProfileName(String defaultProfile) {
+		this.defaultprofile = defaultProfile;
+	}
+
+	/**
+	 * @return The new applications, or null if they didn't change
+	 */
+	public Applications<Application> getApplications() {
+		return Applications;
+	}
+
+	public void setApplications(Applications<Application> applications) {
+		this.Applications = applications;
+	}
+
+	/**
+	 * @return The changes of the profiles, in the order of the new document, then the removed ones
+	 */
+	public List<ProfilePatch> getProfiles() {
+		if(Profiles == null)
+			Profiles = new ArrayList<ProfilePatch>();
+		return Profiles;
+	}
+
+	public void setProfiles(List<ProfilePatch> profiles) {
+		this.Profiles = profiles;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apml.base.Concept;
+import org.apml.base.Source;
+
+/**
+ * <p>The changes of the concepts and sources of an ImplicitData or ExplicitData.<br>
+ * Entries are identified by their key and from attributes. A removed entry only has those two,
+ * and removes every entry of the list with them. A changed concept carries its new value and
+ * updated attributes, a changed source all of its attributes and its author. Added entries are
+ * appended to the list. Patches apply the removals first, then the changes and the additions.</p>
+ * @author Tim Schultz
+ */
+public class DataPatch
+{
+	// Created on first use, most patches only need one or two of them
+	private List<Concept> AddedConcepts = null;
+	private List<Concept> ChangedConcepts = null;
+	private List<Concept> RemovedConcepts = null;
+	private List<Source> AddedSources = null;
+	private List<Source> ChangedSources = null;
+	private List<Source> RemovedSources = null;
+
+	public DataPatch(){}
+
+	/**
+	 * Determines if the patch changes anything
+	 * @return true if all the lists are empty
+	 */
+	public boolean isEmpty()
+	{
+		return getAddedConcepts().isEmpty() && getChangedConcepts().isEmpty() && getRemovedConcepts().isEmpty()
+				&& getAddedSources().isEmpty() && getChangedSources().isEmpty() && getRemovedSources().isEmpty();
+	}
+
+	public List<Concept> getAddedConcepts() {
+		if(AddedConcepts == null)
+			AddedConcepts = new ArrayList<Concept>();
+		return AddedConcepts;
+	}
+
+	public List<Concept> getChangedConcepts() {
+		if(ChangedConcepts == null)
+			ChangedConcepts = new ArrayList<Concept>();
+		return ChangedConcepts;
+	}
+
+	public List<Concept> getRemovedConcepts() {
+		if(RemovedConcepts == null)
+			RemovedConcepts = new ArrayList<Concept>();
+		return RemovedConcepts;
+	}
+
+	public List<Source> getAddedSources() {
+		if(AddedSources == null)
+			AddedSources = new ArrayList<Source>();
+		return AddedSources;
+	}
+
+	public List<Source> getChangedSources() {
+		if(ChangedSources == null)
+			ChangedSources = new ArrayList<Source>();
+		return ChangedSources;
+	}
+
+	public List<Source> getRemovedSources() {
+		if(RemovedSources == null)
+			RemovedSources = new ArrayList<Source>();
+		return RemovedSources;
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.diff;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import org.apml.base.Application;
+import org.apml.base.Applications;
+import org.apml.base.Author;
+import org.apml.base.Concept;
+import org.apml.base.ExplicitData;
+import org.apml.base.Head;
+import org.apml.base.ImplicitData;
+import org.apml.base.Profile;
+import org.apml.base.Source;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.apml.deserialize.APMLEventParser;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * <p>Reads the markup written by the {@link PatchWriter} with a pull parser, like the
+ * APMLEventParser reads APML. Unknown elements are skipped. A reader holds no state and can
+ * be shared between threads.</p>
+ * @author Tim Schultz
+ */
+class PatchReader
+{
+	PatchReader(){}
+
+	APMLPatch read(Reader reader) throws IOException, InvalidAPMLFormatException
+	{
+		try
+		{
+			XmlPullParser p = new MXParser();
+			p.setInput(reader);
+
+			int event = p.next();
+			while(event != XmlPullParser.START_TAG && event != XmlPullParser.END_DOCUMENT)
+				event = p.next();
+			if(event != XmlPullParser.START_TAG || !p.getName().equals("APMLPatch"))
+				throw new InvalidAPMLFormatException("The document root is not an <APMLPatch> element");
+			return readPatch(p);
+		}
+		catch(XmlPullParserException xppEx)
+		{
+			throw new InvalidAPMLFormatException(xppEx.getMessage());
+		}
+	}
+
+	private APMLPatch readPatch(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		APMLPatch patch = new APMLPatch();
+		patch.setVersion(p.getAttributeValue(null, "version"));
+		patch.setXmlns(p.getAttributeValue(null, "xmlns"));
+		patch.setDefaultProfileName(p.getAttributeValue(null, "defaultprofile"));
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("ProfilePatch"))
+				patch.getProfiles().add(readProfilePatch(p));
+			else if(name.equals("Head"))
+				patch.setHead(readHead(p));
+			else if(name.equals("Applications"))
+				patch.setApplications(readApplications(p));
+			else
+				skip(p);
+		}
+		return patch;
+	}
+
+	private ProfilePatch readProfilePatch(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		ProfilePatch profilePatch = new ProfilePatch(p.getAttributeValue(null, "name"));
+		profilePatch.setRemoved("true".equals(p.getAttributeValue(null, "removed")));
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("Profile"))
+				profilePatch.setProfile(readProfile(p));
+			else if(name.equals("ImplicitData"))
+				profilePatch.setImplicitData(readDataPatch(p));
+			else if(name.equals("ExplicitData"))
+				profilePatch.setExplicitData(readDataPatch(p));
+			else
+				skip(p);
+		}
+		return profilePatch;
+	}
+
+	private DataPatch readDataPatch(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		DataPatch data = new DataPatch();
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("AddedConcepts"))
+				readConcepts(p, data.getAddedConcepts());
+			else if(name.equals("ChangedConcepts"))
+				readConcepts(p, data.getChangedConcepts());
+			else if(name.equals("RemovedConcepts"))
+				readConcepts(p, data.getRemovedConcepts());
+			else if(name.equals("AddedSources"))
+				readSources(p, data.getAddedSources());
+			else if(name.equals("ChangedSources"))
+				readSources(p, data.getChangedSources());
+			else if(name.equals("RemovedSources"))
+				readSources(p, data.getRemovedSources());
+			else
+				skip(p);
+		}
+		return data;
+	}
+
+	private Profile readProfile(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		Profile profile = new Profile(p.getAttributeValue(null, "name"));
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("ImplicitData"))
+			{
+				ImplicitData data = new ImplicitData();
+				readData(p, data.getConcepts(), data.getSources());
+				profile.setImplicitData(data);
+			}
+			else if(name.equals("ExplicitData"))
+			{
+				ExplicitData data = new ExplicitData();
+				readData(p, data.getConcepts(), data.getSources());
+				profile.setExplicitData(data);
+			}
+			else
+				skip(p);
+		}
+		return profile;
+	}
+
+	private void readData(XmlPullParser p, List<Concept> concepts, List<Source> sources) throws XmlPullParserException, IOException
+	{
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("Concepts"))
+				readConcepts(p, concepts);
+			else if(name.equals("Sources"))
+				readSources(p, sources);
+			else
+				skip(p);
+		}
+	}
+
+	private void readConcepts(XmlPullParser p, List<Concept> concepts) throws XmlPullParserException, IOException
+	{
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			if(p.getName().equals("Concept"))
+				concepts.add(new Concept(
+						p.getAttributeValue(null, "key"),
+						p.getAttributeValue(null, "value"),
+						p.getAttributeValue(null, "from"),
+						p.getAttributeValue(null, "updated")));
+			skip(p);
+		}
+	}
+
+	private void readSources(XmlPullParser p, List<Source> sources) throws XmlPullParserException, IOException
+	{
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			if(!p.getName().equals("Source"))
+			{
+				skip(p);
+				continue;
+			}
+
+			Source source = new Source(
+					p.getAttributeValue(null, "key"),
+					p.getAttributeValue(null, "name"),
+					p.getAttributeValue(null, "value"),
+					p.getAttributeValue(null, "type"),
+					p.getAttributeValue(null, "from"),
+					p.getAttributeValue(null, "updated"));
+			while(nextChild(p) == XmlPullParser.START_TAG)
+			{
+				if(p.getName().equals("Author"))
+					source.setAuthor(new Author(
+							p.getAttributeValue(null, "key"),
+							p.getAttributeValue(null, "value"),
+							p.getAttributeValue(null, "from"),
+							p.getAttributeValue(null, "updated")));
+				skip(p);
+			}
+			sources.add(source);
+		}
+	}
+
+	private Head readHead(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		Head head = new Head();
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			String name = p.getName();
+
+			if(name.equals("Title"))
+				head.setTitle(p.nextText());
+			else if(name.equals("Generator"))
+				head.setGenerator(p.nextText());
+			else if(name.equals("UserEmail"))
+				head.setUserEmail(p.nextText());
+			else if(name.equals("DateCreated"))
+				head.setDateCreated(p.nextText());
+			else
+				skip(p);
+		}
+		return head;
+	}
+
+	/**
+	 * Application payloads are plain text in patches: the markup inside an application of the
+	 * original document is escaped when written
+	 */
+	private Applications<Application> readApplications(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		Applications<Application> applications = new Applications<Application>();
+
+		while(nextChild(p) == XmlPullParser.START_TAG)
+		{
+			if(p.getName().equals("Application"))
+			{
+				String name = p.getAttributeValue(null, "name");
+				// Written with the layout of the ApplicationsConverter
+				applications.add(new Application(name, APMLEventParser.readMarkup(p).trim()));
+			}
+			else
+				skip(p);
+		}
+		return applications;
+	}
+
+	/**
+	 * Moves to the next start tag, or to the end tag of the current element
+	 */
+	private static int nextChild(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		int event = p.next();
+
+		while(event != XmlPullParser.START_TAG && event != XmlPullParser.END_TAG)
+		{
+			if(event == XmlPullParser.END_DOCUMENT)
+				throw new XmlPullParserException("Unexpected end of document", p, null);
+			event = p.next();
+		}
+		return event;
+	}
+
+	/**
+	 * Skips the rest of the current element, including its children
+	 */
+	private static void skip(XmlPullParser p) throws XmlPullParserException, IOException
+	{
+		int depth = 1;
+
+		while(depth > 0)
+		{
+			if(nextChild(p) == XmlPullParser.START_TAG)
+				depth++;
+			else
+				depth--;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.diff;
+
+import java.io.IOException;
+import java.io.Writer;
+import org.apml.serialize.APMLWriter;
+
+/**
+ * <p>Writes an {@link APMLPatch} as markup, with the layout and escaping of the APMLWriter.
+ * A writer is good for a single patch.</p>
+ * @author Tim Schultz
+ */
+class PatchWriter extends APMLWriter
+{
+	PatchWriter(Writer out)
+	{
+		super(out);
+	}
+
+	void write(APMLPatch patch) throws IOException
+	{
+		startNode("APMLPatch");
+		attribute("version", patch.getVersion());
+		attribute("xmlns", patch.getXmlns());
+		attribute("defaultprofile", patch.getDefaultProfileName());
+
+		if(patch.getHead() != null)
+			writeHead(patch.getHead());
+		if(patch.getApplications() != null)
+			writeApplications(patch.getApplications());
+
+		for(ProfilePatch profilePatch : patch.getProfiles())
+		{
+			startNode("ProfilePatch");
+			attribute("name", profilePatch.getName());
+			if(profilePatch.isRemoved())
+				attribute("removed", "true");
+			if(profilePatch.getProfile() != null)
+				writeProfile(profilePatch.getProfile());
+			writeData("ImplicitData", profilePatch.getImplicitData());
+			writeData("ExplicitData", profilePatch.getExplicitData());
+			endNode("ProfilePatch");
+		}
+		endNode("APMLPatch");
+	}
+
+	private void writeData(String name, DataPatch data) throws IOException
+	{
+		if(data == null)
+			return;
+
+		startNode(name);
+		if(!data.getAddedConcepts().isEmpty())
+			writeConcepts("AddedConcepts", data.getAddedConcepts());
+		if(!data.getChangedConcepts().isEmpty())
+			writeConcepts("ChangedConcepts", data.getChangedConcepts());
+		if(!data.getRemovedConcepts().isEmpty())
+			writeConcepts("RemovedConcepts", data.getRemovedConcepts());
+		if(!data.getAddedSources().isEmpty())
+			writeSources("AddedSources", data.getAddedSources());
+		if(!data.getChangedSources().isEmpty())
+			writeSources("ChangedSources", data.getChangedSources());
+		if(!data.getRemovedSources().isEmpty())
+			writeSources("RemovedSources", data.getRemovedSources());
+		endNode(name);
+	}
+}
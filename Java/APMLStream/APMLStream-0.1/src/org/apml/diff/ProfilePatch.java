@@ -0,0 +1,94 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.diff;
+
+import org.apml.base.Profile;
+
+/**
+ * <p>The changes of one profile, found by name.<br>
+ * A removed profile only has its name. An added profile carries the whole Profile. A changed
+ * profile has a {@link DataPatch} for its ImplicitData and one for its ExplicitData, null for
+ * the ones that didn't change.</p>
+ * @author Tim Schultz
+ */
+public class ProfilePatch
+{
+	private String name = "";
+	private boolean removed = false;
+	private Profile Profile = null;
+	private DataPatch ImplicitData = null;
+	private DataPatch ExplicitData = null;
+
+	public ProfilePatch(){}
+
+	/**
+	 * Constructor
+	 * @param name The name of the profile
+	 */
+	public ProfilePatch(String name)
+	{
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return true if the profile was removed
+	 */
+	public boolean isRemoved() {
+		return removed;
+	}
+
+	public void setRemoved(boolean removed) {
+		this.removed = removed;
+	}
+
+	/**
+	 * @return The whole profile if it was added, else null
+	 */
+	public Profile getProfile() {
+		return Profile;
+	}
+
+	public void setProfile(Profile profile) {
+		this.Profile = profile;
+	}
+
+	public DataPatch getImplicitData() {
+		return ImplicitData;
+	}
+
+	public void setImplicitData(DataPatch implicitData) {
+		this.ImplicitData = implicitData;
+	}
+
+	public DataPatch getExplicitData() {
+		return ExplicitData;
+	}
+
+	public void setExplicitData(DataPatch explicitData) {
+		this.ExplicitData = explicitData;
+	}
+}
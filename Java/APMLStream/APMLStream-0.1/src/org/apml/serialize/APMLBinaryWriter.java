@@ -0,0 +1,442 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.serialize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.apml.base.*;
+import org.apml.tools.ISO8601;
+
+/**
+ * <p>Writes APML objects in a compact binary form, in a single pass and without any reflection.<br>
+ * A document starts with the {@link #MAGIC} number and the {@link #VERSION} byte, followed by one
+ * record per element in document order and a CRC-32 of everything before it. A record is a tag
+ * byte and the attributes of its element. Counts and lengths are varints, concept values that
+ * are plain numbers are stored as 4 byte floats.<br>
+ * Strings are coded against a dictionary built along the way: the first occurrence is written out
+ * as UTF-8, or as a number of seconds if it is a date like 2008-01-15T10:30:00Z, and the next ones
+ * as its index in the dictionary, so the repeated from, updated and type attributes, keys and names
+ * cost one or two bytes each. Use an
+ * {@link org.apml.deserialize.APMLBinaryParser} to read the documents back.</p>
+ * <p>A writer is good for a single document and is not thread-safe.</p>
+ * @author Tim Schultz
+ */
+public class APMLBinaryWriter
+{
+	/** The first four bytes of a document, "APMB" */
+	public static final int MAGIC = 0x41504D42;
+	/** The version of the format, written after the magic number */
+	public static final int VERSION = 1;
+
+	// Record tags
+	public static final int END = 0;
+	public static final int DOCUMENT = 1;
+	public static final int HEAD = 2;
+	public static final int BODY = 3;
+	public static final int APPLICATION = 4;
+	public static final int PROFILE = 5;
+	public static final int PROFILE_END = 6;
+	public static final int IMPLICIT_DATA = 7;
+	public static final int EXPLICIT_DATA = 8;
+	public static final int CONCEPT = 9;
+	// A concept whose value is written as a float
+	public static final int FLOAT_CONCEPT = 10;
+	public static final int SOURCE = 11;
+	public static final int AUTHOR = 12;
+
+	// String codes: a null, a new string, a new date, or the index of a known string plus FIRST_INDEX
+	public static final int NULL_STRING = 0;
+	public static final int NEW_STRING = 1;
+	public static final int NEW_DATE = 2;
+	public static final int FIRST_INDEX = 3;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private OutputStream out = null;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private CRC32 checksum = new CRC32();
+	// The dictionary, an open addressing table of the strings and their indexes
+	private String[] strings = new String[1024];
+	private int[] indexes = new int[1024];
+	private int dictionarySize = 0;
+	// Room for ISO8601.format(), years beyond 9999 included
+	private char[] dateChars = new char[ISO8601.FORMATTED_LENGTH + 12];
+
+	/**
+	 * Constructor
+	 * @param out Where the document is written. It is flushed, but not closed, at the end of the document.
+	 */
+	public APMLBinaryWriter(OutputStream out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Writes a whole APML document. Lazily decoded profiles are loaded on the way.
+	 * @param apml The APML object
+	 * @throws IOException
+	 */
+	public void write(APML apml) throws IOException
+	{
+		writeInt(MAGIC);
+		writeByte(VERSION);
+
+		writeByte(DOCUMENT);
+		writeString(apml.getVersion());
+		writeString(apml.getXmlns());
+
+		Head head = apml.getHead();
+		if(head != null)
+		{
+			writeByte(HEAD);
+			writeString(head.getTitle());
+			writeString(head.getGenerator());
+			writeString(head.getUserEmail());
+			writeString(head.getDateCreated());
+		}
+
+		Body body = apml.getBody();
+		if(body != null)
+			writeBody(body);
+
+		writeByte(END);
+		// The checksum covers everything up to here
+		flushBuffer();
+		writeInt((int)this.checksum.getValue());
+		this.out.write(this.buffer, 0, this.position);
+		this.position = 0;
+		this.out.flush();
+	}
+
+	private void writeBody(Body body) throws IOException
+	{
+		writeByte(BODY);
+		writeString(body.getDefaultProfileName());
+
+		if(body.getApplications() != null)
+		{
+			for(Application app : body.getApplications())
+			{
+				writeByte(APPLICATION);
+				writeString(app.getName());
+				writeString(app.getApplicationData());
+			}
+		}
+
+		if(body.getProfiles() != null)
+		{
+			// Null entries are left out, the parsers skip them anyway
+			for(Profile profile : body.getProfiles())
+			{
+				if(profile != null)
+					writeProfile(profile);
+			}
+		}
+	}
+
+	private void writeProfile(Profile profile) throws IOException
+	{
+		writeByte(PROFILE);
+		writeString(profile.getName());
+
+		ImplicitData implicitData = profile.getImplicitData();
+		if(implicitData != null)
+		{
+			writeByte(IMPLICIT_DATA);
+			writeConcepts(implicitData.getConcepts());
+			writeSources(implicitData.getSources());
+		}
+
+		ExplicitData explicitData = profile.getExplicitData();
+		if(explicitData != null)
+		{
+			writeByte(EXPLICIT_DATA);
+			writeConcepts(explicitData.getConcepts());
+			writeSources(explicitData.getSources());
+		}
+		writeByte(PROFILE_END);
+	}
+
+	private void writeConcepts(List<Concept> concepts) throws IOException
+	{
+		if(concepts == null)
+			return;
+
+		for(Concept concept : concepts)
+		{
+			if(concept == null)
+				continue;
+
+			String value = concept.getValue();
+			if(isPlainFloat(concept, value))
+			{
+				writeByte(FLOAT_CONCEPT);
+				writeString(concept.getKey());
+				writeInt(Float.floatToIntBits(concept.getFloatValue()));
+			}
+			else
+			{
+				writeByte(CONCEPT);
+				writeString(concept.getKey());
+				writeString(value);
+			}
+			writeString(concept.getFrom());
+			writeString(concept.getUpdated());
+		}
+	}
+
+	private void writeSources(List<Source> sources) throws IOException
+	{
+		if(sources == null)
+			return;
+
+		for(Source source : sources)
+		{
+			if(source == null)
+				continue;
+
+			writeByte(SOURCE);
+			writeString(source.getKey());
+			writeString(source.getName());
+			writeString(source.getValue());
+			writeString(source.getType());
+			writeString(source.getFrom());
+			writeString(source.getUpdated());
+
+			Author author = source.getAuthor();
+			if(author != null)
+			{
+				writeByte(AUTHOR);
+				writeString(author.getKey());
+				writeString(author.getValue());
+				writeString(author.getFrom());
+				writeString(author.getUpdated());
+			}
+		}
+	}
+
+	/**
+	 * Tells if the value reads back the same after a trip through a float, as "0.25" does
+	 * and "0.250" or "1" don't
+	 */
+	private static boolean isPlainFloat(Concept concept, String value)
+	{
+		if(value == null || value.length() == 0)
+			return false;
+
+		float number = concept.getFloatValue();
+		// NaN and the infinities read back, but "NaN" isn't worth four bytes
+		if(Float.isNaN(number) || Float.isInfinite(number))
+			return false;
+		return Float.toString(number).equals(value);
+	}
+
+	private void writeString(String value) throws IOException
+	{
+		if(value == null)
+		{
+			writeVarint(NULL_STRING);
+			return;
+		}
+
+		int index = indexOf(value);
+		if(index >= 0)
+		{
+			writeVarint(index + FIRST_INDEX);
+			return;
+		}
+
+		long date = toDate(value);
+		if(date != ISO8601.INVALID)
+		{
+			writeVarint(NEW_DATE);
+			// Zigzag coded, for dates before 1970
+			long seconds = date / 1000;
+			writeVarlong((seconds << 1) ^ (seconds >> 63));
+			return;
+		}
+		writeVarint(NEW_STRING);
+
+		int length = value.length();
+		writeVarint(utf8Length(value));
+		for(int i = 0; i < length; i++)
+		{
+			if(this.position + 3 > this.buffer.length)
+				flushBuffer();
+
+			byte[] b = this.buffer;
+			char c = value.charAt(i);
+			if(c < 0x80)
+				b[this.position++] = (byte)c;
+			else if(c < 0x800)
+			{
+				b[this.position++] = (byte)(0xC0 | (c >> 6));
+				b[this.position++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else
+			{
+				// Surrogates are written one by one, so unpaired ones survive the trip
+				b[this.position++] = (byte)(0xE0 | (c >> 12));
+				b[this.position++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				b[this.position++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Looks a string up in the dictionary, adding it if it isn't there yet
+	 * @return The index of the string, or -1 if it was added
+	 */
+	private int indexOf(String value)
+	{
+		String[] table = this.strings;
+		int mask = table.length - 1;
+		int h = value.hashCode() * 0x9E3779B9;
+		int slot = (h ^ (h >>> 16)) & mask;
+
+		for(String key = table[slot]; key != null; key = table[slot])
+		{
+			if(key == value || key.equals(value))
+				return this.indexes[slot];
+			slot = (slot + 1) & mask;
+		}
+
+		table[slot] = value;
+		this.indexes[slot] = this.dictionarySize++;
+		// Keep the table at most half full
+		if(this.dictionarySize * 2 > table.length)
+			growDictionary();
+		return -1;
+	}
+
+	private void growDictionary()
+	{
+		String[] oldStrings = this.strings;
+		int[] oldIndexes = this.indexes;
+		String[] table = new String[oldStrings.length * 2];
+		int[] indexes = new int[table.length];
+		int mask = table.length - 1;
+
+		for(int i = 0; i < oldStrings.length; i++)
+		{
+			if(oldStrings[i] == null)
+				continue;
+
+			int h = oldStrings[i].hashCode() * 0x9E3779B9;
+			int slot = (h ^ (h >>> 16)) & mask;
+			while(table[slot] != null)
+				slot = (slot + 1) & mask;
+			table[slot] = oldStrings[i];
+			indexes[slot] = oldIndexes[i];
+		}
+		this.strings = table;
+		this.indexes = indexes;
+	}
+
+	/**
+	 * Tells if the string reads back the same after a trip through a number of seconds
+	 * @return The date, or ISO8601.INVALID
+	 */
+	private long toDate(String value)
+	{
+		int length = value.length();
+		if(length != ISO8601.FORMATTED_LENGTH || value.charAt(length - 1) != 'Z')
+			return ISO8601.INVALID;
+
+		long date = ISO8601.parse(value);
+		if(date == ISO8601.INVALID || date % 1000 != 0 || ISO8601.format(date, this.dateChars, 0) != length)
+			return ISO8601.INVALID;
+		for(int i = 0; i < length; i++)
+		{
+			if(this.dateChars[i] != value.charAt(i))
+				return ISO8601.INVALID;
+		}
+		return date;
+	}
+
+	private static int utf8Length(String value)
+	{
+		int length = value.length();
+		int bytes = length;
+
+		for(int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			if(c >= 0x800)
+				bytes += 2;
+			else if(c >= 0x80)
+				bytes++;
+		}
+		return bytes;
+	}
+
+	private void writeVarint(int value) throws IOException
+	{
+		if(this.position + 5 > this.buffer.length)
+			flushBuffer();
+
+		while((value & ~0x7F) != 0)
+		{
+			this.buffer[this.position++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.position++] = (byte)value;
+	}
+
+	private void writeVarlong(long value) throws IOException
+	{
+		if(this.position + 10 > this.buffer.length)
+			flushBuffer();
+
+		while((value & ~0x7FL) != 0)
+		{
+			this.buffer[this.position++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.position++] = (byte)value;
+	}
+
+	private void writeInt(int value) throws IOException
+	{
+		if(this.position + 4 > this.buffer.length)
+			flushBuffer();
+
+		this.buffer[this.position++] = (byte)(value >>> 24);
+		this.buffer[this.position++] = (byte)(value >>> 16);
+		this.buffer[this.position++] = (byte)(value >>> 8);
+		this.buffer[this.position++] = (byte)value;
+	}
+
+	private void writeByte(int value) throws IOException
+	{
+		if(this.position == this.buffer.length)
+			flushBuffer();
+		this.buffer[this.position++] = (byte)value;
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		this.checksum.update(this.buffer, 0, this.position);
+		this.out.write(this.buffer, 0, this.position);
+		this.position = 0;
+	}
+}
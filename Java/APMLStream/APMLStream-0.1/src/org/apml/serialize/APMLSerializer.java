@@ -18,9 +18,16 @@
 
 package org.apml.serialize;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import org.apml.base.*;
-import org.apml.converters.ApplicationsConverter;
+import org.apml.tools.APMLCodecs;
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.StreamException;
 
 /**
  * <p>Responsible for Object-to-APML conversion</p>
@@ -28,48 +35,27 @@ import com.thoughtworks.xstream.XStream;
  */
 public class APMLSerializer
 {
+	/** Number of characters buffered when serializing to a byte stream */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
 	private XStream xstream = null;
-	private ApplicationsConverter appConv = null;
 	
 	/**
-	 * Constructor - Sets up the XStream in accordance to APML spec
+	 * Constructor - Sets up the XStream in accordance to APML spec.<br>
+	 * Building the XStream is expensive, consider {@link APMLCodecs#getSerializer()} instead.
 	 */
 	public APMLSerializer()
 	{
-		xstream = new XStream();
-		appConv = new ApplicationsConverter(xstream.getMapper());
-		xstream.alias("APML", APML.class);
-		xstream.useAttributeFor(APML.class, "version");
-		xstream.useAttributeFor(APML.class, "xmlns");
-		xstream.alias("Head", Head.class);
-		xstream.alias("Body", Body.class);
-		xstream.useAttributeFor(org.apml.base.Body.class, "defaultprofile");
-		xstream.addImplicitCollection(Body.class, "Profiles");
-		xstream.alias("Profile", Profile.class);
-		xstream.useAttributeFor(Profile.class, "name");
-		xstream.alias("ImplicitData", ImplicitData.class);
-		xstream.alias("ExplicitData", ExplicitData.class);
-		xstream.alias("Concept", Concept.class);
-		xstream.useAttributeFor(Concept.class, "key");
-		xstream.useAttributeFor(Concept.class, "value");
-		xstream.useAttributeFor(Concept.class, "from");
-		xstream.useAttributeFor(Concept.class, "updated");
-		xstream.alias("Source", Source.class);
-		xstream.useAttributeFor(Source.class, "key");
-		xstream.useAttributeFor(Source.class, "name");
-		xstream.useAttributeFor(Source.class, "value");
-		xstream.useAttributeFor(Source.class, "from");
-		xstream.useAttributeFor(Source.class, "updated");
-		xstream.alias("Author", Author.class);
-		xstream.useAttributeFor(Author.class, "key");
-		xstream.useAttributeFor(Author.class, "value");
-		xstream.useAttributeFor(Author.class, "from");
-		xstream.useAttributeFor(Author.class, "updated");
-		xstream.registerConverter(appConv);
-		xstream.alias("Applications",Applications.class);
-		xstream.alias("Application", Application.class);
-		//xstream.alias("Application", Application.class);
-		//xstream.useAttributeFor(Application.class, "name");
+		this(APMLCodecs.newXStream());
+	}
+	
+	/**
+	 * Constructor
+	 * @param xstream An XStream set up in accordance to APML spec, see {@link APMLCodecs#newXStream()}
+	 */
+	public APMLSerializer(XStream xstream)
+	{
+		this.xstream = xstream;
 	}
 	
 	/**
@@ -79,9 +65,77 @@ public class APMLSerializer
 	 */
 	public String serialize(APML myAPML)
 	{
+		loadProfiles(myAPML);
 		return this.xstream.toXML(myAPML);
 	}
 	
+	/**
+	 * Serializes an APML object to a character stream.<br>
+	 * Elements are written out as they are visited, so the document is never built as a whole
+	 * in memory. The writer is flushed, but not closed.
+	 * @param myAPML
+	 * @param out Where the APML markup is written
+	 * @throws IOException
+	 */
+	public void serialize(APML myAPML, Writer out) throws IOException
+	{
+		loadProfiles(myAPML);
+		
+		try
+		{
+			this.xstream.toXML(myAPML, out);
+		}
+		catch(StreamException streamEx)
+		{
+			// XStream wraps the errors of the writer
+			if(streamEx.getCause() instanceof IOException)
+				throw (IOException) streamEx.getCause();
+			throw streamEx;
+		}
+		out.flush();
+	}
+	
+	/**
+	 * Serializes an APML object to a byte stream, buffered by {@link #DEFAULT_BUFFER_SIZE} characters.
+	 * No XML declaration is written. The stream is flushed, but not closed.
+	 * @param myAPML
+	 * @param out Where the APML markup is written
+	 * @param charset The encoding of the markup
+	 * @throws IOException
+	 */
+	public void serialize(APML myAPML, OutputStream out, Charset charset) throws IOException
+	{
+		serialize(myAPML, out, charset, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Serializes an APML object to a byte stream. No XML declaration is written.
+	 * The stream is flushed, but not closed.
+	 * @param myAPML
+	 * @param out Where the APML markup is written
+	 * @param charset The encoding of the markup
+	 * @param bufferSize How many characters are buffered before they are encoded and written out
+	 * @throws IOException
+	 */
+	public void serialize(APML myAPML, OutputStream out, Charset charset, int bufferSize) throws IOException
+	{
+		serialize(myAPML, new BufferedWriter(new OutputStreamWriter(out, charset), bufferSize));
+	}
+	
+	/**
+	 * XStream reads the fields directly, so lazily decoded profiles have to be loaded first
+	 * @param myAPML
+	 */
+	private static void loadProfiles(APML myAPML)
+	{
+		if(myAPML.getBody() == null || myAPML.getBody().getProfiles() == null)
+			return;
+		
+		for(Profile p : myAPML.getBody().getProfiles())
+			if(!p.isLoaded())
+				p.getImplicitData();
+	}
+	
 	/**
 	 * Retrieve the XStream for advanced use
 	 * @return XStream
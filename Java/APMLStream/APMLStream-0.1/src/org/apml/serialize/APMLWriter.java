@@ -0,0 +1,357 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.serialize;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import org.apml.base.*;
+
+/**
+ * <p>Writes APML objects as markup by calling their getters, without any reflection.<br>
+ * The output is laid out exactly like the one of the {@link APMLSerializer}: two space
+ * indentation, empty elements closed as &lt;Tag/&gt;, null fields left out and no XML
+ * declaration. A writer is good for a single document and is not thread-safe.<br>
+ * Subclasses can write other documents with the same layout through the protected methods.</p>
+ * @author Tim Schultz
+ */
+public class APMLWriter
+{
+	private static final String INDENT = "  ";
+
+	private Writer out = null;
+	private int depth = 0;
+	private boolean tagInProgress = false;
+	private boolean readyForNewLine = false;
+	private boolean tagIsEmpty = false;
+
+	/**
+	 * Constructor
+	 * @param out Where the markup is written. It is flushed, but not closed, at the end of the document.
+	 */
+	public APMLWriter(Writer out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Writes a whole APML document. Lazily decoded profiles are loaded on the way.
+	 * @param apml The APML object
+	 * @throws IOException
+	 */
+	public void write(APML apml) throws IOException
+	{
+		startNode("APML");
+		attribute("xmlns", apml.getXmlns());
+		attribute("version", apml.getVersion());
+
+		if(apml.getHead() != null)
+			writeHead(apml.getHead());
+		if(apml.getBody() != null)
+			writeBody(apml.getBody());
+		endNode("APML");
+	}
+
+	protected void writeHead(Head head) throws IOException
+	{
+		startNode("Head");
+		textNode("Title", head.getTitle());
+		textNode("Generator", head.getGenerator());
+		textNode("UserEmail", head.getUserEmail());
+		textNode("DateCreated", head.getDateCreated());
+		endNode("Head");
+	}
+
+	private void writeBody(Body body) throws IOException
+	{
+		startNode("Body");
+		attribute("defaultprofile", body.getDefaultProfileName());
+
+		if(body.getApplications() != null)
+			writeApplications(body.getApplications());
+
+		// Profiles are an implicit collection
+		if(body.getProfiles() != null)
+		{
+			for(Profile profile : body.getProfiles())
+			{
+				if(profile == null)
+					nullNode();
+				else
+					writeProfile(profile);
+			}
+		}
+		endNode("Body");
+	}
+
+	protected void writeApplications(List<Application> applications) throws IOException
+	{
+		startNode("Applications");
+		for(Application app : applications)
+		{
+			// Same layout as the ApplicationsConverter, but the data is markup and written as it is
+			startNode("Application");
+			attribute("name", app.getName());
+			markup("\n        " + app.getApplicationData() + "\n      ");
+			endNode("Application");
+		}
+		endNode("Applications");
+	}
+
+	protected void writeProfile(Profile profile) throws IOException
+	{
+		startNode("Profile");
+		attribute("name", profile.getName());
+
+		ImplicitData implicitData = profile.getImplicitData();
+		if(implicitData != null)
+		{
+			startNode("ImplicitData");
+			writeConcepts(implicitData.getConcepts());
+			writeSources(implicitData.getSources());
+			endNode("ImplicitData");
+		}
+
+		ExplicitData explicitData = profile.getExplicitData();
+		if(explicitData != null)
+		{
+			startNode("ExplicitData");
+			writeConcepts(explicitData.getConcepts());
+			writeSources(explicitData.getSources());
+			endNode("ExplicitData");
+		}
+		endNode("Profile");
+	}
+
+	private void writeConcepts(List<Concept> concepts) throws IOException
+	{
+		writeConcepts("Concepts", concepts);
+	}
+
+	/**
+	 * Writes a list of concepts
+	 * @param listName The tag around the list
+	 * @param concepts The concepts, nothing is written if null
+	 * @throws IOException
+	 */
+	protected void writeConcepts(String listName, List<Concept> concepts) throws IOException
+	{
+		if(concepts == null)
+			return;
+
+		startNode(listName);
+		for(Concept concept : concepts)
+		{
+			if(concept == null)
+			{
+				nullNode();
+				continue;
+			}
+			startNode("Concept");
+			attribute("key", concept.getKey());
+			attribute("value", concept.getValue());
+			attribute("from", concept.getFrom());
+			attribute("updated", concept.getUpdated());
+			endNode("Concept");
+		}
+		endNode(listName);
+	}
+
+	private void writeSources(List<Source> sources) throws IOException
+	{
+		writeSources("Sources", sources);
+	}
+
+	/**
+	 * Writes a list of sources
+	 * @param listName The tag around the list
+	 * @param sources The sources, nothing is written if null
+	 * @throws IOException
+	 */
+	protected void writeSources(String listName, List<Source> sources) throws IOException
+	{
+		if(sources == null)
+			return;
+
+		startNode(listName);
+		for(Source source : sources)
+		{
+			if(source == null)
+			{
+				nullNode();
+				continue;
+			}
+			startNode("Source");
+			attribute("key", source.getKey());
+			attribute("name", source.getName());
+			attribute("value", source.getValue());
+			attribute("type", source.getType());
+			attribute("from", source.getFrom());
+			attribute("updated", source.getUpdated());
+
+			Author author = source.getAuthor();
+			if(author != null)
+			{
+				startNode("Author");
+				attribute("key", author.getKey());
+				attribute("value", author.getValue());
+				attribute("from", author.getFrom());
+				attribute("updated", author.getUpdated());
+				endNode("Author");
+			}
+			endNode("Source");
+		}
+		endNode(listName);
+	}
+
+	private void textNode(String name, String value) throws IOException
+	{
+		if(value == null)
+			return;
+
+		startNode(name);
+		text(value);
+		endNode(name);
+	}
+
+	/**
+	 * A null list entry, as XStream writes it
+	 */
+	private void nullNode() throws IOException
+	{
+		startNode("null");
+		endNode("null");
+	}
+
+	protected void startNode(String name) throws IOException
+	{
+		this.tagIsEmpty = false;
+		finishTag();
+		this.out.write('<');
+		this.out.write(name);
+		this.tagInProgress = true;
+		this.depth++;
+		this.readyForNewLine = true;
+		this.tagIsEmpty = true;
+	}
+
+	protected void attribute(String name, String value) throws IOException
+	{
+		if(value == null)
+			return;
+
+		this.out.write(' ');
+		this.out.write(name);
+		this.out.write("=\"");
+		escape(value);
+		this.out.write('"');
+	}
+
+	private void text(String value) throws IOException
+	{
+		this.readyForNewLine = false;
+		this.tagIsEmpty = false;
+		finishTag();
+		escape(value);
+	}
+
+	/**
+	 * Writes markup that is already escaped, such as application data
+	 */
+	private void markup(String value) throws IOException
+	{
+		this.readyForNewLine = false;
+		this.tagIsEmpty = false;
+		finishTag();
+		this.out.write(value);
+	}
+
+	protected void endNode(String name) throws IOException
+	{
+		this.depth--;
+
+		if(this.tagIsEmpty)
+		{
+			this.out.write('/');
+			this.readyForNewLine = false;
+			finishTag();
+		}
+		else
+		{
+			finishTag();
+			this.out.write("</");
+			this.out.write(name);
+			this.out.write('>');
+		}
+		this.readyForNewLine = true;
+
+		if(this.depth == 0)
+			this.out.flush();
+	}
+
+	private void finishTag() throws IOException
+	{
+		if(this.tagInProgress)
+			this.out.write('>');
+		this.tagInProgress = false;
+
+		if(this.readyForNewLine)
+		{
+			this.out.write('\n');
+			for(int i = 0; i < this.depth; i++)
+				this.out.write(INDENT);
+		}
+		this.readyForNewLine = false;
+		this.tagIsEmpty = false;
+	}
+
+	/**
+	 * Writes text and attribute values, escaped like XStream does
+	 */
+	private void escape(String value) throws IOException
+	{
+		int length = value.length();
+		int run = 0;
+
+		for(int i = 0; i < length; i++)
+		{
+			String entity = null;
+
+			switch(value.charAt(i))
+			{
+				case '\0': entity = "&#x0;"; break;
+				case '&': entity = "&amp;"; break;
+				case '<': entity = "&lt;"; break;
+				case '>': entity = "&gt;"; break;
+				case '"': entity = "&quot;"; break;
+				case '\'': entity = "&apos;"; break;
+				case '\r': entity = "&#x0D;"; break;
+				default: continue;
+			}
+
+			// Write the plain characters in one go
+			if(run < i)
+				this.out.write(value, run, i - run);
+			this.out.write(entity);
+			run = i + 1;
+		}
+		if(run < length)
+			this.out.write(value, run, length - run);
+	}
+}
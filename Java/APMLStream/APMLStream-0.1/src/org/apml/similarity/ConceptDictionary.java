@@ -0,0 +1,91 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.similarity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apml.tools.APMLTools;
+
+/**
+ * <p>Numbers concept keys, so profiles can be compared on int ids instead of strings.<br>
+ * Keys are matched ignoring case, like the concept lookups of the APML objects. Ids are handed
+ * out from 0 in the order keys are first seen and never change, so vectors built with the same
+ * dictionary can be compared. The dictionary is thread-safe.</p>
+ * @author Tim Schultz
+ */
+public class ConceptDictionary
+{
+	/** Returned by getId for a key the dictionary doesn't know */
+	public static final int UNKNOWN = -1;
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private final List<String> keys = new ArrayList<String>();
+
+	public ConceptDictionary(){}
+
+	/**
+	 * Retrieve the id of a key, adding the key if it is new
+	 * @param key The concept key
+	 * @return The id
+	 */
+	public synchronized int add(String key)
+	{
+		String folded = APMLTools.foldCase(key);
+		Integer id = this.ids.get(folded);
+
+		if(id == null)
+		{
+			id = Integer.valueOf(this.keys.size());
+			this.ids.put(folded, id);
+			this.keys.add(key);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * Retrieve the id of a key
+	 * @param key The concept key
+	 * @return The id, or UNKNOWN
+	 */
+	public synchronized int getId(String key)
+	{
+		Integer id = this.ids.get(APMLTools.foldCase(key));
+		return (id == null) ? UNKNOWN : id.intValue();
+	}
+
+	/**
+	 * Retrieve a key by id
+	 * @param id The id
+	 * @return The key as first seen
+	 */
+	public synchronized String getKey(int id)
+	{
+		return this.keys.get(id);
+	}
+
+	/**
+	 * @return The number of keys
+	 */
+	public synchronized int size()
+	{
+		return this.keys.size();
+	}
+}
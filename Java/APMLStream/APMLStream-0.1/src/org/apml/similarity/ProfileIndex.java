@@ -0,0 +1,755 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.similarity;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apml.base.APML;
+import org.apml.base.Body;
+import org.apml.base.Profile;
+
+/**
+ * <p>An inverted index over many profiles, for finding the profiles most similar to a given one
+ * by cosine similarity.<br>
+ * Each concept id has a posting list of the profiles that have the concept, with the weight
+ * of the concept divided by the norm of the profile. Profile ids are stored as varint deltas,
+ * the weights as floats, so a posting takes five or six bytes plus the room kept for growth.
+ * Searches walk the lists of the query concepts together and skip the profiles that can't reach
+ * the current top N, using the largest weight of each list, and of each block of BLOCK_SIZE
+ * postings, as bounds (MaxScore).</p>
+ * <p>The more profiles share a concept, the less the search can skip: a query whose concepts
+ * are in most profiles costs close to scoring them all.</p>
+ * <p>Profiles get ids from 0 in the order they are added. A removed profile is only marked;
+ * its postings are dropped when the removed postings outnumber the live ones, or by compact().
+ * The index is thread-safe: searches run in parallel, adding and removing wait for them.</p>
+ * @author Tim Schultz
+ */
+public class ProfileIndex
+{
+	/** The number of postings between two skip entries */
+	static final int BLOCK_SIZE = 64;
+
+	private static final int END = Integer.MAX_VALUE;
+
+	private final ConceptDictionary dictionary;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Postings[] postings = new Postings[0];
+	private String[] names = new String[16];
+	private int[] lengths = new int[16];
+	private final BitSet live = new BitSet();
+	private int nextId = 0;
+	private int liveCount = 0;
+	private long livePostings = 0;
+	private long removedPostings = 0;
+
+	/**
+	 * Constructor - The index numbers concept keys with a dictionary of its own
+	 */
+	public ProfileIndex()
+	{
+		this(new ConceptDictionary());
+	}
+
+	/**
+	 * Constructor
+	 * @param dictionary Numbers the concept keys. Vectors given to the index must be built with it.
+	 */
+	public ProfileIndex(ConceptDictionary dictionary)
+	{
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * @return The dictionary that numbers the concept keys
+	 */
+	public ConceptDictionary getDictionary()
+	{
+		return this.dictionary;
+	}
+
+	/**
+	 * Adds a profile
+	 * @param profile The profile
+	 * @return The id of the profile in the index
+	 */
+	public int add(Profile profile)
+	{
+		return add(profile.getName(), ProfileVector.of(profile, this.dictionary));
+	}
+
+	/**
+	 * Adds all profiles of an APML document
+	 * @param apml The document
+	 * @return The ids of the profiles, in the order of the document
+	 */
+	public int[] addAll(APML apml)
+	{
+		Body body = apml.getBody();
+		List<Profile> profiles = (body == null) ? null : body.getProfiles();
+		int[] ids = new int[(profiles == null) ? 0 : profiles.size()];
+
+		for(int i = 0; i < ids.length; i++)
+			ids[i] = add(profiles.get(i));
+		return ids;
+	}
+
+	/**
+	 * Adds a profile vector
+	 * @param name The name returned with the matches, may be null
+	 * @param vector The vector, built with the dictionary of the index
+	 * @return The id of the profile in the index
+	 */
+	public int add(String name, ProfileVector vector)
+	{
+		int[] ids = vector.getIds();
+		float[] weights = vector.getWeights();
+		double norm = vector.getNorm();
+
+		this.lock.writeLock().lock();
+		try
+		{
+			int id = this.nextId++;
+			if(id == this.names.length)
+			{
+				this.names = (String[]) grow(this.names, new String[id * 2]);
+				this.lengths = (int[]) grow(this.lengths, new int[id * 2]);
+			}
+			this.names[id] = name;
+			this.live.set(id);
+			this.liveCount++;
+
+			if(norm > 0)
+			{
+				for(int i = 0; i < ids.length; i++)
+				{
+					if(weights[i] == 0)
+						continue;
+					postingsOf(ids[i]).add(id, (float) (weights[i] / norm));
+					this.lengths[id]++;
+				}
+			}
+			this.livePostings += this.lengths[id];
+			return id;
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a profile
+	 * @param id The id of the profile
+	 * @return false if there is no such profile
+	 */
+	public boolean remove(int id)
+	{
+		this.lock.writeLock().lock();
+		try
+		{
+			if(id < 0 || !this.live.get(id))
+				return false;
+
+			this.live.clear(id);
+			this.names[id] = null;
+			this.liveCount--;
+			this.livePostings -= this.lengths[id];
+			this.removedPostings += this.lengths[id];
+			if(this.removedPostings > this.livePostings)
+				compactPostings();
+			return true;
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Drops the postings of removed profiles now. The ids of the other profiles don't change.
+	 */
+	public void compact()
+	{
+		this.lock.writeLock().lock();
+		try
+		{
+			compactPostings();
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Determines if a profile is in the index
+	 * @param id The id of the profile
+	 * @return true if it was added and not removed
+	 */
+	public boolean contains(int id)
+	{
+		this.lock.readLock().lock();
+		try
+		{
+			return id >= 0 && this.live.get(id);
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the name of a profile
+	 * @param id The id of the profile
+	 * @return The name, or null if there is no such profile
+	 */
+	public String getName(int id)
+	{
+		this.lock.readLock().lock();
+		try
+		{
+			return (id >= 0 && this.live.get(id)) ? this.names[id] : null;
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of profiles in the index
+	 */
+	public int size()
+	{
+		this.lock.readLock().lock();
+		try
+		{
+			return this.liveCount;
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The bytes used by the posting lists, including the ones of removed profiles
+	 */
+	public long getPostingBytes()
+	{
+		this.lock.readLock().lock();
+		try
+		{
+			long bytes = 0;
+			for(int i = 0; i < this.postings.length; i++)
+				if(this.postings[i] != null)
+					bytes += this.postings[i].bytes();
+			return bytes;
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the profiles most similar to a profile
+	 * @param profile The profile to match. New concept keys are added to the dictionary.
+	 * @param n The number of matches wanted
+	 * @return Up to n matches, most similar first
+	 */
+	public List<Match> search(Profile profile, int n)
+	{
+		return search(ProfileVector.of(profile, this.dictionary), n);
+	}
+
+	/**
+	 * Finds the profiles most similar to a profile vector. Only profiles sharing at least one
+	 * concept with a positive contribution are returned; among equal scores, lower ids come first.
+	 * @param query The vector to match, built with the dictionary of the index
+	 * @param n The number of matches wanted
+	 * @return Up to n matches, most similar first
+	 */
+	public List<Match> search(ProfileVector query, int n)
+	{
+		if(n <= 0 || query.getNorm() == 0)
+			return new ArrayList<Match>();
+
+		this.lock.readLock().lock();
+		try
+		{
+			return searchLocked(query, n);
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
+	}
+
+	private List<Match> searchLocked(ProfileVector query, int n)
+	{
+		int[] queryIds = query.getIds();
+		float[] queryWeights = query.getWeights();
+		double norm = query.getNorm();
+
+		// One cursor per query concept that can add to a score, by ascending bound
+		Cursor[] cursors = new Cursor[queryIds.length];
+		int count = 0;
+		for(int i = 0; i < queryIds.length; i++)
+		{
+			Postings list = (queryIds[i] < this.postings.length) ? this.postings[queryIds[i]] : null;
+			if(list == null || list.count == 0)
+				continue;
+			float weight = (float) (queryWeights[i] / norm);
+			float bound = Math.max(Math.max(weight * list.max, weight * list.min), 0);
+			if(bound > 0)
+				cursors[count++] = new Cursor(list, weight, bound);
+		}
+		sortByBound(cursors, count);
+
+		// bounds[i]: the most the first i + 1 cursors can add together
+		double[] bounds = new double[count];
+		for(int i = 0; i < count; i++)
+			bounds[i] = (i == 0 ? 0 : bounds[i - 1]) + cursors[i].bound;
+
+		// No more matches than there are profiles, however many are asked for
+		if(this.liveCount == 0)
+			return new ArrayList<Match>();
+		TopProfiles top = new TopProfiles(Math.min(n, this.liveCount));
+		int firstEssential = 0;
+
+		while(true)
+		{
+			// The profiles only found in the first lists can't beat the threshold any more
+			double threshold = top.threshold();
+			while(firstEssential < count && bounds[firstEssential] <= threshold)
+				firstEssential++;
+			if(firstEssential == count)
+				break;
+
+			int doc = END;
+			for(int i = firstEssential; i < count; i++)
+				if(cursors[i].doc < doc)
+					doc = cursors[i].doc;
+			if(doc == END)
+				break;
+
+			double score = 0;
+			for(int i = firstEssential; i < count; i++)
+			{
+				if(cursors[i].doc == doc)
+				{
+					score += cursors[i].queryWeight * cursors[i].weight;
+					cursors[i].next();
+				}
+			}
+			if(!this.live.get(doc) || firstEssential > 0 && score + bounds[firstEssential - 1] <= threshold)
+				continue;
+
+			// The bound of the block that would hold the profile is checked before decoding it
+			for(int i = firstEssential - 1; i >= 0; i--)
+			{
+				Cursor cursor = cursors[i];
+				double rest = (i == 0) ? 0 : bounds[i - 1];
+				float blockBound = cursor.blockBound(doc);
+				if(score + blockBound + rest <= threshold)
+					break;
+				if(blockBound == 0)
+					continue;
+				cursor.advance(doc);
+				if(cursor.doc == doc)
+					score += cursor.queryWeight * cursor.weight;
+			}
+			if(score > threshold)
+				top.offer(doc, score);
+		}
+		return top.getResult(this.names);
+	}
+
+	private Postings postingsOf(int conceptId)
+	{
+		if(conceptId >= this.postings.length)
+			this.postings = (Postings[]) grow(this.postings, new Postings[Math.max(conceptId + 1, this.postings.length * 2)]);
+		Postings list = this.postings[conceptId];
+		if(list == null)
+		{
+			list = new Postings();
+			this.postings[conceptId] = list;
+		}
+		return list;
+	}
+
+	private void compactPostings()
+	{
+		for(int i = 0; i < this.postings.length; i++)
+		{
+			Postings list = this.postings[i];
+			if(list == null)
+				continue;
+			list = list.without(this.live);
+			this.postings[i] = (list.count == 0) ? null : list;
+		}
+		this.removedPostings = 0;
+	}
+
+	private static Object grow(Object array, Object larger)
+	{
+		return resize(array, larger, Array.getLength(array));
+	}
+
+	private static Object resize(Object array, Object resized, int length)
+	{
+		System.arraycopy(array, 0, resized, 0, length);
+		return resized;
+	}
+
+	private static void sortByBound(Cursor[] cursors, int count)
+	{
+		for(int i = 1; i < count; i++)
+		{
+			Cursor cursor = cursors[i];
+			int j = i;
+			for(; j > 0 && cursors[j - 1].bound > cursor.bound; j--)
+				cursors[j] = cursors[j - 1];
+			cursors[j] = cursor;
+		}
+	}
+
+	/**
+	 * <p>A profile found by a search.</p>
+	 */
+	public static class Match
+	{
+		private final int id;
+		private final String name;
+		private final float score;
+
+		Match(int id, String name, float score)
+		{
+			this.id = id;
+			this.name = name;
+			this.score = score;
+		}
+
+		/**
+		 * @return The id of the profile in the index
+		 */
+		public int getId()
+		{
+			return this.id;
+		}
+
+		/**
+		 * @return The name the profile was added with
+		 */
+		public String getName()
+		{
+			return this.name;
+		}
+
+		/**
+		 * @return The cosine similarity to the query
+		 */
+		public float getScore()
+		{
+			return this.score;
+		}
+
+		public String toString()
+		{
+			return this.id + " " + this.name + " " + this.score;
+		}
+	}
+
+	/**
+	 * The postings of one concept: profile ids in ascending order as varint deltas, the weights
+	 * in a parallel array, and a skip entry every BLOCK_SIZE postings.
+	 */
+	private static final class Postings
+	{
+		byte[] ids = new byte[8];
+		int length = 0;
+		float[] weights = new float[2];
+		int count = 0;
+		int last = -1;
+		float max = Float.NEGATIVE_INFINITY;
+		float min = Float.POSITIVE_INFINITY;
+
+		// skipLast[b]: the id before block b, skipOffset[b]: where block b starts in ids,
+		// blockMax[b]: the largest weight in block b, blockMin[b]: the smallest
+		int[] skipLast = new int[1];
+		int[] skipOffset = new int[1];
+		float[] blockMax = new float[1];
+		float[] blockMin = new float[1];
+
+		void add(int id, float weight)
+		{
+			if(this.count % BLOCK_SIZE == 0)
+			{
+				int block = this.count / BLOCK_SIZE;
+				if(block == this.skipLast.length)
+				{
+					this.skipLast = (int[]) grow(this.skipLast, new int[block * 2]);
+					this.skipOffset = (int[]) grow(this.skipOffset, new int[block * 2]);
+					this.blockMax = (float[]) grow(this.blockMax, new float[block * 2]);
+					this.blockMin = (float[]) grow(this.blockMin, new float[block * 2]);
+				}
+				this.skipLast[block] = this.last;
+				this.skipOffset[block] = this.length;
+				this.blockMax[block] = weight;
+				this.blockMin[block] = weight;
+			}
+			if(this.length + 5 > this.ids.length)
+				this.ids = (byte[]) grow(this.ids, new byte[this.ids.length * 2 + 5]);
+			if(this.count == this.weights.length)
+				this.weights = (float[]) grow(this.weights, new float[this.count * 2]);
+
+			int delta = id - this.last;
+			while(delta > 0x7F)
+			{
+				this.ids[this.length++] = (byte) (delta | 0x80);
+				delta >>>= 7;
+			}
+			this.ids[this.length++] = (byte) delta;
+			this.weights[this.count++] = weight;
+			this.last = id;
+			this.max = Math.max(this.max, weight);
+			this.min = Math.min(this.min, weight);
+			int block = (this.count - 1) / BLOCK_SIZE;
+			this.blockMax[block] = Math.max(this.blockMax[block], weight);
+			this.blockMin[block] = Math.min(this.blockMin[block], weight);
+		}
+
+		Postings without(BitSet live)
+		{
+			Postings kept = new Postings();
+			Cursor cursor = new Cursor(this, 0, 0);
+			for(; cursor.doc != END; cursor.next())
+				if(live.get(cursor.doc))
+					kept.add(cursor.doc, cursor.weight);
+			kept.trim();
+			return kept;
+		}
+
+		/**
+		 * Drops the room kept for more postings
+		 */
+		void trim()
+		{
+			int blocks = (this.count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			this.ids = (byte[]) resize(this.ids, new byte[this.length], this.length);
+			this.weights = (float[]) resize(this.weights, new float[this.count], this.count);
+			this.skipLast = (int[]) resize(this.skipLast, new int[blocks], blocks);
+			this.skipOffset = (int[]) resize(this.skipOffset, new int[blocks], blocks);
+			this.blockMax = (float[]) resize(this.blockMax, new float[blocks], blocks);
+			this.blockMin = (float[]) resize(this.blockMin, new float[blocks], blocks);
+		}
+
+		long bytes()
+		{
+			return this.ids.length + 4L * this.weights.length + 16L * this.skipLast.length;
+		}
+	}
+
+	/**
+	 * Walks a posting list. doc is the current profile id, END past the last one.
+	 */
+	private static final class Cursor
+	{
+		final Postings list;
+		final float queryWeight;
+		final float bound;
+		int doc = -1;
+		float weight;
+		int index = 0;
+		int offset = 0;
+		int shallowBlock = 0;
+
+		Cursor(Postings list, float queryWeight, float bound)
+		{
+			this.list = list;
+			this.queryWeight = queryWeight;
+			this.bound = bound;
+			next();
+		}
+
+		/**
+		 * The most this list can add to the score of a profile, from the block that would hold
+		 * it. Only looks at the skip entries, nothing is decoded.
+		 * @param target A profile id, not lower than in earlier calls
+		 */
+		float blockBound(int target)
+		{
+			Postings list = this.list;
+			if(target > list.last)
+				return 0;
+			int blocks = (list.count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			while(this.shallowBlock + 1 < blocks && list.skipLast[this.shallowBlock + 1] < target)
+				this.shallowBlock++;
+			float weight = this.queryWeight;
+			return Math.max(Math.max(weight * list.blockMax[this.shallowBlock], weight * list.blockMin[this.shallowBlock]), 0);
+		}
+
+		void next()
+		{
+			if(this.index == this.list.count)
+			{
+				this.doc = END;
+				return;
+			}
+			byte[] ids = this.list.ids;
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do
+			{
+				b = ids[this.offset++];
+				delta |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while(b < 0);
+			this.doc += delta;
+			this.weight = this.list.weights[this.index++];
+		}
+
+		/**
+		 * Moves to the first profile with an id of at least target
+		 */
+		void advance(int target)
+		{
+			if(this.doc >= target)
+				return;
+
+			// Jump over the blocks that end before target
+			int block = (this.index - 1) / BLOCK_SIZE;
+			int next = block + 1;
+			int blocks = (this.list.count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			while(next < blocks && this.list.skipLast[next] < target)
+				next++;
+			if(next - 1 > block)
+			{
+				block = next - 1;
+				this.doc = this.list.skipLast[block];
+				this.offset = this.list.skipOffset[block];
+				this.index = block * BLOCK_SIZE;
+			}
+			while(this.doc < target)
+				next();
+		}
+	}
+
+	/**
+	 * The best profiles seen so far, in a min-heap on score with the higher id on top among
+	 * equal scores
+	 */
+	private static final class TopProfiles
+	{
+		private final int[] ids;
+		private final double[] scores;
+		private int size = 0;
+
+		TopProfiles(int n)
+		{
+			this.ids = new int[n];
+			this.scores = new double[n];
+		}
+
+		/**
+		 * @return The score to beat, 0 until the heap is full
+		 */
+		double threshold()
+		{
+			return (this.size < this.ids.length) ? 0 : this.scores[0];
+		}
+
+		/**
+		 * Only called with scores above the threshold
+		 */
+		void offer(int id, double score)
+		{
+			if(this.size < this.ids.length)
+			{
+				int i = this.size++;
+				while(i > 0 && worse(id, score, this.ids[(i - 1) / 2], this.scores[(i - 1) / 2]))
+				{
+					this.ids[i] = this.ids[(i - 1) / 2];
+					this.scores[i] = this.scores[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				this.ids[i] = id;
+				this.scores[i] = score;
+			}
+			else
+				siftDown(id, score);
+		}
+
+		/**
+		 * Puts an entry at the top and moves it down to its place
+		 */
+		private void siftDown(int id, double score)
+		{
+			int i = 0;
+			while(true)
+			{
+				int child = 2 * i + 1;
+				if(child >= this.size)
+					break;
+				if(child + 1 < this.size && worse(this.ids[child + 1], this.scores[child + 1], this.ids[child], this.scores[child]))
+					child++;
+				if(!worse(this.ids[child], this.scores[child], id, score))
+					break;
+				this.ids[i] = this.ids[child];
+				this.scores[i] = this.scores[child];
+				i = child;
+			}
+			this.ids[i] = id;
+			this.scores[i] = score;
+		}
+
+		private static boolean worse(int id, double score, int otherId, double otherScore)
+		{
+			return score < otherScore || (score == otherScore && id > otherId);
+		}
+
+		/**
+		 * Empties the heap, worst first, into a list ordered best first
+		 */
+		List<Match> getResult(String[] names)
+		{
+			Match[] matches = new Match[this.size];
+			while(this.size > 0)
+			{
+				matches[this.size - 1] = new Match(this.ids[0], names[this.ids[0]], (float) this.scores[0]);
+				this.size--;
+				if(this.size > 0)
+					siftDown(this.ids[this.size], this.scores[this.size]);
+			}
+			List<Match> result = new ArrayList<Match>(matches.length);
+			for(int i = 0; i < matches.length; i++)
+				result.add(matches[i]);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.similarity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Scores how much two profiles share, on their {@link ProfileVector}s.<br>
+ * Each measure walks the two sorted id arrays once, side by side, so comparing two profiles
+ * costs O(n + m) int compares and no string compare at all. The measures are:</p>
+ * <ul>
+ * <li>{@link Measure#COSINE}: the dot product of the weights over the product of the norms</li>
+ * <li>{@link Measure#JACCARD}: the shared concepts over all concepts of either profile, ignoring the weights</li>
+ * <li>{@link Measure#WEIGHTED_OVERLAP}: the sum of the smaller weight of each shared concept over the
+ * smaller of the two sums of weights, with negative weights counted as 0</li>
+ * </ul>
+ * <p>All of them give 0 for profiles with nothing in common, and 1 for identical profiles, or in
+ * the case of the weighted overlap, when one profile's interests are contained in the other's.</p>
+ * <p>{@link #scoreAll(ProfileVector, List, Measure)} compares one profile with many, in the calling
+ * thread or split into chunks on an ExecutorService. An instance is thread-safe.</p>
+ * @author Tim Schultz
+ */
+public class ProfileSimilarity
+{
+	/** Candidates scored by one task of scoreAll */
+	public static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * The similarity measures
+	 */
+	public enum Measure { COSINE, JACCARD, WEIGHTED_OVERLAP }
+
+	private ExecutorService executor = null;
+
+	/**
+	 * Constructor - scoreAll runs in the calling thread
+	 */
+	public ProfileSimilarity()
+	{
+		this(null);
+	}
+
+	/**
+	 * Constructor
+	 * @param executor Runs the chunks of scoreAll, or null to run them in the calling thread.
+	 * It is not shut down by this class.
+	 */
+	public ProfileSimilarity(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Scores a profile against many
+	 * @param query The profile to match
+	 * @param candidates The profiles to score, built with the same dictionary
+	 * @param measure The similarity measure
+	 * @return The score of each candidate, in the order of the list
+	 * @throws InterruptedException If the calling thread is interrupted while it waits for the chunks
+	 */
+	public float[] scoreAll(final ProfileVector query, final List<ProfileVector> candidates, final Measure measure) throws InterruptedException
+	{
+		final float[] scores = new float[candidates.size()];
+
+		if(this.executor == null || scores.length <= CHUNK_SIZE)
+		{
+			score(query, candidates, measure, scores, 0, scores.length);
+			return scores;
+		}
+
+		List<Future<?>> chunks = new ArrayList<Future<?>>();
+		try
+		{
+			for(int start = 0; start < scores.length; start += CHUNK_SIZE)
+			{
+				final int from = start;
+				final int to = Math.min(start + CHUNK_SIZE, scores.length);
+				chunks.add(this.executor.submit(new Runnable()
+				{
+					public void run()
+					{
+						score(query, candidates, measure, scores, from, to);
+					}
+				}));
+			}
+			for(int i = 0; i < chunks.size(); i++)
+				chunks.get(i).get();
+		}
+		catch(ExecutionException exEx)
+		{
+			Throwable cause = exEx.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+		finally
+		{
+			// Only left running when something went wrong
+			for(int i = 0; i < chunks.size(); i++)
+				chunks.get(i).cancel(true);
+		}
+		return scores;
+	}
+
+	/**
+	 * Scores two profiles
+	 * @param measure The similarity measure
+	 * @param a A profile
+	 * @param b Another profile, built with the same dictionary
+	 * @return The score, from 0 to 1 for non-negative weights
+	 */
+	public static double score(Measure measure, ProfileVector a, ProfileVector b)
+	{
+		switch(measure)
+		{
+			case COSINE:
+				return cosine(a, b);
+			case JACCARD:
+				return jaccard(a, b);
+			default:
+				return weightedOverlap(a, b);
+		}
+	}
+
+	/**
+	 * @return The cosine of the angle between the two profiles, 0 if one of them is empty
+	 */
+	public static double cosine(ProfileVector a, ProfileVector b)
+	{
+		if(a.getNorm() == 0 || b.getNorm() == 0)
+			return 0;
+
+		int[] aIds = a.getIds();
+		int[] bIds = b.getIds();
+		float[] aWeights = a.getWeights();
+		float[] bWeights = b.getWeights();
+		double dot = 0;
+		int i = 0;
+		int j = 0;
+
+		while(i < aIds.length && j < bIds.length)
+		{
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else
+				dot += (double) aWeights[i++] * bWeights[j++];
+		}
+		return dot / (a.getNorm() * b.getNorm());
+	}
+
+	/**
+	 * @return The shared concepts over the concepts of either profile, 0 if both are empty
+	 */
+	public static double jaccard(ProfileVector a, ProfileVector b)
+	{
+		int shared = countShared(a.getIds(), b.getIds());
+		int union = a.size() + b.size() - shared;
+		return (union == 0) ? 0 : (double) shared / union;
+	}
+
+	/**
+	 * @return The sum of the smaller weight of each shared concept over the smaller sum of
+	 * weights, counting negative weights as 0, or 0 if either sum is 0
+	 */
+	public static double weightedOverlap(ProfileVector a, ProfileVector b)
+	{
+		double smallerSum = Math.min(a.getPositiveSum(), b.getPositiveSum());
+		if(smallerSum == 0)
+			return 0;
+
+		int[] aIds = a.getIds();
+		int[] bIds = b.getIds();
+		float[] aWeights = a.getWeights();
+		float[] bWeights = b.getWeights();
+		double overlap = 0;
+		int i = 0;
+		int j = 0;
+
+		while(i < aIds.length && j < bIds.length)
+		{
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else
+			{
+				float smaller = Math.min(aWeights[i++], bWeights[j++]);
+				if(smaller > 0)
+					overlap += smaller;
+			}
+		}
+		return overlap / smallerSum;
+	}
+
+	private static int countShared(int[] aIds, int[] bIds)
+	{
+		int shared = 0;
+		int i = 0;
+		int j = 0;
+
+		while(i < aIds.length && j < bIds.length)
+		{
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else
+			{
+				shared++;
+				i++;
+				j++;
+			}
+		}
+		return shared;
+	}
+
+	private static void score(ProfileVector query, List<ProfileVector> candidates, Measure measure, float[] scores, int from, int to)
+	{
+		for(int i = from; i < to; i++)
+			scores[i] = (float) score(measure, query, candidates.get(i));
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.similarity;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apml.base.Concept;
+import org.apml.base.ExplicitData;
+import org.apml.base.ImplicitData;
+import org.apml.base.Profile;
+
+/**
+ * <p>The concepts of a profile as a sparse vector: concept ids in ascending order, with their
+ * weights in a parallel array.<br>
+ * A key that appears more than once, in the ImplicitData and the ExplicitData or from several
+ * resources, gets the sum of its values. Concepts whose value isn't a number are left out.
+ * The norm and the sum of the weights are computed once, when the vector is built.</p>
+ * <p>Vectors can't be changed and are safe to share between threads. Only vectors built with
+ * the same {@link ConceptDictionary} can be compared.</p>
+ * @author Tim Schultz
+ */
+public class ProfileVector
+{
+	private final int[] ids;
+	private final float[] weights;
+	private final double norm;
+	private final double positiveSum;
+
+	/**
+	 * Constructor
+	 * @param ids The concept ids, in ascending order without repeats
+	 * @param weights The weight of each id
+	 */
+	public ProfileVector(int[] ids, float[] weights)
+	{
+		if(ids.length != weights.length)
+			throw new IllegalArgumentException("Need one weight per id");
+		for(int i = 1; i < ids.length; i++)
+			if(ids[i] <= ids[i - 1])
+				throw new IllegalArgumentException("The ids must be ascending, without repeats");
+
+		this.ids = ids;
+		this.weights = weights;
+
+		double squares = 0;
+		double positive = 0;
+		for(int i = 0; i < weights.length; i++)
+		{
+			squares += (double) weights[i] * weights[i];
+			if(weights[i] > 0)
+				positive += weights[i];
+		}
+		this.norm = Math.sqrt(squares);
+		this.positiveSum = positive;
+	}
+
+	/**
+	 * Builds the vector of the implicit and explicit concepts of a profile
+	 * @param profile The profile
+	 * @param dictionary Numbers the concept keys, new keys are added to it
+	 * @return The vector
+	 */
+	public static ProfileVector of(Profile profile, ConceptDictionary dictionary)
+	{
+		ImplicitData implicitData = profile.getImplicitData();
+		ExplicitData explicitData = profile.getExplicitData();
+		List<Concept> implicitConcepts = (implicitData == null) ? null : implicitData.getConcepts();
+		List<Concept> explicitConcepts = (explicitData == null) ? null : explicitData.getConcepts();
+		return of(implicitConcepts, explicitConcepts, dictionary);
+	}
+
+	/**
+	 * Builds the vector of one or two lists of concepts
+	 * @param concepts The concepts, may be null
+	 * @param moreConcepts More concepts, may be null
+	 * @param dictionary Numbers the concept keys, new keys are added to it
+	 * @return The vector
+	 */
+	public static ProfileVector of(List<Concept> concepts, List<Concept> moreConcepts, ConceptDictionary dictionary)
+	{
+		int count = (concepts == null ? 0 : concepts.size()) + (moreConcepts == null ? 0 : moreConcepts.size());
+		long[] entries = new long[count];
+		int size = 0;
+
+		size = collect(concepts, dictionary, entries, size);
+		size = collect(moreConcepts, dictionary, entries, size);
+
+		// Sort by id: the id sits in the high bits, the bits of the weight in the low ones
+		Arrays.sort(entries, 0, size);
+		int[] ids = new int[size];
+		float[] weights = new float[size];
+		int unique = 0;
+
+		for(int i = 0; i < size; i++)
+		{
+			int id = (int) (entries[i] >>> 32);
+			float weight = Float.intBitsToFloat((int) entries[i]);
+			if(unique > 0 && ids[unique - 1] == id)
+				weights[unique - 1] += weight;
+			else
+			{
+				ids[unique] = id;
+				weights[unique] = weight;
+				unique++;
+			}
+		}
+
+		if(unique < size)
+		{
+			int[] uniqueIds = new int[unique];
+			float[] uniqueWeights = new float[unique];
+			System.arraycopy(ids, 0, uniqueIds, 0, unique);
+			System.arraycopy(weights, 0, uniqueWeights, 0, unique);
+			ids = uniqueIds;
+			weights = uniqueWeights;
+		}
+		return new ProfileVector(ids, weights);
+	}
+
+	private static int collect(List<Concept> concepts, ConceptDictionary dictionary, long[] entries, int size)
+	{
+		if(concepts == null)
+			return size;
+
+		for(int i = 0; i < concepts.size(); i++)
+		{
+			Concept concept = concepts.get(i);
+			if(concept == null || concept.getKey() == null)
+				continue;
+			float value = concept.getFloatValue();
+			if(Float.isNaN(value))
+				continue;
+			entries[size++] = ((long) dictionary.add(concept.getKey()) << 32) | (Float.floatToIntBits(value) & 0xFFFFFFFFL);
+		}
+		return size;
+	}
+
+	/**
+	 * @return The number of concepts
+	 */
+	public int size()
+	{
+		return this.ids.length;
+	}
+
+	/**
+	 * @return The concept ids in ascending order. The array is shared, don't change it.
+	 */
+	public int[] getIds()
+	{
+		return this.ids;
+	}
+
+	/**
+	 * @return The weights, in the order of getIds(). The array is shared, don't change it.
+	 */
+	public float[] getWeights()
+	{
+		return this.weights;
+	}
+
+	/**
+	 * Retrieve the weight of a concept
+	 * @param id The concept id
+	 * @return The weight, 0 if the profile doesn't have the concept
+	 */
+	public float getWeight(int id)
+	{
+		int i = Arrays.binarySearch(this.ids, id);
+		return (i < 0) ? 0 : this.weights[i];
+	}
+
+	/**
+	 * @return The euclidean length of the vector
+	 */
+	public double getNorm()
+	{
+		return this.norm;
+	}
+
+	/**
+	 * @return The sum of the positive weights
+	 */
+	public double getPositiveSum()
+	{
+		return this.positiveSum;
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>A read-only store of profiles, memory-mapped from a file written by a {@link ProfileStoreWriter}.<br>
+ * Profiles are looked up by user id and read in place: {@link #getProfile(String)} returns a
+ * {@link StoredProfile} view over the mapped bytes, and its concepts are only decoded when their
+ * getters are called. Nothing is loaded on the heap when a store is opened, so a store can hold
+ * millions of profiles and leave their pages to the operating system.</p>
+ * <p>The file holds a header, the concept records of each profile, the strings shared by all
+ * profiles and a hash index of the strings, which also leads from a user id to its profile. Keys, from
+ * attributes, profile names and user ids are stored once and referred to by id. A concept takes
+ * {@value #CONCEPT_SIZE} bytes: the id of its key, its value as a float, the id of its from
+ * attribute and its updated attribute in milliseconds. The concepts of a profile are sorted by
+ * the id of their key.<br>
+ * The file is mapped in segments, so it can be larger than 2 GB. A profile or a string never
+ * spans two segments.</p>
+ * <p>A store is safe to read from any number of threads.</p>
+ * @author Tim Schultz
+ */
+public class ProfileStore
+{
+	// "APMS"
+	static final int MAGIC = 0x41504D53;
+	static final int VERSION = 1;
+	static final int DEFAULT_SEGMENT_BITS = 30;
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_HEADER_SIZE = 16;
+	// The id of a string plus one, its hash, the record of the user it names or -1, where
+	// the string is, and padding to a power of two. The slots start on a multiple of their
+	// size, so they don't span segments
+	static final int SLOT_SIZE = 32;
+	/** The size of a stored concept, in bytes */
+	public static final int CONCEPT_SIZE = 20;
+
+	private ByteBuffer[] segments = null;
+	private int segmentBits = 0;
+	private long segmentMask = 0;
+	private int userCount = 0;
+	private int stringCount = 0;
+	private int slotCount = 0;
+	private long stringOffsetsAt = 0;
+	private long slotsAt = 0;
+	private long userIdsAt = 0;
+	private long userRecordsAt = 0;
+
+	/**
+	 * Constructor - Maps a store file
+	 * @param file A file written by a ProfileStoreWriter
+	 * @throws IOException If the file can't be read or isn't a profile store
+	 */
+	public ProfileStore(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try
+		{
+			long length = raf.length();
+			if(length < HEADER_SIZE || raf.readInt() != MAGIC)
+				throw new IOException(file + " is not a profile store");
+			int version = raf.readInt();
+			if(version != VERSION)
+				throw new IOException("Unsupported profile store version " + version);
+
+			this.segmentBits = raf.readInt();
+			this.userCount = raf.readInt();
+			this.stringCount = raf.readInt();
+			this.slotCount = raf.readInt();
+			this.stringOffsetsAt = raf.readLong();
+			this.slotsAt = raf.readLong();
+			this.userIdsAt = raf.readLong();
+			this.userRecordsAt = raf.readLong();
+			if(raf.readLong() != length || this.segmentBits < 12 || this.segmentBits > 30)
+				throw new IOException(file + " is not a complete profile store");
+
+			// The mappings stay valid after the channel is closed
+			long segmentSize = 1L << this.segmentBits;
+			this.segmentMask = segmentSize - 1;
+			this.segments = new ByteBuffer[(int)((length + segmentSize - 1) >>> this.segmentBits)];
+			FileChannel channel = raf.getChannel();
+			for(int i = 0; i < this.segments.length; i++)
+			{
+				long start = (long)i << this.segmentBits;
+				this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return The number of profiles in the store
+	 */
+	public int size()
+	{
+		return this.userCount;
+	}
+
+	/**
+	 * Tells if the store holds the profile of a user
+	 * @param userId The user
+	 * @return True if there is a profile for the user
+	 */
+	public boolean contains(String userId)
+	{
+		long slot = findSlot(userId);
+		return slot >= 0 && getLong(slot + 8) >= 0;
+	}
+
+	/**
+	 * Looks up the profile of a user
+	 * @param userId The user
+	 * @return A view of the profile, or null if the store doesn't hold one for the user
+	 */
+	public StoredProfile getProfile(String userId)
+	{
+		long slot = findSlot(userId);
+		if(slot < 0)
+			return null;
+
+		long record = getLong(slot + 8);
+		if(record < 0)
+			return null;
+		return new StoredProfile(this, segment(record), offset(record), getInt(slot) - 1);
+	}
+
+	/**
+	 * Retrieves a profile by its position in the store, to go through all of them
+	 * @param index From 0 to size() - 1. The order of the profiles is not the order they were added in.
+	 * @return A view of the profile
+	 */
+	public StoredProfile getProfile(int index)
+	{
+		if(index < 0 || index >= this.userCount)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.userCount);
+
+		long record = getLong(this.userRecordsAt + 8L * index);
+		int userId = getInt(this.userIdsAt + 4L * index);
+		return new StoredProfile(this, segment(record), offset(record), userId);
+	}
+
+	/**
+	 * Looks a string up in the hash index
+	 * @return The id of the string, or -1 if the store doesn't hold it
+	 */
+	int indexOf(String value)
+	{
+		long slot = findSlot(value);
+		return slot < 0 ? -1 : getInt(slot) - 1;
+	}
+
+	/**
+	 * @return The position of the slot of a string in the file, or -1 if the store doesn't hold it
+	 */
+	private long findSlot(String value)
+	{
+		if(value == null)
+			return -1;
+
+		int hash = value.hashCode();
+		int slot = slot(hash, this.slotCount);
+		while(true)
+		{
+			long at = this.slotsAt + (long)SLOT_SIZE * slot;
+			int id = getInt(at) - 1;
+			if(id < 0)
+				return -1;
+			if(getInt(at + 4) == hash && equals(getLong(at + 16), value))
+				return at;
+			slot = (slot + 1) & (this.slotCount - 1);
+		}
+	}
+
+	/**
+	 * Decodes a string
+	 * @param id The id of the string, or -1 for null
+	 */
+	String getString(int id)
+	{
+		if(id < 0)
+			return null;
+
+		long at = getLong(this.stringOffsetsAt + 8L * id);
+		ByteBuffer segment = segment(at);
+		int offset = offset(at);
+		int length = segment.getInt(offset);
+		char[] chars = new char[length];
+		int n = 0;
+		for(int i = offset + 4; i < offset + 4 + length; )
+		{
+			int b = segment.get(i++);
+			if(b >= 0)
+				chars[n++] = (char)b;
+			else if((b & 0xE0) == 0xC0)
+				chars[n++] = (char)(((b & 0x1F) << 6) | (segment.get(i++) & 0x3F));
+			else
+			{
+				chars[n++] = (char)(((b & 0x0F) << 12) | ((segment.get(i) & 0x3F) << 6) | (segment.get(i + 1) & 0x3F));
+				i += 2;
+			}
+		}
+		return new String(chars, 0, n);
+	}
+
+	/**
+	 * Compares a stored string to a string, without decoding it
+	 */
+	private boolean equals(long at, String value)
+	{
+		ByteBuffer segment = segment(at);
+		int offset = offset(at);
+		int end = offset + 4 + segment.getInt(offset);
+		int i = offset + 4;
+
+		for(int c = 0; c < value.length(); c++)
+		{
+			char ch = value.charAt(c);
+			if(ch < 0x80)
+			{
+				if(i >= end || segment.get(i++) != ch)
+					return false;
+			}
+			else if(ch < 0x800)
+			{
+				if(i + 1 >= end || segment.get(i++) != (byte)(0xC0 | (ch >> 6)) || segment.get(i++) != (byte)(0x80 | (ch & 0x3F)))
+					return false;
+			}
+			else
+			{
+				if(i + 2 >= end || segment.get(i++) != (byte)(0xE0 | (ch >> 12))
+						|| segment.get(i++) != (byte)(0x80 | ((ch >> 6) & 0x3F)) || segment.get(i++) != (byte)(0x80 | (ch & 0x3F)))
+					return false;
+			}
+		}
+		return i == end;
+	}
+
+	/**
+	 * Encodes a string as UTF-8, each surrogate on its own so unpaired ones survive
+	 */
+	static byte[] encode(String value)
+	{
+		int length = value.length();
+		int size = 0;
+		for(int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			size += (c < 0x80) ? 1 : (c < 0x800) ? 2 : 3;
+		}
+
+		byte[] bytes = new byte[size];
+		int n = 0;
+		for(int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			if(c < 0x80)
+				bytes[n++] = (byte)c;
+			else if(c < 0x800)
+			{
+				bytes[n++] = (byte)(0xC0 | (c >> 6));
+				bytes[n++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else
+			{
+				bytes[n++] = (byte)(0xE0 | (c >> 12));
+				bytes[n++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				bytes[n++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return The first slot of the hash index to look at for a string
+	 */
+	static int slot(int hash, int slotCount)
+	{
+		int h = hash * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (slotCount - 1);
+	}
+
+	private ByteBuffer segment(long at)
+	{
+		return this.segments[(int)(at >>> this.segmentBits)];
+	}
+
+	private int offset(long at)
+	{
+		return (int)(at & this.segmentMask);
+	}
+
+	private int getInt(long at)
+	{
+		return segment(at).getInt(offset(at));
+	}
+
+	private long getLong(long at)
+	{
+		return segment(at).getLong(offset(at));
+	}
+}
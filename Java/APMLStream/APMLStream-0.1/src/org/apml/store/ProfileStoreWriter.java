@@ -0,0 +1,347 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apml.base.*;
+import org.apml.base.exceptions.ProfileNotFoundException;
+
+/**
+ * <p>Packs profiles into a file that a {@link ProfileStore} maps into memory.<br>
+ * Profiles are written out as they are added, so only the strings and the user index are
+ * kept on the heap while the file is built. The file is complete once {@link #close()}
+ * returned.</p>
+ * <p>Only the concepts of a profile are stored: their key, their value as a float, their
+ * from attribute and their updated attribute as a date. Sources are left out.</p>
+ * <p>A writer is not thread-safe.</p>
+ * @author Tim Schultz
+ */
+public class ProfileStoreWriter
+{
+	private File file = null;
+	private int segmentBits = 0;
+	private DataOutputStream out = null;
+	private long position = 0;
+	private HashMap<String, Integer> stringIds = new HashMap<String, Integer>();
+	private List<String> strings = new ArrayList<String>();
+	private HashMap<String, Long> users = new HashMap<String, Long>();
+	private long[] order = new long[16];
+
+	/**
+	 * Constructor - Maps the file in segments of 1 GB
+	 * @param file The file to create or overwrite
+	 * @throws IOException
+	 */
+	public ProfileStoreWriter(File file) throws IOException
+	{
+		this(file, ProfileStore.DEFAULT_SEGMENT_BITS);
+	}
+
+	/**
+	 * Constructor
+	 * @param file The file to create or overwrite
+	 * @param segmentBits The file is mapped in segments of 2^segmentBits bytes, from 12 to 30.
+	 * A single profile must fit in a segment.
+	 * @throws IOException
+	 */
+	public ProfileStoreWriter(File file, int segmentBits) throws IOException
+	{
+		if(segmentBits < 12 || segmentBits > 30)
+			throw new IllegalArgumentException("Segment bits out of range: " + segmentBits);
+
+		this.file = file;
+		this.segmentBits = segmentBits;
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		// The header is filled in by close()
+		pad(ProfileStore.HEADER_SIZE);
+	}
+
+	/**
+	 * Adds the default profile of a user, or the first one if the document has no default profile
+	 * @param userId The user the profile belongs to
+	 * @param apml The APML document of the user
+	 * @throws IOException
+	 * @throws ProfileNotFoundException If the document has no profiles
+	 */
+	public void add(String userId, APML apml) throws IOException, ProfileNotFoundException
+	{
+		Body body = apml.getBody();
+		if(body == null || body.getProfiles() == null || body.getProfiles().isEmpty())
+			throw new ProfileNotFoundException("The APML document of '" + userId + "' has no profiles!");
+
+		Profile profile = null;
+		try
+		{
+			profile = body.getDefaultProfile();
+		}
+		catch(ProfileNotFoundException pnfEx)
+		{
+			profile = body.getProfiles().get(0);
+		}
+		add(userId, profile);
+	}
+
+	/**
+	 * Adds the profile of a user
+	 * @param userId The user the profile belongs to
+	 * @param profile The profile
+	 * @throws IOException
+	 */
+	public void add(String userId, Profile profile) throws IOException
+	{
+		if(this.users.containsKey(userId))
+			throw new IllegalArgumentException("The user '" + userId + "' is already in the store");
+
+		List<Concept> implicitConcepts = null;
+		List<Concept> explicitConcepts = null;
+		if(profile.getImplicitData() != null)
+			implicitConcepts = profile.getImplicitData().getConcepts();
+		if(profile.getExplicitData() != null)
+			explicitConcepts = profile.getExplicitData().getConcepts();
+
+		int implicitCount = count(implicitConcepts);
+		int explicitCount = count(explicitConcepts);
+		long size = ProfileStore.RECORD_HEADER_SIZE + (long)(implicitCount + explicitCount) * ProfileStore.CONCEPT_SIZE;
+		if(size > (1L << this.segmentBits))
+			throw new IllegalArgumentException("The profile of '" + userId + "' doesn't fit in a segment");
+
+		int nameId = stringId(profile.getName());
+		align(8);
+		reserve(size);
+		this.users.put(userId, Long.valueOf(this.position));
+		stringId(userId);
+
+		this.out.writeInt(nameId);
+		this.out.writeInt(implicitCount);
+		this.out.writeInt(explicitCount);
+		this.out.writeInt(0);
+		this.position += ProfileStore.RECORD_HEADER_SIZE;
+		writeConcepts(implicitConcepts, implicitCount);
+		writeConcepts(explicitConcepts, explicitCount);
+	}
+
+	/**
+	 * Writes the strings and the user index, and completes the file
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		if(this.out == null)
+			return;
+
+		// The strings, each one in a single segment
+		int stringCount = this.strings.size();
+		long[] stringOffsets = new long[stringCount];
+		for(int i = 0; i < stringCount; i++)
+		{
+			byte[] utf8 = ProfileStore.encode(this.strings.get(i));
+			if(4 + utf8.length > (1L << this.segmentBits))
+				throw new IllegalArgumentException("A string of " + utf8.length + " bytes doesn't fit in a segment");
+			align(4);
+			reserve(4 + utf8.length);
+			stringOffsets[i] = this.position;
+			this.out.writeInt(utf8.length);
+			this.out.write(utf8);
+			this.position += 4 + utf8.length;
+		}
+
+		align(8);
+		long stringOffsetsAt = this.position;
+		for(int i = 0; i < stringCount; i++)
+			writeLong(stringOffsets[i]);
+
+		// The record of each user, by the id of their string
+		int userCount = this.users.size();
+		long[] records = new long[stringCount];
+		Arrays.fill(records, -1L);
+		int[] userIds = new int[userCount];
+		int u = 0;
+		for(Map.Entry<String, Long> user : this.users.entrySet())
+		{
+			int id = this.stringIds.get(user.getKey()).intValue();
+			records[id] = user.getValue().longValue();
+			userIds[u++] = id;
+		}
+
+		// An open addressing table of the strings, at most half full
+		int slotCount = 16;
+		while(slotCount < stringCount * 2)
+			slotCount *= 2;
+		int[] slots = new int[slotCount];
+		for(int i = 0; i < stringCount; i++)
+		{
+			int slot = ProfileStore.slot(this.strings.get(i).hashCode(), slotCount);
+			while(slots[slot] != 0)
+				slot = (slot + 1) & (slotCount - 1);
+			slots[slot] = i + 1;
+		}
+		// Slots start on a multiple of their size, so none of them spans two segments
+		align(ProfileStore.SLOT_SIZE);
+		long slotsAt = this.position;
+		for(int i = 0; i < slotCount; i++)
+		{
+			int id = slots[i] - 1;
+			this.out.writeInt(slots[i]);
+			this.out.writeInt(id < 0 ? 0 : this.strings.get(id).hashCode());
+			this.out.writeLong(id < 0 ? -1L : records[id]);
+			this.out.writeLong(id < 0 ? -1L : stringOffsets[id]);
+			this.out.writeLong(0);
+			this.position += ProfileStore.SLOT_SIZE;
+		}
+
+		// The users, to go through all of them
+		long userIdsAt = this.position;
+		for(int i = 0; i < userCount; i++)
+		{
+			this.out.writeInt(userIds[i]);
+			this.position += 4;
+		}
+		align(8);
+		long userRecordsAt = this.position;
+		for(int i = 0; i < userCount; i++)
+			writeLong(records[userIds[i]]);
+
+		this.out.close();
+		this.out = null;
+
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		try
+		{
+			raf.writeInt(ProfileStore.MAGIC);
+			raf.writeInt(ProfileStore.VERSION);
+			raf.writeInt(this.segmentBits);
+			raf.writeInt(userCount);
+			raf.writeInt(stringCount);
+			raf.writeInt(slotCount);
+			raf.writeLong(stringOffsetsAt);
+			raf.writeLong(slotsAt);
+			raf.writeLong(userIdsAt);
+			raf.writeLong(userRecordsAt);
+			raf.writeLong(this.position);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes concepts sorted by the id of their key, so a key is found by a binary search
+	 */
+	private void writeConcepts(List<Concept> concepts, int count) throws IOException
+	{
+		if(count == 0)
+			return;
+
+		if(this.order.length < count)
+			this.order = new long[Math.max(count, this.order.length * 2)];
+		long[] order = this.order;
+		int n = 0;
+		for(int i = 0; i < concepts.size(); i++)
+		{
+			Concept concept = concepts.get(i);
+			if(concept != null)
+				order[n++] = ((long)stringId(concept.getKey()) << 32) | i;
+		}
+		Arrays.sort(order, 0, n);
+
+		for(int i = 0; i < n; i++)
+		{
+			Concept concept = concepts.get((int)order[i]);
+			this.out.writeInt((int)(order[i] >>> 32));
+			this.out.writeFloat(concept.getFloatValue());
+			this.out.writeInt(stringId(concept.getFrom()));
+			this.out.writeLong(concept.getUpdatedMillis());
+		}
+		this.position += (long)n * ProfileStore.CONCEPT_SIZE;
+	}
+
+	private static int count(List<Concept> concepts)
+	{
+		if(concepts == null)
+			return 0;
+
+		int count = 0;
+		for(Concept concept : concepts)
+		{
+			if(concept != null)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return The id of a string, added to the table if it is new, or -1 for null
+	 */
+	private int stringId(String value)
+	{
+		if(value == null)
+			return -1;
+
+		Integer id = this.stringIds.get(value);
+		if(id == null)
+		{
+			id = Integer.valueOf(this.strings.size());
+			this.stringIds.put(value, id);
+			this.strings.add(value);
+		}
+		return id.intValue();
+	}
+
+	private void writeLong(long value) throws IOException
+	{
+		this.out.writeLong(value);
+		this.position += 8;
+	}
+
+	/**
+	 * Moves to the next segment if the next bytes wouldn't fit in the current one
+	 */
+	private void reserve(long size) throws IOException
+	{
+		long segmentSize = 1L << this.segmentBits;
+		long used = this.position & (segmentSize - 1);
+		if(used + size > segmentSize)
+			pad(segmentSize - used);
+	}
+
+	private void align(int alignment) throws IOException
+	{
+		int misalignment = (int)(this.position & (alignment - 1));
+		if(misalignment != 0)
+			pad(alignment - misalignment);
+	}
+
+	private void pad(long count) throws IOException
+	{
+		for(long i = 0; i < count; i++)
+			this.out.write(0);
+		this.position += count;
+	}
+}
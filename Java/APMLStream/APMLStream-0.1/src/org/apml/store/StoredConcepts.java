@@ -0,0 +1,146 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.store;
+
+import java.nio.ByteBuffer;
+import org.apml.base.Concept;
+import org.apml.tools.ISO8601;
+
+/**
+ * <p>The implicit or explicit concepts of a {@link StoredProfile}, read in place.<br>
+ * Concepts are sorted by the id of their key in the store, not by key. The numeric getters
+ * don't allocate, the string getters decode the string each time they are called.</p>
+ * @author Tim Schultz
+ */
+public class StoredConcepts
+{
+	private ProfileStore store = null;
+	private ByteBuffer segment = null;
+	private int offset = 0;
+	private int count = 0;
+
+	StoredConcepts(ProfileStore store, ByteBuffer segment, int offset, int count)
+	{
+		this.store = store;
+		this.segment = segment;
+		this.offset = offset;
+		this.count = count;
+	}
+
+	/**
+	 * @return The number of concepts
+	 */
+	public int size()
+	{
+		return this.count;
+	}
+
+	/**
+	 * @param index From 0 to size() - 1
+	 * @return The key attribute of a concept
+	 */
+	public String getKey(int index)
+	{
+		return this.store.getString(this.segment.getInt(at(index)));
+	}
+
+	/**
+	 * @param index From 0 to size() - 1
+	 * @return The value attribute of a concept, or NaN if it wasn't a number
+	 */
+	public float getValue(int index)
+	{
+		return this.segment.getFloat(at(index) + 4);
+	}
+
+	/**
+	 * @param index From 0 to size() - 1
+	 * @return The from attribute of a concept
+	 */
+	public String getFrom(int index)
+	{
+		return this.store.getString(this.segment.getInt(at(index) + 8));
+	}
+
+	/**
+	 * @param index From 0 to size() - 1
+	 * @return The updated attribute of a concept in milliseconds since 1970-01-01T00:00:00Z,
+	 * or ISO8601.INVALID if it wasn't a date
+	 */
+	public long getUpdatedMillis(int index)
+	{
+		return this.segment.getLong(at(index) + 12);
+	}
+
+	/**
+	 * Builds a Concept out of a stored one. The value and the updated attribute are written
+	 * back from the number and the date, so they may read differently than the original ones.
+	 * @param index From 0 to size() - 1
+	 * @return A new Concept
+	 */
+	public Concept getConcept(int index)
+	{
+		float value = getValue(index);
+		long updated = getUpdatedMillis(index);
+		return new Concept(getKey(index), Float.isNaN(value) ? "" : Float.toString(value), getFrom(index),
+				updated == ISO8601.INVALID ? "" : ISO8601.format(updated));
+	}
+
+	/**
+	 * Finds a concept by key, with a binary search
+	 * @param key The key attribute
+	 * @return The index of the first concept with this key, or -1 if there is none
+	 */
+	public int indexOf(String key)
+	{
+		int id = this.store.indexOf(key);
+		if(id < 0)
+			return -1;
+
+		int low = 0;
+		int high = this.count;
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if(this.segment.getInt(at(mid)) < id)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return (low < this.count && this.segment.getInt(at(low)) == id) ? low : -1;
+	}
+
+	/**
+	 * Looks up the value of a concept by key
+	 * @param key The key attribute
+	 * @return The value, or NaN if there is no such concept
+	 */
+	public float getValue(String key)
+	{
+		int index = indexOf(key);
+		return index < 0 ? Float.NaN : getValue(index);
+	}
+
+	private int at(int index)
+	{
+		if(index < 0 || index >= this.count)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count);
+		return this.offset + index * ProfileStore.CONCEPT_SIZE;
+	}
+}
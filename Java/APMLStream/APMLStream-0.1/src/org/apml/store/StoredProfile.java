@@ -0,0 +1,80 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A profile read in place from a {@link ProfileStore}.<br>
+ * A view only holds its position in the mapped file: the name and the concepts are read from
+ * the file when asked for. Views are cheap to create and stay valid as long as the store is
+ * reachable.</p>
+ * @author Tim Schultz
+ */
+public class StoredProfile
+{
+	private ProfileStore store = null;
+	private ByteBuffer segment = null;
+	private int offset = 0;
+	private int userId = 0;
+
+	StoredProfile(ProfileStore store, ByteBuffer segment, int offset, int userId)
+	{
+		this.store = store;
+		this.segment = segment;
+		this.offset = offset;
+		this.userId = userId;
+	}
+
+	/**
+	 * @return The user the profile belongs to
+	 */
+	public String getUserId()
+	{
+		return this.store.getString(this.userId);
+	}
+
+	/**
+	 * @return The name of the profile
+	 */
+	public String getName()
+	{
+		return this.store.getString(this.segment.getInt(this.offset));
+	}
+
+	/**
+	 * @return The concepts of the implicit data, sorted by key id
+	 */
+	public StoredConcepts getImplicitConcepts()
+	{
+		int count = this.segment.getInt(this.offset + 4);
+		return new StoredConcepts(this.store, this.segment, this.offset + ProfileStore.RECORD_HEADER_SIZE, count);
+	}
+
+	/**
+	 * @return The concepts of the explicit data, sorted by key id
+	 */
+	public StoredConcepts getExplicitConcepts()
+	{
+		int implicitCount = this.segment.getInt(this.offset + 4);
+		int count = this.segment.getInt(this.offset + 8);
+		return new StoredConcepts(this.store, this.segment,
+				this.offset + ProfileStore.RECORD_HEADER_SIZE + implicitCount * ProfileStore.CONCEPT_SIZE, count);
+	}
+}
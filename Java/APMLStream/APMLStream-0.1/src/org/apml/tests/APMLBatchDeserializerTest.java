@@ -0,0 +1,96 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apml.base.APML;
+import org.apml.deserialize.APMLBatchDeserializer;
+import org.apml.deserialize.APMLBatchHandler;
+import org.apml.tools.APMLCodecs;
+
+/**
+ * <p>Writes a small corpus, one broken file included, to a temporary directory and
+ * deserializes it with the APMLBatchDeserializer.<br>
+ * Usage: APMLBatchDeserializerTest [apml file] [number of copies]</p>
+ * @author Tim Schultz
+ */
+public class APMLBatchDeserializerTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		APML apml = APMLCodecs.getDeserializer().deserialize(new File(args.length > 0 ? args[0] : "examples/myLastFM.apml"));
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		File dir = File.createTempFile("apml-corpus", "");
+		dir.delete();
+		File subDir = new File(dir, "more");
+		subDir.mkdirs();
+
+		for(int i = 0; i < copies; i++)
+		{
+			OutputStream out = new FileOutputStream(new File(i % 2 == 0 ? dir : subDir, "profile" + i + ".apml"));
+			APMLCodecs.getSerializer().serialize(apml, out, Charset.forName("UTF-8"));
+			out.close();
+		}
+		OutputStream out = new FileOutputStream(new File(dir, "broken.apml"));
+		out.write("<APML><Head>".getBytes("UTF-8"));
+		out.close();
+		new File(dir, "notes.txt").createNewFile();
+
+		final int expectedConcepts = apml.getBody().getProfiles().get(0).getImplicitData().getConcepts().size();
+		final AtomicInteger mismatches = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+
+		long start = System.currentTimeMillis();
+		int count = new APMLBatchDeserializer().deserializeAll(dir, new APMLBatchHandler()
+		{
+			public void onAPML(File file, APML apml)
+			{
+				if(apml.getBody().getProfiles().get(0).getImplicitData().getConcepts().size() != expectedConcepts)
+					mismatches.incrementAndGet();
+			}
+
+			public void onError(File file, Exception ex)
+			{
+				System.out.println("Error in " + file.getName() + ": " + ex.getClass().getName());
+				errors.incrementAndGet();
+			}
+		});
+		long time = System.currentTimeMillis() - start;
+
+		System.out.println("Deserialized " + count + " files in " + time + " ms");
+		System.out.println("Mismatches: " + mismatches.get() + ", errors: " + errors.get());
+
+		File[] files = subDir.listFiles();
+		for(int i = 0; i < files.length; i++)
+			files[i].delete();
+		subDir.delete();
+		files = dir.listFiles();
+		for(int i = 0; i < files.length; i++)
+			files[i].delete();
+		dir.delete();
+
+		if(count != copies || mismatches.get() != 0 || errors.get() != 1)
+			System.exit(1);
+	}
+}
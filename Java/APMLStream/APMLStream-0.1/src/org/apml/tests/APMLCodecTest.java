@@ -0,0 +1,96 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.File;
+import org.apml.base.APML;
+import org.apml.deserialize.APMLDeserializer;
+import org.apml.serialize.APMLSerializer;
+import org.apml.tools.APMLCodec;
+import org.apml.tools.APMLCodecs;
+
+/**
+ * <p>Checks that the reflection-free APMLCodec and the XStream engine produce the same markup
+ * for a document, whichever engine read it, and compares their speed.<br>
+ * Usage: APMLCodecTest [apml file] [iterations]</p>
+ * @author Tim Schultz
+ */
+public class APMLCodecTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		File f = new File(args.length > 0 ? args[0] : "examples/myLastFM.apml");
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		APMLDeserializer apmlDS = APMLCodecs.getDeserializer();
+		APMLSerializer apmlS = APMLCodecs.getSerializer();
+		APMLCodec codec = APMLCodecs.getCodec();
+
+		APML fromXStream = apmlDS.deserialize(f);
+		APML fromCodec = codec.deserialize(f);
+		String expected = apmlS.serialize(fromXStream);
+
+		boolean same = true;
+		same &= check("XStream read, codec write", expected, codec.serialize(fromXStream));
+		same &= check("Codec read, XStream write", expected, apmlS.serialize(fromCodec));
+		same &= check("Codec read, codec write", expected, codec.serialize(fromCodec));
+		same &= check("Codec round-trip", expected, codec.serialize(codec.deserialize(expected)));
+
+		// Application data is markup, and stays the same however many times it goes through
+		String markup = "<foo a=\"1\">b &amp; c<bar/></foo>";
+		String document = codec.serialize(codec.deserialize("<APML version=\"0.6\"><Body defaultprofile=\"\">"
+				+ "<Applications><Application name=\"app\">" + markup + "</Application></Applications></Body></APML>"));
+		APML twice = codec.deserialize(codec.serialize(codec.deserialize(document)));
+		same &= check("Application markup", markup, twice.getBody().getApplications().get(0).getApplicationData());
+		same &= check("Application markup round-trips", document, codec.serialize(twice));
+
+		// Warm up both engines before timing them
+		time(apmlDS, apmlS, codec, expected, iterations / 10, true);
+		time(apmlDS, apmlS, codec, expected, iterations / 10, false);
+		long xstreamTime = time(apmlDS, apmlS, codec, expected, iterations, true);
+		long codecTime = time(apmlDS, apmlS, codec, expected, iterations, false);
+		System.out.println(iterations + " round-trips: XStream " + xstreamTime + " ms, APMLCodec " + codecTime + " ms");
+
+		if(!same)
+			System.exit(1);
+	}
+
+	private static boolean check(String label, String expected, String actual)
+	{
+		boolean same = expected.equals(actual);
+		System.out.println(label + ": " + (same ? "identical" : "DIFFERENT"));
+		if(!same)
+			System.out.println(actual);
+		return same;
+	}
+
+	private static long time(APMLDeserializer apmlDS, APMLSerializer apmlS, APMLCodec codec, String payload, int iterations, boolean xstream) throws Exception
+	{
+		long start = System.currentTimeMillis();
+
+		for(int i = 0; i < iterations; i++)
+		{
+			if(xstream)
+				apmlS.serialize(apmlDS.deserialize(payload));
+			else
+				codec.serialize(codec.deserialize(payload));
+		}
+		return System.currentTimeMillis() - start;
+	}
+}
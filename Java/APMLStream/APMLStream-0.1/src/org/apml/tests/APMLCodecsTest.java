@@ -0,0 +1,94 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apml.base.APML;
+import org.apml.tools.APMLCodecs;
+
+/**
+ * <p>Hammers the shared deserializer and serializer from many threads.<br>
+ * Every thread round-trips the same document and checks that it gets back exactly what a
+ * single thread got. Usage: APMLCodecsTest [apml file] [threads] [iterations per thread]</p>
+ * @author Tim Schultz
+ */
+public class APMLCodecsTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		File f = new File(args.length > 0 ? args[0] : "examples/myLastFM.apml");
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+		final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		// Reference output, produced by a single thread
+		final String expected = APMLCodecs.getSerializer().serialize(APMLCodecs.getDeserializer().deserialize(f));
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger mismatches = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+
+		for(int t = 0; t < threads; t++)
+		{
+			new Thread("codec-" + t)
+			{
+				public void run()
+				{
+					try
+					{
+						start.await();
+						String payload = expected;
+						for(int i = 0; i < iterations; i++)
+						{
+							// Feed back our own output, so a corrupted round-trip propagates
+							APML apml = APMLCodecs.getDeserializer().deserialize(payload);
+							payload = APMLCodecs.getSerializer().serialize(apml);
+							if(!payload.equals(expected))
+							{
+								mismatches.incrementAndGet();
+								payload = expected;
+							}
+						}
+					}
+					catch(Exception ex)
+					{
+						errors.incrementAndGet();
+						ex.printStackTrace();
+					}
+					finally
+					{
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		long time = System.currentTimeMillis();
+		start.countDown();
+		done.await();
+		time = System.currentTimeMillis() - time;
+
+		System.out.println(threads + " threads x " + iterations + " round-trips in " + time + " ms");
+		System.out.println("Mismatches: " + mismatches.get() + ", errors: " + errors.get());
+		if(mismatches.get() != 0 || errors.get() != 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apml.base.APML;
+import org.apml.base.Concept;
+import org.apml.base.Profile;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Checks that the APMLCorpusGenerator is deterministic, that both engines read its output,
+ * that the concept keys of a profile are distinct and that the head of the Zipf distribution
+ * is in every profile.<br>
+ * Usage: APMLCorpusGeneratorTest [profiles] [concepts per profile] [sources per profile]</p>
+ * @author Tim Schultz
+ */
+public class APMLCorpusGeneratorTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		int profiles = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int concepts = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int sources = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		boolean ok = true;
+
+		String payload = new APMLCorpusGenerator(7, profiles, concepts, sources).generate();
+		ok &= Checks.check("Same seed, same document", payload.equals(new APMLCorpusGenerator(7, profiles, concepts, sources).generate()));
+		ok &= Checks.check("Other seed, other document", !payload.equals(new APMLCorpusGenerator(8, profiles, concepts, sources).generate()));
+		System.out.println("Generated " + payload.length() + " characters");
+
+		APML apml = APMLCodecs.getDeserializer().deserialize(payload);
+		ok &= Checks.check("Application payload", APMLCodecs.getCodec().deserialize(payload).getBody().getApplications().get(0).getApplicationData().startsWith("<Setting"));
+
+		// XStream doesn't read the application payloads
+		APMLCorpusGenerator noApplications = new APMLCorpusGenerator(7, profiles, concepts, sources);
+		noApplications.setApplicationCount(0);
+		String plain = noApplications.generate();
+		ok &= Checks.check("XStream and APMLCodec read the same",
+				APMLCodecs.getSerializer().serialize(APMLCodecs.getDeserializer().deserialize(plain)).equals(APMLCodecs.getCodec().serialize(APMLCodecs.getCodec().deserialize(plain))));
+		ok &= Checks.check("Profile count", apml.getBody().getProfiles().size() == profiles);
+
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		String mostFrequent = null;
+		for(Profile profile : apml.getBody().getProfiles())
+		{
+			ok &= Checks.check("Concept and source counts of " + profile.getName(),
+					profile.getImplicitData().getConcepts().size() == concepts && profile.getImplicitData().getSources().size() == sources);
+
+			Set<String> keys = new HashSet<String>();
+			for(Concept concept : profile.getImplicitData().getConcepts())
+				keys.add(concept.getKey());
+			for(Concept concept : profile.getExplicitData().getConcepts())
+				keys.add(concept.getKey());
+			ok &= Checks.check("Distinct keys in " + profile.getName(), keys.size() == concepts + profile.getExplicitData().getConcepts().size());
+
+			for(Concept concept : profile.getImplicitData().getConcepts())
+			{
+				Integer count = frequencies.get(concept.getKey());
+				frequencies.put(concept.getKey(), count == null ? 1 : count + 1);
+				if(mostFrequent == null || frequencies.get(concept.getKey()) > frequencies.get(mostFrequent))
+					mostFrequent = concept.getKey();
+			}
+		}
+		System.out.println(frequencies.size() + " distinct keys, '" + mostFrequent + "' seen " + frequencies.get(mostFrequent) + " times");
+		ok &= Checks.check("Most frequent key in every profile", frequencies.get(APMLCorpusGenerator.word(0)) == profiles
+				&& frequencies.get(mostFrequent) == profiles);
+
+		// More concepts than the vocabulary holds
+		APMLCorpusGenerator small = new APMLCorpusGenerator(7, 1, 300, 0);
+		small.setVocabularySize(100);
+		Profile crowded = APMLCodecs.getCodec().deserialize(small.generate()).getBody().getProfiles().get(0);
+		Set<String> keys = new HashSet<String>();
+		for(Concept concept : crowded.getImplicitData().getConcepts())
+			keys.add(concept.getKey());
+		ok &= Checks.check("Distinct keys past the vocabulary", keys.size() == 300);
+
+		if(!ok)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apml.base.APML;
+import org.apml.base.Author;
+import org.apml.base.Concept;
+import org.apml.base.Profile;
+import org.apml.base.Source;
+import org.apml.diff.APMLDiff;
+import org.apml.diff.APMLPatch;
+import org.apml.tools.APMLCodec;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Changes about 1% of a generated document, then checks that the patch from APMLDiff turns
+ * copies of the old document into the new one, directly and after a trip through the patch XML.
+ * Prints the size of the patch and the time to apply it next to reading the whole document.<br>
+ * Usage: APMLDiffTest [concepts per profile]</p>
+ * @author Tim Schultz
+ */
+public class APMLDiffTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		boolean ok = true;
+
+		APMLCorpusGenerator generator = new APMLCorpusGenerator(23, 5, count, count / 20);
+		generator.setExplicitConceptsPerProfile(count / 10);
+		String document = generator.generate();
+		APMLCodec codec = APMLCodecs.getCodec();
+		APMLDiff differ = new APMLDiff();
+
+		APML oldAPML = codec.deserialize(document);
+		APML newAPML = codec.deserialize(document);
+		ok &= Checks.check("No changes", differ.diff(oldAPML, newAPML).isEmpty());
+
+		change(newAPML, new Random(5));
+		String newDocument = codec.serialize(newAPML);
+
+		long start = System.currentTimeMillis();
+		APMLPatch patch = differ.diff(oldAPML, newAPML);
+		long diffTime = System.currentTimeMillis() - start;
+		APML target = codec.deserialize(document);
+		differ.apply(target, patch);
+		ok &= Checks.check("Patched", canonical(target).equals(canonical(newAPML)));
+		ok &= Checks.check("Patch not shared", codec.serialize(newAPML).equals(newDocument));
+
+		String patchXML = differ.toXML(patch);
+		APML other = codec.deserialize(document);
+		// The first patch read sets up the XStream
+		differ.fromXML(patchXML);
+		start = System.currentTimeMillis();
+		APMLPatch read = differ.fromXML(patchXML);
+		long readPatchTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		differ.apply(other, read);
+		long applyTime = System.currentTimeMillis() - start;
+		ok &= Checks.check("Patched from XML", canonical(other).equals(canonical(newAPML)));
+		ok &= Checks.check("Patch of the patched", differ.diff(other, newAPML).isEmpty());
+
+		start = System.currentTimeMillis();
+		codec.deserialize(newDocument);
+		long readTime = System.currentTimeMillis() - start;
+		System.out.println("Document " + newDocument.length() + " chars, patch " + patchXML.length() + " chars; diff "
+				+ diffTime + " ms, read the patch " + readPatchTime + " ms, apply it " + applyTime + " ms, read the document " + readTime + " ms");
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Reweights, removes and adds about 1% of the concepts, repeats a concept, changes a source
+	 * author, replaces a profile and changes the Head
+	 */
+	private static void change(APML apml, Random random)
+	{
+		List<Profile> profiles = apml.getBody().getProfiles();
+		for(Profile profile : profiles)
+		{
+			List<Concept> concepts = profile.getImplicitData().getConcepts();
+			int changes = Math.max(1, concepts.size() / 300);
+			for(int i = 0; i < changes; i++)
+			{
+				concepts.get(random.nextInt(concepts.size())).setValue(Float.toString(random.nextFloat()));
+				concepts.remove(random.nextInt(concepts.size()));
+				concepts.add(new Concept("new" + random.nextInt(), "0.5", "example.com", "2008-06-01T00:00:00Z"));
+			}
+			Concept repeated = concepts.get(0);
+			concepts.add(new Concept(repeated.getKey(), "0.1", repeated.getFrom(), repeated.getUpdated()));
+		}
+
+		List<Source> sources = profiles.get(1).getImplicitData().getSources();
+		sources.get(0).setAuthor(new Author("someone else", "0.3", "example.com", ""));
+		profiles.get(2).getExplicitData().getConcepts().clear();
+		profiles.remove(3);
+		profiles.add(new Profile("Brand new"));
+		apml.getBody().setDefaultProfileName("Brand new");
+		apml.getHead().setTitle("Changed");
+	}
+
+	/**
+	 * The document as text that doesn't depend on the order of the profiles and of the lists.<br>
+	 * A patch doesn't keep positions: added concepts, sources and profiles end up last in the
+	 * patched document, wherever they are in the new one, so the lines are sorted.
+	 */
+	private static String canonical(APML apml)
+	{
+		List<String> lines = new ArrayList<String>();
+		lines.add("head " + apml.getHead().getTitle() + " " + apml.getHead().getDateCreated() + " " + apml.getBody().getDefaultProfileName());
+		for(Profile profile : apml.getBody().getProfiles())
+		{
+			String name = profile.getName();
+			if(profile.getImplicitData() != null)
+			{
+				for(Concept concept : profile.getImplicitData().getConcepts())
+					lines.add(name + " implicit " + concept(concept));
+				for(Source source : profile.getImplicitData().getSources())
+					lines.add(name + " implicit " + source(source));
+			}
+			if(profile.getExplicitData() != null)
+			{
+				for(Concept concept : profile.getExplicitData().getConcepts())
+					lines.add(name + " explicit " + concept(concept));
+				for(Source source : profile.getExplicitData().getSources())
+					lines.add(name + " explicit " + source(source));
+			}
+			lines.add(name + " profile");
+		}
+		Collections.sort(lines);
+		return lines.toString();
+	}
+
+	private static String concept(Concept concept)
+	{
+		return concept.getKey() + "|" + concept.getValue() + "|" + concept.getFrom() + "|" + concept.getUpdated();
+	}
+
+	private static String source(Source source)
+	{
+		Author author = source.getAuthor();
+		return source.getKey() + "|" + source.getName() + "|" + source.getValue() + "|" + source.getType() + "|"
+				+ source.getFrom() + "|" + source.getUpdated() + "|" + (author == null ? "" : author.getKey() + "|" + author.getValue());
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import org.apml.base.APML;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLFetcher;
+import org.apml.tools.StalenessPolicy;
+
+/**
+ * <p>Runs an APMLFetcher against a small HTTP server started by the test, and checks that it
+ * serves fresh documents from the cache, revalidates stale ones with ETag and Last-Modified,
+ * skips no-store responses, evicts the least recently used document and fetches a URL asked
+ * for by many threads at once a single time.<br>
+ * Usage: APMLFetcherTest</p>
+ * @author Tim Schultz
+ */
+public class APMLFetcherTest
+{
+	private static final String DOCUMENT = "<APML xmlns=\"http://www.apml.org/apml-0.6\" version=\"0.6\">"
+			+ "<Head><Title>%s</Title></Head><Body defaultprofile=\"Home\"><Profile name=\"Home\"/></Body></APML>";
+
+	private static long now = 1200000000000L;
+
+	public static void main(String[] args) throws Exception
+	{
+		boolean ok = true;
+		StandIn server = new StandIn();
+		new Thread(server).start();
+		StalenessPolicy.Clock clock = new StalenessPolicy.Clock()
+		{
+			public long currentTimeMillis()
+			{
+				return now;
+			}
+		};
+		APMLFetcher fetcher = new APMLFetcher(APMLCodecs.getCodec(), 16, clock);
+
+		// Fresh for a minute, then revalidated with its ETag
+		server.put("/hot", "one", "\"v1\"", 0, "max-age=60");
+		APML first = fetcher.fetch(server.url("/hot"));
+		ok &= Checks.check("Fresh document from the cache", fetcher.fetch(server.url("/hot")) == first && server.requests("/hot") == 1);
+		now += 61000;
+		ok &= Checks.check("Not modified after max-age", fetcher.fetch(server.url("/hot")) == first
+				&& server.requests("/hot") == 2 && fetcher.getRevalidations() == 1);
+		ok &= Checks.check("Fresh again", fetcher.fetch(server.url("/hot")) == first && server.requests("/hot") == 2);
+		server.put("/hot", "two", "\"v2\"", 0, "max-age=60");
+		now += 61000;
+		APML second = fetcher.fetch(server.url("/hot"));
+		ok &= Checks.check("Changed document", second != first && "two".equals(second.getHead().getTitle()));
+
+		// No caching headers, revalidated on every call with its date
+		server.put("/dated", "dated", null, 1199000000000L, null);
+		first = fetcher.fetch(server.url("/dated"));
+		ok &= Checks.check("Not modified since", fetcher.fetch(server.url("/dated")) == first && server.requests("/dated") == 2);
+
+		// no-cache after max-age still revalidates
+		server.put("/revalidated", "revalidated", "\"r\"", 0, "max-age=3600, no-cache");
+		first = fetcher.fetch(server.url("/revalidated"));
+		ok &= Checks.check("No-cache after max-age", fetcher.fetch(server.url("/revalidated")) == first && server.requests("/revalidated") == 2);
+
+		server.put("/private", "private", "\"p\"", 0, "no-store");
+		first = fetcher.fetch(server.url("/private"));
+		ok &= Checks.check("No-store not kept", fetcher.fetch(server.url("/private")) != first && server.requests("/private") == 2);
+
+		try
+		{
+			fetcher.fetch(server.url("/missing"));
+			ok &= Checks.check("Missing document", false);
+		}
+		catch(IOException ioEx)
+		{
+			ok &= Checks.check("Missing document (" + ioEx.getMessage() + ")", true);
+		}
+
+		// Least recently used documents go first
+		APMLFetcher small = new APMLFetcher(APMLCodecs.getCodec(), 2, clock);
+		for(String path : new String[] { "/a", "/b", "/c" })
+		{
+			server.put(path, path, "\"" + path + "\"", 0, "max-age=60");
+			small.fetch(server.url(path));
+		}
+		small.fetch(server.url("/a"));
+		small.fetch(server.url("/c"));
+		ok &= Checks.check("Least recently used evicted", small.size() == 2 && server.requests("/a") == 2 && server.requests("/c") == 1);
+
+		// Many threads asking for a slow document at once
+		server.put("/slow", "slow", "\"s\"", 0, "max-age=60");
+		server.delay = 300;
+		final APMLFetcher shared = new APMLFetcher(APMLCodecs.getCodec(), 16, clock);
+		final URL slow = server.url("/slow");
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<APML> results = new ArrayList<APML>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < 16; i++)
+		{
+			Thread thread = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						start.await();
+						APML apml = shared.fetch(slow);
+						synchronized(results)
+						{
+							results.add(apml);
+						}
+					}
+					catch(Exception ex)
+					{
+						ex.printStackTrace();
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for(Thread thread : threads)
+			thread.join();
+		boolean sameObject = results.size() == 16;
+		for(APML apml : results)
+			sameObject &= apml == results.get(0);
+		ok &= Checks.check("Concurrent requests coalesced", sameObject && server.requests("/slow") == 1);
+
+		server.close();
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Just enough of an HTTP server to serve APML documents with caching headers
+	 */
+	private static class StandIn implements Runnable
+	{
+		private ServerSocket socket = null;
+		private Map<String, String[]> resources = new HashMap<String, String[]>();
+		private Map<String, Integer> requests = new HashMap<String, Integer>();
+		volatile int delay = 0;
+
+		StandIn() throws IOException
+		{
+			this.socket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		}
+
+		URL url(String path) throws IOException
+		{
+			return new URL("http://127.0.0.1:" + this.socket.getLocalPort() + path);
+		}
+
+		synchronized void put(String path, String title, String etag, long lastModified, String cacheControl)
+		{
+			this.resources.put(path, new String[] { String.format(DOCUMENT, title), etag,
+					lastModified > 0 ? httpDate(lastModified) : null, cacheControl });
+		}
+
+		synchronized int requests(String path)
+		{
+			Integer count = this.requests.get(path);
+			return count == null ? 0 : count.intValue();
+		}
+
+		void close() throws IOException
+		{
+			this.socket.close();
+		}
+
+		public void run()
+		{
+			try
+			{
+				while(true)
+				{
+					final Socket client = this.socket.accept();
+					new Thread()
+					{
+						public void run()
+						{
+							serve(client);
+						}
+					}.start();
+				}
+			}
+			catch(IOException ioEx)
+			{
+				// Closed
+			}
+		}
+
+		private void serve(Socket client)
+		{
+			try
+			{
+				BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "ISO-8859-1"));
+				String path = in.readLine().split(" ")[1];
+				Map<String, String> headers = new HashMap<String, String>();
+				for(String line = in.readLine(); line != null && line.length() > 0; line = in.readLine())
+				{
+					int colon = line.indexOf(':');
+					headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+				}
+				if(this.delay > 0)
+					Thread.sleep(this.delay);
+
+				String[] resource = null;
+				synchronized(this)
+				{
+					resource = this.resources.get(path);
+					this.requests.put(path, Integer.valueOf(requests(path) + 1));
+				}
+
+				StringBuilder response = new StringBuilder();
+				byte[] body = new byte[0];
+				if(resource == null)
+					response.append("HTTP/1.1 404 Not Found\r\n");
+				else if((resource[1] != null && resource[1].equals(headers.get("if-none-match")))
+						|| (resource[2] != null && resource[2].equals(headers.get("if-modified-since"))))
+					response.append("HTTP/1.1 304 Not Modified\r\n");
+				else
+				{
+					response.append("HTTP/1.1 200 OK\r\nContent-Type: application/xml\r\n");
+					body = resource[0].getBytes("UTF-8");
+				}
+				if(resource != null && resource[1] != null)
+					response.append("ETag: ").append(resource[1]).append("\r\n");
+				if(resource != null && resource[2] != null)
+					response.append("Last-Modified: ").append(resource[2]).append("\r\n");
+				if(resource != null && resource[3] != null)
+					response.append("Cache-Control: ").append(resource[3]).append("\r\n");
+				response.append("Content-Length: ").append(body.length).append("\r\nConnection: close\r\n\r\n");
+
+				OutputStream out = client.getOutputStream();
+				out.write(response.toString().getBytes("ISO-8859-1"));
+				out.write(body);
+				out.flush();
+				client.close();
+			}
+			catch(Exception ex)
+			{
+				ex.printStackTrace();
+			}
+		}
+
+		private static String httpDate(long millis)
+		{
+			SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return format.format(new java.util.Date(millis));
+		}
+	}
+}
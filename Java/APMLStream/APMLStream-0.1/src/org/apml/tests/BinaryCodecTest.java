@@ -0,0 +1,239 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apml.base.*;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.apml.serialize.APMLBinaryWriter;
+import org.apml.tools.APMLBinaryCodec;
+import org.apml.tools.APMLCodec;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Checks that documents come back from the binary form with the same markup, through a byte
+ * array and through a stream handing out a few bytes at a time, and that damaged documents are
+ * rejected. Prints the size and the decoding time of both forms.<br>
+ * Usage: BinaryCodecTest [apml file] [iterations]</p>
+ * @author Tim Schultz
+ */
+public class BinaryCodecTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		File f = new File(args.length > 0 ? args[0] : "examples/myLastFM.apml");
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		boolean ok = true;
+
+		APMLCodec codec = APMLCodecs.getCodec();
+		APMLBinaryCodec binary = APMLCodecs.getBinaryCodec();
+
+		ok &= roundTrip(f.getName(), codec.deserialize(f));
+		// Null attributes come back empty, as they do from the markup
+		ok &= roundTrip("Odd values", oddDocument(null), oddDocument(""));
+
+		APMLCorpusGenerator generator = new APMLCorpusGenerator(7, 20, 5000, 250);
+		generator.setExplicitConceptsPerProfile(500);
+		String xml = generator.generate();
+		APML apml = codec.deserialize(xml);
+		ok &= roundTrip("Generated", apml);
+
+		byte[] data = binary.serialize(apml);
+		ok &= rejected("Flipped byte", flip(data, data.length / 2));
+		ok &= rejected("Flipped checksum", flip(data, data.length - 1));
+		ok &= rejected("Truncated", copy(data, data.length - 5));
+		ok &= rejected("Not binary", xml.getBytes("UTF-8"));
+		ok &= rejected("Negative string code", corrupt(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F }));
+		// A length of 2^31-1, with enough bytes behind it for many reads from the stream
+		ok &= rejected("Corrupt string length", corrupt(new byte[] { APMLBinaryWriter.NEW_STRING, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 }));
+
+		int xmlSize = xml.getBytes("UTF-8").length;
+		System.out.println("Size: XML " + xmlSize + " bytes, binary " + data.length + " bytes ("
+				+ (xmlSize / data.length) + "x smaller)");
+
+		// Warm up both codecs before timing them
+		time(codec, binary, xml, data, iterations, true);
+		time(codec, binary, xml, data, iterations, false);
+		long xmlTime = time(codec, binary, xml, data, iterations, true);
+		long binaryTime = time(codec, binary, xml, data, iterations, false);
+		System.out.println(iterations + " decodes: XML " + xmlTime + " ms, binary " + binaryTime + " ms");
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < iterations; i++)
+			binary.serialize(apml);
+		System.out.println(iterations + " binary encodes: " + (System.currentTimeMillis() - start) + " ms");
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	private static boolean roundTrip(String label, APML apml) throws Exception
+	{
+		return roundTrip(label, apml, apml);
+	}
+
+	private static boolean roundTrip(String label, APML apml, APML reference) throws Exception
+	{
+		APMLCodec codec = APMLCodecs.getCodec();
+		APMLBinaryCodec binary = APMLCodecs.getBinaryCodec();
+		String expected = codec.serialize(reference);
+		byte[] data = binary.serialize(apml);
+
+		boolean ok = Checks.check(label + ", byte array", expected.equals(codec.serialize(binary.deserialize(data))));
+		ok &= Checks.check(label + ", trickling stream", expected.equals(codec.serialize(binary.deserialize(new TrickleInputStream(data)))));
+		return ok;
+	}
+
+	/**
+	 * A document with values that don't fit a float, missing attributes and characters beyond ASCII
+	 * @param missing The value of the missing attributes
+	 */
+	private static APML oddDocument(String missing)
+	{
+		APML apml = new APML("0.6", "http://www.apml.org/apml-0.6");
+		apml.setHead(new Head("Odd \u00e9\u4e2d", "BinaryCodecTest", "odd@example.org", "2008-01-01T00:00:00Z"));
+		Body body = new Body("odd");
+		Applications<Application> apps = new Applications<Application>();
+		StringBuilder big = new StringBuilder();
+		for(int i = 0; i < 5000; i++)
+			big.append("data").append(i);
+		apps.add(new Application("big", big.toString()));
+		body.setApplications(apps);
+
+		Profile profile = new Profile("odd");
+		ImplicitData data = new ImplicitData();
+		String[] values = { "1", "0.250", "0.25", "-0.0", "1.0E-5", "NaN", "abc", "", missing, "3.4028235E38" };
+		String[] dates = { "2008-01-01T00:00:00Z", "2008-01-01T00:00:00.5Z", "1960-02-29T23:59:59Z", "2008-01-01", "" };
+		for(int i = 0; i < values.length; i++)
+			data.getConcepts().add(new Concept("key" + i, values[i], i % 2 == 0 ? "a.com" : missing, dates[i % dates.length]));
+		data.getConcepts().add(new Concept("smile \uD83D\uDE00 lone \uD800 end", "0.5", "\u00fc.de", missing));
+		Source source = new Source("http://a.com/feed", "A", "0.5", "application/rss+xml", "a.com", "2008-01-01T00:00:00Z");
+		source.setAuthor(new Author("someone", "1.0", "a.com", missing));
+		data.getSources().add(source);
+		profile.setImplicitData(data);
+		List<Profile> profiles = new ArrayList<Profile>();
+		profiles.add(profile);
+		body.setProfiles(profiles);
+		apml.setBody(body);
+		return apml;
+	}
+
+	private static boolean rejected(String label, byte[] data) throws IOException
+	{
+		boolean ok = true;
+
+		try
+		{
+			APMLCodecs.getBinaryCodec().deserialize(data);
+			ok &= Checks.check(label + " rejected", false);
+		}
+		catch(InvalidAPMLFormatException ex)
+		{
+			ok &= Checks.check(label + " rejected (" + ex.getMessage() + ")", true);
+		}
+		try
+		{
+			APMLCodecs.getBinaryCodec().deserialize(new TrickleInputStream(data));
+			ok &= Checks.check(label + " rejected from a stream", false);
+		}
+		catch(InvalidAPMLFormatException ex)
+		{
+			ok &= Checks.check(label + " rejected from a stream", true);
+		}
+		return ok;
+	}
+
+	/**
+	 * The start of a binary document, up to the first string, followed by the given bytes and
+	 * 200 bytes of padding
+	 */
+	private static byte[] corrupt(byte[] string)
+	{
+		byte[] data = new byte[6 + string.length + 200];
+		int magic = APMLBinaryWriter.MAGIC;
+		data[0] = (byte) (magic >>> 24);
+		data[1] = (byte) (magic >>> 16);
+		data[2] = (byte) (magic >>> 8);
+		data[3] = (byte) magic;
+		data[4] = APMLBinaryWriter.VERSION;
+		data[5] = APMLBinaryWriter.DOCUMENT;
+		System.arraycopy(string, 0, data, 6, string.length);
+		Arrays.fill(data, 6 + string.length, data.length, (byte) 'a');
+		return data;
+	}
+
+	private static byte[] flip(byte[] data, int index)
+	{
+		byte[] copy = copy(data, data.length);
+		copy[index] ^= 0x10;
+		return copy;
+	}
+
+	private static byte[] copy(byte[] data, int length)
+	{
+		byte[] copy = new byte[length];
+		System.arraycopy(data, 0, copy, 0, length);
+		return copy;
+	}
+
+	private static long time(APMLCodec codec, APMLBinaryCodec binary, String xml, byte[] data, int iterations, boolean useXML) throws Exception
+	{
+		long start = System.currentTimeMillis();
+
+		for(int i = 0; i < iterations; i++)
+		{
+			if(useXML)
+				codec.deserialize(xml);
+			else
+				binary.deserialize(data);
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Hands out at most seven bytes per read, to get the parser to refill its buffer everywhere
+	 */
+	private static class TrickleInputStream extends InputStream
+	{
+		private ByteArrayInputStream in = null;
+		private int step = 0;
+
+		TrickleInputStream(byte[] data)
+		{
+			this.in = new ByteArrayInputStream(data);
+		}
+
+		public int read() throws IOException
+		{
+			return this.in.read();
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			this.step = this.step % 7 + 1;
+			return this.in.read(b, off, Math.min(len, this.step));
+		}
+	}
+}
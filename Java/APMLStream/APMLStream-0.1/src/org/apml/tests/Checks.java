@@ -0,0 +1,40 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+/**
+ * <p>Helpers shared by the tests.</p>
+ * @author Tim Schultz
+ */
+final class Checks
+{
+	private Checks(){}
+
+	/**
+	 * Prints the outcome of a check
+	 * @param label What was checked
+	 * @param passed Whether the check passed
+	 * @return passed, so the outcomes of a test can be and-ed together
+	 */
+	static boolean check(String label, boolean passed)
+	{
+		System.out.println(label + ": " + (passed ? "ok" : "FAILED"));
+		return passed;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apml.base.APML;
+import org.apml.base.Concept;
+import org.apml.base.ConceptTable;
+import org.apml.base.ImplicitData;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+import org.apml.tools.ISO8601;
+
+/**
+ * <p>Copies the concepts of a generated profile into a ConceptTable, checks they read back the
+ * same, and compares the heap used by both forms.<br>
+ * Usage: ConceptTableTest [concepts]</p>
+ * @author Tim Schultz
+ */
+public class ConceptTableTest
+{
+	// The arrays take 20 bytes per concept. The generated keys are all distinct, so the dictionary
+	// adds a String of about 56 bytes and its index for each concept
+	private static final int TARGET_BYTES = 96;
+
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		boolean ok = true;
+
+		APML apml = APMLCodecs.getDeserializer().deserialize(new APMLCorpusGenerator(7, 1, count, 0).generate());
+		ImplicitData data = apml.getBody().getProfiles().get(0).getImplicitData();
+		List<Concept> concepts = data.getConcepts();
+		String markup = APMLCodecs.getCodec().serialize(apml);
+
+		ConceptTable table = new ConceptTable(concepts);
+		ok &= Checks.check("Same size", table.size() == concepts.size());
+		boolean same = true;
+		for(int i = 0; i < concepts.size(); i++)
+		{
+			Concept concept = concepts.get(i);
+			Concept row = table.get(i);
+			same &= row.getKey().equals(concept.getKey()) && row.getValue().equals(concept.getValue())
+					&& row.getFrom().equals(concept.getFrom()) && row.getUpdated().equals(concept.getUpdated())
+					&& table.getFloatValue(i) == Float.parseFloat(concept.getValue());
+		}
+		ok &= Checks.check("Same concepts", same);
+
+		// Values and dates that don't read back from the arrays are kept as written, next to the parsed form
+		table.add(new Concept("odd", "1", null, "2008-01-15T10:00:00+01:00"));
+		Concept odd = table.get(table.size() - 1);
+		ok &= Checks.check("Kept as written", odd.getValue().equals("1") && odd.getFrom() == null
+				&& odd.getUpdated().equals("2008-01-15T10:00:00+01:00") && table.getFloatValue(table.size() - 1) == 1f
+				&& table.getUpdatedMillis(table.size() - 1) == ISO8601.parse("2008-01-15T09:00:00Z"));
+		table.add(new Concept("undated", "0.5", "a.com", "yesterday"));
+		ok &= Checks.check("Not a date", table.getUpdatedMillis(table.size() - 1) == ConceptTable.NO_DATE
+				&& table.get(table.size() - 1).getUpdated().equals("yesterday"));
+		table.remove(table.size() - 1);
+		odd.setValue("0.25");
+		ok &= Checks.check("Row writes through", table.getValues()[table.size() - 1] == 0.25f && table.get(table.size() - 1).getValue().equals("0.25"));
+		table.remove(table.size() - 1);
+		table.add(0, table.get(0));
+		ok &= Checks.check("Insert own row", table.get(0).getKey().equals(table.get(1).getKey()) && table.size() == concepts.size() + 1);
+		table.remove(0);
+
+		data.setConcepts(table.toConcepts());
+		ok &= Checks.check("Same markup", APMLCodecs.getCodec().serialize(apml).equals(markup));
+
+		// Heap of each form, with the APML object and the markup out of the way. Each form holds its
+		// own strings: the objects get fresh copies, with the from attributes shared as the string pool
+		// of the deserializer shares them, and the table keeps the strings of its dictionary
+		apml = null;
+		markup = null;
+		data.setConcepts(null);
+		concepts = table.toConcepts();
+		table = null;
+		long before = usedMemory();
+		List<Concept> copy = copy(concepts);
+		long listBytes = usedMemory() - before;
+		ConceptTable tableCopy = new ConceptTable(copy);
+		copy = null;
+		long tableBytes = usedMemory() - before;
+		System.out.println("Bytes per concept: objects " + listBytes / count + ", table " + tableBytes / count);
+		ok &= Checks.check("Same copy", tableCopy.size() == concepts.size() && tableCopy.size() == count);
+		ok &= Checks.check("Table under " + TARGET_BYTES + " bytes per concept", tableBytes / count < TARGET_BYTES);
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	private static List<Concept> copy(List<Concept> concepts)
+	{
+		List<Concept> copy = new ArrayList<Concept>(concepts.size());
+		Map<String, String> froms = new HashMap<String, String>();
+
+		for(Concept concept : concepts)
+		{
+			String from = froms.get(concept.getFrom());
+			if(from == null)
+			{
+				from = fresh(concept.getFrom());
+				froms.put(from, from);
+			}
+			copy.add(new Concept(fresh(concept.getKey()), fresh(concept.getValue()), from, fresh(concept.getUpdated())));
+		}
+		return copy;
+	}
+
+	/**
+	 * A copy of a String that doesn't share its characters, which new String(String) may
+	 */
+	private static String fresh(String value)
+	{
+		return new String(value.toCharArray());
+	}
+
+	/**
+	 * The heap in use once collections stop freeing anything. Weak references and the like are
+	 * cleared in the background, so a single System.gc() can leave garbage behind.
+	 */
+	private static long usedMemory() throws InterruptedException
+	{
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for(int i = 0; i < 10; i++)
+		{
+			System.gc();
+			Thread.sleep(50);
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if(now >= used)
+				break;
+			used = now;
+		}
+		return used;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apml.base.APML;
+import org.apml.base.Body;
+import org.apml.base.Concept;
+import org.apml.base.ImplicitData;
+import org.apml.base.Profile;
+import org.apml.base.exceptions.ProfileNotFoundException;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Checks the indexed concept and source lookups of the ImplicitData and the profile lookups
+ * of the Body against a linear scan, before and after the lists change, and times them.<br>
+ * Usage: DataLookupTest [concepts]</p>
+ * @author Tim Schultz
+ */
+public class DataLookupTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		int concepts = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		boolean ok = true;
+
+		APML apml = APMLCodecs.getDeserializer().deserialize(new APMLCorpusGenerator(1, 1, concepts, 100).generate());
+		ImplicitData data = apml.getBody().getProfiles().get(0).getImplicitData();
+		String from = APMLCorpusGenerator.host(0);
+		String key = APMLCorpusGenerator.word(0);
+
+		ok &= Checks.check("Concepts from, ignoring case", data.getConceptsFrom(from.toUpperCase()).equals(scanFrom(data.getConcepts(), from)));
+		ok &= Checks.check("Concepts by key", data.getConceptsByKey(key).size() == countKey(data.getConcepts(), key));
+		ok &= Checks.check("Sources from", data.getAllSourcesFrom(from).size() == data.getSourcesFrom(from).size());
+		ok &= Checks.check("Sources by key", data.getSourcesByKey(data.getSources().get(0).getKey()).contains(data.getSources().get(0)));
+		ok &= Checks.check("Unknown value", data.getConceptsFrom("nowhere.example.com").isEmpty());
+
+		// Changes through the list are seen by the next lookup
+		int before = data.getConceptsFrom(from).size();
+		data.getConcepts().add(new Concept("new", "0.5", from, ""));
+		ok &= Checks.check("Added concept", data.getConceptsFrom(from).size() == before + 1 && data.getConceptsByKey("NEW").size() == 1);
+		data.getConcepts().set(data.getConcepts().size() - 1, new Concept("newer", "0.5", "elsewhere.example.com", ""));
+		ok &= Checks.check("Replaced concept", data.getConceptsFrom(from).size() == before && data.getConceptsByKey("new").isEmpty());
+		data.getConcepts().remove(data.getConcepts().size() - 1);
+		ok &= Checks.check("Removed concept", data.getConceptsByKey("newer").isEmpty());
+
+		try
+		{
+			data.getConceptsFrom(from).clear();
+			ok &= Checks.check("Unmodifiable lookups", false);
+		}
+		catch(UnsupportedOperationException uoEx)
+		{
+			ok &= Checks.check("Unmodifiable lookups", true);
+		}
+
+		// The lists and the markup are unchanged
+		ok &= Checks.check("Same markup", APMLCodecs.getSerializer().serialize(apml).equals(APMLCodecs.getCodec().serialize(apml)));
+
+		// Profiles, by name and the default one
+		Body body = APMLCodecs.getDeserializer().deserialize(new APMLCorpusGenerator(1, 500, 1, 0).generate()).getBody();
+		ok &= Checks.check("Profile by name", body.getProfileByName("PROFILE499") == body.getProfiles().get(499));
+		ok &= Checks.check("Default profile", body.getDefaultProfile() == body.getProfiles().get(0) && body.getDefaultProfile() == body.getProfiles().get(0));
+		body.getProfiles().add(0, new Profile("Profile0"));
+		ok &= Checks.check("Added default profile", body.getDefaultProfile().getImplicitData() == null);
+		body.getProfiles().remove(0);
+		body.setDefaultProfileName("profile7");
+		ok &= Checks.check("Changed default profile", body.getDefaultProfile() == body.getProfiles().get(7));
+		body.getProfiles().get(7).setName("renamed");
+		ok &= Checks.check("Renamed profile", body.getProfileByName("Renamed") == body.getProfiles().get(7) && !hasProfile(body, "profile7"));
+		ok &= Checks.check("Renamed default profile", !hasDefaultProfile(body));
+		body.setDefaultProfileName("profile1");
+		body.getDefaultProfile();
+		List<Profile> replacement = new ArrayList<Profile>(body.getProfiles());
+		replacement.set(1, new Profile("Profile1"));
+		body.setProfiles(replacement);
+		ok &= Checks.check("Replaced default profile", body.getDefaultProfile() == replacement.get(1));
+
+		int lookups = 10000;
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < lookups; i++)
+			scanFrom(data.getConcepts(), APMLCorpusGenerator.host(i % 50));
+		long scanTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		for(int i = 0; i < lookups; i++)
+			data.getConceptsFrom(APMLCorpusGenerator.host(i % 50));
+		long indexTime = System.currentTimeMillis() - start;
+		System.out.println(lookups + " lookups over " + concepts + " concepts: scan " + scanTime + " ms, index " + indexTime + " ms");
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	private static boolean hasProfile(Body body, String name)
+	{
+		try
+		{
+			body.getProfileByName(name);
+			return true;
+		}
+		catch(ProfileNotFoundException pnfEx)
+		{
+			return false;
+		}
+	}
+
+	private static boolean hasDefaultProfile(Body body)
+	{
+		try
+		{
+			body.getDefaultProfile();
+			return true;
+		}
+		catch(ProfileNotFoundException pnfEx)
+		{
+			return false;
+		}
+	}
+
+	private static List<Concept> scanFrom(List<Concept> concepts, String from)
+	{
+		List<Concept> matches = new ArrayList<Concept>();
+		for(Concept concept : concepts)
+			if(concept.getFrom().equalsIgnoreCase(from))
+				matches.add(concept);
+		return matches;
+	}
+
+	private static int countKey(List<Concept> concepts, String key)
+	{
+		int count = 0;
+		for(Concept concept : concepts)
+			if(concept.getKey().equalsIgnoreCase(key))
+				count++;
+		return count;
+	}
+}
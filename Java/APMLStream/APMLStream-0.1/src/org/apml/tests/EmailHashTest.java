@@ -0,0 +1,109 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apml.tools.APMLTools;
+
+/**
+ * <p>Checks APMLTools.userEmailMD5 and hashAll against MessageDigest, from several threads,
+ * and times the bulk hashing.</p>
+ * @author Tim Schultz
+ */
+public class EmailHashTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		boolean ok = true;
+
+		ok &= Checks.check("Known hashes", APMLTools.userEmailMD5("").equals("d41d8cd98f00b204e9800998ecf8427e")
+				&& APMLTools.userEmailMD5("tim@example.com").equals(reference("tim@example.com")));
+		ok &= Checks.check("Non-ASCII", APMLTools.userEmailMD5("j\u00f6rg@m\u00fcller.de").equals(reference("j\u00f6rg@m\u00fcller.de")));
+		ok &= Checks.check("Long address", APMLTools.userEmailMD5(longEmail()).equals(reference(longEmail())));
+		ok &= Checks.check("Null", APMLTools.userEmailMD5(null) == null);
+		ok &= Checks.check("Bulk", APMLTools.hashAll(Arrays.asList("a@b.c", null, "")).equals(Arrays.asList(reference("a@b.c"), null, reference(""))));
+
+		final int count = 200000;
+		final List<String> emails = new ArrayList<String>(count);
+		for(int i = 0; i < count; i++)
+			emails.add("user" + i + "@example" + (i % 100) + ".com");
+
+		// Each thread hashes the whole list and checks a sample
+		final AtomicInteger mismatches = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for(int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						List<String> hashes = APMLTools.hashAll(emails);
+						for(int i = 0; i < count; i += 97)
+							if(!hashes.get(i).equals(reference(emails.get(i))))
+								mismatches.incrementAndGet();
+					}
+					catch(Exception ex)
+					{
+						mismatches.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(int t = 0; t < threads.length; t++)
+			threads[t].join();
+		ok &= Checks.check("Threads", mismatches.get() == 0);
+
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < count; i++)
+			reference(emails.get(i));
+		long referenceTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		APMLTools.hashAll(emails);
+		long bulkTime = System.currentTimeMillis() - start;
+		System.out.println(count + " emails: new digest per email " + referenceTime + " ms, hashAll " + bulkTime + " ms");
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	private static String reference(String email) throws Exception
+	{
+		byte[] digest = MessageDigest.getInstance("MD5").digest(email.getBytes("UTF-8"));
+		String hex = new BigInteger(1, digest).toString(16);
+		while(hex.length() < 32)
+			hex = "0" + hex;
+		return hex;
+	}
+
+	private static String longEmail()
+	{
+		StringBuilder email = new StringBuilder();
+		for(int i = 0; i < 50; i++)
+			email.append("very.long.name.");
+		return email.append("x@example.com").toString();
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import org.apml.base.Concept;
+import org.apml.base.ImplicitData;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+import org.apml.tools.APMLTools;
+import org.apml.tools.ISO8601;
+import org.apml.tools.StalenessPolicy;
+
+/**
+ * <p>Checks the ISO-8601 parser and formatter against SimpleDateFormat, and the outdated
+ * concept and source filters against a fixed clock.</p>
+ * @author Tim Schultz
+ */
+public class ISO8601Test
+{
+	public static void main(String[] args) throws Exception
+	{
+		boolean ok = true;
+		SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		// Random dates from 1900 to 2100, to the second
+		Random random = new Random(1);
+		boolean same = true;
+		for(int i = 0; i < 100000; i++)
+		{
+			long millis = (-2208988800L + (long) (random.nextDouble() * 6311433600L)) * 1000;
+			String text = reference.format(new Date(millis));
+			same &= ISO8601.format(millis).equals(text) && ISO8601.parse(text) == millis;
+		}
+		ok &= Checks.check("Same as SimpleDateFormat", same);
+
+		long noon = ISO8601.parse("2008-01-15T12:00:00Z");
+		ok &= Checks.check("Date only", ISO8601.parse("2008-01-15") == noon - 12 * 3600000L);
+		ok &= Checks.check("Without seconds", ISO8601.parse("2008-01-15T12:00Z") == noon);
+		ok &= Checks.check("Fraction", ISO8601.parse("2008-01-15T12:00:00.25Z") == noon + 250 && ISO8601.parse("2008-01-15T12:00:00,1234567Z") == noon + 123);
+		ok &= Checks.check("Offsets", ISO8601.parse("2008-01-15T13:00:00+01:00") == noon && ISO8601.parse("2008-01-15T07:30:00-0430") == noon
+				&& ISO8601.parse("2008-01-15T14:00:00+02") == noon);
+		ok &= Checks.check("No time zone", ISO8601.parse("2008-01-15T12:00:00") == noon && ISO8601.parse("2008-01-15 12:00:00") == noon);
+		ok &= Checks.check("Leap day", ISO8601.parse("2008-02-29") != ISO8601.INVALID && ISO8601.parse("2007-02-29") == ISO8601.INVALID);
+
+		String[] invalid = { null, "", "2008", "2008-13-01", "2008-01-32", "2008-01-15T25:00:00Z", "2008-01-15T12:00:00ZZ",
+				"2008-01-15X12:00:00Z", "2008-01-15T12:00:00.Z", "2008-01-15T12:00:00+1", "yesterday" };
+		same = true;
+		for(int i = 0; i < invalid.length; i++)
+			same &= ISO8601.parse(invalid[i]) == ISO8601.INVALID;
+		ok &= Checks.check("Invalid dates", same);
+		ok &= Checks.check("UTC output", APMLTools.convertToISO8601DateType(new Date(noon)).equals("2008-01-15T12:00:00Z"));
+
+		// Parsed once, again after a change
+		Concept concept = new Concept("key", "0.5", "example.com", "2008-01-15T12:00:00Z");
+		ok &= Checks.check("Cached date", concept.getUpdatedMillis() == noon && concept.getUpdatedMillis() == noon);
+		concept.setUpdated("2008-01-15T13:00:00Z");
+		ok &= Checks.check("Changed date", concept.getUpdatedMillis() == noon + 3600000L);
+
+		// Generated dates are spread over the year before 2008-01-09
+		ImplicitData data = APMLCodecs.getDeserializer().deserialize(new APMLCorpusGenerator(1, 1, 10000, 1000).generate())
+				.getBody().getProfiles().get(0).getImplicitData();
+		final long now = ISO8601.parse("2008-01-10T00:00:00Z");
+		StalenessPolicy.Clock clock = new StalenessPolicy.Clock()
+		{
+			public long currentTimeMillis()
+			{
+				return now;
+			}
+		};
+		StalenessPolicy halfYear = new StalenessPolicy(182L * 24 * 3600 * 1000, clock);
+		int outdated = 0;
+		for(Concept c : data.getConcepts())
+			if(reference.parse(c.getUpdated()).getTime() < halfYear.getCutoff())
+				outdated++;
+		ok &= Checks.check("Outdated concepts", data.getAllOutdatedConcepts(halfYear).size() == outdated && outdated > 4000 && outdated < 6000);
+		ok &= Checks.check("Outdated sources", data.getAllOutdatedSources(new StalenessPolicy(0, clock)).size() == 1000
+				&& data.getAllOutdatedSources(new StalenessPolicy(3650L * 24 * 3600 * 1000, clock)).isEmpty());
+		StalenessPolicy previous = APMLTools.getStalenessPolicy();
+		APMLTools.setStalenessPolicy(halfYear);
+		ok &= Checks.check("Default policy", data.getAllOutdatedConcepts().size() == outdated && APMLTools.isResourceOutdated("2007-01-01T00:00:00Z"));
+		APMLTools.setStalenessPolicy(previous);
+
+		int rounds = 1000000;
+		String text = "2008-01-15T12:00:00Z";
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < rounds; i++)
+			reference.parse(text);
+		long referenceTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		for(int i = 0; i < rounds; i++)
+			ISO8601.parse(text);
+		long parseTime = System.currentTimeMillis() - start;
+		System.out.println(rounds + " parses: SimpleDateFormat " + referenceTime + " ms, ISO8601 " + parseTime + " ms");
+
+		if(!ok)
+			System.exit(1);
+	}
+}
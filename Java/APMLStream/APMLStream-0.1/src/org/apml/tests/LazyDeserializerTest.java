@@ -0,0 +1,144 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import org.apml.base.APML;
+import org.apml.base.ImplicitData;
+import org.apml.base.Profile;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.apml.deserialize.LazyAPMLDeserializer;
+import org.apml.tools.APMLCodec;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Compares the lazily deserialized documents with the eagerly deserialized ones, from memory
+ * and from a file, on generated documents and on one written to trip up the profile scan.<br>
+ * Usage: LazyDeserializerTest [profiles]</p>
+ * @author Tim Schultz
+ */
+public class LazyDeserializerTest
+{
+	/**
+	 * Comments and CDATA holding profile tags, a self-closing profile, escaped names and text
+	 * outside ASCII
+	 */
+	private static final String TRICKY = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<APML xmlns=\"http://www.apml.org/apml-0.6\" version=\"0.6\">\n"
+			+ "<Head><Title>Caf\u00e9 &lt;Profile&gt;</Title><Generator>LazyDeserializerTest</Generator>"
+			+ "<DateCreated>2008-01-13T16:53:52Z</DateCreated></Head>\n"
+			+ "<Body defaultprofile=\"Home &amp; Work\">\n"
+			+ "<!-- <Profile name=\"commented\"> isn't one -->\n"
+			+ "<Profile name=\"Home &amp; Work\"><ImplicitData><Concepts>"
+			+ "<Concept key=\"r&#233;sum&#233;\" value=\"0.5\" from=\"a.example.com\" updated=\"2008-01-13T16:53:52Z\"/>"
+			+ "<!-- </Profile> -->"
+			+ "<Concept key=\"\u20ac \ud834\udd1e\" value=\"0.25\" from=\"b.example.com\" updated=\"2008-01-13T16:53:52Z\"/>"
+			+ "</Concepts></ImplicitData><ExplicitData><Concepts>"
+			+ "<Concept key=\"&quot;quoted&quot; &gt; &apos;x&apos;\" value=\"1.0\"/>"
+			+ "</Concepts></ExplicitData></Profile>\n"
+			+ "<Profile name=\"empty\"/>\n"
+			+ "<Profile\n name='single &lt;quoted&gt;' ><ExplicitData><Concepts>"
+			+ "<Concept key=\"last\" value=\"0.75\" from=\"c.example.com\" updated=\"2008-01-13T16:53:52Z\"/>"
+			+ "</Concepts></ExplicitData></Profile>\n"
+			+ "<Applications><Application name=\"cdata\"><![CDATA[</Profile><Profile name=\"fake\">]]></Application></Applications>\n"
+			+ "</Body>\n"
+			+ "</APML>\n";
+
+	public static void main(String[] args) throws Exception
+	{
+		int profiles = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		boolean ok = true;
+		APMLCodec codec = APMLCodecs.getCodec();
+		LazyAPMLDeserializer lazy = new LazyAPMLDeserializer();
+
+		String generated = new APMLCorpusGenerator(7, profiles, 20, 2).generate();
+		ok &= Checks.check("Generated document", same(generated));
+		ok &= Checks.check("Comments, CDATA and escapes", same(TRICKY));
+
+		APML apml = lazy.deserialize(TRICKY.getBytes("UTF-8"));
+		Profile first = apml.getBody().getProfiles().get(0);
+		Profile empty = apml.getBody().getProfiles().get(1);
+		Profile last = apml.getBody().getProfiles().get(2);
+		ok &= Checks.check("Profiles found", apml.getBody().getProfiles().size() == 3
+				&& first.getName().equals("Home & Work") && empty.getName().equals("empty")
+				&& last.getName().equals("single <quoted>"));
+		ok &= Checks.check("Not loaded up front", !first.isLoaded() && !empty.isLoaded() && !last.isLoaded());
+		ok &= Checks.check("Default profile", apml.getBody().getDefaultProfile() == first && !first.isLoaded());
+		ok &= Checks.check("Loaded on access", first.getImplicitData().getConcepts().get(1).getKey().equals("\u20ac \ud834\udd1e")
+				&& first.isLoaded() && !last.isLoaded());
+		ok &= Checks.check("Self-closing profile", empty.getImplicitData() == null && empty.getExplicitData() == null);
+
+		// Setters before the profile is loaded win over the document
+		ImplicitData replaced = new ImplicitData();
+		last.setName("renamed");
+		last.setImplicitData(replaced);
+		ok &= Checks.check("Set before load", last.getImplicitData() == replaced && last.getName().equals("renamed")
+				&& last.getExplicitData().getConcepts().get(0).getKey().equals("last"));
+
+		ok &= Checks.check("Bad hex reference", rejected(TRICKY.replace("Home &amp; Work", "Home &#xZZ; Work")));
+		ok &= Checks.check("Empty reference", rejected(TRICKY.replace("Home &amp; Work", "Home &#; Work")));
+		ok &= Checks.check("Reference out of range", rejected(TRICKY.replace("Home &amp; Work", "Home &#x110000; Work")));
+
+		File file = File.createTempFile("lazy", ".apml");
+		try
+		{
+			OutputStream out = new FileOutputStream(file);
+			out.write(TRICKY.getBytes("UTF-8"));
+			out.close();
+			ok &= Checks.check("From a file", codec.serialize(lazy.deserialize(file)).equals(codec.serialize(codec.deserialize(TRICKY))));
+		}
+		finally
+		{
+			file.delete();
+		}
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * @return true if the lazy and the eager documents serialize the same way
+	 */
+	private static boolean same(String document) throws Exception
+	{
+		APMLCodec codec = APMLCodecs.getCodec();
+		String eager = codec.serialize(codec.deserialize(document));
+		String lazy = codec.serialize(new LazyAPMLDeserializer().deserialize(document.getBytes("UTF-8")));
+		return lazy.equals(eager);
+	}
+
+	/**
+	 * @return true if the lazy deserializer rejects the document as malformed
+	 */
+	private static boolean rejected(String document) throws Exception
+	{
+		try
+		{
+			new LazyAPMLDeserializer().deserialize(document.getBytes("UTF-8"));
+			return false;
+		}
+		catch(InvalidAPMLFormatException iafEx)
+		{
+			return true;
+		}
+	}
+}
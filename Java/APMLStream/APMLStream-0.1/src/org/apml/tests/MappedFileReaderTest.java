@@ -0,0 +1,140 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Random;
+import org.apml.deserialize.MappedFileReader;
+
+/**
+ * <p>Compares MappedFileReader with an InputStreamReader on text mixing one to four byte
+ * characters, with windows small enough for characters to straddle every window boundary.<br>
+ * Usage: MappedFileReaderTest [characters]</p>
+ * @author Tim Schultz
+ */
+public class MappedFileReaderTest
+{
+	/** One, two, three and four byte characters in UTF-8, the last one a surrogate pair */
+	private static final String[] PIECES = { "a", "<", "\u00e9", "\u00df", "\u20ac", "\u4e2d", "\ud834\udd1e", "\ud83d\ude00" };
+
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		boolean ok = true;
+
+		Random random = new Random(11);
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < count; i++)
+			text.append(PIECES[random.nextInt(PIECES.length)]);
+		int[] readSizes = { 1, 2, 3, 7, 8192 };
+
+		File file = File.createTempFile("mapped", ".txt");
+		try
+		{
+			String[] charsets = { "UTF-8", "UTF-16BE" };
+			for(int c = 0; c < charsets.length; c++)
+			{
+				byte[] bytes = text.toString().getBytes(charsets[c]);
+				write(file, bytes);
+				String expected = readAll(new InputStreamReader(new ByteArrayInputStream(bytes), charsets[c]), 8192);
+
+				boolean same = true;
+				for(int windowSize = 16; windowSize <= 24; windowSize++)
+					for(int r = 0; r < readSizes.length; r++)
+						same &= expected.equals(readAll(new MappedFileReader(file, 0, bytes.length, charsets[c], windowSize), readSizes[r]));
+				same &= expected.equals(readAll(new MappedFileReader(file, 0, bytes.length, charsets[c], MappedFileReader.DEFAULT_WINDOW_SIZE), 8192));
+				ok &= Checks.check("Same as InputStreamReader, " + charsets[c], same);
+			}
+
+			// A byte range that starts and ends on character boundaries
+			String middle = text.substring(text.length() / 3, 2 * text.length() / 3);
+			if(Character.isLowSurrogate(middle.charAt(0)))
+				middle = middle.substring(1);
+			if(Character.isHighSurrogate(middle.charAt(middle.length() - 1)))
+				middle = middle.substring(0, middle.length() - 1);
+			byte[] bytes = text.toString().getBytes("UTF-8");
+			write(file, bytes);
+			long start = text.substring(0, text.indexOf(middle)).getBytes("UTF-8").length;
+			long length = middle.getBytes("UTF-8").length;
+			boolean same = true;
+			for(int windowSize = 16; windowSize <= 24; windowSize++)
+				same &= middle.equals(readAll(new MappedFileReader(file, start, length, "UTF-8", windowSize), 3));
+			ok &= Checks.check("Byte range", same);
+			ok &= Checks.check("Empty range", readAll(new MappedFileReader(file, start, 0, "UTF-8", 16), 8).length() == 0);
+
+			// A range ending inside a character is malformed
+			write(file, "ab\u20ac".getBytes("UTF-8"));
+			try
+			{
+				readAll(new MappedFileReader(file, 0, 4, "UTF-8", 16), 8);
+				ok &= Checks.check("Split character", false);
+			}
+			catch(IOException ioEx)
+			{
+				ok &= Checks.check("Split character", true);
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	private static void write(File file, byte[] bytes) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(bytes);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads and closes a reader, readSize characters at a time
+	 */
+	private static String readAll(Reader in, int readSize) throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+		char[] buf = new char[readSize];
+		try
+		{
+			int read;
+			while((read = in.read(buf, 0, buf.length)) != -1)
+				text.append(buf, 0, read);
+		}
+		finally
+		{
+			in.close();
+		}
+		return text.toString();
+	}
+}
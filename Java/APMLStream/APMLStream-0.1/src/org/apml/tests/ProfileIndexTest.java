@@ -0,0 +1,186 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apml.base.APML;
+import org.apml.base.Profile;
+import org.apml.similarity.ProfileIndex;
+import org.apml.similarity.ProfileIndex.Match;
+import org.apml.similarity.ProfileSimilarity;
+import org.apml.similarity.ProfileVector;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Compares ProfileIndex searches with scoring every profile, before and after removing
+ * profiles, and times the searches over a large synthetic index.<br>
+ * The more skewed the concept keys, the more profiles share the common ones and the less the
+ * search can skip.<br>
+ * Usage: ProfileIndexTest [profiles] [Zipf exponent of the keys]</p>
+ * @author Tim Schultz
+ */
+public class ProfileIndexTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		double exponent = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+		boolean ok = true;
+
+		APMLCorpusGenerator generator = new APMLCorpusGenerator(17, 3000, 30, 0);
+		generator.setExplicitConceptsPerProfile(5);
+		generator.setVocabularySize(3000);
+		APML apml = APMLCodecs.getCodec().deserialize(generator.generate());
+		List<Profile> profiles = apml.getBody().getProfiles();
+
+		ProfileIndex index = new ProfileIndex();
+		int[] ids = index.addAll(apml);
+		List<ProfileVector> vectors = new ArrayList<ProfileVector>();
+		for(Profile profile : profiles)
+			vectors.add(ProfileVector.of(profile, index.getDictionary()));
+		ok &= Checks.check("Ids", ids.length == 3000 && ids[2999] == 2999 && index.getName(7).equals(profiles.get(7).getName()));
+
+		boolean same = true;
+		for(int q = 0; q < 50; q++)
+			same &= sameAsScoring(index, vectors, vectors.get(q * 31), 10);
+		same &= sameAsScoring(index, vectors, vectors.get(5), 1) && sameAsScoring(index, vectors, vectors.get(5), 5000);
+		ok &= Checks.check("Same as scoring all", same);
+		ok &= Checks.check("Profile finds itself", index.search(profiles.get(42), 1).get(0).getId() == 42);
+
+		for(int i = 0; i < 3000; i += 2)
+			index.remove(i);
+		same = index.size() == 1500 && !index.remove(0) && index.getName(0) == null;
+		for(int q = 0; q < 20; q++)
+			same &= sameAsScoring(index, vectors, vectors.get(q * 31), 10);
+		index.compact();
+		for(int q = 0; q < 20; q++)
+			same &= sameAsScoring(index, vectors, vectors.get(q * 37), 10);
+		ok &= Checks.check("After removing", same);
+		ok &= Checks.check("Unbounded n", sameAsScoring(index, vectors, vectors.get(5), Integer.MAX_VALUE)
+				&& new ProfileIndex().search(vectors.get(5), Integer.MAX_VALUE).isEmpty());
+
+		int added = index.add("again", vectors.get(0));
+		List<Match> found = index.search(vectors.get(0), 1);
+		ok &= Checks.check("Add after removing", added == 3000 && found.get(0).getId() == 3000 && found.get(0).getName().equals("again"));
+
+		// A large index of synthetic profiles: 30 concepts each from a Zipf vocabulary
+		Random random = new Random(3);
+		double[] vocabulary = zipf(100000, exponent);
+		ProfileIndex large = new ProfileIndex();
+		List<ProfileVector> largeVectors = new ArrayList<ProfileVector>(count);
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < count; i++)
+		{
+			ProfileVector vector = randomVector(random, vocabulary, 30);
+			largeVectors.add(vector);
+			large.add(null, vector);
+		}
+		long buildTime = System.currentTimeMillis() - start;
+		System.out.println("Indexed " + count + " profiles in " + buildTime + " ms, "
+				+ (large.getPostingBytes() * 10 / (count * 30L)) / 10.0 + " bytes per posting");
+
+		same = true;
+		for(int q = 0; q < 5; q++)
+			same &= sameAsScoring(large, largeVectors, randomVector(random, vocabulary, 30), 10);
+		ok &= Checks.check("Large index", same);
+
+		int queries = 200;
+		List<ProfileVector> queryVectors = new ArrayList<ProfileVector>();
+		for(int q = 0; q < queries; q++)
+			queryVectors.add(randomVector(random, vocabulary, 30));
+		ProfileSimilarity similarity = new ProfileSimilarity();
+		start = System.currentTimeMillis();
+		for(int q = 0; q < 5; q++)
+			similarity.scoreAll(queryVectors.get(q), largeVectors, ProfileSimilarity.Measure.COSINE);
+		double scanTime = (System.currentTimeMillis() - start) / 5.0;
+		start = System.currentTimeMillis();
+		for(int q = 0; q < queries; q++)
+			large.search(queryVectors.get(q), 10);
+		double searchTime = (System.currentTimeMillis() - start) / (double) queries;
+		System.out.println("Top 10 of " + count + " profiles: scoring all " + scanTime + " ms, index " + searchTime + " ms per query");
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Checks a search against the cosine of every profile still in the index
+	 */
+	private static boolean sameAsScoring(ProfileIndex index, List<ProfileVector> vectors, ProfileVector query, int n)
+	{
+		List<Double> expected = new ArrayList<Double>();
+		for(int i = 0; i < vectors.size(); i++)
+		{
+			double score = ProfileSimilarity.cosine(query, vectors.get(i));
+			if(index.contains(i) && score > 0)
+				expected.add(Double.valueOf(score));
+		}
+		Double[] sorted = expected.toArray(new Double[expected.size()]);
+		Arrays.sort(sorted);
+
+		List<Match> matches = index.search(query, n);
+		if(matches.size() != Math.min(n, sorted.length))
+			return false;
+		for(int i = 0; i < matches.size(); i++)
+		{
+			Match match = matches.get(i);
+			if(Math.abs(match.getScore() - sorted[sorted.length - 1 - i].doubleValue()) > 1e-5
+					|| Math.abs(match.getScore() - ProfileSimilarity.cosine(query, vectors.get(match.getId()))) > 1e-5)
+				return false;
+		}
+		return true;
+	}
+
+	private static ProfileVector randomVector(Random random, double[] vocabulary, int size)
+	{
+		int[] ids = new int[size];
+		int unique = 0;
+		for(int i = 0; i < size; i++)
+		{
+			int id = Arrays.binarySearch(vocabulary, random.nextDouble());
+			ids[i] = Math.min(id >= 0 ? id : -id - 1, vocabulary.length - 1);
+		}
+		Arrays.sort(ids);
+		for(int i = 0; i < size; i++)
+			if(unique == 0 || ids[unique - 1] != ids[i])
+				ids[unique++] = ids[i];
+
+		int[] uniqueIds = new int[unique];
+		float[] weights = new float[unique];
+		System.arraycopy(ids, 0, uniqueIds, 0, unique);
+		for(int i = 0; i < unique; i++)
+			weights[i] = random.nextFloat();
+		return new ProfileVector(uniqueIds, weights);
+	}
+
+	private static double[] zipf(int n, double exponent)
+	{
+		double[] cumulative = new double[n];
+		double sum = 0;
+		for(int i = 0; i < n; i++)
+			cumulative[i] = (sum += 1.0 / Math.pow(i + 1, exponent));
+		for(int i = 0; i < n; i++)
+			cumulative[i] /= sum;
+		return cumulative;
+	}
+}
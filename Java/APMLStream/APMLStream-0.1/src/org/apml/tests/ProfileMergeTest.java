@@ -0,0 +1,196 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apml.base.APML;
+import org.apml.base.Author;
+import org.apml.base.Concept;
+import org.apml.base.ImplicitData;
+import org.apml.base.Profile;
+import org.apml.base.Source;
+import org.apml.deserialize.APMLEventParser;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+import org.apml.tools.ISO8601;
+import org.apml.tools.ProfileMerger;
+import org.apml.tools.StalenessPolicy;
+
+/**
+ * <p>Checks ProfileMerger on a small hand-made case, compares merging APML objects with
+ * streaming the documents and with merging in nested loops, and times both ways.<br>
+ * Usage: ProfileMergeTest [concepts per document]</p>
+ * @author Tim Schultz
+ */
+public class ProfileMergeTest
+{
+	private static final long DAY = 24L * 3600 * 1000;
+
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		boolean ok = true;
+
+		final long now = ISO8601.parse("2008-06-01T00:00:00Z");
+		StalenessPolicy.Clock clock = new StalenessPolicy.Clock()
+		{
+			public long currentTimeMillis()
+			{
+				return now;
+			}
+		};
+
+		Profile lastFM = new Profile("lastfm");
+		lastFM.setImplicitData(new ImplicitData());
+		lastFM.getImplicitData().getConcepts().add(new Concept("Music", "0.8", "last.fm", ISO8601.format(now - DAY)));
+		lastFM.getImplicitData().getConcepts().add(new Concept("rock", "oops", "last.fm", ISO8601.format(now)));
+		Source feed = new Source("http://example.com/feed", "Feed", "1.0", "application/rss+xml", "last.fm", ISO8601.format(now - DAY));
+		feed.setAuthor(new Author("tim", "1.0", "last.fm", ""));
+		lastFM.getImplicitData().getSources().add(feed);
+		Profile clicks = new Profile("clicks");
+		clicks.setImplicitData(new ImplicitData());
+		clicks.getImplicitData().getConcepts().add(new Concept("music", "0.4", "clicks", ISO8601.format(now)));
+		clicks.getImplicitData().getConcepts().add(new Concept("jazz", "0.5", "clicks", ""));
+		clicks.getImplicitData().getSources().add(new Source("HTTP://EXAMPLE.COM/FEED", "Other", "0.5", "text/html", "clicks", ISO8601.format(now)));
+
+		ProfileMerger merger = new ProfileMerger(DAY, clock);
+		merger.add(lastFM, 1);
+		merger.add(clicks, 3);
+		List<Concept> concepts = merger.getImplicitData().getConcepts();
+		Concept music = concepts.get(0);
+		ok &= Checks.check("Case-insensitive keys", concepts.size() == 2 && music.getKey().equals("Music") && concepts.get(1).getKey().equals("jazz"));
+		ok &= Checks.check("Weights and decay", close(music.getFloatValue(), (1 * 0.5 * 0.8 + 3 * 0.4) / 4));
+		ok &= Checks.check("Most recent from", music.getFrom().equals("clicks") && music.getUpdated().equals(ISO8601.format(now)));
+		ok &= Checks.check("Undated", close(concepts.get(1).getFloatValue(), 0.5));
+		Source source = merger.getImplicitData().getSources().get(0);
+		ok &= Checks.check("Sources", source.getKey().equals("http://example.com/feed") && source.getName().equals("Other")
+				&& source.getAuthor() == null && close(Float.parseFloat(source.getValue()), (0.5 + 1.5) / 4));
+		merger.setAverage(false);
+		ok &= Checks.check("Sums", close(merger.getImplicitData().getConcepts().get(0).getFloatValue(), 1 * 0.5 * 0.8 + 3 * 0.4));
+
+		// Three generators with overlapping vocabularies
+		String[] documents = new String[3];
+		APML[] apmls = new APML[3];
+		float[] weights = { 1, 0.5f, 2 };
+		for(int d = 0; d < documents.length; d++)
+		{
+			APMLCorpusGenerator generator = new APMLCorpusGenerator(d + 1, 1, count, count / 20);
+			generator.setExplicitConceptsPerProfile(count / 10);
+			generator.setVocabularySize(count);
+			documents[d] = generator.generate();
+			apmls[d] = APMLCodecs.getCodec().deserialize(documents[d]);
+		}
+		long halfLife = 90 * DAY;
+
+		long start = System.currentTimeMillis();
+		ProfileMerger objects = new ProfileMerger(halfLife, clock);
+		for(int d = 0; d < apmls.length; d++)
+			objects.add(apmls[d], weights[d]);
+		Profile merged = objects.getProfile("merged");
+		long mergeTime = System.currentTimeMillis() - start;
+
+		ProfileMerger streamed = new ProfileMerger(halfLife, clock);
+		APMLEventParser parser = new APMLEventParser();
+		for(int d = 0; d < documents.length; d++)
+			parser.parse(documents[d], streamed.newHandler(weights[d]));
+		Profile streamedProfile = streamed.getProfile("merged");
+		ok &= Checks.check("Streamed", same(merged.getImplicitData().getConcepts(), streamedProfile.getImplicitData().getConcepts())
+				&& same(merged.getExplicitData().getConcepts(), streamedProfile.getExplicitData().getConcepts())
+				&& sameSources(merged.getImplicitData().getSources(), streamedProfile.getImplicitData().getSources()));
+
+		start = System.currentTimeMillis();
+		List<Concept> nested = nestedLoops(apmls, weights, halfLife, now);
+		long nestedTime = System.currentTimeMillis() - start;
+		ok &= Checks.check("Same as nested loops", same(merged.getImplicitData().getConcepts(), nested));
+		System.out.println("Merging 3 x " + count + " implicit concepts: nested loops " + nestedTime
+				+ " ms, ProfileMerger (all data) " + mergeTime + " ms");
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * The implicit concepts merged the slow way: look each key up in the merged list
+	 */
+	private static List<Concept> nestedLoops(APML[] apmls, float[] weights, long halfLife, long now)
+	{
+		List<Concept> merged = new ArrayList<Concept>();
+		List<double[]> sums = new ArrayList<double[]>();
+
+		for(int d = 0; d < apmls.length; d++)
+		{
+			for(Concept concept : apmls[d].getBody().getProfiles().get(0).getImplicitData().getConcepts())
+			{
+				long updated = ISO8601.parse(concept.getUpdated());
+				double factor = Math.pow(0.5, (now - updated) / (double) halfLife);
+				int found = -1;
+				for(int i = 0; i < merged.size() && found < 0; i++)
+					if(merged.get(i).getKey().equalsIgnoreCase(concept.getKey()))
+						found = i;
+				if(found < 0)
+				{
+					found = merged.size();
+					merged.add(new Concept(concept.getKey(), "", concept.getFrom(), concept.getUpdated()));
+					sums.add(new double[3]);
+					sums.get(found)[2] = Long.MIN_VALUE;
+				}
+				double[] sum = sums.get(found);
+				sum[0] += weights[d] * factor * Float.parseFloat(concept.getValue());
+				sum[1] += weights[d];
+				if(updated > sum[2])
+				{
+					sum[2] = updated;
+					merged.get(found).setFrom(concept.getFrom());
+					merged.get(found).setUpdated(concept.getUpdated());
+				}
+			}
+		}
+		for(int i = 0; i < merged.size(); i++)
+			merged.get(i).setValue(Float.toString((float) (sums.get(i)[0] / sums.get(i)[1])));
+		return merged;
+	}
+
+	private static boolean same(List<Concept> a, List<Concept> b)
+	{
+		if(a.size() != b.size())
+			return false;
+		for(int i = 0; i < a.size(); i++)
+			if(!a.get(i).getKey().equals(b.get(i).getKey()) || !close(a.get(i).getFloatValue(), b.get(i).getFloatValue())
+					|| !a.get(i).getFrom().equals(b.get(i).getFrom()) || !a.get(i).getUpdated().equals(b.get(i).getUpdated()))
+				return false;
+		return true;
+	}
+
+	private static boolean sameSources(List<Source> a, List<Source> b)
+	{
+		if(a.size() != b.size())
+			return false;
+		for(int i = 0; i < a.size(); i++)
+			if(!a.get(i).getKey().equals(b.get(i).getKey()) || !a.get(i).getValue().equals(b.get(i).getValue())
+					|| !a.get(i).getName().equals(b.get(i).getName()) || !a.get(i).getAuthor().getKey().equals(b.get(i).getAuthor().getKey()))
+				return false;
+		return true;
+	}
+
+	private static boolean close(double a, double b)
+	{
+		return Math.abs(a - b) < 1e-5;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import org.apml.base.APML;
+import org.apml.base.Concept;
+import org.apml.base.Profile;
+import org.apml.store.ProfileStore;
+import org.apml.store.ProfileStoreWriter;
+import org.apml.store.StoredConcepts;
+import org.apml.store.StoredProfile;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Checks that a ProfileStore gives back the concepts of the profiles written to it, with
+ * segments small enough for profiles to land on both sides of segment boundaries, then fills a
+ * store with many users and times random lookups.<br>
+ * Usage: ProfileStoreTest [users]<br>
+ * The default of 10000 users writes about 23 MB to the temporary directory. Lookup timings of
+ * a large store take 250000 users or more, which write about 570 MB.</p>
+ * @author Tim Schultz
+ */
+public class ProfileStoreTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		boolean ok = true;
+
+		APMLCorpusGenerator generator = new APMLCorpusGenerator(29, 3000, 100, 0);
+		generator.setExplicitConceptsPerProfile(10);
+		APML apml = APMLCodecs.getCodec().deserialize(generator.generate());
+		List<Profile> profiles = apml.getBody().getProfiles();
+		// Unusual values and missing attributes
+		profiles.get(0).getImplicitData().getConcepts().add(new Concept("\u00e9t\u00e9 \u4e2d", "high", null, "yesterday"));
+
+		File file = File.createTempFile("profiles", ".store");
+		file.deleteOnExit();
+		ProfileStoreWriter writer = new ProfileStoreWriter(file, 16);
+		for(Profile profile : profiles)
+			writer.add("user-" + profile.getName(), profile);
+		writer.close();
+
+		ProfileStore store = new ProfileStore(file);
+		ok &= Checks.check("Size", store.size() == profiles.size());
+		boolean same = true;
+		for(Profile profile : profiles)
+		{
+			StoredProfile stored = store.getProfile("user-" + profile.getName());
+			same &= stored != null && profile.getName().equals(stored.getName())
+					&& ("user-" + profile.getName()).equals(stored.getUserId())
+					&& same(profile.getImplicitData().getConcepts(), stored.getImplicitConcepts())
+					&& same(profile.getExplicitData().getConcepts(), stored.getExplicitConcepts());
+		}
+		ok &= Checks.check("Concepts read back, 64 KB segments", same);
+		ok &= Checks.check("Unknown users", store.getProfile("nobody") == null && !store.contains("profile0")
+				&& store.contains("user-profile0"));
+		StoredConcepts concepts = store.getProfile(0).getImplicitConcepts();
+		ok &= Checks.check("Unknown keys", concepts.indexOf("no such key") < 0 && Float.isNaN(concepts.getValue("no such key")));
+
+		File bad = File.createTempFile("profiles", ".bad");
+		bad.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(bad);
+		out.write(new byte[100]);
+		out.close();
+		try
+		{
+			new ProfileStore(bad);
+			ok &= Checks.check("Not a store rejected", false);
+		}
+		catch(IOException ioEx)
+		{
+			ok &= Checks.check("Not a store rejected", true);
+		}
+
+		// Many users sharing the generated profiles
+		long start = System.currentTimeMillis();
+		File big = File.createTempFile("profiles", ".store");
+		big.deleteOnExit();
+		writer = new ProfileStoreWriter(big);
+		for(int i = 0; i < count; i++)
+			writer.add("user" + i, profiles.get(i % profiles.size()));
+		writer.close();
+		long writeTime = System.currentTimeMillis() - start;
+
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+		store = new ProfileStore(big);
+		System.gc();
+		long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+		System.out.println(count + " users: " + (big.length() >> 20) + " MB written in " + writeTime
+				+ " ms, heap after opening " + ((heapAfter - heapBefore) >> 10) + " KB");
+
+		// The first round pages the file in
+		int lookups = 1000000;
+		for(int round = 0; round < 2; round++)
+		{
+			Random random = new Random(3);
+			double sum = 0;
+			start = System.nanoTime();
+			for(int i = 0; i < lookups; i++)
+			{
+				int user = random.nextInt(count);
+				StoredConcepts stored = store.getProfile("user" + user).getImplicitConcepts();
+				Profile profile = profiles.get(user % profiles.size());
+				sum += stored.getValue(profile.getImplicitData().getConcepts().get(0).getKey());
+			}
+			long lookupTime = System.nanoTime() - start;
+			System.out.println(lookups + " lookups of a user and a concept: " + (lookupTime / lookups) + " ns each (" + (float)sum + ")");
+		}
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Compares the concepts of a profile with the stored ones, which are in another order
+	 */
+	private static boolean same(List<Concept> concepts, StoredConcepts stored)
+	{
+		if(concepts.size() != stored.size())
+			return false;
+
+		for(Concept concept : concepts)
+		{
+			boolean found = false;
+			for(int i = stored.indexOf(concept.getKey()); i >= 0 && i < stored.size() && concept.getKey().equals(stored.getKey(i)); i++)
+			{
+				found |= Float.floatToIntBits(concept.getFloatValue()) == Float.floatToIntBits(stored.getValue(i))
+						&& eq(concept.getFrom(), stored.getFrom(i))
+						&& concept.getUpdatedMillis() == stored.getUpdatedMillis(i);
+			}
+			if(!found)
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean eq(String a, String b)
+	{
+		return a == null ? b == null : a.equals(b);
+	}
+}
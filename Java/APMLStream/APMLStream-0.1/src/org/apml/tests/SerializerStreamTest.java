@@ -0,0 +1,206 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import org.apml.base.APML;
+import org.apml.base.Concept;
+import org.apml.base.Profile;
+import org.apml.serialize.APMLSerializer;
+import org.apml.tools.APMLCodec;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Checks the Writer and OutputStream overloads of APMLSerializer and APMLCodec: they write
+ * the same markup as the String ones in any charset and buffer size, read back to the same
+ * document, also through the byte stream deserializers, flush without closing and report write
+ * errors as IOExceptions.<br>
+ * Usage: SerializerStreamTest</p>
+ * @author Tim Schultz
+ */
+public class SerializerStreamTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		boolean ok = true;
+
+		// Latin-1 text, and text that only a Unicode charset can hold
+		APML latin = APMLCodecs.getCodec().deserialize(new APMLCorpusGenerator(3, 20, 20, 2).generate());
+		Profile profile = latin.getBody().getProfiles().get(0);
+		profile.getImplicitData().getConcepts().add(new Concept("caf\u00e9 cr\u00e8me & <co>", "0.5", "\u00fc.example.com", "2008-01-13T16:53:52Z"));
+		APML unicode = APMLCodecs.getCodec().deserialize(APMLCodecs.getCodec().serialize(latin));
+		unicode.getBody().getProfiles().get(1).getExplicitData().getConcepts().add(new Concept("\u20ac \u4e2d \ud834\udd1e", "0.25", "a.example.com", ""));
+
+		Target[] targets = { new Target("APMLSerializer")
+		{
+			APMLSerializer serializer = APMLCodecs.getSerializer();
+			String serialize(APML apml) { return serializer.serialize(apml); }
+			void serialize(APML apml, Writer out) throws IOException { serializer.serialize(apml, out); }
+			void serialize(APML apml, OutputStream out, Charset charset) throws IOException { serializer.serialize(apml, out, charset); }
+			void serialize(APML apml, OutputStream out, Charset charset, int bufferSize) throws IOException { serializer.serialize(apml, out, charset, bufferSize); }
+		}, new Target("APMLCodec")
+		{
+			APMLCodec codec = APMLCodecs.getCodec();
+			String serialize(APML apml) { return codec.serialize(apml); }
+			void serialize(APML apml, Writer out) throws IOException { codec.serialize(apml, out); }
+			void serialize(APML apml, OutputStream out, Charset charset) throws IOException { codec.serialize(apml, out, charset); }
+			void serialize(APML apml, OutputStream out, Charset charset, int bufferSize) throws IOException { codec.serialize(apml, out, charset, bufferSize); }
+		} };
+
+		for(int t = 0; t < targets.length; t++)
+		{
+			Target target = targets[t];
+			String expected = target.serialize(unicode);
+
+			RecordingWriter writer = new RecordingWriter();
+			target.serialize(unicode, writer);
+			ok &= Checks.check(target.name + " to a Writer", writer.toString().equals(expected) && writer.flushed && !writer.closed);
+
+			ok &= Checks.check(target.name + " in ISO-8859-1", roundTrip(target, latin, Charset.forName("ISO-8859-1")));
+			ok &= Checks.check(target.name + " in UTF-16", roundTrip(target, unicode, Charset.forName("UTF-16")));
+			ok &= Checks.check(target.name + " in UTF-8", roundTrip(target, unicode, Charset.forName("UTF-8")));
+
+			// Write errors come out as they were thrown, whatever XStream wraps them in
+			IOException failure = new IOException("Disk full");
+			try
+			{
+				target.serialize(unicode, new FailingWriter(failure, 1000));
+				ok &= Checks.check(target.name + " write error", false);
+			}
+			catch(IOException ioEx)
+			{
+				ok &= Checks.check(target.name + " write error", ioEx == failure);
+			}
+			catch(RuntimeException runtimeEx)
+			{
+				ok &= Checks.check(target.name + " write error (" + runtimeEx + ")", false);
+			}
+		}
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * @return true if the bytes are the String markup encoded in the charset, for a few buffer
+	 * sizes, and read back to the same document as the String
+	 */
+	private static boolean roundTrip(Target target, APML apml, Charset charset) throws Exception
+	{
+		String expected = target.serialize(apml);
+		// The XStream engine writes application data as escaped text, which reads back as other
+		// markup, so the bytes are read back next to the String rather than compared with the document
+		String reread = target.serialize(APMLCodecs.getCodec().deserialize(expected));
+		int[] bufferSizes = { 1, 7, 64, APMLSerializer.DEFAULT_BUFFER_SIZE };
+		boolean same = true;
+
+		for(int i = 0; i <= bufferSizes.length; i++)
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			if(i == bufferSizes.length)
+				target.serialize(apml, out, charset);
+			else
+				target.serialize(apml, out, charset, bufferSizes[i]);
+			byte[] bytes = out.toByteArray();
+
+			same &= new String(bytes, charset.name()).equals(expected);
+			APML read = APMLCodecs.getCodec().deserialize(new InputStreamReader(new ByteArrayInputStream(bytes), charset));
+			same &= target.serialize(read).equals(reread);
+		}
+
+		// The byte stream overloads find the charset in the XML declaration, or in the byte order mark of UTF-16
+		byte[] declared = ("<?xml version=\"1.0\" encoding=\"" + charset.name() + "\"?>\n" + expected).getBytes(charset.name());
+		same &= target.serialize(APMLCodecs.getCodec().deserialize(new ByteArrayInputStream(declared))).equals(reread);
+		same &= target.serialize(APMLCodecs.getDeserializer().deserialize(new ByteArrayInputStream(declared)))
+				.equals(target.serialize(APMLCodecs.getDeserializer().deserialize(expected)));
+		return same;
+	}
+
+	/**
+	 * The overloads shared by APMLSerializer and APMLCodec
+	 */
+	private static abstract class Target
+	{
+		final String name;
+
+		Target(String name)
+		{
+			this.name = name;
+		}
+
+		abstract String serialize(APML apml);
+		abstract void serialize(APML apml, Writer out) throws IOException;
+		abstract void serialize(APML apml, OutputStream out, Charset charset) throws IOException;
+		abstract void serialize(APML apml, OutputStream out, Charset charset, int bufferSize) throws IOException;
+	}
+
+	private static class RecordingWriter extends StringWriter
+	{
+		boolean flushed = false;
+		boolean closed = false;
+
+		public void flush()
+		{
+			this.flushed = true;
+		}
+
+		public void close() throws IOException
+		{
+			this.closed = true;
+		}
+	}
+
+	/**
+	 * Throws the given exception once more than a number of characters are written
+	 */
+	private static class FailingWriter extends Writer
+	{
+		private final IOException failure;
+		private int left;
+
+		FailingWriter(IOException failure, int limit)
+		{
+			this.failure = failure;
+			this.left = limit;
+		}
+
+		public void write(char[] cbuf, int off, int len) throws IOException
+		{
+			this.left -= len;
+			if(this.left < 0)
+				throw this.failure;
+		}
+
+		public void flush() throws IOException
+		{
+		}
+
+		public void close() throws IOException
+		{
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apml.base.Concept;
+import org.apml.base.Profile;
+import org.apml.similarity.ConceptDictionary;
+import org.apml.similarity.ProfileSimilarity;
+import org.apml.similarity.ProfileSimilarity.Measure;
+import org.apml.similarity.ProfileVector;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Compares the vector similarity measures with the same measures computed on the concept
+ * lists, checks the parallel one-vs-many scoring, and times both ways.<br>
+ * Usage: SimilarityTest [profiles]</p>
+ * @author Tim Schultz
+ */
+public class SimilarityTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		boolean ok = true;
+
+		APMLCorpusGenerator generator = new APMLCorpusGenerator(11, count, 40, 0);
+		generator.setExplicitConceptsPerProfile(10);
+		generator.setVocabularySize(2000);
+		List<Profile> profiles = APMLCodecs.getCodec().deserialize(generator.generate()).getBody().getProfiles();
+
+		ConceptDictionary dictionary = new ConceptDictionary();
+		List<ProfileVector> vectors = new ArrayList<ProfileVector>();
+		List<Map<String, Float>> maps = new ArrayList<Map<String, Float>>();
+		for(Profile profile : profiles)
+		{
+			vectors.add(ProfileVector.of(profile, dictionary));
+			maps.add(toMap(profile));
+		}
+
+		boolean same = true;
+		for(int i = 1; i < 200; i++)
+		{
+			Map<String, Float> a = maps.get(0);
+			Map<String, Float> b = maps.get(i);
+			same &= close(ProfileSimilarity.cosine(vectors.get(0), vectors.get(i)), cosine(a, b))
+					&& close(ProfileSimilarity.jaccard(vectors.get(0), vectors.get(i)), jaccard(a, b))
+					&& close(ProfileSimilarity.weightedOverlap(vectors.get(0), vectors.get(i)), overlap(a, b));
+		}
+		ok &= Checks.check("Same as on the concept lists", same);
+		ok &= Checks.check("Identical profiles", close(ProfileSimilarity.cosine(vectors.get(3), vectors.get(3)), 1)
+				&& close(ProfileSimilarity.jaccard(vectors.get(3), vectors.get(3)), 1)
+				&& close(ProfileSimilarity.weightedOverlap(vectors.get(3), vectors.get(3)), 1));
+		ProfileVector empty = new ProfileVector(new int[0], new float[0]);
+		ok &= Checks.check("Empty profile", ProfileSimilarity.cosine(empty, vectors.get(0)) == 0 && ProfileSimilarity.jaccard(empty, empty) == 0);
+
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		ProfileSimilarity sequential = new ProfileSimilarity();
+		ProfileSimilarity parallel = new ProfileSimilarity(pool);
+		same = true;
+		for(Measure measure : Measure.values())
+			same &= Arrays.equals(sequential.scoreAll(vectors.get(0), vectors, measure), parallel.scoreAll(vectors.get(0), vectors, measure));
+		ok &= Checks.check("Parallel scores", same);
+
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < maps.size(); i++)
+			cosine(maps.get(0), maps.get(i));
+		long mapTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		sequential.scoreAll(vectors.get(0), vectors, Measure.COSINE);
+		long vectorTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		parallel.scoreAll(vectors.get(0), vectors, Measure.COSINE);
+		long parallelTime = System.currentTimeMillis() - start;
+		System.out.println("Cosine of one profile against " + count + ": string maps " + mapTime + " ms, vectors "
+				+ vectorTime + " ms, in parallel " + parallelTime + " ms");
+		pool.shutdown();
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Lower-cased key to summed value, the slow way
+	 */
+	private static Map<String, Float> toMap(Profile profile)
+	{
+		Map<String, Float> map = new HashMap<String, Float>();
+		List<Concept> concepts = new ArrayList<Concept>(profile.getImplicitData().getConcepts());
+		concepts.addAll(profile.getExplicitData().getConcepts());
+
+		for(Concept concept : concepts)
+		{
+			String key = concept.getKey().toLowerCase();
+			Float sum = map.get(key);
+			map.put(key, (sum == null ? 0 : sum.floatValue()) + Float.parseFloat(concept.getValue()));
+		}
+		return map;
+	}
+
+	private static double cosine(Map<String, Float> a, Map<String, Float> b)
+	{
+		double dot = 0;
+		for(Map.Entry<String, Float> entry : a.entrySet())
+			if(b.containsKey(entry.getKey()))
+				dot += entry.getValue() * b.get(entry.getKey());
+		return dot / (norm(a) * norm(b));
+	}
+
+	private static double jaccard(Map<String, Float> a, Map<String, Float> b)
+	{
+		int shared = 0;
+		for(String key : a.keySet())
+			if(b.containsKey(key))
+				shared++;
+		return (double) shared / (a.size() + b.size() - shared);
+	}
+
+	private static double overlap(Map<String, Float> a, Map<String, Float> b)
+	{
+		double sum = 0;
+		for(Map.Entry<String, Float> entry : a.entrySet())
+			if(b.containsKey(entry.getKey()))
+				sum += Math.min(entry.getValue(), b.get(entry.getKey()));
+		return sum / Math.min(total(a), total(b));
+	}
+
+	private static double norm(Map<String, Float> map)
+	{
+		double squares = 0;
+		for(Float value : map.values())
+			squares += value * value;
+		return Math.sqrt(squares);
+	}
+
+	private static double total(Map<String, Float> map)
+	{
+		double sum = 0;
+		for(Float value : map.values())
+			sum += value;
+		return sum;
+	}
+
+	private static boolean close(double a, double b)
+	{
+		return Math.abs(a - b) < 1e-4;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.List;
+import org.apml.base.APML;
+import org.apml.base.Concept;
+import org.apml.deserialize.APMLEventParser;
+import org.apml.deserialize.APMLModelBuilder;
+import org.apml.tools.APMLCodec;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+import org.apml.tools.WeakStringPool;
+
+/**
+ * <p>Checks that the deserializers share the repeated attributes of a document, and compares
+ * the heap kept by a parsed document with and without the string pool.<br>
+ * Usage: StringPoolTest [apml file]</p>
+ * @author Tim Schultz
+ */
+public class StringPoolTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		File file = new File(args.length > 0 ? args[0] : "examples/myLastFM.apml");
+		boolean ok = true;
+
+		APML xstreamAPML = APMLCodecs.getDeserializer().deserialize(file);
+		APML codecAPML = APMLCodecs.getCodec().deserialize(file);
+		ok &= Checks.check("XStream shares attributes", distinctFroms(xstreamAPML) == 1);
+		ok &= Checks.check("Codec shares attributes", distinctFroms(codecAPML) == 1);
+		ok &= Checks.check("Same markup", APMLCodecs.getSerializer().serialize(xstreamAPML).equals(APMLCodecs.getCodec().serialize(codecAPML)));
+
+		// A shared pool hands out the same strings to every document
+		APMLCodec codec = new APMLCodec();
+		WeakStringPool pool = new WeakStringPool();
+		codec.setStringPool(pool);
+		Concept first = codec.deserialize(file).getBody().getProfiles().get(0).getImplicitData().getConcepts().get(0);
+		Concept second = codec.deserialize(file).getBody().getProfiles().get(0).getImplicitData().getConcepts().get(0);
+		ok &= Checks.check("Shared pool", first.getFrom() == second.getFrom() && first.getUpdated() == second.getUpdated() && pool.size() > 0);
+
+		// Heap kept by a generated document, whose dates and hosts repeat
+		String payload = new APMLCorpusGenerator(3, 5, 20000, 200).generate();
+		long before = usedMemory();
+		APML pooled = parse(payload, new APMLModelBuilder());
+		long pooledBytes = usedMemory() - before;
+		before = usedMemory();
+		APML unpooled = parse(payload, new APMLModelBuilder(null));
+		long unpooledBytes = usedMemory() - before;
+		System.out.println("Retained heap: " + unpooledBytes / 1024 + " KB without the pool, " + pooledBytes / 1024 + " KB with it ("
+				+ pooled.getBody().getProfiles().size() + "/" + unpooled.getBody().getProfiles().size() + " profiles)");
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	private static APML parse(String payload, APMLModelBuilder builder) throws Exception
+	{
+		new APMLEventParser().parse(payload, builder);
+		return builder.getAPML();
+	}
+
+	/**
+	 * Counts the different String instances of the from attributes of the first profile
+	 */
+	private static int distinctFroms(APML apml)
+	{
+		IdentityHashMap<String, String> froms = new IdentityHashMap<String, String>();
+		List<Concept> concepts = apml.getBody().getProfiles().get(0).getImplicitData().getConcepts();
+
+		for(Concept concept : concepts)
+			froms.put(concept.getFrom(), concept.getFrom());
+		return froms.size();
+	}
+
+	private static long usedMemory()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.apml.base.Concept;
+import org.apml.base.ConceptFilter;
+import org.apml.base.ImplicitData;
+import org.apml.base.Profile;
+import org.apml.tools.APMLCodecs;
+import org.apml.tools.APMLCorpusGenerator;
+
+/**
+ * <p>Compares the top-k concept queries with sorting the whole list, and times both.<br>
+ * Usage: TopConceptsTest [concepts]</p>
+ * @author Tim Schultz
+ */
+public class TopConceptsTest
+{
+	private static final Comparator<Concept> BY_VALUE = new Comparator<Concept>()
+	{
+		public int compare(Concept a, Concept b)
+		{
+			return Float.compare(b.getFloatValue(), a.getFloatValue());
+		}
+	};
+
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		boolean ok = true;
+
+		APMLCorpusGenerator generator = new APMLCorpusGenerator(5, 1, count, 0);
+		generator.setExplicitConceptsPerProfile(count / 10);
+		Profile profile = APMLCodecs.getDeserializer().deserialize(generator.generate()).getBody().getProfiles().get(0);
+		ImplicitData data = profile.getImplicitData();
+
+		// Ties, and values that aren't numbers
+		data.getConcepts().add(new Concept("tie", "1.0", "a.example.com", ""));
+		data.getConcepts().add(new Concept("tie", "1.0", "b.example.com", ""));
+		data.getConcepts().add(new Concept("unknown", "high", "a.example.com", ""));
+
+		List<Concept> numeric = new ArrayList<Concept>();
+		for(Concept concept : data.getConcepts())
+			if(!concept.getValue().equals("high"))
+				numeric.add(concept);
+		List<Concept> sorted = sorted(numeric);
+
+		int[] ks = { 0, 1, 2, 20, 50, count + 10 };
+		boolean same = true;
+		for(int i = 0; i < ks.length; i++)
+			same &= data.topConcepts(ks[i]).equals(sorted.subList(0, Math.min(ks[i], sorted.size())));
+		ok &= Checks.check("Same as sorting", same);
+		ok &= Checks.check("Ties keep list order", data.topConcepts(2).get(0).getFrom().equals("a.example.com"));
+
+		final String from = APMLCorpusGenerator.host(1);
+		ConceptFilter fromFilter = new ConceptFilter()
+		{
+			public boolean accept(Concept concept)
+			{
+				return concept.getFrom().equals(from);
+			}
+		};
+		ok &= Checks.check("Filter", data.topConcepts(20, fromFilter).equals(sorted(data.getAllConceptsFrom(from)).subList(0, 20)));
+
+		List<Concept> all = new ArrayList<Concept>(data.getConcepts());
+		all.addAll(profile.getExplicitData().getConcepts());
+		all.remove(data.getConcepts().size() - 1);
+		ok &= Checks.check("Profile", profile.topConcepts(50).equals(sorted(all).subList(0, 50)));
+		ok &= Checks.check("Unbounded k", profile.topConcepts(Integer.MAX_VALUE).equals(sorted(all))
+				&& data.topConcepts(Integer.MAX_VALUE).equals(sorted));
+
+		int rounds = 100;
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < rounds; i++)
+			sorted(numeric).subList(0, 20);
+		long sortTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		for(int i = 0; i < rounds; i++)
+			data.topConcepts(20);
+		long topTime = System.currentTimeMillis() - start;
+		System.out.println(rounds + " top-20 queries over " + count + " concepts: copy and sort " + sortTime + " ms, heap " + topTime + " ms");
+
+		if(!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Stable, so equal values keep the list order
+	 */
+	private static List<Concept> sorted(List<Concept> concepts)
+	{
+		List<Concept> copy = new ArrayList<Concept>(concepts);
+		Collections.sort(copy, BY_VALUE);
+		return copy;
+	}
+}
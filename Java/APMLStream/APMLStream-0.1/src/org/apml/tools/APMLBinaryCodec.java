@@ -0,0 +1,130 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apml.base.APML;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.apml.deserialize.APMLBinaryParser;
+import org.apml.deserialize.APMLModelBuilder;
+import org.apml.serialize.APMLBinaryWriter;
+
+/**
+ * <p>Object-to-binary and binary-to-Object conversion of APML documents.<br>
+ * Documents are written with the {@link APMLBinaryWriter} and read with the {@link APMLBinaryParser}.
+ * The binary form holds the same data as the markup of the {@link APMLCodec}, at a fraction of
+ * its size and decoding time, which suits caches and stores of APML documents. It is not meant
+ * to be exchanged with other APML implementations.</p>
+ * <p>A codec holds no state and can be shared between threads, see {@link APMLCodecs#getBinaryCodec()}.
+ * Repeated strings are shared within a document, and between documents if a pool is set with
+ * {@link #setStringPool(StringPool)}.</p>
+ * @author Tim Schultz
+ */
+public class APMLBinaryCodec
+{
+	private APMLBinaryParser parser = null;
+	private volatile StringPool stringPool = null;
+
+	public APMLBinaryCodec()
+	{
+		this.parser = new APMLBinaryParser();
+	}
+
+	/**
+	 * @return The pool shared by all documents, or null if strings are only shared within a document
+	 */
+	public StringPool getStringPool()
+	{
+		return this.stringPool;
+	}
+
+	/**
+	 * Sets a pool for the repeated attributes of all documents read by this codec. The pool must
+	 * be thread-safe if the codec is shared, like the {@link BoundedStringPool} and the
+	 * {@link WeakStringPool}.
+	 * @param stringPool The shared pool, or null to only share strings within a document
+	 */
+	public void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Deserializes a binary APML document held in a byte array
+	 * @param data The document
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(byte[] data) throws InvalidAPMLFormatException
+	{
+		// The document dictionary already shares the repeated strings
+		APMLModelBuilder builder = new APMLModelBuilder(this.stringPool);
+		this.parser.parse(data, builder);
+		return builder.getAPML();
+	}
+
+	/**
+	 * Deserializes a binary APML document read from a byte stream. The stream is not closed.
+	 * @param in An input stream positioned at the start of a binary APML document
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(InputStream in) throws IOException, InvalidAPMLFormatException
+	{
+		APMLModelBuilder builder = new APMLModelBuilder(this.stringPool);
+		this.parser.parse(in, builder);
+		return builder.getAPML();
+	}
+
+	/**
+	 * Serializes an APML object to a binary APML document
+	 * @param myAPML
+	 * @return The document
+	 */
+	public byte[] serialize(APML myAPML)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try
+		{
+			new APMLBinaryWriter(out).write(myAPML);
+		}
+		catch(IOException ioEx)
+		{
+			// Can't happen on a ByteArrayOutputStream
+			throw new IllegalStateException(ioEx);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Serializes an APML object to a byte stream. The stream is flushed, but not closed.
+	 * @param myAPML
+	 * @param out Where the document is written
+	 * @throws IOException
+	 */
+	public void serialize(APML myAPML, OutputStream out) throws IOException
+	{
+		new APMLBinaryWriter(out).write(myAPML);
+	}
+}
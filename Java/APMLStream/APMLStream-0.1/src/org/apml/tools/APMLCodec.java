@@ -0,0 +1,227 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import org.apml.base.APML;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.apml.deserialize.APMLEventParser;
+import org.apml.deserialize.APMLModelBuilder;
+import org.apml.deserialize.XMLEncoding;
+import org.apml.serialize.APMLSerializer;
+import org.apml.serialize.APMLWriter;
+
+/**
+ * <p>APML-to-Object and Object-to-APML conversion without XStream.<br>
+ * Documents are read with the {@link APMLEventParser} and written with the {@link APMLWriter},
+ * which only know the APML 0.6 elements and call the setters and getters of the APML objects
+ * directly. There is no reflection and nothing to set up, so a codec is cheap to create and
+ * much faster than the XStream based {@link org.apml.deserialize.APMLDeserializer} and
+ * {@link APMLSerializer}, while producing the same markup and objects.<br>
+ * The one difference is that the application data of &lt;Application&gt; elements is kept
+ * instead of being replaced by a placeholder.</p>
+ * <p>A codec holds no state and can be shared between threads, see {@link APMLCodecs#getCodec()}.
+ * Repeated attributes are pooled per document, unless a pool shared by all documents is set
+ * with {@link #setStringPool(StringPool)}.</p>
+ * @author Tim Schultz
+ */
+public class APMLCodec
+{
+	private APMLEventParser parser = null;
+	private volatile StringPool stringPool = null;
+
+	public APMLCodec()
+	{
+		this.parser = new APMLEventParser();
+	}
+
+	/**
+	 * @return The pool shared by all documents, or null if each document has its own
+	 */
+	public StringPool getStringPool()
+	{
+		return this.stringPool;
+	}
+
+	/**
+	 * Sets a pool for the repeated attributes of all documents read by this codec. The pool must
+	 * be thread-safe if the codec is shared, like the {@link BoundedStringPool} and the
+	 * {@link WeakStringPool}.
+	 * @param stringPool The shared pool, or null to give each document a pool of its own
+	 */
+	public void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Deserializes the APML payload to an APML object
+	 * @param xmlPayload A string representation of an APML document
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(String xmlPayload) throws InvalidAPMLFormatException
+	{
+		APMLModelBuilder builder = newBuilder();
+		this.parser.parse(xmlPayload, builder);
+		return builder.getAPML();
+	}
+
+	/**
+	 * Deserializes an APML document read from a character stream. The reader is not closed.
+	 * @param reader A reader positioned at the start of an APML document
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(Reader reader) throws IOException, InvalidAPMLFormatException
+	{
+		APMLModelBuilder builder = newBuilder();
+		this.parser.parse(reader, builder);
+		return builder.getAPML();
+	}
+
+	/**
+	 * Deserializes an APML document read from a byte stream, in the encoding given by its byte
+	 * order mark or XML declaration, UTF-8 by default. The stream is not closed.
+	 * @param in An input stream positioned at the start of an APML document
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(InputStream in) throws IOException, InvalidAPMLFormatException
+	{
+		APMLModelBuilder builder = newBuilder();
+		this.parser.parse(in, builder);
+		return builder.getAPML();
+	}
+
+	/**
+	 * Deserializes a file specified by a URL, in the charset of its Content-Type if the server
+	 * sends one, else in the document's own
+	 * @param file The URL pointing to an APML file
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(URL file) throws IOException, InvalidAPMLFormatException
+	{
+		URLConnection connection = file.openConnection();
+		InputStream in = connection.getInputStream();
+
+		try
+		{
+			return deserialize(XMLEncoding.newReader(in, XMLEncoding.charsetOf(connection.getContentType())));
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Deserializes an UTF-8 encoded file specified by a File object
+	 * @param file A File object pointing to an APML document
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object
+	 */
+	public APML deserialize(File file) throws IOException, InvalidAPMLFormatException
+	{
+		APMLModelBuilder builder = newBuilder();
+		this.parser.parse(file, builder);
+		return builder.getAPML();
+	}
+
+	/**
+	 * Serializes an APML object to APML text
+	 * @param myAPML
+	 * @return The APML markup
+	 */
+	public String serialize(APML myAPML)
+	{
+		StringWriter out = new StringWriter();
+
+		try
+		{
+			new APMLWriter(out).write(myAPML);
+		}
+		catch(IOException ioEx)
+		{
+			// Can't happen on a StringWriter
+			throw new IllegalStateException(ioEx);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Serializes an APML object to a character stream. The writer is flushed, but not closed.
+	 * @param myAPML
+	 * @param out Where the APML markup is written
+	 * @throws IOException
+	 */
+	public void serialize(APML myAPML, Writer out) throws IOException
+	{
+		new APMLWriter(out).write(myAPML);
+	}
+
+	/**
+	 * Serializes an APML object to a byte stream, buffered by {@link APMLSerializer#DEFAULT_BUFFER_SIZE} characters.
+	 * No XML declaration is written. The stream is flushed, but not closed.
+	 * @param myAPML
+	 * @param out Where the APML markup is written
+	 * @param charset The encoding of the markup
+	 * @throws IOException
+	 */
+	public void serialize(APML myAPML, OutputStream out, Charset charset) throws IOException
+	{
+		serialize(myAPML, out, charset, APMLSerializer.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Serializes an APML object to a byte stream. No XML declaration is written.
+	 * The stream is flushed, but not closed.
+	 * @param myAPML
+	 * @param out Where the APML markup is written
+	 * @param charset The encoding of the markup
+	 * @param bufferSize How many characters are buffered before they are encoded and written out
+	 * @throws IOException
+	 */
+	public void serialize(APML myAPML, OutputStream out, Charset charset, int bufferSize) throws IOException
+	{
+		serialize(myAPML, new BufferedWriter(new OutputStreamWriter(out, charset), bufferSize));
+	}
+
+	private APMLModelBuilder newBuilder()
+	{
+		StringPool pool = this.stringPool;
+		return (pool == null) ? new APMLModelBuilder() : new APMLModelBuilder(pool);
+	}
+}
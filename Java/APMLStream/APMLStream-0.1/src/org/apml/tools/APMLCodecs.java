@@ -0,0 +1,141 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+import org.apml.base.*;
+import org.apml.converters.ApplicationsConverter;
+import org.apml.converters.PooledStringConverter;
+import org.apml.deserialize.APMLDeserializer;
+import org.apml.serialize.APMLSerializer;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * <p>Hands out shared, ready to use APMLDeserializer and APMLSerializer instances.<br>
+ * Setting up an XStream for APML registers about thirty aliases and attributes, which is
+ * far more expensive than converting a typical document. The shared instances are built
+ * once, on first use, around a single XStream, so that cost stays off the request path.</p>
+ * <p>The shared instances are thread-safe: any number of threads may call
+ * <code>deserialize</code> and <code>serialize</code> on them concurrently. XStream
+ * only keeps per-call state once it is configured, so the XStream returned by their
+ * <code>getXStream()</code> must not be reconfigured. Use {@link #newXStream()} to get
+ * a private copy that can be customized.</p>
+ * <p>{@link #getCodec()} selects the reflection-free {@link APMLCodec} engine instead, which
+ * reads and writes the same markup, and {@link #getBinaryCodec()} the {@link APMLBinaryCodec} for
+ * the compact binary form.</p>
+ * @author Tim Schultz
+ */
+public final class APMLCodecs
+{
+	// Cheap to build, unlike the XStream
+	private static final APMLCodec CODEC = new APMLCodec();
+	private static final APMLBinaryCodec BINARY_CODEC = new APMLBinaryCodec();
+	// Slots of the string pool of each XStream, shared by all documents it reads
+	private static final int XSTREAM_POOL_SIZE = 4096;
+
+	private APMLCodecs(){}
+
+	/**
+	 * Returns the shared deserializer
+	 * @return An APMLDeserializer that is safe to use from any thread
+	 */
+	public static APMLDeserializer getDeserializer()
+	{
+		return Shared.DESERIALIZER;
+	}
+
+	/**
+	 * Returns the shared serializer
+	 * @return An APMLSerializer that is safe to use from any thread
+	 */
+	public static APMLSerializer getSerializer()
+	{
+		return Shared.SERIALIZER;
+	}
+
+	/**
+	 * Returns the shared reflection-free codec, an alternative to the XStream based instances
+	 * @return An APMLCodec that is safe to use from any thread
+	 */
+	public static APMLCodec getCodec()
+	{
+		return CODEC;
+	}
+
+	/**
+	 * Returns the shared binary codec
+	 * @return An APMLBinaryCodec that is safe to use from any thread
+	 */
+	public static APMLBinaryCodec getBinaryCodec()
+	{
+		return BINARY_CODEC;
+	}
+
+	/**
+	 * Builds a new XStream set up in accordance to APML spec
+	 * @return The XStream object
+	 */
+	public static XStream newXStream()
+	{
+		XStream xstream = new XStream();
+		xstream.alias("APML", APML.class);
+		xstream.useAttributeFor(APML.class, "version");
+		xstream.useAttributeFor(APML.class, "xmlns");
+		xstream.alias("Head", Head.class);
+		xstream.alias("Body", Body.class);
+		xstream.useAttributeFor(Body.class, "defaultprofile");
+		xstream.addImplicitCollection(Body.class, "Profiles");
+		xstream.alias("Profile", Profile.class);
+		xstream.useAttributeFor(Profile.class, "name");
+		xstream.alias("ImplicitData", ImplicitData.class);
+		xstream.alias("ExplicitData", ExplicitData.class);
+		xstream.alias("Concept", Concept.class);
+		xstream.useAttributeFor(Concept.class, "key");
+		xstream.useAttributeFor(Concept.class, "value");
+		xstream.useAttributeFor(Concept.class, "from");
+		xstream.useAttributeFor(Concept.class, "updated");
+		xstream.alias("Source", Source.class);
+		xstream.useAttributeFor(Source.class, "key");
+		xstream.useAttributeFor(Source.class, "name");
+		xstream.useAttributeFor(Source.class, "value");
+		xstream.useAttributeFor(Source.class, "type");
+		xstream.useAttributeFor(Source.class, "from");
+		xstream.useAttributeFor(Source.class, "updated");
+		xstream.alias("Author", Author.class);
+		xstream.aliasField("Author", Source.class, "author");
+		xstream.useAttributeFor(Author.class, "key");
+		xstream.useAttributeFor(Author.class, "value");
+		xstream.useAttributeFor(Author.class, "from");
+		xstream.useAttributeFor(Author.class, "updated");
+		xstream.registerConverter(new ApplicationsConverter(xstream.getMapper()));
+		xstream.registerConverter(new PooledStringConverter(new BoundedStringPool(XSTREAM_POOL_SIZE)));
+		xstream.alias("Applications", Applications.class);
+		xstream.alias("Application", Application.class);
+		return xstream;
+	}
+
+	/**
+	 * Holds the shared instances, so they are only built when first asked for
+	 */
+	private static class Shared
+	{
+		static final XStream XSTREAM = newXStream();
+		static final APMLDeserializer DESERIALIZER = new APMLDeserializer(XSTREAM);
+		static final APMLSerializer SERIALIZER = new APMLSerializer(XSTREAM);
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * <p>Generates synthetic APML 0.6 documents for load and scale testing.<br>
+ * Concept keys and authors are drawn from a vocabulary with a Zipf distribution, so a few keys
+ * are very common and most are rare, like in real attention data. The concept keys of a profile
+ * are distinct, so once a profile has taken the common ones it goes on with rarer keys, past the
+ * end of the vocabulary if it has to. The same settings and seed always give the same document.</p>
+ * <p>The markup is written out while it is generated, so memory use doesn't depend on the size
+ * of the document and files of several gigabytes can be produced. Each concept takes about
+ * 120 bytes and each source about 330 bytes.</p>
+ * <p>Usage from the command line: APMLCorpusGenerator file profiles [concepts per profile]
+ * [sources per profile] [seed]</p>
+ * @author Tim Schultz
+ */
+public class APMLCorpusGenerator
+{
+	private static final String[] SYLLABLES = { "ba", "ce", "di", "fo", "gu", "ha", "je", "ki", "lo", "mu", "na", "pe", "ri", "so", "tu", "ve" };
+	private static final String[] FEED_TYPES = { "application/rss+xml", "application/atom+xml", "text/html" };
+	private static final long START_DATE = 1199900000000L;
+	private static final long YEAR = 365L * 24 * 3600 * 1000;
+	private static final int MAX_REDRAWS = 8;
+
+	private long seed = 42;
+	private int profileCount = 1;
+	private int conceptsPerProfile = 100;
+	private int explicitConceptsPerProfile = 10;
+	private int sourcesPerProfile = 10;
+	private int applicationCount = 1;
+	private int vocabularySize = 10000;
+	private double zipfExponent = 1.0;
+	private int hostCount = 50;
+
+	public APMLCorpusGenerator(){}
+
+	/**
+	 * Constructor
+	 * @param seed The seed of the random generator
+	 * @param profileCount The number of profiles
+	 * @param conceptsPerProfile The number of implicit concepts per profile
+	 * @param sourcesPerProfile The number of implicit sources per profile
+	 */
+	public APMLCorpusGenerator(long seed, int profileCount, int conceptsPerProfile, int sourcesPerProfile)
+	{
+		this.seed = seed;
+		this.profileCount = profileCount;
+		this.conceptsPerProfile = conceptsPerProfile;
+		this.sourcesPerProfile = sourcesPerProfile;
+	}
+
+	/**
+	 * Writes a document to a file, UTF-8 encoded
+	 * @param file The file to create or overwrite
+	 * @throws IOException
+	 */
+	public void generate(File file) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+
+		try
+		{
+			generate(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a document to a byte stream, UTF-8 encoded. The stream is flushed, but not closed.
+	 * @param out Where the document is written
+	 * @throws IOException
+	 */
+	public void generate(OutputStream out) throws IOException
+	{
+		generate(new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 64 * 1024));
+	}
+
+	/**
+	 * Writes a document to a character stream. The writer is flushed, but not closed.
+	 * @param out Where the document is written
+	 * @throws IOException
+	 */
+	public void generate(Writer out) throws IOException
+	{
+		Random random = new Random(this.seed);
+		double[] keyDistribution = zipf(this.vocabularySize, this.zipfExponent);
+		double[] hostDistribution = zipf(this.hostCount, this.zipfExponent);
+		SimpleDateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		iso8601.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.write("<APML xmlns=\"http://www.apml.org/apml-0.6\" version=\"0.6\">\n");
+		out.write("  <Head>\n");
+		out.write("    <Title>Synthetic attention profile " + this.seed + "</Title>\n");
+		out.write("    <Generator>APMLCorpusGenerator</Generator>\n");
+		out.write("    <UserEmail>user" + this.seed + "@example.com</UserEmail>\n");
+		out.write("    <DateCreated>" + iso8601.format(new Date(START_DATE)) + "</DateCreated>\n");
+		out.write("  </Head>\n");
+		out.write("  <Body defaultprofile=\"" + profileName(0) + "\">\n");
+
+		BitSet usedKeys = new BitSet();
+		for(int p = 0; p < this.profileCount; p++)
+		{
+			usedKeys.clear();
+			out.write("    <Profile name=\"" + profileName(p) + "\">\n");
+			writeData(out, "ImplicitData", this.conceptsPerProfile, this.sourcesPerProfile, random, keyDistribution, hostDistribution, iso8601, usedKeys);
+			writeData(out, "ExplicitData", this.explicitConceptsPerProfile, 0, random, keyDistribution, hostDistribution, iso8601, usedKeys);
+			out.write("    </Profile>\n");
+		}
+
+		if(this.applicationCount > 0)
+		{
+			out.write("    <Applications>\n");
+			for(int a = 0; a < this.applicationCount; a++)
+			{
+				out.write("      <Application name=\"app" + a + ".example.com\">\n");
+				out.write("        <Setting name=\"" + word(sample(random, keyDistribution)) + "\" value=\"" + random.nextInt(1000) + "\"/>\n");
+				out.write("        <Setting name=\"" + word(sample(random, keyDistribution)) + "\" value=\"" + random.nextInt(1000) + "\"/>\n");
+				out.write("      </Application>\n");
+			}
+			out.write("    </Applications>\n");
+		}
+
+		out.write("  </Body>\n");
+		out.write("</APML>\n");
+		out.flush();
+	}
+
+	/**
+	 * Generates a document in memory, for small documents only
+	 * @return The APML markup
+	 */
+	public String generate()
+	{
+		StringWriter out = new StringWriter();
+
+		try
+		{
+			generate(out);
+		}
+		catch(IOException ioEx)
+		{
+			// Can't happen on a StringWriter
+			throw new IllegalStateException(ioEx);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Returns the name of a generated profile
+	 * @param profile The position of the profile, from 0
+	 * @return The name attribute of the profile
+	 */
+	public static String profileName(int profile)
+	{
+		return "profile" + profile;
+	}
+
+	/**
+	 * Returns the concept key of a vocabulary entry. Entry 0 is the most frequent.
+	 * @param rank The position in the vocabulary, from 0
+	 * @return The key
+	 */
+	public static String word(int rank)
+	{
+		StringBuilder word = new StringBuilder();
+
+		do
+		{
+			word.append(SYLLABLES[rank & 15]);
+			rank >>>= 4;
+		}
+		while(rank != 0);
+		return word.toString();
+	}
+
+	/**
+	 * Returns the host name of the from attributes and sources. Host 0 is the most frequent.
+	 * @param rank The position of the host, from 0
+	 * @return The host name
+	 */
+	public static String host(int rank)
+	{
+		return word(rank) + ".example.com";
+	}
+
+	private void writeData(Writer out, String name, int conceptCount, int sourceCount, Random random, double[] keyDistribution, double[] hostDistribution, SimpleDateFormat iso8601, BitSet usedKeys) throws IOException
+	{
+		out.write("      <" + name + ">\n");
+		out.write("        <Concepts>\n");
+		for(int c = 0; c < conceptCount; c++)
+		{
+			out.write("          <Concept key=\"");
+			out.write(word(sampleUnused(random, keyDistribution, usedKeys)));
+			out.write("\" value=\"");
+			out.write(Float.toString(random.nextFloat()));
+			out.write("\" from=\"");
+			out.write(host(sample(random, hostDistribution)));
+			out.write("\" updated=\"");
+			out.write(date(random, iso8601));
+			out.write("\"/>\n");
+		}
+		out.write("        </Concepts>\n");
+		out.write("        <Sources>\n");
+		for(int s = 0; s < sourceCount; s++)
+		{
+			String host = host(sample(random, hostDistribution));
+			String updated = date(random, iso8601);
+			out.write("          <Source key=\"http://" + host + "/feed/" + random.nextInt(1000) + "\" name=\"" + host
+					+ "\" value=\"" + random.nextFloat() + "\" type=\"" + FEED_TYPES[random.nextInt(FEED_TYPES.length)]
+					+ "\" from=\"" + host + "\" updated=\"" + updated + "\">\n");
+			out.write("            <Author key=\"" + word(sample(random, keyDistribution)) + "\" value=\"" + random.nextFloat()
+					+ "\" from=\"" + host + "\" updated=\"" + updated + "\"/>\n");
+			out.write("          </Source>\n");
+		}
+		out.write("        </Sources>\n");
+		out.write("      </" + name + ">\n");
+	}
+
+	private static String date(Random random, SimpleDateFormat iso8601)
+	{
+		return iso8601.format(new Date(START_DATE - (long) (random.nextDouble() * YEAR)));
+	}
+
+	/**
+	 * Cumulative Zipf distribution over n ranks
+	 */
+	private static double[] zipf(int n, double exponent)
+	{
+		double[] cumulative = new double[n];
+		double sum = 0;
+
+		for(int i = 0; i < n; i++)
+		{
+			sum += 1.0 / Math.pow(i + 1, exponent);
+			cumulative[i] = sum;
+		}
+		for(int i = 0; i < n; i++)
+			cumulative[i] /= sum;
+		return cumulative;
+	}
+
+	/**
+	 * Draws a rank that isn't used yet and marks it used. A few redraws keep the distribution;
+	 * once they all hit used ranks, the next free rank above the last draw is taken.
+	 */
+	private static int sampleUnused(Random random, double[] cumulative, BitSet used)
+	{
+		int rank = sample(random, cumulative);
+		for(int redraws = 0; used.get(rank) && redraws < MAX_REDRAWS; redraws++)
+			rank = sample(random, cumulative);
+
+		rank = used.nextClearBit(rank);
+		used.set(rank);
+		return rank;
+	}
+
+	private static int sample(Random random, double[] cumulative)
+	{
+		int i = Arrays.binarySearch(cumulative, random.nextDouble());
+		return i >= 0 ? i : Math.min(-i - 1, cumulative.length - 1);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getProfileCount() {
+		return profileCount;
+	}
+
+	public void setProfileCount(int profileCount) {
+		this.profileCount = profileCount;
+	}
+
+	public int getConceptsPerProfile() {
+		return conceptsPerProfile;
+	}
+
+	public void setConceptsPerProfile(int conceptsPerProfile) {
+		this.conceptsPerProfile = conceptsPerProfile;
+	}
+
+	public int getExplicitConceptsPerProfile() {
+		return explicitConceptsPerProfile;
+	}
+
+	public void setExplicitConceptsPerProfile(int explicitConceptsPerProfile) {
+		this.explicitConceptsPerProfile = explicitConceptsPerProfile;
+	}
+
+	public int getSourcesPerProfile() {
+		return sourcesPerProfile;
+	}
+
+	public void setSourcesPerProfile(int sourcesPerProfile) {
+		this.sourcesPerProfile = sourcesPerProfile;
+	}
+
+	public int getApplicationCount() {
+		return applicationCount;
+	}
+
+	public void setApplicationCount(int applicationCount) {
+		this.applicationCount = applicationCount;
+	}
+
+	public int getVocabularySize() {
+		return vocabularySize;
+	}
+
+	public void setVocabularySize(int vocabularySize) {
+		this.vocabularySize = vocabularySize;
+	}
+
+	public double getZipfExponent() {
+		return zipfExponent;
+	}
+
+	public void setZipfExponent(double zipfExponent) {
+		this.zipfExponent = zipfExponent;
+	}
+
+	/**
+	 * Generates a file from the command line
+	 * @param args file profiles [concepts per profile] [sources per profile] [seed]
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 2)
+		{
+			System.out.println("Usage: APMLCorpusGenerator file profiles [concepts per profile] [sources per profile] [seed]");
+			return;
+		}
+
+		APMLCorpusGenerator generator = new APMLCorpusGenerator();
+		generator.setProfileCount(Integer.parseInt(args[1]));
+		if(args.length > 2)
+			generator.setConceptsPerProfile(Integer.parseInt(args[2]));
+		if(args.length > 3)
+			generator.setSourcesPerProfile(Integer.parseInt(args[3]));
+		if(args.length > 4)
+			generator.setSeed(Long.parseLong(args[4]));
+
+		File file = new File(args[0]);
+		generator.generate(file);
+		System.out.println("Wrote " + file.length() + " bytes to " + file);
+	}
+}
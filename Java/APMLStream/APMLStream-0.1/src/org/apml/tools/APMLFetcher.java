@@ -0,0 +1,448 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apml.base.APML;
+import org.apml.base.exceptions.InvalidAPMLFormatException;
+import org.apml.deserialize.APMLDeserializer;
+
+/**
+ * <p>Fetches APML documents by URL and keeps the parsed APML objects, so documents that many
+ * users share are not downloaded and parsed again on every call.<br>
+ * The cache follows the HTTP caching headers of each response. A document is served from the
+ * cache for the max-age of its Cache-Control header, or until its Expires date. After that it
+ * is revalidated with If-None-Match and If-Modified-Since, and a 304 Not Modified keeps the
+ * cached object. Responses marked no-store are not kept, and no-cache ones are revalidated on
+ * every call. Responses without any of these headers are fresh for {@link #getDefaultMaxAge()}.<br>
+ * Threads asking for a URL that is being fetched wait for that fetch instead of starting their
+ * own. The cache holds at most a fixed number of documents, and drops the least recently used
+ * one to make room.</p>
+ * <p>The same APML object is handed to every caller, so it must not be modified. A fetcher is
+ * safe to share between threads.</p>
+ * @author Tim Schultz
+ */
+public class APMLFetcher
+{
+	/** Documents kept by a fetcher built with the default constructor */
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	private final Decoder decoder;
+	private final StalenessPolicy.Clock clock;
+	private final Map<String, CachedDocument> cache;
+	private final ConcurrentHashMap<String, FutureTask<APML>> inFlight = new ConcurrentHashMap<String, FutureTask<APML>>();
+	private volatile long defaultMaxAge = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong downloads = new AtomicLong();
+
+	/**
+	 * Constructor - Parses with the shared APMLDeserializer and keeps DEFAULT_MAX_ENTRIES documents
+	 */
+	public APMLFetcher()
+	{
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Constructor - Parses with the shared APMLDeserializer
+	 * @param maxEntries The number of documents to keep
+	 */
+	public APMLFetcher(int maxEntries)
+	{
+		this(APMLCodecs.getDeserializer(), maxEntries, StalenessPolicy.SYSTEM_CLOCK);
+	}
+
+	/**
+	 * Constructor
+	 * @param deserializer Parses the documents
+	 * @param maxEntries The number of documents to keep
+	 * @param clock The source of the current time
+	 */
+	public APMLFetcher(final APMLDeserializer deserializer, int maxEntries, StalenessPolicy.Clock clock)
+	{
+		this(new Decoder()
+		{
+			public APML decode(InputStream in) throws IOException, InvalidAPMLFormatException
+			{
+				return deserializer.deserialize(in);
+			}
+		}, maxEntries, clock);
+	}
+
+	/**
+	 * Constructor
+	 * @param codec Parses the documents
+	 * @param maxEntries The number of documents to keep
+	 * @param clock The source of the current time
+	 */
+	public APMLFetcher(final APMLCodec codec, int maxEntries, StalenessPolicy.Clock clock)
+	{
+		this(new Decoder()
+		{
+			public APML decode(InputStream in) throws IOException, InvalidAPMLFormatException
+			{
+				return codec.deserialize(in);
+			}
+		}, maxEntries, clock);
+	}
+
+	private APMLFetcher(Decoder decoder, final int maxEntries, StalenessPolicy.Clock clock)
+	{
+		if(maxEntries < 1)
+			throw new IllegalArgumentException("The cache must hold at least one document");
+
+		this.decoder = decoder;
+		this.clock = clock;
+		// In access order, so the eldest entry is the least recently used one
+		this.cache = new LinkedHashMap<String, CachedDocument>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, CachedDocument> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return How long, in milliseconds, responses without caching headers are served from the cache
+	 */
+	public long getDefaultMaxAge()
+	{
+		return this.defaultMaxAge;
+	}
+
+	/**
+	 * @param defaultMaxAge How long, in milliseconds, responses without caching headers are served
+	 * from the cache. The default, 0, revalidates them on every call.
+	 */
+	public void setDefaultMaxAge(long defaultMaxAge)
+	{
+		this.defaultMaxAge = defaultMaxAge;
+	}
+
+	/**
+	 * Retrieves the APML document at a URL, from the cache if it is still fresh there
+	 * @param url The URL pointing to an APML document
+	 * @throws IOException
+	 * @throws InvalidAPMLFormatException
+	 * @return The APML object, shared with the other callers
+	 */
+	public APML fetch(final URL url) throws IOException, InvalidAPMLFormatException
+	{
+		// Not the URL itself, its equals() resolves host names
+		final String key = url.toExternalForm();
+		final CachedDocument cached = get(key);
+		if(cached != null && cached.expires > this.clock.currentTimeMillis())
+		{
+			this.hits.incrementAndGet();
+			return cached.apml;
+		}
+
+		FutureTask<APML> task = new FutureTask<APML>(new Callable<APML>()
+		{
+			public APML call() throws IOException, InvalidAPMLFormatException
+			{
+				return load(url, key, cached);
+			}
+		});
+		FutureTask<APML> running = this.inFlight.putIfAbsent(key, task);
+		if(running == null)
+		{
+			running = task;
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				this.inFlight.remove(key, task);
+			}
+		}
+
+		try
+		{
+			return running.get();
+		}
+		catch(InterruptedException iEx)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for " + key);
+		}
+		catch(ExecutionException eEx)
+		{
+			Throwable cause = eEx.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			if(cause instanceof InvalidAPMLFormatException)
+				throw (InvalidAPMLFormatException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw (Error)cause;
+		}
+	}
+
+	/**
+	 * Drops a document from the cache
+	 * @param url The URL of the document
+	 */
+	public void invalidate(URL url)
+	{
+		synchronized(this.cache)
+		{
+			this.cache.remove(url.toExternalForm());
+		}
+	}
+
+	/**
+	 * Drops all documents from the cache
+	 */
+	public void clear()
+	{
+		synchronized(this.cache)
+		{
+			this.cache.clear();
+		}
+	}
+
+	/**
+	 * @return The number of documents in the cache
+	 */
+	public int size()
+	{
+		synchronized(this.cache)
+		{
+			return this.cache.size();
+		}
+	}
+
+	/**
+	 * @return The number of calls served from the cache without contacting the server
+	 */
+	public long getHits()
+	{
+		return this.hits.get();
+	}
+
+	/**
+	 * @return The number of revalidations answered with 304 Not Modified
+	 */
+	public long getRevalidations()
+	{
+		return this.revalidations.get();
+	}
+
+	/**
+	 * @return The number of documents downloaded and parsed
+	 */
+	public long getDownloads()
+	{
+		return this.downloads.get();
+	}
+
+	/**
+	 * Downloads a document, or revalidates the cached one
+	 */
+	private APML load(URL url, String key, CachedDocument cached) throws IOException, InvalidAPMLFormatException
+	{
+		URLConnection connection = url.openConnection();
+		connection.setUseCaches(false);
+		HttpURLConnection http = (connection instanceof HttpURLConnection) ? (HttpURLConnection)connection : null;
+
+		if(http != null && cached != null)
+		{
+			if(cached.etag != null)
+				http.setRequestProperty("If-None-Match", cached.etag);
+			if(cached.lastModified > 0)
+				http.setIfModifiedSince(cached.lastModified);
+		}
+
+		long now = this.clock.currentTimeMillis();
+		if(http != null)
+		{
+			int status = http.getResponseCode();
+			if(status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null)
+			{
+				close(http);
+				String etag = http.getHeaderField("ETag");
+				long lastModified = http.getLastModified();
+				CachedDocument entry = new CachedDocument(cached.apml, etag != null ? etag : cached.etag,
+						lastModified > 0 ? lastModified : cached.lastModified, now + maxAge(http, now));
+				put(key, entry, http);
+				this.revalidations.incrementAndGet();
+				return cached.apml;
+			}
+			if(status != HttpURLConnection.HTTP_OK)
+			{
+				close(http);
+				throw new IOException("Server returned HTTP " + status + " for " + key);
+			}
+		}
+
+		APML apml = null;
+		InputStream in = connection.getInputStream();
+		try
+		{
+			apml = this.decoder.decode(in);
+		}
+		finally
+		{
+			// Close the connection to the online resource
+			in.close();
+		}
+		this.downloads.incrementAndGet();
+
+		put(key, new CachedDocument(apml, connection.getHeaderField("ETag"), connection.getLastModified(),
+				now + maxAge(connection, now)), connection);
+		return apml;
+	}
+
+	private CachedDocument get(String key)
+	{
+		synchronized(this.cache)
+		{
+			return this.cache.get(key);
+		}
+	}
+
+	private void put(String key, CachedDocument entry, URLConnection connection)
+	{
+		synchronized(this.cache)
+		{
+			if(hasDirective(connection, "no-store"))
+				this.cache.remove(key);
+			else
+				this.cache.put(key, entry);
+		}
+	}
+
+	/**
+	 * @return How long the response may be served from the cache, in milliseconds
+	 */
+	private long maxAge(URLConnection connection, long now)
+	{
+		String cacheControl = connection.getHeaderField("Cache-Control");
+		if(cacheControl != null)
+		{
+			// no-cache and no-store win over max-age, wherever they are in the header
+			long maxAge = -1;
+			for(String directive : cacheControl.split(","))
+			{
+				directive = directive.trim().toLowerCase();
+				if(directive.equals("no-cache") || directive.equals("no-store"))
+					return 0;
+				if(directive.startsWith("max-age=") && maxAge < 0)
+				{
+					try
+					{
+						maxAge = Math.max(0, Long.parseLong(directive.substring(8).trim())) * 1000;
+					}
+					catch(NumberFormatException nfEx)
+					{
+						maxAge = 0;
+					}
+				}
+			}
+			if(maxAge >= 0)
+				return maxAge;
+		}
+
+		if(connection.getHeaderField("Expires") != null)
+		{
+			// Relative to the date of the server, in case its clock is off
+			long date = connection.getDate();
+			return Math.max(0, connection.getExpiration() - (date > 0 ? date : now));
+		}
+		return this.defaultMaxAge;
+	}
+
+	private static boolean hasDirective(URLConnection connection, String name)
+	{
+		String cacheControl = connection.getHeaderField("Cache-Control");
+		if(cacheControl == null)
+			return false;
+
+		for(String directive : cacheControl.split(","))
+		{
+			if(directive.trim().equalsIgnoreCase(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads what is left of a response, so the connection can be reused
+	 */
+	private static void close(HttpURLConnection http)
+	{
+		try
+		{
+			InputStream in = http.getErrorStream();
+			if(in == null)
+				in = http.getInputStream();
+			byte[] buffer = new byte[1024];
+			while(in.read(buffer) >= 0) {}
+			in.close();
+		}
+		catch(IOException ioEx)
+		{
+			// Nothing to reuse
+		}
+	}
+
+	/**
+	 * Reads a document
+	 */
+	private interface Decoder
+	{
+		public APML decode(InputStream in) throws IOException, InvalidAPMLFormatException;
+	}
+
+	/**
+	 * A cached document
+	 */
+	private static class CachedDocument
+	{
+		final APML apml;
+		final String etag;
+		final long lastModified;
+		final long expires;
+
+		CachedDocument(APML apml, String etag, long lastModified, long expires)
+		{
+			this.apml = apml;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.expires = expires;
+		}
+	}
+}
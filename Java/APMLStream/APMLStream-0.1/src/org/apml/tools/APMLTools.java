@@ -18,10 +18,13 @@
 
 package org.apml.tools;
 
+import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 /**
  * <p>Various helper methods useful for manipulating APML objects.</p>
@@ -29,50 +32,185 @@ import java.util.Date;
  */
 public class APMLTools
 {
+	private static volatile StalenessPolicy stalenessPolicy = new StalenessPolicy();
+	
 	/**
-	 * Determines if a resource specified by a ISO8601 date is outdated
+	 * Determines if a resource specified by a ISO8601 date is outdated, according to the
+	 * staleness policy
 	 * @param date
-	 * @return outdated
+	 * @return outdated, false if the date can't be parsed
 	 */
 	public static boolean isResourceOutdated(String date)
 	{
-		// TODO: Parse and process date
-		return false;
+		return stalenessPolicy.isOutdated(ISO8601.parse(date));
+	}
+	
+	/**
+	 * Determines if a resource is outdated, according to the staleness policy
+	 * @param updatedMillis The date of the resource, like Concept.getUpdatedMillis()
+	 * @return outdated, false if the date is ISO8601.INVALID
+	 */
+	public static boolean isResourceOutdated(long updatedMillis)
+	{
+		return stalenessPolicy.isOutdated(updatedMillis);
+	}
+	
+	/**
+	 * @return The policy used by isResourceOutdated and the getAllOutdated methods
+	 */
+	public static StalenessPolicy getStalenessPolicy()
+	{
+		return stalenessPolicy;
+	}
+	
+	/**
+	 * Sets the policy used by isResourceOutdated and the getAllOutdated methods
+	 * @param policy The policy, by default 30 days on the system clock
+	 */
+	public static void setStalenessPolicy(StalenessPolicy policy)
+	{
+		if(policy == null)
+			throw new IllegalArgumentException("The staleness policy can't be null");
+		stalenessPolicy = policy;
+	}
+	
+	/**
+	 * Folds the case of a key the way String.equalsIgnoreCase compares it, so that keys which
+	 * are equal ignoring case can be looked up in a hash map
+	 * @param value
+	 * @return The folded key, value itself if it has nothing to fold
+	 */
+	public static String foldCase(String value)
+	{
+		char[] chars = null;
+		
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			char folded = Character.toLowerCase(Character.toUpperCase(c));
+			if(folded != c)
+			{
+				if(chars == null)
+					chars = value.toCharArray();
+				chars[i] = folded;
+			}
+		}
+		return chars == null ? value : new String(chars);
 	}
 	
 	/**
-	 * Converts a default Data object to ISO8601DateType
+	 * Converts a default Data object to ISO8601DateType, in UTC
 	 * @param date
 	 * @return The ISO8601 compatible date
 	 */
 	public static String convertToISO8601DateType(Date date)
 	{
-		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").format(date);
+		return ISO8601.format(date.getTime());
 	}
 	
 	/**
 	 * Converts UserEmail text to MD5 for security purposes
 	 * @param email
-	 * @return The MD5 hash of the user's email
+	 * @return The MD5 hash of the UTF-8 bytes of the user's email, as 32 lowercase hex digits,
+	 * or null if email is null
 	 */
 	public static String userEmailMD5(String email)
-	{        
-		byte[] bytes = email.getBytes();
-		byte mDigest[] = null;
-		MessageDigest algorithm = null;
-		try
+	{
+		if(email == null)
+			return null;
+		return EMAIL_HASHER.get().hash(email);
+	}
+	
+	/**
+	 * Converts many UserEmail texts to MD5, like when a corpus is anonymized before export
+	 * @param emails
+	 * @return The hashes, in the order of the emails, see userEmailMD5
+	 */
+	public static List<String> hashAll(Iterable<String> emails)
+	{
+		EmailHasher hasher = EMAIL_HASHER.get();
+		List<String> hashes = (emails instanceof Collection) ? new ArrayList<String>(((Collection<String>) emails).size()) : new ArrayList<String>();
+		
+		for(String email : emails)
+			hashes.add(email == null ? null : hasher.hash(email));
+		return hashes;
+	}
+	
+	// MessageDigest isn't thread-safe and getInstance is slow, so each thread keeps its own
+	private static final ThreadLocal<EmailHasher> EMAIL_HASHER = new ThreadLocal<EmailHasher>()
+	{
+		protected EmailHasher initialValue()
 		{
-			algorithm = MessageDigest.getInstance("MD5");
-			algorithm.reset();
-			algorithm.update(bytes);
-			mDigest = algorithm.digest();
-		            
-			StringBuffer hexString = new StringBuffer();
+			return new EmailHasher();
+		}
+	};
+	
+	/**
+	 * The digest and buffers of one thread
+	 */
+	private static class EmailHasher
+	{
+		private static final char[] HEX = "0123456789abcdef".toCharArray();
+		
+		private final MessageDigest md5;
+		private byte[] bytes = new byte[64];
+		private final char[] hex = new char[32];
+		
+		EmailHasher()
+		{
+			try
+			{
+				this.md5 = MessageDigest.getInstance("MD5");
+			}
+			catch(NoSuchAlgorithmException nsaEx)
+			{
+				// Every Java platform is required to support MD5
+				throw new IllegalStateException(nsaEx);
+			}
+		}
+		
+		String hash(String email)
+		{
+			int length = email.length();
+			if(this.bytes.length < length)
+				this.bytes = new byte[Math.max(length, this.bytes.length * 2)];
+			
+			// Emails are nearly always ASCII, which is its own UTF-8
 			int i = 0;
-			for (i=0;i<mDigest.length;i++)
-				hexString.append(Integer.toHexString(0xFF & mDigest[i]));
+			for(i = 0; i < length; i++)
+			{
+				char c = email.charAt(i);
+				if(c >= 0x80)
+					break;
+				this.bytes[i] = (byte) c;
+			}
+			
+			this.md5.reset();
+			if(i == length)
+				this.md5.update(this.bytes, 0, length);
+			else
+				this.md5.update(utf8(email));
+			byte[] digest = this.md5.digest();
+			
+			for(i = 0; i < digest.length; i++)
+			{
+				this.hex[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+				this.hex[2 * i + 1] = HEX[digest[i] & 0xF];
+			}
+			return new String(this.hex);
+		}
+		
+		private static byte[] utf8(String text)
+		{
+			try
+			{
+				return text.getBytes("UTF-8");
+			}
+			catch(UnsupportedEncodingException ueEx)
+			{
+				// Every Java platform is required to support UTF-8
+				throw new IllegalStateException(ueEx);
+			}
 		}
-		catch(NoSuchAlgorithmException nsae){}
-		return mDigest.toString();
 	}
 }
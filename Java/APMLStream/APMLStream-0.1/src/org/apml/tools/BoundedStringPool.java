@@ -0,0 +1,70 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+/**
+ * <p>A {@link StringPool} of fixed size.<br>
+ * Each string has one slot, chosen by its hash code, and a string that lands on a taken slot
+ * replaces the one there. The pool never grows and never holds more than its size, and the
+ * strings that repeat most stay in it. One pool per document costs a single small array.</p>
+ * <p>The pool is thread-safe without locking: a slot read or written by several threads at once
+ * holds one of their strings, and Strings are immutable, so the worst case is a missed match.
+ * It can be shared between parses, see {@link APMLCodec#setStringPool(StringPool)}.</p>
+ * @author Tim Schultz
+ */
+public class BoundedStringPool implements StringPool
+{
+	/** Slots of a pool built with the default constructor */
+	public static final int DEFAULT_SIZE = 512;
+
+	private final String[] slots;
+	private final int mask;
+
+	public BoundedStringPool()
+	{
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * @param size The number of slots, rounded up to a power of two
+	 */
+	public BoundedStringPool(int size)
+	{
+		int slotCount = 1;
+		while(slotCount < size)
+			slotCount <<= 1;
+		this.slots = new String[slotCount];
+		this.mask = slotCount - 1;
+	}
+
+	public String dedup(String string)
+	{
+		if(string == null)
+			return null;
+
+		int hash = string.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & this.mask;
+		String pooled = this.slots[slot];
+		if(pooled != null && (pooled == string || (pooled.hashCode() == hash && pooled.equals(string))))
+			return pooled;
+		this.slots[slot] = string;
+		return string;
+	}
+}
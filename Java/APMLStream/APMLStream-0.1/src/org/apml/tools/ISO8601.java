@@ -0,0 +1,246 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+/**
+ * <p>Reads and writes the ISO-8601 dates of the updated and DateCreated attributes.<br>
+ * Unlike SimpleDateFormat, the methods allocate nothing but the returned String, keep no state
+ * and are safe to call from any thread.</p>
+ * <p>{@link #parse(String)} accepts a date, optionally followed by 'T' or a space and a time with
+ * minutes, seconds and a fraction of a second, and an optional time zone: 'Z', +hh, +hhmm or
+ * +hh:mm. Dates without a time zone are taken as UTC. {@link #format(long)} writes the form used
+ * throughout APML, like 2008-01-15T10:30:00Z.</p>
+ * @author Tim Schultz
+ */
+public final class ISO8601
+{
+	/** Returned by parse() for text that isn't an ISO-8601 date */
+	public static final long INVALID = Long.MIN_VALUE;
+	/** Length of the text written by format() for years 0 to 9999 */
+	public static final int FORMATTED_LENGTH = 20;
+
+	private static final long MILLIS_PER_DAY = 24L * 3600 * 1000;
+	private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	private ISO8601(){}
+
+	/**
+	 * Parses an ISO-8601 date
+	 * @param date The text, may be null
+	 * @return Milliseconds since 1970-01-01T00:00:00Z, or INVALID
+	 */
+	public static long parse(String date)
+	{
+		if(date == null)
+			return INVALID;
+
+		int length = date.length();
+		if(length < 10 || date.charAt(4) != '-' || date.charAt(7) != '-')
+			return INVALID;
+
+		int year = digits(date, 0, 4);
+		int month = digits(date, 5, 2);
+		int day = digits(date, 8, 2);
+		if(year < 0 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1])
+			return INVALID;
+		if(month == 2 && day == 29 && !isLeapYear(year))
+			return INVALID;
+
+		long millis = daysSinceEpoch(year, month, day) * MILLIS_PER_DAY;
+		if(length == 10)
+			return millis;
+
+		char separator = date.charAt(10);
+		if((separator != 'T' && separator != ' ') || length < 16 || date.charAt(13) != ':')
+			return INVALID;
+
+		int hour = digits(date, 11, 2);
+		int minute = digits(date, 14, 2);
+		if(hour < 0 || hour > 23 || minute < 0 || minute > 59)
+			return INVALID;
+		millis += (hour * 60L + minute) * 60000L;
+
+		int i = 16;
+		if(i < length && date.charAt(i) == ':')
+		{
+			int second = digits(date, i + 1, 2);
+			// 60 is a leap second
+			if(second < 0 || second > 60)
+				return INVALID;
+			millis += second * 1000L;
+			i += 3;
+
+			if(i < length && (date.charAt(i) == '.' || date.charAt(i) == ','))
+			{
+				int start = ++i;
+				int fraction = 0;
+				while(i < length && date.charAt(i) >= '0' && date.charAt(i) <= '9')
+				{
+					// Digits after the milliseconds are dropped
+					if(i - start < 3)
+						fraction = fraction * 10 + (date.charAt(i) - '0');
+					i++;
+				}
+				if(i == start)
+					return INVALID;
+				for(int scale = i - start; scale < 3; scale++)
+					fraction *= 10;
+				millis += fraction;
+			}
+		}
+
+		if(i == length)
+			return millis;
+
+		char zone = date.charAt(i);
+		if(zone == 'Z' || zone == 'z')
+			return (i + 1 == length) ? millis : INVALID;
+		if(zone != '+' && zone != '-')
+			return INVALID;
+
+		int offsetHours = digits(date, i + 1, 2);
+		int offsetMinutes = 0;
+		i += 3;
+		if(i < length && date.charAt(i) == ':')
+			i++;
+		if(i < length)
+		{
+			offsetMinutes = digits(date, i, 2);
+			i += 2;
+		}
+		if(i != length || offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59)
+			return INVALID;
+
+		long offset = (offsetHours * 60L + offsetMinutes) * 60000L;
+		return (zone == '+') ? millis - offset : millis + offset;
+	}
+
+	/**
+	 * Writes a date the way APML documents carry them, in UTC and to the second
+	 * @param millis Milliseconds since 1970-01-01T00:00:00Z
+	 * @return The date, like 2008-01-15T10:30:00Z
+	 */
+	public static String format(long millis)
+	{
+		// Room for years beyond 9999 too
+		char[] chars = new char[FORMATTED_LENGTH + 12];
+		return new String(chars, 0, format(millis, chars, 0));
+	}
+
+	/**
+	 * Writes a date to a buffer, for callers that reuse one
+	 * @param millis Milliseconds since 1970-01-01T00:00:00Z
+	 * @param out The buffer, with room for FORMATTED_LENGTH characters at offset, or more
+	 * for years outside 0 to 9999
+	 * @param offset Where the date starts
+	 * @return The number of characters written
+	 */
+	public static int format(long millis, char[] out, int offset)
+	{
+		long days = floorDiv(millis, MILLIS_PER_DAY);
+		int millisOfDay = (int) (millis - days * MILLIS_PER_DAY);
+
+		// Civil date from a day count, after Howard Hinnant's days_from_civil
+		long z = days + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+		int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+		int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+		int seconds = millisOfDay / 1000;
+		int i = offset;
+		i = write(out, i, year, 4);
+		out[i++] = '-';
+		i = write(out, i, month, 2);
+		out[i++] = '-';
+		i = write(out, i, day, 2);
+		out[i++] = 'T';
+		i = write(out, i, seconds / 3600, 2);
+		out[i++] = ':';
+		i = write(out, i, seconds / 60 % 60, 2);
+		out[i++] = ':';
+		i = write(out, i, seconds % 60, 2);
+		out[i++] = 'Z';
+		return i - offset;
+	}
+
+	/**
+	 * @return The days from 1970-01-01 to a date of the Gregorian calendar
+	 */
+	private static long daysSinceEpoch(int year, int month, int day)
+	{
+		long y = (month <= 2) ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static boolean isLeapYear(int year)
+	{
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	/**
+	 * @return The number made of count digits at start, or -1 if they aren't all digits
+	 */
+	private static int digits(String text, int start, int count)
+	{
+		if(start + count > text.length())
+			return -1;
+
+		int value = 0;
+		for(int i = start; i < start + count; i++)
+		{
+			char c = text.charAt(i);
+			if(c < '0' || c > '9')
+				return -1;
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static int write(char[] out, int offset, int value, int width)
+	{
+		if(value < 0 || (width == 4 && value > 9999))
+		{
+			// Outside of the four digit years, write the year as it is
+			String text = Integer.toString(value);
+			text.getChars(0, text.length(), out, offset);
+			return offset + text.length();
+		}
+		for(int i = offset + width - 1; i >= offset; i--)
+		{
+			out[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return offset + width;
+	}
+
+	private static long floorDiv(long x, long y)
+	{
+		long q = x / y;
+		return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+	}
+}
@@ -0,0 +1,477 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import org.apml.base.APML;
+import org.apml.base.Author;
+import org.apml.base.Body;
+import org.apml.base.Concept;
+import org.apml.base.ExplicitData;
+import org.apml.base.ImplicitData;
+import org.apml.base.Profile;
+import org.apml.base.Source;
+import org.apml.deserialize.APMLHandler;
+import org.apml.deserialize.DefaultAPMLHandler;
+
+/**
+ * <p>Merges the profiles of several APML documents, for example from different generators,
+ * into one profile.<br>
+ * Concepts and sources with the same key, ignoring case, are combined: each value is multiplied
+ * by the weight of its input and by a decay factor of 0.5 per half-life since its updated date,
+ * then the values are added up. When averaging, the sum is divided by the total weight of the
+ * inputs that had the key, so values stay in the range of the inputs. Implicit and explicit
+ * data are merged separately.</p>
+ * <p>The merged entry keeps the key as first seen, and the from, updated (and for sources the
+ * name, type and author) of the most recently updated input. Values that aren't numbers are
+ * skipped, undated values aren't decayed.</p>
+ * <p>Inputs are added one concept at a time to a hash table of entry numbers, so merging takes
+ * time in proportion to the number of concepts. Documents can be merged from APML objects or
+ * streamed through an {@link org.apml.deserialize.APMLEventParser} with newHandler(). A merger
+ * is meant to be used by one thread.</p>
+ * @author Tim Schultz
+ */
+public class ProfileMerger
+{
+	private static final double LN2 = Math.log(2);
+
+	private final long halfLife;
+	private final long now;
+	private boolean average = true;
+
+	private final MergeTable implicitConcepts = new MergeTable(false);
+	private final MergeTable explicitConcepts = new MergeTable(false);
+	private final MergeTable implicitSources = new MergeTable(true);
+	private final MergeTable explicitSources = new MergeTable(true);
+
+	/**
+	 * Constructor - No decay
+	 */
+	public ProfileMerger()
+	{
+		this(0, StalenessPolicy.SYSTEM_CLOCK);
+	}
+
+	/**
+	 * Constructor - Decay to the current time of the system clock
+	 * @param halfLife The age in milliseconds at which a value counts half, 0 for no decay
+	 */
+	public ProfileMerger(long halfLife)
+	{
+		this(halfLife, StalenessPolicy.SYSTEM_CLOCK);
+	}
+
+	/**
+	 * Constructor
+	 * @param halfLife The age in milliseconds at which a value counts half, 0 for no decay
+	 * @param clock Gives the time ages are measured to, read once here
+	 */
+	public ProfileMerger(long halfLife, StalenessPolicy.Clock clock)
+	{
+		if(halfLife < 0 || clock == null)
+			throw new IllegalArgumentException("Need a clock and a half-life of at least 0");
+
+		this.halfLife = halfLife;
+		this.now = clock.currentTimeMillis();
+	}
+
+	/**
+	 * Adds all profiles of an APML document
+	 * @param apml The document
+	 * @param weight The weight of the document
+	 */
+	public void add(APML apml, float weight)
+	{
+		Body body = apml.getBody();
+		List<Profile> profiles = (body == null) ? null : body.getProfiles();
+
+		if(profiles != null)
+			for(int i = 0; i < profiles.size(); i++)
+				add(profiles.get(i), weight);
+	}
+
+	/**
+	 * Adds a profile
+	 * @param profile The profile
+	 * @param weight The weight of the profile
+	 */
+	public void add(Profile profile, float weight)
+	{
+		checkWeight(weight);
+		ImplicitData implicitData = profile.getImplicitData();
+		ExplicitData explicitData = profile.getExplicitData();
+
+		if(implicitData != null)
+		{
+			addConcepts(this.implicitConcepts, implicitData.getConcepts(), weight);
+			addSources(this.implicitSources, implicitData.getSources(), weight);
+		}
+		if(explicitData != null)
+		{
+			addConcepts(this.explicitConcepts, explicitData.getConcepts(), weight);
+			addSources(this.explicitSources, explicitData.getSources(), weight);
+		}
+	}
+
+	/**
+	 * Creates a handler that adds the profiles of a document as the {@link org.apml.deserialize.APMLEventParser}
+	 * reports them, without building the APML objects
+	 * @param weight The weight of the document
+	 * @return The handler, for one document
+	 */
+	public APMLHandler newHandler(final float weight)
+	{
+		checkWeight(weight);
+		return new DefaultAPMLHandler()
+		{
+			// The merged source the authors go to, -1 if the last source didn't become it
+			private MergeTable sources = null;
+			private int source = -1;
+
+			public void onConcept(boolean explicit, String key, String value, String from, String updated)
+			{
+				float parsed = parse(value);
+				if(key != null && !Float.isNaN(parsed))
+					(explicit ? explicitConcepts : implicitConcepts).add(key, parsed, weight, from, updated, millis(updated), factor(millis(updated)));
+			}
+
+			public void onSource(boolean explicit, String key, String name, String value, String type, String from, String updated)
+			{
+				float parsed = parse(value);
+				this.source = -1;
+				if(key == null || Float.isNaN(parsed))
+					return;
+
+				long updatedMillis = millis(updated);
+				this.sources = explicit ? explicitSources : implicitSources;
+				this.source = this.sources.add(key, parsed, weight, from, updated, updatedMillis, factor(updatedMillis));
+				if(this.source >= 0)
+					this.sources.setSourceFields(this.source, name, type, null);
+			}
+
+			public void onAuthor(String key, String value, String from, String updated)
+			{
+				if(this.source >= 0)
+					this.sources.authors[this.source] = new Author(text(key), text(value), text(from), text(updated));
+			}
+		};
+	}
+
+	/**
+	 * Determines if the merged values are averaged
+	 * @return true if the sums are divided by the total weight, the default
+	 */
+	public boolean isAverage() {
+		return average;
+	}
+
+	/**
+	 * @param average true to divide the sums by the total weight of the inputs that had the key,
+	 * false to keep the weighted sums
+	 */
+	public void setAverage(boolean average) {
+		this.average = average;
+	}
+
+	public long getHalfLife() {
+		return halfLife;
+	}
+
+	/**
+	 * Retrieve the merged implicit concepts and sources
+	 * @return A new ImplicitData, entries in the order their keys were first seen
+	 */
+	public ImplicitData getImplicitData()
+	{
+		ImplicitData data = new ImplicitData();
+		data.setConcepts(this.implicitConcepts.toConcepts(this.average));
+		data.setSources(this.implicitSources.toSources(this.average));
+		return data;
+	}
+
+	/**
+	 * Retrieve the merged explicit concepts and sources
+	 * @return A new ExplicitData, entries in the order their keys were first seen
+	 */
+	public ExplicitData getExplicitData()
+	{
+		ExplicitData data = new ExplicitData();
+		data.setConcepts(this.explicitConcepts.toConcepts(this.average));
+		data.setSources(this.explicitSources.toSources(this.average));
+		return data;
+	}
+
+	/**
+	 * Retrieve the merged profile
+	 * @param name The name of the profile
+	 * @return A new profile
+	 */
+	public Profile getProfile(String name)
+	{
+		Profile profile = new Profile(name);
+		profile.setImplicitData(getImplicitData());
+		profile.setExplicitData(getExplicitData());
+		return profile;
+	}
+
+	private void addConcepts(MergeTable table, List<Concept> concepts, float weight)
+	{
+		if(concepts == null)
+			return;
+
+		for(int i = 0; i < concepts.size(); i++)
+		{
+			Concept concept = concepts.get(i);
+			float value = concept.getFloatValue();
+			if(concept.getKey() == null || Float.isNaN(value))
+				continue;
+			long updatedMillis = concept.getUpdatedMillis();
+			table.add(concept.getKey(), value, weight, concept.getFrom(), concept.getUpdated(), updatedMillis, factor(updatedMillis));
+		}
+	}
+
+	private void addSources(MergeTable table, List<Source> sources, float weight)
+	{
+		if(sources == null)
+			return;
+
+		for(int i = 0; i < sources.size(); i++)
+		{
+			Source source = sources.get(i);
+			float value = parse(source.getValue());
+			if(source.getKey() == null || Float.isNaN(value))
+				continue;
+			long updatedMillis = source.getUpdatedMillis();
+			int entry = table.add(source.getKey(), value, weight, source.getFrom(), source.getUpdated(), updatedMillis, factor(updatedMillis));
+			if(entry >= 0)
+				table.setSourceFields(entry, source.getName(), source.getType(), source.getAuthor());
+		}
+	}
+
+	/**
+	 * The decay factor of a date. Dates in the future count as now.
+	 */
+	private double factor(long updatedMillis)
+	{
+		if(this.halfLife == 0 || updatedMillis == ISO8601.INVALID || updatedMillis >= this.now)
+			return 1;
+		return Math.exp(-LN2 * (this.now - updatedMillis) / this.halfLife);
+	}
+
+	private static void checkWeight(float weight)
+	{
+		if(Float.isNaN(weight) || Float.isInfinite(weight))
+			throw new IllegalArgumentException("The weight must be a number");
+	}
+
+	private static long millis(String updated)
+	{
+		return (updated == null) ? ISO8601.INVALID : ISO8601.parse(updated);
+	}
+
+	private static float parse(String value)
+	{
+		if(value == null)
+			return Float.NaN;
+		try
+		{
+			return Float.parseFloat(value);
+		}
+		catch(NumberFormatException nfEx)
+		{
+			return Float.NaN;
+		}
+	}
+
+	private static String text(String value)
+	{
+		return (value == null) ? "" : value;
+	}
+
+	/**
+	 * The merged entries of one kind, in parallel arrays. Folded keys are found through an
+	 * open addressing table of entry numbers.
+	 */
+	private static final class MergeTable
+	{
+		private final boolean sources;
+
+		// slots[i]: entry number + 1, 0 when free
+		private int[] slots = new int[16];
+		private int[] hashes = new int[8];
+		private String[] folded = new String[8];
+		private int size = 0;
+
+		String[] keys = new String[8];
+		String[] froms = new String[8];
+		String[] updated = new String[8];
+		long[] latest = new long[8];
+		double[] sums = new double[8];
+		double[] weights = new double[8];
+		String[] names;
+		String[] types;
+		Author[] authors;
+
+		MergeTable(boolean sources)
+		{
+			this.sources = sources;
+			if(sources)
+			{
+				this.names = new String[8];
+				this.types = new String[8];
+				this.authors = new Author[8];
+			}
+		}
+
+		/**
+		 * Adds a value
+		 * @return The entry number if the value is now the most recently updated of its key, else -1
+		 */
+		int add(String key, float value, float weight, String from, String updated, long updatedMillis, double factor)
+		{
+			String foldedKey = APMLTools.foldCase(key);
+			int hash = foldedKey.hashCode();
+			int mask = this.slots.length - 1;
+			int slot = mix(hash) & mask;
+			int entry;
+
+			while(true)
+			{
+				entry = this.slots[slot] - 1;
+				if(entry < 0)
+				{
+					entry = newEntry(slot, hash, foldedKey, key);
+					break;
+				}
+				if(this.hashes[entry] == hash && this.folded[entry].equals(foldedKey))
+					break;
+				slot = (slot + 1) & mask;
+			}
+
+			this.sums[entry] += (double) weight * factor * value;
+			this.weights[entry] += weight;
+			if(this.froms[entry] != null && updatedMillis <= this.latest[entry])
+				return -1;
+			this.froms[entry] = text(from);
+			this.updated[entry] = text(updated);
+			this.latest[entry] = updatedMillis;
+			return entry;
+		}
+
+		void setSourceFields(int entry, String name, String type, Author author)
+		{
+			this.names[entry] = text(name);
+			this.types[entry] = text(type);
+			this.authors[entry] = author;
+		}
+
+		private int newEntry(int slot, int hash, String foldedKey, String key)
+		{
+			int entry = this.size++;
+			if(entry == this.keys.length)
+				grow();
+			this.hashes[entry] = hash;
+			this.folded[entry] = foldedKey;
+			this.keys[entry] = key;
+			this.slots[slot] = entry + 1;
+
+			if(this.size * 2 > this.slots.length)
+				rehash();
+			return entry;
+		}
+
+		private void grow()
+		{
+			int length = this.keys.length * 2;
+			this.hashes = (int[]) copy(this.hashes, new int[length]);
+			this.folded = (String[]) copy(this.folded, new String[length]);
+			this.keys = (String[]) copy(this.keys, new String[length]);
+			this.froms = (String[]) copy(this.froms, new String[length]);
+			this.updated = (String[]) copy(this.updated, new String[length]);
+			this.latest = (long[]) copy(this.latest, new long[length]);
+			this.sums = (double[]) copy(this.sums, new double[length]);
+			this.weights = (double[]) copy(this.weights, new double[length]);
+			if(this.sources)
+			{
+				this.names = (String[]) copy(this.names, new String[length]);
+				this.types = (String[]) copy(this.types, new String[length]);
+				this.authors = (Author[]) copy(this.authors, new Author[length]);
+			}
+		}
+
+		private void rehash()
+		{
+			int[] slots = new int[this.slots.length * 2];
+			int mask = slots.length - 1;
+			for(int entry = 0; entry < this.size; entry++)
+			{
+				int slot = mix(this.hashes[entry]) & mask;
+				while(slots[slot] != 0)
+					slot = (slot + 1) & mask;
+				slots[slot] = entry + 1;
+			}
+			this.slots = slots;
+		}
+
+		private String value(int entry, boolean average)
+		{
+			double value = this.sums[entry];
+			if(average)
+				value = (this.weights[entry] == 0) ? 0 : value / this.weights[entry];
+			return Float.toString((float) value);
+		}
+
+		ArrayList<Concept> toConcepts(boolean average)
+		{
+			ArrayList<Concept> concepts = new ArrayList<Concept>(this.size);
+			for(int i = 0; i < this.size; i++)
+				concepts.add(new Concept(this.keys[i], value(i, average), this.froms[i], this.updated[i]));
+			return concepts;
+		}
+
+		ArrayList<Source> toSources(boolean average)
+		{
+			ArrayList<Source> sources = new ArrayList<Source>(this.size);
+			for(int i = 0; i < this.size; i++)
+			{
+				Source source = new Source(this.keys[i], this.names[i], value(i, average), this.types[i], this.froms[i], this.updated[i]);
+				source.setAuthor(this.authors[i]);
+				sources.add(source);
+			}
+			return sources;
+		}
+
+		/**
+		 * Spreads the bits of String.hashCode() over the low bits used for the slots
+		 */
+		private static int mix(int hash)
+		{
+			hash *= 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+
+		private static Object copy(Object array, Object larger)
+		{
+			System.arraycopy(array, 0, larger, 0, Array.getLength(array));
+			return larger;
+		}
+	}
+}
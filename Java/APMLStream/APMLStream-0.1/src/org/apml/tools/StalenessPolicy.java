@@ -0,0 +1,127 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+/**
+ * <p>Decides when a concept or source is outdated: when its updated date is older than a
+ * maximum age. The current time comes from a {@link Clock}, so tests and batch jobs can
+ * judge a corpus as of a given time.<br>
+ * A policy can't be changed once built, and is safe to share between threads.
+ * The policy of {@link APMLTools#isResourceOutdated(String)} is set with
+ * {@link APMLTools#setStalenessPolicy(StalenessPolicy)}.</p>
+ * @author Tim Schultz
+ */
+public class StalenessPolicy
+{
+	/** Default maximum age, 30 days */
+	public static final long DEFAULT_MAX_AGE = 30L * 24 * 3600 * 1000;
+
+	/**
+	 * The source of the current time
+	 */
+	public interface Clock
+	{
+		/**
+		 * @return Milliseconds since 1970-01-01T00:00:00Z
+		 */
+		public long currentTimeMillis();
+	}
+
+	/** The system clock */
+	public static final Clock SYSTEM_CLOCK = new Clock()
+	{
+		public long currentTimeMillis()
+		{
+			return System.currentTimeMillis();
+		}
+	};
+
+	private final long maxAge;
+	private final Clock clock;
+
+	/**
+	 * Constructor - Default maximum age, system clock
+	 */
+	public StalenessPolicy()
+	{
+		this(DEFAULT_MAX_AGE, SYSTEM_CLOCK);
+	}
+
+	/**
+	 * Constructor - System clock
+	 * @param maxAge The maximum age in milliseconds
+	 */
+	public StalenessPolicy(long maxAge)
+	{
+		this(maxAge, SYSTEM_CLOCK);
+	}
+
+	/**
+	 * Constructor
+	 * @param maxAge The maximum age in milliseconds
+	 * @param clock The source of the current time
+	 */
+	public StalenessPolicy(long maxAge, Clock clock)
+	{
+		if(maxAge < 0 || clock == null)
+			throw new IllegalArgumentException("Need a clock and a maximum age of at least 0");
+
+		this.maxAge = maxAge;
+		this.clock = clock;
+	}
+
+	/**
+	 * Retrieve the oldest date that isn't outdated yet. Filters read it once and compare
+	 * every date with it.
+	 * @return Milliseconds since 1970-01-01T00:00:00Z
+	 */
+	public long getCutoff()
+	{
+		return this.clock.currentTimeMillis() - this.maxAge;
+	}
+
+	/**
+	 * Determines if a date is outdated
+	 * @param updatedMillis The date, from ISO8601.parse()
+	 * @return outdated, false if the date is ISO8601.INVALID
+	 */
+	public boolean isOutdated(long updatedMillis)
+	{
+		return isOutdated(updatedMillis, getCutoff());
+	}
+
+	/**
+	 * Determines if a date is outdated at a cutoff from getCutoff()
+	 * @param updatedMillis The date, from ISO8601.parse()
+	 * @param cutoff The oldest date that isn't outdated
+	 * @return outdated, false if the date is ISO8601.INVALID
+	 */
+	public static boolean isOutdated(long updatedMillis, long cutoff)
+	{
+		return updatedMillis != ISO8601.INVALID && updatedMillis < cutoff;
+	}
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+}
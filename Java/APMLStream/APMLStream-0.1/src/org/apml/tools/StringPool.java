@@ -0,0 +1,36 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+/**
+ * <p>Hands back one shared instance for equal strings.<br>
+ * The same from, updated and type attributes and concept keys repeat throughout an APML document,
+ * and a pool lets the deserializers keep a single copy of each instead of one per element.
+ * See {@link BoundedStringPool} and {@link WeakStringPool}.</p>
+ * @author Tim Schultz
+ */
+public interface StringPool
+{
+	/**
+	 * Retrieve the pooled copy of a string
+	 * @param string The string, may be null
+	 * @return An equal string from the pool, or the string itself, which may be added to the pool
+	 */
+	public String dedup(String string);
+}
@@ -0,0 +1,59 @@
+/*
+ *  APMLStream: Java library for APML serialization/deserialization
+ *	By:  Tim Schultz
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ *
+ */
+
+package org.apml.tools;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>A {@link StringPool} that keeps every string for as long as something else uses it.<br>
+ * Strings are held through weak references, so the pool only costs memory for strings that
+ * are still part of some APML object, and can be shared by all parses of an application.
+ * The pool is thread-safe.</p>
+ * @author Tim Schultz
+ */
+public class WeakStringPool implements StringPool
+{
+	// The value must not refer to the key strongly, or the entry is never cleared
+	private final Map<String, WeakReference<String>> pool = new WeakHashMap<String, WeakReference<String>>();
+
+	public WeakStringPool(){}
+
+	public synchronized String dedup(String string)
+	{
+		if(string == null)
+			return null;
+
+		WeakReference<String> ref = this.pool.get(string);
+		String pooled = (ref == null) ? null : ref.get();
+		if(pooled != null)
+			return pooled;
+		this.pool.put(string, new WeakReference<String>(string));
+		return string;
+	}
+
+	/**
+	 * @return The number of strings in the pool
+	 */
+	public synchronized int size()
+	{
+		return this.pool.size();
+	}
+}
@@ -1,11 +1,164 @@
 package org.apml.deserialize.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 
 public class Concepts extends ArrayList
 {
+	// Concepts grouped by from, rebuilt on the first lookup after the list changed
+	private transient HashMap<String, List<Concept>> fromIndex = null;
+	private transient long indexStamp = 0;
+	// set() isn't a structural change, so it doesn't count in modCount
+	private transient int replaced = 0;
+
 	public Concepts()
 	{
 		super();
 	}
+
+	// ArrayList is raw here, like the rest of the model, so set() can't be checked
+	@SuppressWarnings("unchecked")
+	public Object set(int index, Object element)
+	{
+		this.replaced++;
+		return super.set(index, element);
+	}
+
+	/**
+	 * Retrieve the concepts from a given resource. The lookup is case-sensitive.
+	 * @return An unmodifiable list of the matching concepts, in list order
+	 */
+	public synchronized List<Concept> getConceptsFrom(String from)
+	{
+		long stamp = ((long) (this.modCount + this.replaced) << 32) | size();
+		if(this.fromIndex == null || this.indexStamp != stamp)
+		{
+			HashMap<String, List<Concept>> index = new HashMap<String, List<Concept>>();
+			for(int i = 0; i < size(); i++)
+			{
+				Concept concept = (Concept) get(i);
+				if(concept == null || concept.getFrom() == null)
+					continue;
+				List<Concept> matches = index.get(concept.getFrom());
+				if(matches == null)
+				{
+					matches = new ArrayList<Concept>(2);
+					index.put(concept.getFrom(), matches);
+				}
+				matches.add(concept);
+			}
+			this.fromIndex = index;
+			this.indexStamp = stamp;
+		}
+
+		List<Concept> matches = this.fromIndex.get(from);
+		if(matches == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(matches);
+	}
+
+	/**
+	 * Retrieve the k concepts with the highest values, highest first. A min-heap of size k
+	 * keeps the candidates, so the list is never sorted. Equal values keep the list order,
+	 * and concepts whose value isn't a number are left out.
+	 */
+	public List<Concept> topConcepts(int k)
+	{
+		if(k < 0)
+			throw new IllegalArgumentException("k can't be negative: " + k);
+
+		// There can't be more of them than there are concepts
+		int capacity = Math.min(k, size());
+		Concept[] heap = new Concept[capacity];
+		float[] values = new float[capacity];
+		int[] positions = new int[capacity];
+		int count = 0;
+
+		for(int i = 0; i < size() && capacity > 0; i++)
+		{
+			Concept concept = (Concept) get(i);
+			float value = (concept == null) ? Float.NaN : parseValue(concept.getValue());
+			if(Float.isNaN(value))
+				continue;
+
+			if(count < capacity)
+			{
+				// Sift the new concept up from the end
+				int slot = count++;
+				while(slot > 0 && value <= values[(slot - 1) / 2])
+				{
+					int parent = (slot - 1) / 2;
+					heap[slot] = heap[parent];
+					values[slot] = values[parent];
+					positions[slot] = positions[parent];
+					slot = parent;
+				}
+				heap[slot] = concept;
+				values[slot] = value;
+				positions[slot] = i;
+			}
+			else if(value > values[0])
+				// Replace the weakest, a later concept losing ties
+				siftDown(heap, values, positions, count, concept, value, i);
+		}
+
+		// Emptying the heap yields the weakest first
+		Concept[] top = new Concept[count];
+		for(int n = count; n > 0; n--)
+		{
+			top[n - 1] = heap[0];
+			siftDown(heap, values, positions, n - 1, heap[n - 1], values[n - 1], positions[n - 1]);
+		}
+		return new ArrayList<Concept>(Arrays.asList(top));
+	}
+
+	/**
+	 * Puts a concept at the top of the first count entries of the heap and sifts it down
+	 */
+	private static void siftDown(Concept[] heap, float[] values, int[] positions, int count, Concept concept, float value, int position)
+	{
+		int slot = 0;
+		while(true)
+		{
+			int child = 2 * slot + 1;
+			if(child >= count)
+				break;
+			if(child + 1 < count && weaker(values, positions, child + 1, child))
+				child++;
+			if(value < values[child] || (value == values[child] && position > positions[child]))
+				break;
+			heap[slot] = heap[child];
+			values[slot] = values[child];
+			positions[slot] = positions[child];
+			slot = child;
+		}
+		if(slot < count)
+		{
+			heap[slot] = concept;
+			values[slot] = value;
+			positions[slot] = position;
+		}
+	}
+
+	private static boolean weaker(float[] values, int[] positions, int a, int b)
+	{
+		if(values[a] != values[b])
+			return values[a] < values[b];
+		return positions[a] > positions[b];
+	}
+
+	private static float parseValue(String value)
+	{
+		try
+		{
+			return Float.parseFloat(value);
+		}
+		catch(Exception ex)
+		{
+			return Float.NaN;
+		}
+	}
 }
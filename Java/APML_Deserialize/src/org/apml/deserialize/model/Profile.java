@@ -1,7 +1,6 @@
 package org.apml.deserialize.model;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 
 public class Profile
 {
@@ -42,27 +41,11 @@ public class Profile
 	
 	public ArrayList getAllImplicitConceptsFrom(String from)
 	{
-		ArrayList fromList = new ArrayList();
-		Iterator iIConcept = this.implicitData.getConcepts().iterator();
-		while(iIConcept.hasNext())
-		{
-			Concept currCon = (Concept) iIConcept.next();
-			if(currCon.getFrom().equals(from))
-				fromList.add(currCon);
-		}
-		return fromList;
+		return new ArrayList<Concept>(this.implicitData.getConcepts().getConceptsFrom(from));
 	}
 	
 	public ArrayList getAllExplicitConceptsFrom(String from)
 	{
-		ArrayList fromList = new ArrayList();
-		Iterator iIConcept = this.explicitData.getConcepts().iterator();
-		while(iIConcept.hasNext())
-		{
-			Concept currCon = (Concept) iIConcept.next();
-			if(currCon.getFrom().equals(from))
-				fromList.add(currCon);
-		}
-		return fromList;
+		return new ArrayList<Concept>(this.explicitData.getConcepts().getConceptsFrom(from));
 	}
 }
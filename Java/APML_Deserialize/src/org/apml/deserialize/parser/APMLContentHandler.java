@@ -0,0 +1,182 @@
+package org.apml.deserialize.parser;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+import org.apml.deserialize.model.APML;
+import org.apml.deserialize.model.Application;
+import org.apml.deserialize.model.Author;
+import org.apml.deserialize.model.Body;
+import org.apml.deserialize.model.Concept;
+import org.apml.deserialize.model.DateCreated;
+import org.apml.deserialize.model.ExplicitData;
+import org.apml.deserialize.model.Generator;
+import org.apml.deserialize.model.Head;
+import org.apml.deserialize.model.ImplicitData;
+import org.apml.deserialize.model.Profile;
+import org.apml.deserialize.model.Source;
+import org.apml.deserialize.model.Title;
+import org.apml.deserialize.model.UserEmail;
+
+/**
+ * Builds the APML object in a single pass over the SAX events.
+ * Only the current Profile, data section and Source are kept, so no element costs
+ * more than a constant amount of work and the document is never held in memory.
+ */
+public class APMLContentHandler extends DefaultHandler
+{
+	private APML apmlDoc = null;
+	private Profile currProfile = null;
+	private ImplicitData currImplicit = null;
+	private ExplicitData currExplicit = null;
+	private Source currSource = null;
+
+	// Names of the open elements, innermost last
+	private String[] stack = new String[16];
+	private int depth = 0;
+
+	// Text of the Head element being read, if any
+	private StringBuffer text = null;
+
+	// Pool of the attributes that repeat from element to element
+	private StringPool pool = null;
+
+	public APMLContentHandler()
+	{
+		this(new StringPool());
+	}
+
+	public APMLContentHandler(StringPool pool)
+	{
+		this.pool = pool;
+	}
+
+	public APML getAPML()
+	{
+		return this.apmlDoc;
+	}
+
+	public void startElement(String uri, String localName, String qName, Attributes attrs)
+	{
+		push(qName);
+
+		if(qName.equals("APML"))
+			this.apmlDoc = new APML(attr(attrs, "version"));
+		else if(qName.equals("Head"))
+			this.apmlDoc.setHead(new Head());
+		else if(qName.equals("Title") || qName.equals("Generator") || qName.equals("UserEmail") || qName.equals("DateCreated"))
+		{
+			// Only Head children collect text, the same names anywhere else are left alone
+			if(this.depth >= 2 && this.stack[this.depth - 2].equals("Head"))
+				this.text = new StringBuffer();
+		}
+		else if(qName.equals("Body"))
+			this.apmlDoc.setBody(new Body(attr(attrs, "defaultprofile")));
+		else if(qName.equals("Profile"))
+		{
+			String name = attr(attrs, "name");
+			this.currProfile = new Profile(name);
+			this.apmlDoc.getBody().getProfiles().put(name, this.currProfile);
+		}
+		else if(qName.equals("ImplicitData"))
+		{
+			this.currImplicit = new ImplicitData();
+			this.currProfile.setImplicitData(this.currImplicit);
+		}
+		else if(qName.equals("ExplicitData"))
+		{
+			this.currExplicit = new ExplicitData();
+			this.currProfile.setExplicitData(this.currExplicit);
+		}
+		else if(qName.equals("Concept"))
+		{
+			// The empty uri is a placeholder for future spec
+			Concept concept = new Concept(pooled(attrs, "key"), attr(attrs, "value"), "", pooled(attrs, "from"), pooled(attrs, "updated"));
+
+			if(inSection("ImplicitData"))
+				this.currImplicit.getConcepts().add(concept);
+			else if(inSection("ExplicitData"))
+				this.currExplicit.getConcepts().add(concept);
+		}
+		else if(qName.equals("Source"))
+		{
+			this.currSource = new Source(attr(attrs, "key"), pooled(attrs, "name"), attr(attrs, "value"), pooled(attrs, "type"), pooled(attrs, "from"), pooled(attrs, "updated"));
+
+			if(inSection("ImplicitData"))
+				this.currImplicit.getSources().add(this.currSource);
+			else if(inSection("ExplicitData"))
+				this.currExplicit.getSources().add(this.currSource);
+		}
+		else if(qName.equals("Author"))
+			this.currSource.setAuthor(new Author(pooled(attrs, "key"), attr(attrs, "value"), pooled(attrs, "from"), pooled(attrs, "updated")));
+		else if(qName.equals("Application"))
+		{
+			// TODO How to handle application-specific data?
+			this.apmlDoc.getBody().getApplications().add(new Application(attr(attrs, "name"), ""));
+		}
+	}
+
+	public void characters(char[] ch, int start, int length)
+	{
+		if(this.text != null)
+			this.text.append(ch, start, length);
+	}
+
+	public void endElement(String uri, String localName, String qName)
+	{
+		this.depth--;
+
+		if(this.text == null)
+			return;
+
+		// Only Head children collect text, and they may contain nested markup
+		if(qName.equals("Title") && isHeadChild())
+			this.apmlDoc.getHead().setTitle(new Title(this.text.toString()));
+		else if(qName.equals("Generator") && isHeadChild())
+			this.apmlDoc.getHead().setGenerator(new Generator(this.text.toString()));
+		else if(qName.equals("UserEmail") && isHeadChild())
+			this.apmlDoc.getHead().setUserEmail(new UserEmail(this.text.toString()));
+		else if(qName.equals("DateCreated") && isHeadChild())
+			this.apmlDoc.getHead().setDateCreated(new DateCreated(this.text.toString()));
+		else
+			return;
+		this.text = null;
+	}
+
+	private boolean isHeadChild()
+	{
+		return this.depth > 0 && this.stack[this.depth - 1].equals("Head");
+	}
+
+	/**
+	 * Concepts and Sources sit in a Concepts/Sources list inside the data section
+	 */
+	private boolean inSection(String section)
+	{
+		return this.depth >= 3 && this.stack[this.depth - 3].equals(section);
+	}
+
+	private void push(String name)
+	{
+		if(this.depth == this.stack.length)
+		{
+			String[] grown = new String[this.depth * 2];
+			System.arraycopy(this.stack, 0, grown, 0, this.depth);
+			this.stack = grown;
+		}
+		this.stack[this.depth++] = name;
+	}
+
+	private static String attr(Attributes attrs, String name)
+	{
+		String value = attrs.getValue(name);
+		return value == null ? "" : value;
+	}
+
+	private String pooled(Attributes attrs, String name)
+	{
+		String value = attrs.getValue(name);
+		if(value == null)
+			return "";
+		return this.pool == null ? value : this.pool.dedup(value);
+	}
+}
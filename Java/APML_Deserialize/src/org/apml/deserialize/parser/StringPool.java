@@ -0,0 +1,44 @@
+package org.apml.deserialize.parser;
+
+/**
+ * Hands back one shared instance for equal strings, so the attributes that repeat throughout
+ * a document (from, updated, type, source names and keys) are only kept once.
+ * Each string has one slot, chosen by its hash code, and replaces the string already there,
+ * so the pool never holds more than its size. It is thread-safe without locking and can be
+ * shared by several parsers: the worst case of a race is a missed match.
+ */
+public class StringPool
+{
+	public static final int DEFAULT_SIZE = 512;
+
+	private final String[] slots;
+	private final int mask;
+
+	public StringPool()
+	{
+		this(DEFAULT_SIZE);
+	}
+
+	public StringPool(int size)
+	{
+		int slotCount = 1;
+		while(slotCount < size)
+			slotCount <<= 1;
+		this.slots = new String[slotCount];
+		this.mask = slotCount - 1;
+	}
+
+	public String dedup(String string)
+	{
+		if(string == null)
+			return null;
+
+		int hash = string.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & this.mask;
+		String pooled = this.slots[slot];
+		if(pooled != null && (pooled == string || (pooled.hashCode() == hash && pooled.equals(string))))
+			return pooled;
+		this.slots[slot] = string;
+		return string;
+	}
+}